@@ -0,0 +1,80 @@
+package br.com.compass.pb.asynchers.compassflix.config;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.data.convert.ReadingConverter;
+import org.springframework.data.convert.WritingConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+
+import java.util.List;
+
+/**
+ * Genre and PgRating are written as int32 codes. The String readers only exist so documents that were not
+ * migrated yet (see MovieDictionaryMigration) still load.
+ */
+@Configuration
+public class MongoConfig {
+
+    @Bean
+    public MongoCustomConversions mongoCustomConversions() {
+        return conversions();
+    }
+
+    public static MongoCustomConversions conversions() {
+        return new MongoCustomConversions(List.of(
+                new GenreWriter(), new GenreReader(), new LegacyGenreReader(),
+                new PgRatingWriter(), new PgRatingReader(), new LegacyPgRatingReader()));
+    }
+
+    @WritingConverter
+    static class GenreWriter implements Converter<Genre, Integer> {
+        @Override
+        public Integer convert(Genre source) {
+            return source.code();
+        }
+    }
+
+    @ReadingConverter
+    static class GenreReader implements Converter<Integer, Genre> {
+        @Override
+        public Genre convert(Integer source) {
+            return Genre.fromCode(source);
+        }
+    }
+
+    @ReadingConverter
+    static class LegacyGenreReader implements Converter<String, Genre> {
+        @Override
+        public Genre convert(String source) {
+            return Genre.isValid(source) ? Genre.fromLabel(source) : Genre.OTHER;
+        }
+    }
+
+    @WritingConverter
+    static class PgRatingWriter implements Converter<PgRating, Integer> {
+        @Override
+        public Integer convert(PgRating source) {
+            return source.age();
+        }
+    }
+
+    @ReadingConverter
+    static class PgRatingReader implements Converter<Integer, PgRating> {
+        @Override
+        public PgRating convert(Integer source) {
+            return PgRating.of(source);
+        }
+    }
+
+    @ReadingConverter
+    static class LegacyPgRatingReader implements Converter<String, PgRating> {
+        @Override
+        public PgRating convert(String source) {
+            return PgRating.isValid(source) ? PgRating.parse(source) : null;
+        }
+    }
+
+}
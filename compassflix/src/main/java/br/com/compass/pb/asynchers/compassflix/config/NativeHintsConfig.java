@@ -0,0 +1,63 @@
+package br.com.compass.pb.asynchers.compassflix.config;
+
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidGenre;
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidPgRating;
+import br.com.compass.pb.asynchers.compassflix.exceptions.ExceptionResponse;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.util.ClassUtils;
+
+import java.util.List;
+
+/**
+ * Reachability metadata for the native image build (mvn -Pnative native:compile). Spring works out the hints for
+ * beans, controller signatures and repositories by itself, but Jackson also reads and writes entities and DTOs
+ * outside of controllers (idempotency records, the ingestion spill file) and Hibernate Validator creates the
+ * constraint validators reflectively. The packages are scanned when the image is built, so a new DTO or entity
+ * needs no change here.
+ */
+@Configuration
+@ImportRuntimeHints(NativeHintsConfig.CompassflixRuntimeHints.class)
+public class NativeHintsConfig {
+
+    static final List<String> BOUND_PACKAGES = List.of(
+            "br.com.compass.pb.asynchers.compassflix.entities",
+            "br.com.compass.pb.asynchers.compassflix.dto.request",
+            "br.com.compass.pb.asynchers.compassflix.dto.response");
+
+    static class CompassflixRuntimeHints implements RuntimeHintsRegistrar {
+
+        private final BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+
+        @Override
+        public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+            ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+                @Override
+                protected boolean isCandidateComponent(AnnotatedBeanDefinition definition) {
+                    return definition.getMetadata().isIndependent();
+                }
+            };
+            scanner.addIncludeFilter((reader, factory) -> true);
+            for (String boundPackage : BOUND_PACKAGES) {
+                for (BeanDefinition definition : scanner.findCandidateComponents(boundPackage)) {
+                    bindings.registerReflectionHints(hints.reflection(),
+                            ClassUtils.resolveClassName(definition.getBeanClassName(), classLoader));
+                }
+            }
+            bindings.registerReflectionHints(hints.reflection(), ExceptionResponse.class);
+
+            hints.reflection()
+                    .registerType(ValidGenre.Validator.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+                    .registerType(ValidPgRating.Validator.class, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+        }
+
+    }
+
+}
@@ -0,0 +1,39 @@
+package br.com.compass.pb.asynchers.compassflix.config;
+
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.observability.ServerTimingInterceptor;
+import br.com.compass.pb.asynchers.compassflix.observability.SlowCommandListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.mongo.MongoClientSettingsBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.time.Duration;
+
+@Configuration
+public class ObservabilityConfig implements WebMvcConfigurer {
+
+    @Bean
+    public SlowCommandListener slowCommandListener(
+            @Value("${compassflix.mongo.slow-command-threshold:PT0.1S}") Duration threshold) {
+        return new SlowCommandListener(threshold);
+    }
+
+    @Bean
+    public MongoClientSettingsBuilderCustomizer slowCommandListenerCustomizer(SlowCommandListener listener) {
+        return builder -> builder.addCommandListener(listener);
+    }
+
+    @Bean
+    public OperationLog operationLog(@Value("${compassflix.logging.read-sample-rate:0.01}") double readSampleRate) {
+        return new OperationLog(readSampleRate);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ServerTimingInterceptor());
+    }
+
+}
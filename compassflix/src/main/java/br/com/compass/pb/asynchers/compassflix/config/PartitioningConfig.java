@@ -0,0 +1,97 @@
+package br.com.compass.pb.asynchers.compassflix.config;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.observability.SlowCommandListener;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepositoryCustomImpl;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.MoviePartitionTemplates;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.MoviePartitioner;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.PartitionedMovieRepository;
+import com.mongodb.ConnectionString;
+import com.mongodb.MongoClientSettings;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.SimpleMongoClientDatabaseFactory;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Replaces the single node MovieRepository with a {@link PartitionedMovieRepository} when
+ * compassflix.partitioning.enabled is set. Every entry in compassflix.partitioning.uris is one partition, a
+ * connection string naming its database; they can point at separate instances or at databases of one instance.
+ */
+@Configuration
+@ConditionalOnProperty(name = "compassflix.partitioning.enabled", havingValue = "true")
+@Slf4j
+public class PartitioningConfig {
+
+    private final List<MongoClient> clients = new ArrayList<>();
+
+    @Bean
+    public MoviePartitionTemplates moviePartitionTemplates(@Value("${compassflix.partitioning.uris}") List<String> uris,
+                                                           MongoCustomConversions conversions,
+                                                           SlowCommandListener slowCommandListener) {
+        List<MongoTemplate> templates = new ArrayList<>();
+        for (String uri : uris) {
+            ConnectionString connectionString = new ConnectionString(uri);
+            MongoClient client = MongoClients.create(MongoClientSettings.builder()
+                    .applyConnectionString(connectionString)
+                    .addCommandListener(slowCommandListener)
+                    .build());
+            clients.add(client);
+            templates.add(new MongoTemplate(new SimpleMongoClientDatabaseFactory(client, connectionString.getDatabase()),
+                    converter(conversions)));
+        }
+        return new MoviePartitionTemplates(templates);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @Primary
+    public PartitionedMovieRepository partitionedMovieRepository(
+            MoviePartitionTemplates partitionTemplates,
+            @Value("${compassflix.partitioning.key:id}") String key,
+            @Value("${compassflix.partitioning.threads:16}") int threads) {
+        List<MovieRepository> partitions = partitionTemplates.templates().stream()
+                .map(template -> new MongoRepositoryFactory(template)
+                        .getRepository(MovieRepository.class, new MovieRepositoryCustomImpl(template)))
+                .toList();
+        log.info("### Movies partitioned by {} over {} databases ###", key, partitions.size());
+        return new PartitionedMovieRepository(partitions, MoviePartitioner.of(key, partitions.size()), threads);
+    }
+
+    @PreDestroy
+    public void closeClients() {
+        clients.forEach(MongoClient::close);
+    }
+
+    // a mapping context per partition. Auto index creation stays off like on the main template, IndexProvisioner
+    // creates the Movie indexes on every partition once the application is ready
+    private static MappingMongoConverter converter(MongoCustomConversions conversions) {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.setInitialEntitySet(Set.of(Movie.class));
+        mappingContext.setAutoIndexCreation(false);
+        mappingContext.afterPropertiesSet();
+
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+
+}
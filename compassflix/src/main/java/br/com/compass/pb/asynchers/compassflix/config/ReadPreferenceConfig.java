@@ -0,0 +1,53 @@
+package br.com.compass.pb.asynchers.compassflix.config;
+
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepositoryCustomImpl;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRepositories;
+import com.mongodb.ReadPreference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.MongoDatabaseFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+import org.springframework.data.mongodb.repository.support.SimpleMongoRepository;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spring Data 4.1 has no per query read preference on repositories, so each preference gets its own template on
+ * the shared client and a repository on top of it. Primary reads use the regular MovieRepository bean, and so
+ * does every read when that bean is not the plain Mongo repository, so a replaced repository is never bypassed.
+ */
+@Configuration
+@Slf4j
+public class ReadPreferenceConfig {
+
+    @Bean
+    public ReadPreferenceRepositories readPreferenceRepositories(
+            MovieRepository repository, MongoDatabaseFactory databaseFactory, MongoConverter converter,
+            @Value("${compassflix.partitioning.enabled:false}") boolean partitioned) {
+        if (partitioned) {
+            log.info("### Movies are partitioned, reads use the read preference of the partition connection strings ###");
+            return readPreference -> repository;
+        }
+        if (!SimpleMongoRepository.class.isAssignableFrom(AopUtils.getTargetClass(repository))) {
+            log.info("### MovieRepository is not backed by Mongo, every read uses it whatever its read preference ###");
+            return readPreference -> repository;
+        }
+        Map<ReadPreference, MovieRepository> repositories = new ConcurrentHashMap<>();
+        return readPreference -> readPreference.equals(ReadPreference.primary())
+                ? repository
+                : repositories.computeIfAbsent(readPreference, preference -> {
+                    MongoTemplate template = new MongoTemplate(databaseFactory, converter);
+                    template.setReadPreference(preference);
+                    return new MongoRepositoryFactory(template)
+                            .getRepository(MovieRepository.class, new MovieRepositoryCustomImpl(template));
+                });
+    }
+
+}
@@ -0,0 +1,26 @@
+package br.com.compass.pb.asynchers.compassflix.controllers;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.ExportManifestDto;
+import br.com.compass.pb.asynchers.compassflix.services.export.CatalogExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/compassflix/admin/exports")
+public class CatalogExportController {
+
+    @Autowired
+    private CatalogExportService exportService;
+
+    @PostMapping
+    public ResponseEntity<ExportManifestDto> export() throws IOException {
+        return ResponseEntity.status(HttpStatus.CREATED).body(exportService.export());
+    }
+
+}
@@ -1,17 +1,54 @@
 package br.com.compass.pb.asynchers.compassflix.controllers;
 
+import br.com.compass.pb.asynchers.compassflix.dto.request.InventoryRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieBatchRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieBulkUpdateDto;
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
 import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.BulkUpdateResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogFacetsDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogStatsDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.FeedStatsDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.IngestionStatsDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.IngestionStatusDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.InventoryResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieBatchResponseDto;
 import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.RecentMoviesDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.RentalResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.ScoredMovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.SimilarMovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.TrendingMovieResponseDto;
 import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.services.FuzzySearchService;
 import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.batch.MovieBatchService;
+import br.com.compass.pb.asynchers.compassflix.services.feed.CatalogChangeBroadcaster;
+import br.com.compass.pb.asynchers.compassflix.services.feed.SseChangeSink;
+import br.com.compass.pb.asynchers.compassflix.services.idempotency.IdempotencyService;
+import br.com.compass.pb.asynchers.compassflix.services.ingestion.MovieIngestionQueue;
+import br.com.compass.pb.asynchers.compassflix.services.rentals.RentalService;
+import br.com.compass.pb.asynchers.compassflix.services.similarity.SimilarMoviesService;
+import br.com.compass.pb.asynchers.compassflix.services.stats.CatalogStatsService;
+import br.com.compass.pb.asynchers.compassflix.services.views.MovieViewCounter;
+import br.com.compass.pb.asynchers.compassflix.services.views.TrendingMoviesService;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.web.SortDefault;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.OptionalLong;
 
 @RestController
 @RequestMapping("/compassflix/movies")
@@ -21,18 +58,75 @@ public class MovieController {
     @Autowired
     private MovieService service;
 
+    @Autowired
+    private FuzzySearchService fuzzySearchService;
+
+    @Autowired
+    private MovieIngestionQueue ingestionQueue;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @Autowired
+    private CatalogChangeBroadcaster changeBroadcaster;
+
+    @Autowired
+    private SimilarMoviesService similarMoviesService;
+
+    @Autowired
+    private MovieViewCounter viewCounter;
+
+    @Autowired
+    private TrendingMoviesService trendingMoviesService;
+
+    @Autowired
+    private RentalService rentalService;
+
+    @Autowired
+    private CatalogStatsService statsService;
+
+    @Autowired
+    private MovieBatchService batchService;
+
     @GetMapping
     public ResponseEntity<List<Movie>> findAll() {
         var response = service.findAllMovies();
         return ResponseEntity.ok(response);
     }
 
+    @GetMapping("/facets")
+    public ResponseEntity<CatalogFacetsDto> facets() {
+        return ResponseEntity.ok(service.facets());
+    }
+
+    @GetMapping("/stats")
+    public ResponseEntity<CatalogStatsDto> stats() {
+        return ResponseEntity.ok(statsService.stats());
+    }
+
+    @GetMapping("/trending")
+    public ResponseEntity<List<TrendingMovieResponseDto>> trending(@RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(trendingMoviesService.trending(limit));
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<Movie> findById(@PathVariable String id) {
         var response = service.findMovieById(id);
+        viewCounter.record(id);
         return ResponseEntity.ok(response);
     }
 
+    @RequestMapping(value = "/{id}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> exists(@PathVariable String id) {
+        return service.exists(id) ? ResponseEntity.ok().build() : ResponseEntity.notFound().build();
+    }
+
+
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<List<SimilarMovieResponseDto>> findSimilar(@PathVariable String id,
+                                                                     @RequestParam(defaultValue = "10") int limit) {
+        return ResponseEntity.ok(similarMoviesService.similar(id, limit));
+    }
 
     @GetMapping(value = "/search", params = "name")
     public ResponseEntity<List<Movie>> findByName(@RequestParam("name") String name) {
@@ -41,9 +135,63 @@ public class MovieController {
         return ResponseEntity.ok().body(response);
     }
 
+    @GetMapping(value = "/search/fuzzy", params = "name")
+    public ResponseEntity<List<ScoredMovieResponseDto>> findByNameFuzzy(@RequestParam("name") String name,
+                                                                        @RequestParam(defaultValue = "2") int maxDistance,
+                                                                        @RequestParam(defaultValue = "20") int limit) {
+        var response = fuzzySearchService.search(name, maxDistance, limit);
+
+        return ResponseEntity.ok().body(response);
+    }
+
+    @GetMapping("/query")
+    public ResponseEntity<List<Movie>> findByFilter(MovieFilterDto filter,
+                                                    @SortDefault("name") Sort sort,
+                                                    @RequestParam(defaultValue = "100") int limit) {
+        var response = service.findByFilter(filter, sort, limit);
+
+        return ResponseEntity.ok().body(response);
+    }
+
+    @GetMapping("/recent")
+    public ResponseEntity<RecentMoviesDto> findRecent(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant since,
+                                                      @RequestParam(required = false) String afterId,
+                                                      @RequestParam(defaultValue = "100") int limit) {
+        var response = service.findRecent(since, afterId, limit);
+
+        return ResponseEntity.ok().body(response);
+    }
+
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        SseEmitter emitter = new SseEmitter(changeBroadcaster.emitterTimeout().toMillis());
+        OptionalLong subscriberId = changeBroadcaster.subscribe(new SseChangeSink(emitter), lastEventId);
+        if (subscriberId.isEmpty()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "5")
+                    .build();
+        }
+        Runnable unsubscribe = () -> changeBroadcaster.unsubscribe(subscriberId.getAsLong());
+        emitter.onCompletion(unsubscribe);
+        emitter.onTimeout(unsubscribe);
+        emitter.onError(e -> unsubscribe.run());
+        return ResponseEntity.ok(emitter);
+    }
+
+    @GetMapping("/stream/stats")
+    public ResponseEntity<FeedStatsDto> streamStats() {
+        return ResponseEntity.ok(changeBroadcaster.stats());
+    }
+
     @PostMapping
     public ResponseEntity<MovieResponseDto> insert(@RequestBody @Valid MovieRequestDto movieRequestDto,
+                                                   @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
                                                    UriComponentsBuilder builder) {
+        return idempotencyService.execute(idempotencyKey, "POST /compassflix/movies", movieRequestDto,
+                MovieResponseDto.class, () -> insert(movieRequestDto, builder));
+    }
+
+    public ResponseEntity<MovieResponseDto> insert(MovieRequestDto movieRequestDto, UriComponentsBuilder builder) {
         var response = service.postMovie(movieRequestDto);
         var uri = builder.path("/compassflix/movies/{id}").buildAndExpand(response.id()).toUri();
         return ResponseEntity.created(uri)
@@ -51,8 +199,47 @@ public class MovieController {
                 .body(response);
     }
 
+    @PostMapping(headers = "Prefer=respond-async")
+    public ResponseEntity<?> insertAsync(@RequestBody @Valid MovieRequestDto movieRequestDto,
+                                         @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                         UriComponentsBuilder builder) {
+        if (!ingestionQueue.isEnabled()) {
+            return insert(movieRequestDto, idempotencyKey, builder);
+        }
+        return idempotencyService.execute(idempotencyKey, "POST /compassflix/movies respond-async", movieRequestDto,
+                IngestionStatusDto.class, () -> insertAsync(movieRequestDto, builder));
+    }
+
+    public ResponseEntity<IngestionStatusDto> insertAsync(MovieRequestDto movieRequestDto, UriComponentsBuilder builder) {
+        var response = ingestionQueue.submit(movieRequestDto);
+        var uri = builder.path("/compassflix/movies/ingestion/{id}").buildAndExpand(response.id()).toUri();
+        return ResponseEntity.accepted()
+                .header(HttpHeaders.LOCATION, uri.toString())
+                .header("Preference-Applied", "respond-async")
+                .body(response);
+    }
+
+    @GetMapping("/ingestion")
+    public ResponseEntity<IngestionStatsDto> ingestionStats() {
+        return ResponseEntity.ok(ingestionQueue.stats());
+    }
+
+    @GetMapping("/ingestion/{id}")
+    public ResponseEntity<IngestionStatusDto> ingestionStatus(@PathVariable String id) {
+        var response = ingestionQueue.status(id)
+                .orElseThrow(() -> new MovieNotFoundException("No ingestion found for id: " + id));
+        return ResponseEntity.ok(response);
+    }
+
     @PutMapping("/{id}")
-    public ResponseEntity<MovieResponseDto> update(@PathVariable String id, @RequestBody MovieRequestDto movieRequestDto, UriComponentsBuilder builder) {
+    public ResponseEntity<MovieResponseDto> update(@PathVariable String id, @RequestBody @Valid MovieRequestDto movieRequestDto,
+                                                   @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+                                                   UriComponentsBuilder builder) {
+        return idempotencyService.execute(idempotencyKey, "PUT /compassflix/movies/" + id, movieRequestDto,
+                MovieResponseDto.class, () -> update(id, movieRequestDto, builder));
+    }
+
+    public ResponseEntity<MovieResponseDto> update(String id, MovieRequestDto movieRequestDto, UriComponentsBuilder builder) {
         MovieResponseDto updatedMovie = service.updateMovie(id, movieRequestDto);
         var uri = builder.path("/compassflix/movies/{id}").buildAndExpand(updatedMovie.id()).toUri();
         return ResponseEntity.ok()
@@ -60,6 +247,46 @@ public class MovieController {
                 .body(updatedMovie);
     }
 
+    @GetMapping("/{id}/inventory")
+    public ResponseEntity<InventoryResponseDto> inventory(@PathVariable String id) {
+        return ResponseEntity.ok(rentalService.inventory(id));
+    }
+
+    @PostMapping("/{id}/inventory")
+    public ResponseEntity<InventoryResponseDto> addCopies(@PathVariable String id,
+                                                          @RequestBody @Valid InventoryRequestDto inventoryRequestDto) {
+        return ResponseEntity.ok(rentalService.addCopies(id, inventoryRequestDto.copies()));
+    }
+
+    @PostMapping("/{id}/rentals")
+    public ResponseEntity<RentalResponseDto> reserve(@PathVariable String id,
+                                                     @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /compassflix/movies/" + id + "/rentals", id,
+                RentalResponseDto.class, () -> ResponseEntity.status(HttpStatus.CREATED).body(rentalService.reserve(id)));
+    }
+
+    @PostMapping("/{id}/returns")
+    public ResponseEntity<RentalResponseDto> giveBack(@PathVariable String id,
+                                                      @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY, required = false) String idempotencyKey) {
+        return idempotencyService.execute(idempotencyKey, "POST /compassflix/movies/" + id + "/returns", id,
+                RentalResponseDto.class, () -> ResponseEntity.ok(rentalService.giveBack(id)));
+    }
+
+    @PostMapping("/batch")
+    public ResponseEntity<MovieBatchResponseDto> batch(@RequestBody @Valid MovieBatchRequestDto movieBatchRequestDto) {
+        var response = batchService.execute(movieBatchRequestDto.operations());
+        response.results().stream()
+                .filter(result -> result.status() == HttpStatus.OK.value() && result.body() instanceof Movie)
+                .forEach(result -> viewCounter.record(((Movie) result.body()).getId()));
+        return ResponseEntity.ok(response);
+    }
+
+    @PatchMapping
+    public ResponseEntity<BulkUpdateResponseDto> bulkUpdate(@RequestBody @Valid MovieBulkUpdateDto movieBulkUpdateDto,
+                                                            @RequestParam(defaultValue = "false") boolean dryRun) {
+        return ResponseEntity.ok(service.bulkUpdate(movieBulkUpdateDto, dryRun));
+    }
+
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> delete(@PathVariable String id) {
         service.delete(id);
@@ -0,0 +1,163 @@
+package br.com.compass.pb.asynchers.compassflix.data;
+
+import br.com.compass.pb.asynchers.compassflix.entities.IdempotencyRecord;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.MoviePartitionTemplates;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Creates the indexes declared on the mapped entities once the application is ready (after
+ * {@link DatabasePopulator} recreated the database) and periodically re-verifies them, so an index dropped
+ * at runtime is recreated and reported instead of silently turning queries into collection scans. With
+ * partitioning enabled the Movie indexes are provisioned on every partition database as well. The idempotency
+ * TTL index follows compassflix.idempotency.ttl, so it is changed in place when the property changes.
+ */
+@Component
+@Slf4j
+public class IndexProvisioner {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final MongoMappingContext mappingContext;
+
+    private final QueryPlanVerifier queryPlanVerifier;
+
+    private final ObjectProvider<MoviePartitionTemplates> partitionTemplates;
+
+    private final Duration idempotencyTtl;
+
+    private final boolean enabled;
+
+    private volatile boolean provisioned;
+
+    public IndexProvisioner(MongoTemplate mongoTemplate, MongoMappingContext mappingContext,
+                            QueryPlanVerifier queryPlanVerifier,
+                            ObjectProvider<MoviePartitionTemplates> partitionTemplates,
+                            @Value("${compassflix.idempotency.ttl:PT24H}") Duration idempotencyTtl,
+                            @Value("${compassflix.indexes.provision:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.mappingContext = mappingContext;
+        this.queryPlanVerifier = queryPlanVerifier;
+        this.partitionTemplates = partitionTemplates;
+        this.idempotencyTtl = idempotencyTtl;
+        this.enabled = enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void provisionInBackground() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::provisionAndVerify, "index-provisioner");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.indexes.verify-interval:PT10M}",
+            fixedDelayString = "${compassflix.indexes.verify-interval:PT10M}")
+    public void reverify() {
+        if (enabled && provisioned) {
+            provisionAndVerify();
+        }
+    }
+
+    public synchronized List<String> provision() {
+        List<String> created = new ArrayList<>();
+        IndexResolver resolver = IndexResolver.create(mappingContext);
+
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) {
+                provision(mongoTemplate, entity, resolver).forEach(created::add);
+            }
+        }
+        partitionTemplates.ifAvailable(partitions -> {
+            MongoPersistentEntity<?> movie = mappingContext.getRequiredPersistentEntity(Movie.class);
+            for (MongoTemplate template : partitions.templates()) {
+                String database = template.getDb().getName();
+                provision(template, movie, resolver).forEach(index -> created.add(database + "." + index));
+            }
+        });
+        provisionIdempotencyTtl().ifPresent(created::add);
+        return created;
+    }
+
+    private Optional<String> provisionIdempotencyTtl() {
+        String collection = mongoTemplate.getCollectionName(IdempotencyRecord.class);
+        Document keys = new Document("createdAt", 1);
+        Optional<Document> existing = mongoTemplate.getCollection(collection).listIndexes()
+                .into(new ArrayList<>())
+                .stream()
+                .filter(index -> keys.equals(index.get("key", Document.class)))
+                .findFirst();
+        long seconds = idempotencyTtl.toSeconds();
+
+        if (existing.isEmpty()) {
+            return Optional.of(mongoTemplate.indexOps(IdempotencyRecord.class)
+                    .ensureIndex(new Index("createdAt", Sort.Direction.ASC).expire(idempotencyTtl)));
+        }
+        Number current = existing.get().get("expireAfterSeconds", Number.class);
+        if (current != null && current.longValue() == seconds) {
+            return Optional.empty();
+        }
+        mongoTemplate.executeCommand(new Document("collMod", collection)
+                .append("index", new Document("keyPattern", keys).append("expireAfterSeconds", seconds)));
+        log.info("### Idempotency keys now expire after {} ###", idempotencyTtl);
+        return Optional.empty();
+    }
+
+    private static List<String> provision(MongoTemplate template, MongoPersistentEntity<?> entity,
+                                          IndexResolver resolver) {
+        IndexOperations indexOperations = template.indexOps(entity.getType());
+        Set<Document> existingKeys = template.getCollection(entity.getCollection()).listIndexes()
+                .map(index -> index.get("key", Document.class))
+                .into(new ArrayList<>())
+                .stream()
+                .collect(Collectors.toSet());
+
+        List<String> created = new ArrayList<>();
+        for (IndexDefinition definition : resolver.resolveIndexFor(entity.getType())) {
+            if (!existingKeys.contains(definition.getIndexKeys())) {
+                created.add(indexOperations.ensureIndex(definition));
+            }
+        }
+        return created;
+    }
+
+    private void provisionAndVerify() {
+        try {
+            List<String> created = provision();
+            if (provisioned && !created.isEmpty()) {
+                log.warn("### Indexes were missing and have been recreated: {} ###", created);
+            } else {
+                log.info("### Indexes provisioned, created: {} ###", created);
+            }
+            provisioned = true;
+            queryPlanVerifier.verify();
+        } catch (RuntimeException e) {
+            log.error("### Could not provision indexes ###", e);
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package br.com.compass.pb.asynchers.compassflix.data;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.MoviePartitionTemplates;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites movies stored with free-form genre and pgRating strings into the int codes of {@link Genre} and
+ * {@link PgRating}. Only documents that still hold a string are touched, so it is safe to run on every start.
+ * Genres outside the vocabulary become {@link Genre#OTHER}, ratings that cannot be parsed are removed; both are
+ * logged with their original value. With partitioning enabled every partition database is migrated as well.
+ * The ingestion spill file and the catalog exports are not touched: they store genre and pgRating by label and
+ * are read through Jackson and the export's own dictionary, which both still accept the legacy spellings.
+ */
+@Component
+@Slf4j
+public class MovieDictionaryMigration {
+
+    private static final String COLLECTION = "movies";
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ObjectProvider<MoviePartitionTemplates> partitionTemplates;
+
+    private final boolean enabled;
+
+    private final int batchSize;
+
+    public MovieDictionaryMigration(MongoTemplate mongoTemplate,
+                                    ObjectProvider<MoviePartitionTemplates> partitionTemplates,
+                                    @Value("${compassflix.migrations.dictionary-encoding.enabled:true}") boolean enabled,
+                                    @Value("${compassflix.migrations.dictionary-encoding.batch-size:1000}") int batchSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.partitionTemplates = partitionTemplates;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void migrateOnStartup() {
+        if (enabled) {
+            migrate();
+        }
+    }
+
+    public synchronized int migrate() {
+        int migrated = 0;
+        for (MongoTemplate template : templates()) {
+            migrated += migrate(template);
+        }
+        return migrated;
+    }
+
+    // the main database first, then every partition in partition order
+    List<MongoTemplate> templates() {
+        List<MongoTemplate> templates = new ArrayList<>();
+        templates.add(mongoTemplate);
+        partitionTemplates.ifAvailable(partitions -> templates.addAll(partitions.templates()));
+        return templates;
+    }
+
+    private int migrate(MongoTemplate template) {
+        MongoCollection<Document> collection = template.getCollection(COLLECTION);
+        Bson legacy = Filters.or(Filters.type("genre", BsonType.STRING), Filters.type("pgRating", BsonType.STRING));
+        if (collection.countDocuments(legacy) == 0) {
+            return 0;
+        }
+        String database = template.getDb().getName();
+        logCollectionStats(template, database, "before");
+
+        int migrated = 0;
+        List<WriteModel<Document>> batch = new ArrayList<>(batchSize);
+        try (MongoCursor<Document> cursor = collection.find(legacy)
+                .projection(Projections.include("genre", "pgRating"))
+                .batchSize(batchSize)
+                .iterator()) {
+            while (cursor.hasNext()) {
+                Document document = cursor.next();
+                // matching on the old values too, so a concurrent write through the API is never overwritten
+                Bson unchanged = Filters.and(Filters.eq("_id", document.get("_id")),
+                        Filters.eq("genre", document.get("genre")), Filters.eq("pgRating", document.get("pgRating")));
+                batch.add(new UpdateOneModel<>(unchanged, toUpdate(document)));
+                if (batch.size() == batchSize) {
+                    migrated += flush(collection, batch);
+                }
+            }
+        }
+        migrated += flush(collection, batch);
+
+        log.info("### Dictionary encoded genre and pgRating of {} movies in {} ###", migrated, database);
+        logCollectionStats(template, database, "after");
+        return migrated;
+    }
+
+    static Document toUpdate(Document legacy) {
+        Document set = new Document();
+        Document unset = new Document();
+
+        if (legacy.get("genre") instanceof String genre) {
+            if (!Genre.isValid(genre)) {
+                log.warn("### Movie {} has unknown genre '{}', migrating it as {} ###", legacy.get("_id"), genre,
+                        Genre.OTHER);
+            }
+            set.append("genre", (Genre.isValid(genre) ? Genre.fromLabel(genre) : Genre.OTHER).code());
+        }
+        if (legacy.get("pgRating") instanceof String pgRating) {
+            if (PgRating.isValid(pgRating)) {
+                set.append("pgRating", PgRating.parse(pgRating).age());
+            } else {
+                log.warn("### Movie {} has unreadable pgRating '{}', removing it ###", legacy.get("_id"), pgRating);
+                unset.append("pgRating", "");
+            }
+        }
+
+        Document update = new Document();
+        if (!set.isEmpty()) {
+            update.append("$set", set);
+        }
+        if (!unset.isEmpty()) {
+            update.append("$unset", unset);
+        }
+        return update;
+    }
+
+    private int flush(MongoCollection<Document> collection, List<WriteModel<Document>> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int modified = collection.bulkWrite(batch, new BulkWriteOptions().ordered(false)).getModifiedCount();
+        batch.clear();
+        return modified;
+    }
+
+    // index pages are only rewritten as entries change, compact the collection to see the full index saving
+    private void logCollectionStats(MongoTemplate template, String database, String moment) {
+        try {
+            Document stats = template.getDb().runCommand(new Document("collStats", COLLECTION));
+            log.info("### Movies in {} {} dictionary encoding: count={} avgObjSize={} size={} totalIndexSize={} "
+                            + "indexSizes={} ###", database, moment, stats.get("count"), stats.get("avgObjSize"),
+                    stats.get("size"), stats.get("totalIndexSize"), stats.get("indexSizes"));
+        } catch (RuntimeException e) {
+            log.warn("### Could not read collection stats {} dictionary encoding: {} ###", moment, e.getMessage());
+        }
+    }
+
+}
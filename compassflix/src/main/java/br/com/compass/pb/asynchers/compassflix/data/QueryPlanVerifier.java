@@ -0,0 +1,143 @@
+package br.com.compass.pb.asynchers.compassflix.data;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepositoryCustomImpl;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.MoviePartitionTemplates;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Explains one representative query per MovieRepository query shape and reports the ones planned as COLLSCAN, on
+// every partition database too when partitioning is enabled
+@Component
+@Slf4j
+public class QueryPlanVerifier {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final ObjectProvider<MoviePartitionTemplates> partitionTemplates;
+
+    private final boolean failOnCollectionScan;
+
+    public QueryPlanVerifier(MongoTemplate mongoTemplate, ObjectProvider<MoviePartitionTemplates> partitionTemplates,
+                             @Value("${compassflix.query-plan.fail-on-collection-scan:false}") boolean failOnCollectionScan) {
+        this.mongoTemplate = mongoTemplate;
+        this.partitionTemplates = partitionTemplates;
+        this.failOnCollectionScan = failOnCollectionScan;
+    }
+
+    public void verify() {
+        List<String> collectionScans = findCollectionScans();
+        if (collectionScans.isEmpty()) {
+            log.info("### All movie query shapes are index backed ###");
+            return;
+        }
+        String message = "Movie queries running as a collection scan: " + collectionScans;
+        if (failOnCollectionScan) {
+            throw new IllegalStateException(message);
+        }
+        log.error("### {} ###", message);
+    }
+
+    public List<String> findCollectionScans() {
+        List<String> collectionScans = new ArrayList<>();
+        addCollectionScans(mongoTemplate, "", collectionScans);
+        partitionTemplates.ifAvailable(partitions -> partitions.templates().forEach(template ->
+                addCollectionScans(template, template.getDb().getName() + " ", collectionScans)));
+        return collectionScans;
+    }
+
+    private static void addCollectionScans(MongoTemplate template, String prefix, List<String> collectionScans) {
+        queryShapes().forEach((shape, query) -> {
+            List<String> stages = winningPlanStages(template, query);
+            if (stages.contains("COLLSCAN")) {
+                collectionScans.add(prefix + shape + " " + stages);
+            }
+        });
+    }
+
+    static Map<String, Query> queryShapes() {
+        Map<String, Query> shapes = new LinkedHashMap<>();
+        shapes.put("findById", new Query(Criteria.where("_id").is(new ObjectId())));
+        shapes.put("findByNameIgnoreCaseContaining", new Query(Criteria.where("name").regex("lord", "i")));
+        shapes.put("findByNamesIgnoreCase", MovieRepositoryCustomImpl.toNamesQuery(List.of("heat", "se7en")));
+        Instant since = Instant.parse("2023-01-01T00:00:00Z");
+        shapes.put("findRecent", MovieRepositoryCustomImpl.toRecentQuery(since, null, 100));
+        shapes.put("findRecent afterId", MovieRepositoryCustomImpl.toRecentQuery(since, new ObjectId().toHexString(), 100));
+
+        LocalDate from = LocalDate.of(2000, 1, 1);
+        LocalDate to = LocalDate.of(2010, 1, 1);
+        List<MovieFilterDto> filters = List.of(
+                new MovieFilterDto(null, null, null, null, null, null),
+                new MovieFilterDto("Fantasy", null, null, null, null, null),
+                new MovieFilterDto("Fantasy", "pg-16", null, null, null, null),
+                new MovieFilterDto("Fantasy", "pg-16", from, to, null, null),
+                new MovieFilterDto("Fantasy", null, null, null, 90L, 150L),
+                new MovieFilterDto("Fantasy", null, from, to, 90L, 150L),
+                new MovieFilterDto(null, "pg-16", null, null, null, null),
+                new MovieFilterDto(null, "pg-16", from, to, null, null),
+                new MovieFilterDto(null, null, from, to, null, null),
+                new MovieFilterDto(null, null, null, null, 90L, 150L));
+        List<Sort> sorts = List.of(
+                Sort.by("name"),
+                Sort.by(Sort.Direction.DESC, "releaseDate"),
+                Sort.by("duration"));
+        String afterId = new ObjectId().toHexString();
+        for (MovieFilterDto filter : filters) {
+            for (Sort sort : sorts) {
+                shapes.put("findByFilter " + filter + " " + sort, MovieRepositoryCustomImpl.toQuery(filter, sort, 100));
+            }
+            shapes.put("findByFilterAfter " + filter, MovieRepositoryCustomImpl.toAfterQuery(filter, null, 500));
+            shapes.put("findByFilterAfter afterId " + filter, MovieRepositoryCustomImpl.toAfterQuery(filter, afterId, 500));
+            shapes.put("updateByFilter " + filter, MovieRepositoryCustomImpl.toUpdateQuery(filter, List.of(afterId)));
+        }
+        return shapes;
+    }
+
+    private static List<String> winningPlanStages(MongoTemplate template, Query query) {
+        MongoPersistentEntity<?> entity = template.getConverter().getMappingContext()
+                .getRequiredPersistentEntity(Movie.class);
+        QueryMapper mapper = new QueryMapper(template.getConverter());
+
+        var find = template.getCollection(template.getCollectionName(Movie.class))
+                .find(mapper.getMappedObject(query.getQueryObject(), entity))
+                .sort(mapper.getMappedSort(query.getSortObject(), entity));
+        if (query.isLimited()) {
+            find = find.limit(query.getLimit());
+        }
+        Document explain = find.explain();
+
+        List<String> stages = new ArrayList<>();
+        collectStages(explain.get("queryPlanner", Document.class).get("winningPlan"), stages);
+        return stages;
+    }
+
+    private static void collectStages(Object plan, List<String> stages) {
+        if (plan instanceof Document document) {
+            if (document.containsKey("stage")) {
+                stages.add(document.getString("stage"));
+            }
+            document.values().forEach(value -> collectStages(value, stages));
+        } else if (plan instanceof List<?> list) {
+            list.forEach(value -> collectStages(value, stages));
+        }
+    }
+
+}
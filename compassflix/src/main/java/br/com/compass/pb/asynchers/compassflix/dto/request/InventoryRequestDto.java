@@ -0,0 +1,11 @@
+package br.com.compass.pb.asynchers.compassflix.dto.request;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+
+public record InventoryRequestDto(
+        @NotNull
+        @Min(1)
+        Long copies
+) {
+}
@@ -0,0 +1,15 @@
+package br.com.compass.pb.asynchers.compassflix.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotNull;
+
+// one of get, search, create, update or delete; the id may be $n, the movie of operation n of the same batch
+public record MovieBatchOperationDto(
+        @NotNull
+        String op,
+        String id,
+        String name,
+        @Valid
+        MovieRequestDto movie
+) {
+}
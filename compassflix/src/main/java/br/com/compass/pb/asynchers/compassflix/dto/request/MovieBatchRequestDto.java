@@ -0,0 +1,13 @@
+package br.com.compass.pb.asynchers.compassflix.dto.request;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+
+import java.util.List;
+
+public record MovieBatchRequestDto(
+        @NotEmpty
+        List<@Valid @NotNull MovieBatchOperationDto> operations
+) {
+}
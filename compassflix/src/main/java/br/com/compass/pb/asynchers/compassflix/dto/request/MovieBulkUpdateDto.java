@@ -0,0 +1,42 @@
+package br.com.compass.pb.asynchers.compassflix.dto.request;
+
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidGenre;
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidPgRating;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import jakarta.validation.constraints.NotNull;
+
+// the fields to $set on every movie matching the filter, null fields are left alone
+public record MovieBulkUpdateDto(
+        @NotNull
+        MovieFilterDto filter,
+        @ValidGenre
+        String genre,
+        @ValidPgRating
+        String pgRating
+) {
+
+    public Genre genreValue() {
+        return genre == null ? null : Genre.fromLabel(genre);
+    }
+
+    public PgRating pgRatingValue() {
+        return pgRating == null ? null : PgRating.parse(pgRating);
+    }
+
+    // true when the movie changed
+    public boolean applyTo(Movie movie) {
+        boolean changed = false;
+        if (genre != null && movie.getGenre() != genreValue()) {
+            movie.setGenre(genreValue());
+            changed = true;
+        }
+        if (pgRating != null && movie.getPgRating() != pgRatingValue()) {
+            movie.setPgRating(pgRatingValue());
+            changed = true;
+        }
+        return changed;
+    }
+
+}
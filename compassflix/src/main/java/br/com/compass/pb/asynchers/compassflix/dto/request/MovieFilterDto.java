@@ -0,0 +1,33 @@
+package br.com.compass.pb.asynchers.compassflix.dto.request;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDate;
+
+public record MovieFilterDto(
+        String genre,
+        String pgRating,
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+        LocalDate releasedFrom,
+        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE)
+        LocalDate releasedTo,
+        Long minDuration,
+        Long maxDuration
+) {
+
+    public Genre genreValue() {
+        return genre == null ? null : Genre.fromLabel(genre);
+    }
+
+    public PgRating pgRatingValue() {
+        return pgRating == null ? null : PgRating.parse(pgRating);
+    }
+
+    public boolean isEmpty() {
+        return genre == null && pgRating == null && releasedFrom == null && releasedTo == null
+                && minDuration == null && maxDuration == null;
+    }
+
+}
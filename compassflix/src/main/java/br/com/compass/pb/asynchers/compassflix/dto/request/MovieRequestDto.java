@@ -1,5 +1,10 @@
 package br.com.compass.pb.asynchers.compassflix.dto.request;
 
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidGenre;
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidPgRating;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
 import jakarta.validation.constraints.NotNull;
 
 import java.time.LocalDate;
@@ -12,12 +17,25 @@ public record MovieRequestDto(
         @NotNull
         String description,
         @NotNull
+        @ValidGenre
         String genre,
         @NotNull
         Long duration,
         @NotNull
         LocalDate releaseDate,
         @NotNull
+        @ValidPgRating
         String pgRating
 ) {
+
+    // every field but the id and the registration date, as a PUT replaces them
+    public void applyTo(Movie movie) {
+        movie.setName(name);
+        movie.setDescription(description);
+        movie.setGenre(Genre.fromLabel(genre));
+        movie.setDuration(duration);
+        movie.setReleaseDate(releaseDate);
+        movie.setPgRating(PgRating.parse(pgRating));
+    }
+
 }
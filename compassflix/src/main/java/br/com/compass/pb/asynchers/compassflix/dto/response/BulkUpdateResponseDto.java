@@ -0,0 +1,8 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+public record BulkUpdateResponseDto(
+        long matchedCount,
+        long modifiedCount,
+        boolean dryRun
+) {
+}
@@ -0,0 +1,16 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+
+import java.time.Instant;
+
+// movie is null for DELETED
+public record CatalogChangeDto(
+        long sequence,
+        MovieChangedEvent.ChangeType type,
+        String id,
+        Movie movie,
+        Instant at
+) {
+}
@@ -0,0 +1,11 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import java.util.Map;
+
+public record CatalogFacetsDto(
+        long version,
+        long total,
+        Map<String, Long> genres,
+        Map<String, Long> pgRatings
+) {
+}
@@ -0,0 +1,26 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+public record CatalogStatsDto(
+        long version,
+        long total,
+        Durations durations,
+        Map<String, Durations> durationsByGenre,
+        Map<Integer, Long> moviesPerReleaseYear,
+        Map<LocalDate, Long> registrationsPerDay
+) {
+
+    public record Durations(
+            long count,
+            double mean,
+            long min,
+            long p50,
+            long p90,
+            long p99,
+            long max
+    ) {
+    }
+
+}
@@ -0,0 +1,24 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import java.time.Instant;
+import java.util.List;
+
+public record ExportManifestDto(
+        String format,
+        int formatVersion,
+        Instant createdAt,
+        String directory,
+        long rows,
+        List<String> columns,
+        List<Partition> partitions
+) {
+
+    public record Partition(
+            String file,
+            long rows,
+            int rowGroups,
+            long bytes
+    ) {
+    }
+
+}
@@ -0,0 +1,9 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+public record FeedStatsDto(
+        int subscribers,
+        int maxSubscribers,
+        long published,
+        long droppedSubscribers
+) {
+}
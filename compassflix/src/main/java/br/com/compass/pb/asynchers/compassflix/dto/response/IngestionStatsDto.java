@@ -0,0 +1,11 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+public record IngestionStatsDto(
+        boolean enabled,
+        int queued,
+        int capacity,
+        long accepted,
+        long written,
+        long requeued
+) {
+}
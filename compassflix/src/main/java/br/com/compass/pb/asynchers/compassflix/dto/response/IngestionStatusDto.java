@@ -0,0 +1,9 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import br.com.compass.pb.asynchers.compassflix.services.ingestion.IngestionStatus;
+
+public record IngestionStatusDto(
+        String id,
+        IngestionStatus status
+) {
+}
@@ -0,0 +1,8 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+public record InventoryResponseDto(
+        String movieId,
+        long availableCopies,
+        long rentedCopies
+) {
+}
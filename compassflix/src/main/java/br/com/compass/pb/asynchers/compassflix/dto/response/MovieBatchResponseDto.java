@@ -0,0 +1,19 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import java.util.List;
+
+// one result per operation, in request order, each with the status and body the single endpoint would answer
+public record MovieBatchResponseDto(
+        List<Result> results
+) {
+
+    public record Result(
+            int index,
+            String op,
+            int status,
+            Object body,
+            String message
+    ) {
+    }
+
+}
@@ -4,6 +4,7 @@ import br.com.compass.pb.asynchers.compassflix.entities.Movie;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Objects;
 
 public record MovieResponseDto(
         String id,
@@ -21,10 +22,10 @@ public record MovieResponseDto(
                 response.getId(),
                 response.getName(),
                 response.getDescription(),
-                response.getGenre(),
+                Objects.toString(response.getGenre(), null),
                 response.getDuration(),
                 response.getReleaseDate(),
-                response.getPgRating(),
+                Objects.toString(response.getPgRating(), null),
                 response.getRegistrationDate()
         );
     }
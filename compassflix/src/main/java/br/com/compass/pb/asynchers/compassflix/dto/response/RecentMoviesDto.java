@@ -0,0 +1,14 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+
+import java.time.Instant;
+import java.util.List;
+
+// since and afterId are the cursor for the next page, send them back unchanged
+public record RecentMoviesDto(
+        List<Movie> movies,
+        Instant since,
+        String afterId
+) {
+}
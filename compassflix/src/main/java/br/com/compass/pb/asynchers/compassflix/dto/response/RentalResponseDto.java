@@ -0,0 +1,10 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+import java.time.Instant;
+
+public record RentalResponseDto(
+        String movieId,
+        String status,
+        Instant at
+) {
+}
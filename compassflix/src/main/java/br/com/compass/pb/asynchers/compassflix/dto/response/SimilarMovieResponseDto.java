@@ -0,0 +1,7 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+public record SimilarMovieResponseDto(
+        MovieResponseDto movie,
+        double score
+) {
+}
@@ -0,0 +1,8 @@
+package br.com.compass.pb.asynchers.compassflix.dto.response;
+
+// score is the decayed view count, views of one half-life ago count for half
+public record TrendingMovieResponseDto(
+        MovieResponseDto movie,
+        double score
+) {
+}
@@ -0,0 +1,35 @@
+package br.com.compass.pb.asynchers.compassflix.dto.validation;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import jakarta.validation.Constraint;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.RECORD_COMPONENT})
+@Retention(RetentionPolicy.RUNTIME)
+@Constraint(validatedBy = ValidGenre.Validator.class)
+public @interface ValidGenre {
+
+    String message() default "genre must be one of Action, Adventure, Animation, Comedy, Crime, Documentary, Drama, "
+            + "Family, Fantasy, Horror, Musical, Mystery, Romance, Science Fiction, Thriller, War, Western or Other";
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+    class Validator implements ConstraintValidator<ValidGenre, String> {
+
+        @Override
+        public boolean isValid(String value, ConstraintValidatorContext context) {
+            return value == null || Genre.isValid(value);
+        }
+
+    }
+
+}
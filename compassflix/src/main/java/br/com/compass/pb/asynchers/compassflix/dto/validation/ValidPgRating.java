@@ -0,0 +1,34 @@
+package br.com.compass.pb.asynchers.compassflix.dto.validation;
+
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import jakarta.validation.Constraint;
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+import jakarta.validation.Payload;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+@Target({ElementType.FIELD, ElementType.PARAMETER, ElementType.RECORD_COMPONENT})
+@Retention(RetentionPolicy.RUNTIME)
+@Constraint(validatedBy = ValidPgRating.Validator.class)
+public @interface ValidPgRating {
+
+    String message() default "pgRating must look like pg-<age>, with an age between 0 and " + PgRating.MAX_AGE;
+
+    Class<?>[] groups() default {};
+
+    Class<? extends Payload>[] payload() default {};
+
+    class Validator implements ConstraintValidator<ValidPgRating, String> {
+
+        @Override
+        public boolean isValid(String value, ConstraintValidatorContext context) {
+            return value == null || PgRating.isValid(value);
+        }
+
+    }
+
+}
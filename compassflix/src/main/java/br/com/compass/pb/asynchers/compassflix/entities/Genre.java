@@ -0,0 +1,107 @@
+package br.com.compass.pb.asynchers.compassflix.entities;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Closed genre vocabulary. Movies are stored in Mongo with the numeric {@link #code()}, the API keeps speaking
+ * the label. Codes are persisted, so never renumber or reuse one.
+ */
+public enum Genre {
+
+    OTHER(0, "Other"),
+    ACTION(1, "Action"),
+    ADVENTURE(2, "Adventure"),
+    ANIMATION(3, "Animation"),
+    COMEDY(4, "Comedy"),
+    CRIME(5, "Crime"),
+    DOCUMENTARY(6, "Documentary"),
+    DRAMA(7, "Drama"),
+    FAMILY(8, "Family"),
+    FANTASY(9, "Fantasy"),
+    HORROR(10, "Horror"),
+    MUSICAL(11, "Musical"),
+    MYSTERY(12, "Mystery"),
+    ROMANCE(13, "Romance"),
+    SCIENCE_FICTION(14, "Science Fiction", "sci-fi"),
+    THRILLER(15, "Thriller"),
+    WAR(16, "War"),
+    WESTERN(17, "Western");
+
+    private static final Genre[] BY_CODE = new Genre[values().length];
+
+    private static final Map<String, Genre> BY_KEY = new HashMap<>();
+
+    static {
+        for (Genre genre : values()) {
+            BY_CODE[genre.code] = genre;
+            BY_KEY.put(key(genre.label), genre);
+            BY_KEY.put(key(genre.name()), genre);
+            genre.aliases.forEach(alias -> BY_KEY.put(key(alias), genre));
+        }
+    }
+
+    private final int code;
+
+    private final String label;
+
+    private final List<String> aliases;
+
+    Genre(int code, String label, String... aliases) {
+        this.code = code;
+        this.label = label;
+        this.aliases = List.of(aliases);
+    }
+
+    public int code() {
+        return code;
+    }
+
+    @JsonValue
+    public String label() {
+        return label;
+    }
+
+    public static Genre fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown genre code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Case, spaces and punctuation are ignored, so "science fiction", "SCIENCE_FICTION" and "Sci-Fi" all match.
+     */
+    @JsonCreator
+    public static Genre fromLabel(String label) {
+        Genre genre = label == null ? null : BY_KEY.get(key(label));
+        if (genre == null) {
+            throw new IllegalArgumentException("Unknown genre '" + label + "', allowed values: " + labels());
+        }
+        return genre;
+    }
+
+    public static boolean isValid(String label) {
+        return label != null && BY_KEY.containsKey(key(label));
+    }
+
+    public static List<String> labels() {
+        return Arrays.stream(values()).map(Genre::label).toList();
+    }
+
+    private static String key(String value) {
+        return value.toLowerCase(Locale.ROOT).replaceAll("[^a-z]", "");
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+
+}
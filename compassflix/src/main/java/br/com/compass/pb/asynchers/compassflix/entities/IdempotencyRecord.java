@@ -0,0 +1,36 @@
+package br.com.compass.pb.asynchers.compassflix.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+    @Id
+    private String key;
+
+    private String fingerprint;
+
+    private int status;
+
+    private Map<String, List<String>> headers;
+
+    private String body;
+
+    // TTL index provisioned by IndexProvisioner from compassflix.idempotency.ttl
+    private Instant createdAt;
+
+}
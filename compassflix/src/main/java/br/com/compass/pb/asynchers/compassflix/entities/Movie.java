@@ -3,6 +3,9 @@ package br.com.compass.pb.asynchers.compassflix.entities;
 import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
 import lombok.*;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.IndexDirection;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Clock;
@@ -15,34 +18,46 @@ import java.time.LocalDate;
 @NoArgsConstructor
 @ToString
 
-@Document
+@Document(collection = "movies")
+@CompoundIndex(name = "genre_pgRating_releaseDate", def = "{'genre': 1, 'pgRating': 1, 'releaseDate': -1}")
+@CompoundIndex(name = "genre_duration", def = "{'genre': 1, 'duration': 1}")
+@CompoundIndex(name = "pgRating_releaseDate", def = "{'pgRating': 1, 'releaseDate': -1}")
+@CompoundIndex(name = "registrationDate_id", def = "{'registrationDate': 1, '_id': 1}")
 public class Movie {
 
     @Id
     private String id;
 
+    @Indexed
     private String name;
 
     private String description;
 
-    private String genre;
+    private Genre genre;
 
+    @Indexed
     private Long duration;
 
+    @Indexed(direction = IndexDirection.DESCENDING)
     private LocalDate releaseDate;
 
-    private String pgRating;
+    private PgRating pgRating;
 
     private Instant registrationDate;
 
     public Movie(MovieRequestDto movieRequestDto) {
         this.name = movieRequestDto.name().toLowerCase();
         this.description = movieRequestDto.description();
-        this.genre = movieRequestDto.genre();
+        this.genre = Genre.fromLabel(movieRequestDto.genre());
         this.duration = movieRequestDto.duration();
         this.releaseDate = movieRequestDto.releaseDate();
-        this.pgRating = movieRequestDto.pgRating();
+        this.pgRating = PgRating.parse(movieRequestDto.pgRating());
         this.registrationDate = Instant.now(Clock.systemDefaultZone());
     }
 
+    public Movie(Movie other) {
+        this(other.id, other.name, other.description, other.genre, other.duration, other.releaseDate,
+                other.pgRating, other.registrationDate);
+    }
+
 }
@@ -0,0 +1,26 @@
+package br.com.compass.pb.asynchers.compassflix.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// total copies = available + rented, both only move through conditional $inc so neither goes negative
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+
+@Document(collection = "movie_inventory")
+public class MovieInventory {
+
+    @Id
+    private String movieId;
+
+    private long availableCopies;
+
+    private long rentedCopies;
+
+}
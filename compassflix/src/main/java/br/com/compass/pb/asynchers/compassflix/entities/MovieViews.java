@@ -0,0 +1,24 @@
+package br.com.compass.pb.asynchers.compassflix.entities;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+// kept out of the movie document so saving a Movie never overwrites its count
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+
+@Document(collection = "movie_views")
+public class MovieViews {
+
+    @Id
+    private String movieId;
+
+    private long views;
+
+}
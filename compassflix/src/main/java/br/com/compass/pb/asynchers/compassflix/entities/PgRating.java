@@ -0,0 +1,72 @@
+package br.com.compass.pb.asynchers.compassflix.entities;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Minimum age rating, written as "pg-&lt;age&gt;". Instances are interned, one per age, and stored in Mongo as the
+ * age alone, so "PG-13", "pg13" and "pg-13" all end up as the same value.
+ */
+public final class PgRating implements Comparable<PgRating> {
+
+    public static final int MAX_AGE = 18;
+
+    private static final PgRating[] VALUES = new PgRating[MAX_AGE + 1];
+
+    private static final Pattern FORMAT = Pattern.compile("(?i)\\s*(?:pg)?\\s*-?\\s*(\\d{1,2})\\s*");
+
+    static {
+        for (int age = 0; age <= MAX_AGE; age++) {
+            VALUES[age] = new PgRating(age);
+        }
+    }
+
+    private final int age;
+
+    private PgRating(int age) {
+        this.age = age;
+    }
+
+    public static PgRating of(int age) {
+        if (age < 0 || age > MAX_AGE) {
+            throw new IllegalArgumentException("Rating age must be between 0 and " + MAX_AGE + ", got " + age);
+        }
+        return VALUES[age];
+    }
+
+    @JsonCreator
+    public static PgRating parse(String value) {
+        Matcher matcher = value == null ? null : FORMAT.matcher(value);
+        if (matcher == null || !matcher.matches()) {
+            throw new IllegalArgumentException("Invalid rating '" + value + "', expected pg-<age>");
+        }
+        return of(Integer.parseInt(matcher.group(1)));
+    }
+
+    public static boolean isValid(String value) {
+        if (value == null) {
+            return false;
+        }
+        Matcher matcher = FORMAT.matcher(value);
+        return matcher.matches() && Integer.parseInt(matcher.group(1)) <= MAX_AGE;
+    }
+
+    public int age() {
+        return age;
+    }
+
+    @Override
+    public int compareTo(PgRating other) {
+        return Integer.compare(age, other.age);
+    }
+
+    @JsonValue
+    @Override
+    public String toString() {
+        return "pg-" + age;
+    }
+
+}
@@ -0,0 +1,32 @@
+package br.com.compass.pb.asynchers.compassflix.events;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+
+// current is null for DELETED, previous is null for CREATED
+public record MovieChangedEvent(
+        ChangeType type,
+        Movie current,
+        Movie previous
+) {
+
+    public enum ChangeType {
+        CREATED, UPDATED, DELETED
+    }
+
+    public static MovieChangedEvent created(Movie movie) {
+        return new MovieChangedEvent(ChangeType.CREATED, movie, null);
+    }
+
+    public static MovieChangedEvent updated(Movie movie, Movie previous) {
+        return new MovieChangedEvent(ChangeType.UPDATED, movie, previous);
+    }
+
+    public static MovieChangedEvent deleted(Movie previous) {
+        return new MovieChangedEvent(ChangeType.DELETED, null, previous);
+    }
+
+    public String movieId() {
+        return current != null ? current.getId() : previous.getId();
+    }
+
+}
@@ -0,0 +1,9 @@
+package br.com.compass.pb.asynchers.compassflix.events;
+
+import java.util.List;
+
+// many changes published at once, so listeners that copy or rebuild state do it once instead of once per movie
+public record MoviesBulkChangedEvent(
+        List<MovieChangedEvent> changes
+) {
+}
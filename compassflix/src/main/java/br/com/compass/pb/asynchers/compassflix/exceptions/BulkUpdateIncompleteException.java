@@ -0,0 +1,27 @@
+package br.com.compass.pb.asynchers.compassflix.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE)
+public class BulkUpdateIncompleteException extends RuntimeException {
+
+    private final long matchedCount;
+
+    private final long modifiedCount;
+
+    public BulkUpdateIncompleteException(long matchedCount, long modifiedCount, Throwable cause) {
+        super("Bulk update stopped after " + matchedCount + " matched and " + modifiedCount + " modified movies, "
+                + "those keep their new values. Repeat the request to update the rest: " + cause.getMessage(), cause);
+        this.matchedCount = matchedCount;
+        this.modifiedCount = modifiedCount;
+    }
+
+    public long getMatchedCount() {
+        return matchedCount;
+    }
+
+    public long getModifiedCount() {
+        return modifiedCount;
+    }
+}
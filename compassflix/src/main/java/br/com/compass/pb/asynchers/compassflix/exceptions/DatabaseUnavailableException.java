@@ -0,0 +1,21 @@
+package br.com.compass.pb.asynchers.compassflix.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE)
+public class DatabaseUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public DatabaseUnavailableException(String message, Duration retryAfter, Throwable cause) {
+        super(message, cause);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
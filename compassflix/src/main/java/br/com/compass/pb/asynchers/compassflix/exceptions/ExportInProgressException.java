@@ -0,0 +1,11 @@
+package br.com.compass.pb.asynchers.compassflix.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.CONFLICT)
+public class ExportInProgressException extends RuntimeException {
+    public ExportInProgressException(String message) {
+        super(message);
+    }
+}
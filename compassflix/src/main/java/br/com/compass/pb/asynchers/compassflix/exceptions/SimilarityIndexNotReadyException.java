@@ -0,0 +1,11 @@
+package br.com.compass.pb.asynchers.compassflix.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(code = HttpStatus.SERVICE_UNAVAILABLE)
+public class SimilarityIndexNotReadyException extends RuntimeException {
+    public SimilarityIndexNotReadyException(String message) {
+        super(message);
+    }
+}
@@ -1,8 +1,18 @@
 package br.com.compass.pb.asynchers.compassflix.exceptions.handler;
+import br.com.compass.pb.asynchers.compassflix.exceptions.BulkUpdateIncompleteException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.DatabaseUnavailableException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.ExceptionResponse;
+import br.com.compass.pb.asynchers.compassflix.exceptions.ExportInProgressException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IdempotencyKeyInProgressException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IdempotencyKeyReuseException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IngestionQueueFullException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.ListIsEmptyException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.RentalConflictException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.SimilarityIndexNotReadyException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.StatisticsNotReadyException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.HttpStatusCode;
@@ -40,6 +50,28 @@ public class CustomizedResponseEntityExceptionHandler extends ResponseEntityExce
         return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler(RentalConflictException.class)
+    public final ResponseEntity<ExceptionResponse> handlerRentalConflictException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(ExportInProgressException.class)
+    public final ResponseEntity<ExceptionResponse> handlerExportInProgressException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.CONFLICT);
+    }
+
     @ExceptionHandler(MovieNotFoundException.class)
     public final ResponseEntity<ExceptionResponse> handlerMovieNotFoundException(Exception e, WebRequest request) {
         ExceptionResponse exceptionResponse = new ExceptionResponse(
@@ -59,6 +91,103 @@ public class CustomizedResponseEntityExceptionHandler extends ResponseEntityExce
 
     }
 
+    @ExceptionHandler(InvalidQueryException.class)
+    public final ResponseEntity<ExceptionResponse> handlerInvalidQueryException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler(IdempotencyKeyInProgressException.class)
+    public final ResponseEntity<ExceptionResponse> handlerIdempotencyKeyInProgressException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler(IdempotencyKeyReuseException.class)
+    public final ResponseEntity<ExceptionResponse> handlerIdempotencyKeyReuseException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.UNPROCESSABLE_ENTITY);
+    }
+
+    @ExceptionHandler(IngestionQueueFullException.class)
+    public final ResponseEntity<ExceptionResponse> handlerIngestionQueueFullException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(exceptionResponse);
+    }
+
+    @ExceptionHandler(SimilarityIndexNotReadyException.class)
+    public final ResponseEntity<ExceptionResponse> handlerSimilarityIndexNotReadyException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(exceptionResponse);
+    }
+
+    @ExceptionHandler(StatisticsNotReadyException.class)
+    public final ResponseEntity<ExceptionResponse> handlerStatisticsNotReadyException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .body(exceptionResponse);
+    }
+
+    @ExceptionHandler(BulkUpdateIncompleteException.class)
+    public final ResponseEntity<ExceptionResponse> handlerBulkUpdateIncompleteException(Exception e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        return new ResponseEntity<ExceptionResponse>(exceptionResponse, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler(DatabaseUnavailableException.class)
+    public final ResponseEntity<ExceptionResponse> handlerDatabaseUnavailableException(DatabaseUnavailableException e, WebRequest request) {
+        ExceptionResponse exceptionResponse = new ExceptionResponse(
+                LocalDateTime.now(),
+                e.getMessage(),
+                request.getDescription(false)
+        );
+
+        long retryAfter = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, Long.toString(retryAfter))
+                .body(exceptionResponse);
+    }
+
     @Override
     protected ResponseEntity<Object> handleMethodArgumentNotValid(
             MethodArgumentNotValidException e, HttpHeaders headers, HttpStatusCode status, WebRequest request) {
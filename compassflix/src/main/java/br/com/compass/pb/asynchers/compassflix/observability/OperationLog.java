@@ -0,0 +1,97 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.MovieOperationEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.spi.LoggingEventBuilder;
+
+import java.util.Collection;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * One structured event per movie operation: operation, movie id, duration and outcome as key/value pairs on the
+ * compassflix.operations logger. Nothing is formatted on the request thread, the pairs are rendered by the
+ * asynchronous appender configured in logback-spring.xml. Every write is logged, reads only at the sample rate;
+ * sampled events carry the rate so counts can be scaled back up. Every operation, sampled or not, is also a
+ * {@link MovieOperationEvent} for flight recordings that enable it.
+ */
+public class OperationLog {
+
+    public static final String LOGGER = "compassflix.operations";
+
+    private static final Logger log = LoggerFactory.getLogger(LOGGER);
+
+    private final double readSampleRate;
+
+    public OperationLog(double readSampleRate) {
+        this.readSampleRate = readSampleRate;
+    }
+
+    public static OperationLog everything() {
+        return new OperationLog(1);
+    }
+
+    public double readSampleRate() {
+        return readSampleRate;
+    }
+
+    public boolean sampleRead() {
+        return readSampleRate >= 1 || ThreadLocalRandom.current().nextDouble() < readSampleRate;
+    }
+
+    public <T> T read(String operation, String id, Supplier<T> action) {
+        return run(operation, id, sampleRead() ? readSampleRate : 0, action);
+    }
+
+    public <T> T write(String operation, String id, Supplier<T> action) {
+        return run(operation, id, 1, action);
+    }
+
+    public void write(String operation, String id, Runnable action) {
+        run(operation, id, 1, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    // a sample rate of 0 leaves the operation out of the log
+    private static <T> T run(String operation, String id, double sampleRate, Supplier<T> action) {
+        boolean logged = sampleRate > 0 && log.isInfoEnabled();
+        MovieOperationEvent recorded = new MovieOperationEvent();
+        recorded.begin();
+        long start = logged ? System.nanoTime() : 0;
+        long repositoryStart = recorded.isEnabled() ? RequestTimings.currentDbNanos() : 0;
+        String outcome = "ok";
+        T result = null;
+        try {
+            result = action.get();
+            return result;
+        } catch (RuntimeException e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            recorded.end();
+            if (recorded.shouldCommit()) {
+                recorded.operation = operation;
+                recorded.movieId = id;
+                recorded.outcome = outcome;
+                recorded.resultSize = result instanceof Collection<?> movies ? movies.size() : result == null ? 0 : 1;
+                recorded.repositoryTime = RequestTimings.currentDbNanos() - repositoryStart;
+                recorded.commit();
+            }
+            if (logged) {
+                LoggingEventBuilder event = log.atInfo()
+                        .addKeyValue("operation", operation)
+                        .addKeyValue("id", id)
+                        .addKeyValue("duration_us", (System.nanoTime() - start) / 1000)
+                        .addKeyValue("outcome", outcome);
+                if (sampleRate < 1) {
+                    event.addKeyValue("sample_rate", sampleRate);
+                }
+                event.log("movie operation");
+            }
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+/**
+ * Per request timing accumulator bound to the request thread. The synchronous Mongo driver invokes command
+ * listeners on the calling thread, so database time lands in the timings of the request that issued it.
+ */
+public final class RequestTimings {
+
+    private static final ThreadLocal<RequestTimings> CURRENT = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private long handlerStartNanos;
+    private long handlerEndNanos;
+    private long dbNanos;
+    private int dbCommands;
+
+    private RequestTimings() {
+    }
+
+    static RequestTimings start() {
+        RequestTimings timings = new RequestTimings();
+        CURRENT.set(timings);
+        return timings;
+    }
+
+    static void clear() {
+        CURRENT.remove();
+    }
+
+    public static RequestTimings current() {
+        return CURRENT.get();
+    }
+
+    // Mongo time of the current request so far, 0 outside of requests
+    static long currentDbNanos() {
+        RequestTimings timings = CURRENT.get();
+        return timings == null ? 0 : timings.dbNanos;
+    }
+
+    public static void recordDb(long nanos) {
+        RequestTimings timings = CURRENT.get();
+        if (timings != null) {
+            timings.dbNanos += nanos;
+            timings.dbCommands++;
+        }
+    }
+
+    void markHandlerStart() {
+        handlerStartNanos = System.nanoTime();
+    }
+
+    void markHandlerEnd() {
+        if (handlerEndNanos == 0) {
+            handlerEndNanos = System.nanoTime();
+        }
+    }
+
+    long totalNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    long dbNanos() {
+        return dbNanos;
+    }
+
+    int dbCommands() {
+        return dbCommands;
+    }
+
+    // controller plus service time, database time excluded
+    long appNanos() {
+        if (handlerStartNanos == 0 || handlerEndNanos == 0) {
+            return 0;
+        }
+        return Math.max(0, handlerEndNanos - handlerStartNanos - dbNanos);
+    }
+
+    // from the moment the body left the handler until the filter regained control
+    long serializationNanos() {
+        return handlerEndNanos == 0 ? 0 : System.nanoTime() - handlerEndNanos;
+    }
+
+    String serverTimingHeader() {
+        return "app;dur=" + millis(appNanos()) + ";desc=\"controller+service\", "
+                + "db;dur=" + millis(dbNanos) + ";desc=\"" + dbCommands + " mongo commands\", "
+                + "total;dur=" + millis(totalNanos());
+    }
+
+    static String millis(long nanos) {
+        return String.format(java.util.Locale.ROOT, "%.2f", nanos / 1_000_000.0);
+    }
+
+}
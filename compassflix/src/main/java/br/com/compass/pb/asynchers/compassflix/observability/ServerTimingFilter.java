@@ -0,0 +1,72 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.MovieRequestEvent;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@Slf4j
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    private final OperationLog operationLog;
+
+    public ServerTimingFilter(OperationLog operationLog) {
+        this.operationLog = operationLog;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        MovieRequestEvent recorded = new MovieRequestEvent();
+        recorded.begin();
+        RequestTimings timings = RequestTimings.start();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            timings.markHandlerEnd();
+            // bodies written through ServerTimingResponseBodyAdvice already carry the header
+            if (!response.isCommitted() && !response.containsHeader(SERVER_TIMING)) {
+                response.setHeader(SERVER_TIMING, timings.serverTimingHeader());
+            }
+            // reads at the operation log sample rate, like their movie operations
+            boolean read = HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod());
+            if (log.isInfoEnabled() && (!read || operationLog.sampleRead())) {
+                log.info("request method={} path={} status={} total_ms={} app_ms={} db_ms={} db_commands={} "
+                                + "serialization_ms={} sample_rate={}",
+                        request.getMethod(), request.getRequestURI(), response.getStatus(),
+                        RequestTimings.millis(timings.totalNanos()), RequestTimings.millis(timings.appNanos()),
+                        RequestTimings.millis(timings.dbNanos()), timings.dbCommands(),
+                        RequestTimings.millis(timings.serializationNanos()),
+                        read ? Math.min(operationLog.readSampleRate(), 1) : 1);
+            }
+            recorded.end();
+            if (recorded.shouldCommit()) {
+                Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                recorded.method = request.getMethod();
+                recorded.endpoint = pattern != null ? pattern.toString() : request.getRequestURI();
+                recorded.status = response.getStatus();
+                recorded.applicationTime = timings.appNanos();
+                recorded.repositoryTime = timings.dbNanos();
+                recorded.repositoryCommands = timings.dbCommands();
+                recorded.serializationTime = timings.serializationNanos();
+                recorded.commit();
+            }
+            RequestTimings.clear();
+        }
+    }
+
+}
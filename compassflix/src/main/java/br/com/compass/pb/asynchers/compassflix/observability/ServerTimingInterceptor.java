@@ -0,0 +1,18 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+public class ServerTimingInterceptor implements HandlerInterceptor {
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        RequestTimings timings = RequestTimings.current();
+        if (timings != null) {
+            timings.markHandlerStart();
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,149 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds Mongo command durations into {@link RequestTimings} and logs every command slower than the threshold
+ * with its shape: field names and operators are kept, values are replaced by "?". The shape is only built for
+ * commands over the threshold.
+ */
+@Slf4j
+public class SlowCommandListener implements CommandListener {
+
+    private static final List<String> SHAPED_FIELDS = List.of("filter", "sort", "projection", "query", "q", "u",
+            "update", "pipeline", "updates", "deletes", "hint", "limit", "skip", "batchSize");
+
+    private record StartedCommand(String commandName, BsonDocument fields) {
+    }
+
+    private final long thresholdNanos;
+
+    // the command document is only valid inside the callback, so the fields of the shape are copied up front
+    private final Map<Integer, StartedCommand> started = new ConcurrentHashMap<>();
+
+    public SlowCommandListener(Duration threshold) {
+        this.thresholdNanos = threshold.toNanos();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        started.put(event.getRequestId(),
+                new StartedCommand(event.getCommandName(), shapedFields(event.getCommandName(), event.getCommand())));
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        long elapsed = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        StartedCommand command = started.remove(event.getRequestId());
+        RequestTimings.recordDb(elapsed);
+        if (elapsed >= thresholdNanos) {
+            log.warn("slow_mongo_command duration_ms={} documents={} shape={}",
+                    RequestTimings.millis(elapsed), documentsReturned(event.getResponse()), shape(command));
+        }
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        long elapsed = event.getElapsedTime(TimeUnit.NANOSECONDS);
+        StartedCommand command = started.remove(event.getRequestId());
+        RequestTimings.recordDb(elapsed);
+        if (elapsed >= thresholdNanos) {
+            log.warn("slow_mongo_command duration_ms={} failed={} shape={}",
+                    RequestTimings.millis(elapsed), event.getThrowable().getClass().getSimpleName(), shape(command));
+        }
+    }
+
+    // only the fields the shape reads, most commands are fast and never need their shape built
+    static BsonDocument shapedFields(String commandName, BsonDocument command) {
+        BsonDocument fields = new BsonDocument();
+        BsonValue collection = command.get(commandName);
+        if (collection != null && collection.isString()) {
+            fields.put(commandName, collection);
+        }
+        for (String field : SHAPED_FIELDS) {
+            BsonValue value = command.get(field);
+            if (value != null) {
+                fields.put(field, value);
+            }
+        }
+        return fields;
+    }
+
+    private static String shape(StartedCommand command) {
+        return command == null ? "?" : shape(command.commandName(), command.fields());
+    }
+
+    static String shape(String commandName, BsonDocument command) {
+        StringBuilder shape = new StringBuilder(commandName);
+        BsonValue collection = command.get(commandName);
+        if (collection != null && collection.isString()) {
+            shape.append(' ').append(collection.asString().getValue());
+        }
+        for (String field : SHAPED_FIELDS) {
+            BsonValue value = command.get(field);
+            if (value != null) {
+                shape.append(' ').append(field).append('=');
+                // sort directions and projection flags describe the shape, they are not values
+                boolean keepNumbers = "sort".equals(field) || "projection".equals(field);
+                appendShape(shape, value, keepNumbers);
+            }
+        }
+        return shape.toString();
+    }
+
+    private static void appendShape(StringBuilder shape, BsonValue value, boolean keepNumbers) {
+        if (value.isDocument()) {
+            shape.append('{');
+            boolean first = true;
+            for (Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+                if (!first) {
+                    shape.append(", ");
+                }
+                first = false;
+                shape.append(entry.getKey()).append(": ");
+                appendShape(shape, entry.getValue(), keepNumbers || "$sort".equals(entry.getKey()));
+            }
+            shape.append('}');
+        } else if (value.isArray()) {
+            BsonArray array = value.asArray();
+            shape.append('[');
+            if (!array.isEmpty() && (array.get(0).isDocument() || array.get(0).isArray())) {
+                appendShape(shape, array.get(0), keepNumbers);
+                if (array.size() > 1) {
+                    shape.append(", ...");
+                }
+            } else if (!array.isEmpty()) {
+                shape.append('?');
+            }
+            shape.append(']');
+        } else if (keepNumbers && value.isNumber()) {
+            shape.append(value.asNumber().intValue());
+        } else {
+            shape.append('?');
+        }
+    }
+
+    private static int documentsReturned(BsonDocument response) {
+        BsonDocument cursor = response.getDocument("cursor", null);
+        if (cursor != null) {
+            BsonArray batch = cursor.getArray("firstBatch", cursor.getArray("nextBatch", new BsonArray()));
+            return batch.size();
+        }
+        BsonValue n = response.get("n");
+        return n != null && n.isNumber() ? n.asNumber().intValue() : 0;
+    }
+
+}
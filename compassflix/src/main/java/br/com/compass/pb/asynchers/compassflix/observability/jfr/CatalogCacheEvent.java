@@ -0,0 +1,42 @@
+package br.com.compass.pb.asynchers.compassflix.observability.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("compassflix.CatalogCache")
+@Label("Catalog Cache")
+@Description("A reload of, a change applied to, or a stale answer from one of the in-memory catalogs")
+@Category({"CompassFlix", "Cache"})
+@Enabled(false)
+@StackTrace(false)
+public class CatalogCacheEvent extends jdk.jfr.Event {
+
+    public static final String RELOAD = "reload";
+    public static final String APPLY = "apply";
+    public static final String STALE = "stale";
+
+    @Label("Cache")
+    public String cache;
+
+    @Label("Action")
+    public String action;
+
+    @Label("Entries")
+    @Description("Movies loaded, changes applied, or the size of the catalog a stale answer came from")
+    public long entries;
+
+    public static void record(String cache, String action, long entries) {
+        CatalogCacheEvent event = new CatalogCacheEvent();
+        if (event.shouldCommit()) {
+            event.cache = cache;
+            event.action = action;
+            event.entries = entries;
+            event.commit();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package br.com.compass.pb.asynchers.compassflix.observability.jfr;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Continuous flight recording with the JDK default settings plus the CompassFlix events, turned on by
+ * compassflix.jfr.enabled. The events are disabled unless a recording enables them, so they cost next to nothing
+ * otherwise. The same settings can be used from outside the application:
+ * jcmd &lt;pid&gt; JFR.start settings=default settings=compassflix.jfc
+ */
+@Component
+@Slf4j
+public class FlightRecording {
+
+    public static final String SETTINGS = "jfr/compassflix.jfc";
+
+    private final boolean enabled;
+
+    private final Path destination;
+
+    private final Duration maxAge;
+
+    private final DataSize maxSize;
+
+    private Recording recording;
+
+    public FlightRecording(@Value("${compassflix.jfr.enabled:false}") boolean enabled,
+                           @Value("${compassflix.jfr.file:data/compassflix.jfr}") Path destination,
+                           @Value("${compassflix.jfr.max-age:PT6H}") Duration maxAge,
+                           @Value("${compassflix.jfr.max-size:250MB}") DataSize maxSize) {
+        this.enabled = enabled;
+        this.destination = destination;
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+    }
+
+    public static Map<String, String> settings() throws IOException, ParseException {
+        Map<String, String> settings = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+        try (Reader reader = new InputStreamReader(new ClassPathResource(SETTINGS).getInputStream(),
+                StandardCharsets.UTF_8)) {
+            settings.putAll(Configuration.create(reader).getSettings());
+        }
+        return settings;
+    }
+
+    @PostConstruct
+    public void start() throws IOException, ParseException {
+        if (!enabled) {
+            return;
+        }
+        if (destination.getParent() != null) {
+            Files.createDirectories(destination.getParent());
+        }
+        recording = new Recording(settings());
+        recording.setName("compassflix");
+        recording.setToDisk(true);
+        recording.setMaxAge(maxAge);
+        recording.setMaxSize(maxSize.toBytes());
+        recording.setDumpOnExit(true);
+        recording.setDestination(destination);
+        recording.start();
+        log.info("### Flight recording started, dumped to {} on exit ###", destination.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (recording != null) {
+            recording.stop();
+            recording.close();
+        }
+    }
+
+}
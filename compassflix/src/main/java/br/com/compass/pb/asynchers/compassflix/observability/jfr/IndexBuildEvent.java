@@ -0,0 +1,22 @@
+package br.com.compass.pb.asynchers.compassflix.observability.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("compassflix.IndexBuild")
+@Label("Index Build")
+@Category({"CompassFlix", "Index"})
+@Enabled(false)
+@StackTrace(false)
+public class IndexBuildEvent extends jdk.jfr.Event {
+
+    @Label("Index")
+    public String index;
+
+    @Label("Movies")
+    public long movies;
+
+}
@@ -0,0 +1,38 @@
+package br.com.compass.pb.asynchers.compassflix.observability.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("compassflix.MovieOperation")
+@Label("Movie Operation")
+@Description("One MovieService operation, with the time it spent in Mongo")
+@Category({"CompassFlix", "Movies"})
+@Enabled(false)
+@StackTrace(false)
+public class MovieOperationEvent extends jdk.jfr.Event {
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Movie Id")
+    @Description("Movie id or name the operation was about, if any")
+    public String movieId;
+
+    @Label("Outcome")
+    @Description("ok, or the simple name of the exception it ended with")
+    public String outcome;
+
+    @Label("Result Size")
+    @Description("Movies returned, 1 for a single movie or response")
+    public int resultSize;
+
+    @Label("Repository Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long repositoryTime;
+
+}
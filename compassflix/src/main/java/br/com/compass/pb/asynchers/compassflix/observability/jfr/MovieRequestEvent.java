@@ -0,0 +1,45 @@
+package br.com.compass.pb.asynchers.compassflix.observability.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("compassflix.MovieRequest")
+@Label("Movie Request")
+@Description("One HTTP request, split like the Server-Timing header")
+@Category({"CompassFlix", "HTTP"})
+@Enabled(false)
+@StackTrace(false)
+public class MovieRequestEvent extends jdk.jfr.Event {
+
+    @Label("Method")
+    public String method;
+
+    @Label("Endpoint")
+    @Description("Matched path pattern, like /compassflix/movies/{id}, or the raw path when nothing matched")
+    public String endpoint;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Application Time")
+    @Description("Controller and service time, repository time excluded")
+    @Timespan(Timespan.NANOSECONDS)
+    public long applicationTime;
+
+    @Label("Repository Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long repositoryTime;
+
+    @Label("Repository Commands")
+    public int repositoryCommands;
+
+    @Label("Serialization Time")
+    @Timespan(Timespan.NANOSECONDS)
+    public long serializationTime;
+
+}
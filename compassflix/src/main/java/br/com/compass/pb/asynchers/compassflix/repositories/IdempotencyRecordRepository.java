@@ -0,0 +1,9 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.entities.IdempotencyRecord;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IdempotencyRecordRepository extends MongoRepository<IdempotencyRecord, String> {
+}
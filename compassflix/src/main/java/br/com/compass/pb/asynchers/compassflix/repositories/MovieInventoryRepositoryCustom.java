@@ -0,0 +1,14 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+public interface MovieInventoryRepositoryCustom {
+
+    // moves copies from available to rented only if that many are available, false otherwise
+    boolean reserve(String movieId, long copies);
+
+    // moves copies from rented back to available only if that many are rented, false otherwise
+    boolean release(String movieId, long copies);
+
+    // upserts the inventory with more available copies
+    void addCopies(String movieId, long copies);
+
+}
@@ -0,0 +1,38 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.entities.MovieInventory;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+@RequiredArgsConstructor
+public class MovieInventoryRepositoryCustomImpl implements MovieInventoryRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public boolean reserve(String movieId, long copies) {
+        return move(movieId, "availableCopies", "rentedCopies", copies);
+    }
+
+    @Override
+    public boolean release(String movieId, long copies) {
+        return move(movieId, "rentedCopies", "availableCopies", copies);
+    }
+
+    @Override
+    public void addCopies(String movieId, long copies) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(movieId)),
+                new Update().inc("availableCopies", copies).setOnInsert("rentedCopies", 0L), MovieInventory.class);
+    }
+
+    // the filter and the $inc are one atomic document update, two racing updates can not both pass the check
+    private boolean move(String movieId, String from, String to, long copies) {
+        Query query = new Query(Criteria.where("_id").is(movieId).and(from).gte(copies));
+        Update update = new Update().inc(from, -copies).inc(to, copies);
+        return mongoTemplate.updateFirst(query, update, MovieInventory.class).getModifiedCount() == 1;
+    }
+
+}
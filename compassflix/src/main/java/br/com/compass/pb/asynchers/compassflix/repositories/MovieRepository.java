@@ -1,13 +1,20 @@
 package br.com.compass.pb.asynchers.compassflix.repositories;
 
 import br.com.compass.pb.asynchers.compassflix.entities.Movie;
-import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.repository.ListCrudRepository;
+import org.springframework.data.repository.ListPagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
 
+// MongoRepository without query by example, which the partitioned repository could not answer across partitions
 @Repository
-public interface MovieRepository extends MongoRepository<Movie, String> {
+public interface MovieRepository extends ListCrudRepository<Movie, String>, ListPagingAndSortingRepository<Movie, String>,
+        MovieRepositoryCustom {
+
+    <S extends Movie> S insert(S entity);
+
+    <S extends Movie> List<S> insert(Iterable<S> entities);
 
     List<Movie> findByNameIgnoreCaseContaining(String name);
 
@@ -0,0 +1,39 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+public interface MovieRepositoryCustom {
+
+    List<Movie> findByFilter(MovieFilterDto filter, Sort sort, int limit);
+
+    // movies whose name equals one of the names ignoring case, read from the name index instead of the whole catalog
+    List<Movie> findByNamesIgnoreCase(Collection<String> names);
+
+    long countByFilter(MovieFilterDto filter);
+
+    // keyset page over the id: movies matching the filter with an id above afterId, or from the start when null
+    List<Movie> findByFilterAfter(MovieFilterDto filter, String afterId, int limit);
+
+    // a single updateMany setting the non null fields on the given movies that still match the filter, returns how
+    // many changed
+    long updateByFilter(MovieFilterDto filter, Collection<String> ids, Genre genre, PgRating pgRating);
+
+    // keyset page over (registrationDate, id): movies registered after the given cursor, oldest first
+    List<Movie> findRecent(Instant since, String afterId, int limit);
+
+    // every movie through a cursor, batchSize documents per round trip; the stream has to be closed
+    Stream<Movie> streamAll(int batchSize);
+
+    // inserts, replacements by id and deletes by id of distinct movies as a single unordered bulk write
+    void writeAll(List<Movie> inserted, List<Movie> replaced, List<String> deletedIds);
+
+}
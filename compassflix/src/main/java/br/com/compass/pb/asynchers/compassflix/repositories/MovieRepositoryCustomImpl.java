@@ -0,0 +1,154 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+@RequiredArgsConstructor
+public class MovieRepositoryCustomImpl implements MovieRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public List<Movie> findByFilter(MovieFilterDto filter, Sort sort, int limit) {
+        return mongoTemplate.find(toQuery(filter, sort, limit), Movie.class);
+    }
+
+    @Override
+    public List<Movie> findByNamesIgnoreCase(Collection<String> names) {
+        if (names.isEmpty()) {
+            return List.of();
+        }
+        return mongoTemplate.find(toNamesQuery(names), Movie.class);
+    }
+
+    @Override
+    public long countByFilter(MovieFilterDto filter) {
+        return mongoTemplate.count(toQuery(filter, Sort.unsorted(), 0), Movie.class);
+    }
+
+    @Override
+    public List<Movie> findByFilterAfter(MovieFilterDto filter, String afterId, int limit) {
+        return mongoTemplate.find(toAfterQuery(filter, afterId, limit), Movie.class);
+    }
+
+    @Override
+    public long updateByFilter(MovieFilterDto filter, Collection<String> ids, Genre genre, PgRating pgRating) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Update update = new Update();
+        if (genre != null) {
+            update.set("genre", genre);
+        }
+        if (pgRating != null) {
+            update.set("pgRating", pgRating);
+        }
+        return mongoTemplate.updateMulti(toUpdateQuery(filter, ids), update, Movie.class).getModifiedCount();
+    }
+
+    @Override
+    public List<Movie> findRecent(Instant since, String afterId, int limit) {
+        return mongoTemplate.find(toRecentQuery(since, afterId, limit), Movie.class);
+    }
+
+    @Override
+    public Stream<Movie> streamAll(int batchSize) {
+        return mongoTemplate.stream(new Query().cursorBatchSize(batchSize), Movie.class);
+    }
+
+    @Override
+    public void writeAll(List<Movie> inserted, List<Movie> replaced, List<String> deletedIds) {
+        if (inserted.isEmpty() && replaced.isEmpty() && deletedIds.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Movie.class);
+        if (!inserted.isEmpty()) {
+            bulk.insert(inserted);
+        }
+        replaced.forEach(movie -> bulk.replaceOne(new Query(Criteria.where("_id").is(movie.getId())), movie));
+        if (!deletedIds.isEmpty()) {
+            bulk.remove(new Query(Criteria.where("_id").in(deletedIds)));
+        }
+        bulk.execute();
+    }
+
+    public static Query toRecentQuery(Instant since, String afterId, int limit) {
+        Criteria criteria = afterId == null
+                ? Criteria.where("registrationDate").gt(since)
+                : new Criteria().orOperator(
+                        Criteria.where("registrationDate").gt(since),
+                        Criteria.where("registrationDate").is(since).and("_id").gt(new ObjectId(afterId)));
+        return new Query(criteria)
+                .with(Sort.by("registrationDate", "_id"))
+                .limit(limit);
+    }
+
+    // a case insensitive regex has no index bounds, but it is matched on the keys of the name index and only the
+    // matches are fetched
+    public static Query toNamesQuery(Collection<String> names) {
+        List<Pattern> patterns = names.stream()
+                .map(name -> Pattern.compile("^" + Pattern.quote(name) + "$", Pattern.CASE_INSENSITIVE))
+                .toList();
+        return new Query(Criteria.where("name").in(patterns));
+    }
+
+    // the pages of a bulk update, walking the matching movies in _id order
+    public static Query toAfterQuery(MovieFilterDto filter, String afterId, int limit) {
+        Query query = toQuery(filter, Sort.by("id"), limit);
+        if (afterId != null) {
+            query.addCriteria(Criteria.where("_id").gt(new ObjectId(afterId)));
+        }
+        return query;
+    }
+
+    public static Query toUpdateQuery(MovieFilterDto filter, Collection<String> ids) {
+        return toQuery(filter, Sort.unsorted(), 0).addCriteria(Criteria.where("_id").in(ids));
+    }
+
+    // equality fields first, then the range fields, so the query lines up with the compound indexes on Movie
+    public static Query toQuery(MovieFilterDto filter, Sort sort, int limit) {
+        Criteria criteria = new Criteria();
+        if (filter.genre() != null) {
+            criteria.and("genre").is(filter.genreValue());
+        }
+        if (filter.pgRating() != null) {
+            criteria.and("pgRating").is(filter.pgRatingValue());
+        }
+        if (filter.releasedFrom() != null || filter.releasedTo() != null) {
+            Criteria releaseDate = criteria.and("releaseDate");
+            if (filter.releasedFrom() != null) {
+                releaseDate.gte(filter.releasedFrom());
+            }
+            if (filter.releasedTo() != null) {
+                releaseDate.lte(filter.releasedTo());
+            }
+        }
+        if (filter.minDuration() != null || filter.maxDuration() != null) {
+            Criteria duration = criteria.and("duration");
+            if (filter.minDuration() != null) {
+                duration.gte(filter.minDuration());
+            }
+            if (filter.maxDuration() != null) {
+                duration.lte(filter.maxDuration());
+            }
+        }
+        return new Query(criteria).with(sort).limit(limit);
+    }
+
+}
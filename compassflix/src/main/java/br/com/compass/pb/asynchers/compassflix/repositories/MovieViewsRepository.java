@@ -0,0 +1,9 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.entities.MovieViews;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface MovieViewsRepository extends MongoRepository<MovieViews, String>, MovieViewsRepositoryCustom {
+}
@@ -0,0 +1,10 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import java.util.Map;
+
+public interface MovieViewsRepositoryCustom {
+
+    // one unordered bulk write of upserting $inc, one per movie
+    void incrementViews(Map<String, Long> viewsByMovieId);
+
+}
@@ -0,0 +1,29 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.entities.MovieViews;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Map;
+
+@RequiredArgsConstructor
+public class MovieViewsRepositoryCustomImpl implements MovieViewsRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void incrementViews(Map<String, Long> viewsByMovieId) {
+        if (viewsByMovieId.isEmpty()) {
+            return;
+        }
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, MovieViews.class);
+        viewsByMovieId.forEach((movieId, views) ->
+                bulk.upsert(new Query(Criteria.where("_id").is(movieId)), new Update().inc("views", views)));
+        bulk.execute();
+    }
+
+}
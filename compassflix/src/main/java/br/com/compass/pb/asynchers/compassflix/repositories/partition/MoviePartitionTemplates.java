@@ -0,0 +1,14 @@
+package br.com.compass.pb.asynchers.compassflix.repositories.partition;
+
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+
+// The template of every partition, in partition order, for the work that runs per database like index provisioning
+public record MoviePartitionTemplates(List<MongoTemplate> templates) {
+
+    public MoviePartitionTemplates {
+        templates = List.copyOf(templates);
+    }
+
+}
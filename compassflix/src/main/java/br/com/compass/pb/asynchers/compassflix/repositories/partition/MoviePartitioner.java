@@ -0,0 +1,86 @@
+package br.com.compass.pb.asynchers.compassflix.repositories.partition;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+
+import java.util.Locale;
+import java.util.OptionalInt;
+import java.util.stream.IntStream;
+
+/**
+ * Decides which partition a movie lives in. Hashing the id spreads movies evenly and lets single movie reads
+ * go to one partition. Keying by genre keeps a genre together, so genre filters read one partition, but
+ * partitions are as uneven as the genres and a read by id has to ask all of them.
+ */
+public interface MoviePartitioner {
+
+    int partitions();
+
+    int partitionOf(Movie movie);
+
+    // empty when the id alone does not tell where the movie is
+    OptionalInt partitionOfId(String id);
+
+    int[] partitionsFor(MovieFilterDto filter);
+
+    static MoviePartitioner of(String key, int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("At least one partition is needed");
+        }
+        return switch (key.toLowerCase(Locale.ROOT)) {
+            case "id" -> new ByIdHash(partitions);
+            case "genre" -> new ByGenre(partitions);
+            default -> throw new IllegalArgumentException("Unknown partition key " + key + ", use id or genre");
+        };
+    }
+
+    record ByIdHash(int partitions) implements MoviePartitioner {
+
+        @Override
+        public int partitionOf(Movie movie) {
+            return partitionOfId(movie.getId()).getAsInt();
+        }
+
+        @Override
+        public OptionalInt partitionOfId(String id) {
+            // ObjectIds share their timestamp prefix, mix the bits so consecutive ids spread out
+            int hash = id.hashCode();
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            return OptionalInt.of(Math.floorMod(hash, partitions));
+        }
+
+        @Override
+        public int[] partitionsFor(MovieFilterDto filter) {
+            return IntStream.range(0, partitions).toArray();
+        }
+
+    }
+
+    record ByGenre(int partitions) implements MoviePartitioner {
+
+        @Override
+        public int partitionOf(Movie movie) {
+            return of(movie.getGenre());
+        }
+
+        @Override
+        public OptionalInt partitionOfId(String id) {
+            return OptionalInt.empty();
+        }
+
+        @Override
+        public int[] partitionsFor(MovieFilterDto filter) {
+            Genre genre = filter.genreValue();
+            return genre == null ? IntStream.range(0, partitions).toArray() : new int[]{of(genre)};
+        }
+
+        private int of(Genre genre) {
+            return (genre == null ? Genre.OTHER : genre).code() % partitions;
+        }
+
+    }
+
+}
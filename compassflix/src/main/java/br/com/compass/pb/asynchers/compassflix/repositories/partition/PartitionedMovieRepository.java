@@ -0,0 +1,463 @@
+package br.com.compass.pb.asynchers.compassflix.repositories.partition;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * {@link MovieRepository} spread over several partitions, each one a plain repository on its own database or
+ * instance. Writes and reads by id go to the partition the {@link MoviePartitioner} picks. Everything else is
+ * scattered to the partitions in parallel and gathered as the partitions answer: unordered results are appended
+ * in completion order, sorted results are merged from the per partition sorted lists, taking only up to the limit.
+ * Ids are assigned before routing, so a new movie knows its partition before it is stored.
+ */
+public class PartitionedMovieRepository implements MovieRepository {
+
+    private static final Map<String, Function<Movie, Comparable>> PROPERTIES = Map.of(
+            "id", Movie::getId,
+            "name", Movie::getName,
+            "genre", Movie::getGenre,
+            "duration", Movie::getDuration,
+            "releaseDate", Movie::getReleaseDate,
+            "pgRating", Movie::getPgRating,
+            "registrationDate", Movie::getRegistrationDate);
+
+    private static final Sort RECENT_ORDER = Sort.by("registrationDate", "id");
+
+    private final List<MovieRepository> partitions;
+
+    private final MoviePartitioner partitioner;
+
+    private final ExecutorService executor;
+
+    public PartitionedMovieRepository(List<MovieRepository> partitions, MoviePartitioner partitioner, int threads) {
+        if (partitions.size() != partitioner.partitions()) {
+            throw new IllegalArgumentException("Partitioner expects " + partitioner.partitions() + " partitions, got "
+                    + partitions.size());
+        }
+        this.partitions = List.copyOf(partitions);
+        this.partitioner = partitioner;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "movie-partition-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int partitionCount() {
+        return partitions.size();
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public List<Movie> findByNameIgnoreCaseContaining(String name) {
+        return gather(all(), partition -> partition.findByNameIgnoreCaseContaining(name));
+    }
+
+    @Override
+    public List<Movie> findByNamesIgnoreCase(Collection<String> names) {
+        return gather(all(), partition -> partition.findByNamesIgnoreCase(names));
+    }
+
+    @Override
+    public List<Movie> findByFilter(MovieFilterDto filter, Sort sort, int limit) {
+        return merge(partitioner.partitionsFor(filter), partition -> partition.findByFilter(filter, sort, limit),
+                comparator(sort), limit);
+    }
+
+    @Override
+    public long countByFilter(MovieFilterDto filter) {
+        return gather(partitioner.partitionsFor(filter), (partition, index) -> List.of(partition.countByFilter(filter)))
+                .stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public List<Movie> findByFilterAfter(MovieFilterDto filter, String afterId, int limit) {
+        return merge(partitioner.partitionsFor(filter), partition -> partition.findByFilterAfter(filter, afterId, limit),
+                comparator(Sort.by("id")), limit);
+    }
+
+    @Override
+    public long updateByFilter(MovieFilterDto filter, Collection<String> ids, Genre genre, PgRating pgRating) {
+        if (genre != null && partitioner instanceof MoviePartitioner.ByGenre) {
+            // the new genre moves the movies to another partition, which an update in place can not do
+            List<Movie> changed = findAllById(ids).stream()
+                    .filter(movie -> movie.getGenre() != genre || (pgRating != null && movie.getPgRating() != pgRating))
+                    .toList();
+            changed.forEach(movie -> {
+                movie.setGenre(genre);
+                if (pgRating != null) {
+                    movie.setPgRating(pgRating);
+                }
+            });
+            saveAll(changed);
+            return changed.size();
+        }
+        List<List<String>> groups = groupIds(ids);
+        return gather(nonEmpty(groups),
+                (partition, index) -> List.of(partition.updateByFilter(filter, groups.get(index), genre, pgRating)))
+                .stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public List<Movie> findRecent(Instant since, String afterId, int limit) {
+        return merge(all(), partition -> partition.findRecent(since, afterId, limit), comparator(RECENT_ORDER), limit);
+    }
+
+    // one partition after the other, each through its own cursor
+    @Override
+    public Stream<Movie> streamAll(int batchSize) {
+        return partitions.stream().flatMap(partition -> partition.streamAll(batchSize));
+    }
+
+    @Override
+    public void writeAll(List<Movie> inserted, List<Movie> replaced, List<String> deletedIds) {
+        if (replaced.stream().anyMatch(movie -> partitioner.partitionOfId(movie.getId()).isEmpty())) {
+            // a replacement may move its movie to another partition, saveAll takes it out of the old one
+            insert(inserted);
+            saveAll(replaced);
+            deleteAllById(deletedIds);
+            return;
+        }
+        List<List<Movie>> inserts = group(inserted);
+        List<List<Movie>> replacements = group(replaced);
+        List<List<String>> deletes = groupIds(deletedIds);
+        scatter(all(), (partition, index) -> {
+            partition.writeAll(inserts.get(index), replacements.get(index), deletes.get(index));
+            return null;
+        });
+    }
+
+    @Override
+    public <S extends Movie> S insert(S entity) {
+        assignId(entity);
+        return partitions.get(partitioner.partitionOf(entity)).insert(entity);
+    }
+
+    @Override
+    public <S extends Movie> List<S> insert(Iterable<S> entities) {
+        List<List<S>> groups = group(entities);
+        scatter(nonEmpty(groups), (partition, index) -> partition.insert(groups.get(index)));
+        return flatten(entities);
+    }
+
+    @Override
+    public <S extends Movie> S save(S entity) {
+        assignId(entity);
+        int target = partitioner.partitionOf(entity);
+        S saved = partitions.get(target).save(entity);
+        if (partitioner.partitionOfId(entity.getId()).isEmpty()) {
+            // the key may have changed, the previous version can sit in any other partition
+            scatter(others(target), (partition, index) -> {
+                partition.deleteById(entity.getId());
+                return null;
+            });
+        }
+        return saved;
+    }
+
+    @Override
+    public <S extends Movie> List<S> saveAll(Iterable<S> entities) {
+        List<List<S>> groups = group(entities);
+        scatter(nonEmpty(groups), (partition, index) -> partition.saveAll(groups.get(index)));
+        if (groups.stream().flatMap(List::stream).anyMatch(movie -> partitioner.partitionOfId(movie.getId()).isEmpty())) {
+            scatter(all(), (partition, index) -> {
+                List<String> moved = new ArrayList<>();
+                for (int other = 0; other < groups.size(); other++) {
+                    if (other != index) {
+                        groups.get(other).forEach(movie -> moved.add(movie.getId()));
+                    }
+                }
+                partition.deleteAllById(moved);
+                return null;
+            });
+        }
+        return flatten(entities);
+    }
+
+    @Override
+    public Optional<Movie> findById(String id) {
+        var partition = partitioner.partitionOfId(id);
+        if (partition.isPresent()) {
+            return partitions.get(partition.getAsInt()).findById(id);
+        }
+        return gather(all(), repository -> repository.findById(id).stream().toList()).stream().findFirst();
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return findById(id).isPresent();
+    }
+
+    @Override
+    public List<Movie> findAll() {
+        return gather(all(), partition -> partition.findAll());
+    }
+
+    @Override
+    public List<Movie> findAllById(Iterable<String> ids) {
+        List<List<String>> groups = groupIds(ids);
+        return gather(nonEmpty(groups), (partition, index) -> partition.findAllById(groups.get(index)));
+    }
+
+    @Override
+    public List<Movie> findAll(Sort sort) {
+        return merge(all(), partition -> partition.findAll(sort), comparator(sort), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public Page<Movie> findAll(Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            List<Movie> movies = findAll(pageable.getSort());
+            return new PageImpl<>(movies, pageable, movies.size());
+        }
+        // every partition has to return enough rows to fill the page on its own
+        int rows = Math.toIntExact(pageable.getOffset() + pageable.getPageSize());
+        Pageable head = PageRequest.of(0, rows, pageable.getSort());
+        List<Movie> merged = merge(all(), partition -> partition.findAll(head).getContent(),
+                comparator(pageable.getSort()), rows);
+        List<Movie> page = merged.subList((int) Math.min(pageable.getOffset(), merged.size()), merged.size());
+        return new PageImpl<>(new ArrayList<>(page), pageable, count());
+    }
+
+    @Override
+    public long count() {
+        return gather(all(), (partition, index) -> List.of(partition.count())).stream().mapToLong(Long::longValue).sum();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        var partition = partitioner.partitionOfId(id);
+        scatter(partition.isPresent() ? new int[]{partition.getAsInt()} : all(), (repository, index) -> {
+            repository.deleteById(id);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(Movie entity) {
+        deleteById(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        List<List<String>> groups = groupIds(ids);
+        scatter(nonEmpty(groups), (partition, index) -> {
+            partition.deleteAllById(groups.get(index));
+            return null;
+        });
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Movie> entities) {
+        List<String> ids = new ArrayList<>();
+        entities.forEach(movie -> ids.add(movie.getId()));
+        deleteAllById(ids);
+    }
+
+    @Override
+    public void deleteAll() {
+        scatter(all(), (partition, index) -> {
+            partition.deleteAll();
+            return null;
+        });
+    }
+
+    private interface PartitionCall<T> {
+        T call(MovieRepository partition, int index);
+    }
+
+    // appends each partition's rows as soon as that partition answers
+    private List<Movie> gather(int[] targets, Function<MovieRepository, List<Movie>> query) {
+        return gather(targets, (partition, index) -> query.apply(partition));
+    }
+
+    private <T> List<T> gather(int[] targets, PartitionCall<List<T>> query) {
+        List<T> results = new ArrayList<>();
+        CompletionService<List<T>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<List<T>>> futures = submit(completion, targets, query);
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                results.addAll(completion.take().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            futures.forEach(future -> future.cancel(true));
+            throw new IllegalStateException("Interrupted while reading the movie partitions", e);
+        } catch (ExecutionException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw unwrap(e);
+        }
+        return results;
+    }
+
+    private <T> void scatter(int[] targets, PartitionCall<T> call) {
+        gather(targets, (partition, index) -> {
+            call.call(partition, index);
+            return List.of();
+        });
+    }
+
+    // k-way merge of per partition lists already sorted by the comparator
+    private List<Movie> merge(int[] targets, Function<MovieRepository, List<Movie>> query,
+                              Comparator<Movie> comparator, int limit) {
+        List<List<Movie>> sorted = new ArrayList<>();
+        gather(targets, (partition, index) -> {
+            List<Movie> rows = query.apply(partition);
+            synchronized (sorted) {
+                sorted.add(rows);
+            }
+            return List.of();
+        });
+        return mergeSorted(sorted, comparator, limit);
+    }
+
+    static List<Movie> mergeSorted(List<List<Movie>> sorted, Comparator<Movie> comparator, int limit) {
+        PriorityQueue<Cursor> heads = new PriorityQueue<>((a, b) -> comparator.compare(a.head, b.head));
+        for (List<Movie> rows : sorted) {
+            Iterator<Movie> iterator = rows.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Cursor(iterator.next(), iterator));
+            }
+        }
+        List<Movie> merged = new ArrayList<>();
+        while (!heads.isEmpty() && merged.size() < limit) {
+            Cursor cursor = heads.poll();
+            merged.add(cursor.head);
+            if (cursor.rest.hasNext()) {
+                cursor.head = cursor.rest.next();
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    private static final class Cursor {
+
+        private Movie head;
+
+        private final Iterator<Movie> rest;
+
+        private Cursor(Movie head, Iterator<Movie> rest) {
+            this.head = head;
+            this.rest = rest;
+        }
+
+    }
+
+    private <T> List<Future<List<T>>> submit(CompletionService<List<T>> completion, int[] targets,
+                                             PartitionCall<List<T>> query) {
+        List<Future<List<T>>> futures = new ArrayList<>(targets.length);
+        for (int index : targets) {
+            MovieRepository partition = partitions.get(index);
+            futures.add(completion.submit(() -> query.call(partition, index)));
+        }
+        return futures;
+    }
+
+    @SuppressWarnings("unchecked")
+    static Comparator<Movie> comparator(Sort sort) {
+        Comparator<Movie> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Function<Movie, Comparable> property = PROPERTIES.get(order.getProperty());
+            if (property == null) {
+                throw new IllegalArgumentException("Cannot merge partitions sorted by " + order.getProperty());
+            }
+            Comparator<Movie> next = Comparator.comparing(property, Comparator.nullsFirst(Comparator.naturalOrder()));
+            comparator = comparator.thenComparing(order.isAscending() ? next : next.reversed());
+        }
+        return comparator;
+    }
+
+    private <S extends Movie> List<List<S>> group(Iterable<S> entities) {
+        List<List<S>> groups = new ArrayList<>();
+        partitions.forEach(partition -> groups.add(new ArrayList<>()));
+        for (S entity : entities) {
+            assignId(entity);
+            groups.get(partitioner.partitionOf(entity)).add(entity);
+        }
+        return groups;
+    }
+
+    // an id the partitioner cannot place is looked up in every partition
+    private List<List<String>> groupIds(Iterable<? extends String> ids) {
+        List<List<String>> groups = new ArrayList<>();
+        partitions.forEach(partition -> groups.add(new ArrayList<>()));
+        for (String id : ids) {
+            var partition = partitioner.partitionOfId(id);
+            if (partition.isPresent()) {
+                groups.get(partition.getAsInt()).add(id);
+            } else {
+                groups.forEach(group -> group.add(id));
+            }
+        }
+        return groups;
+    }
+
+    private static <S> List<S> flatten(Iterable<S> entities) {
+        List<S> list = new ArrayList<>();
+        entities.forEach(list::add);
+        return list;
+    }
+
+    private static int[] nonEmpty(List<? extends List<?>> groups) {
+        return IntStream.range(0, groups.size()).filter(index -> !groups.get(index).isEmpty()).toArray();
+    }
+
+    private int[] all() {
+        return IntStream.range(0, partitions.size()).toArray();
+    }
+
+    private int[] others(int partition) {
+        return IntStream.range(0, partitions.size()).filter(index -> index != partition).toArray();
+    }
+
+    private static void assignId(Movie movie) {
+        if (movie.getId() == null) {
+            movie.setId(new ObjectId().toHexString());
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (e.getCause() instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(e.getCause());
+    }
+
+}
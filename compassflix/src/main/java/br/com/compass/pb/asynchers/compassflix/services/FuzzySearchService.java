@@ -0,0 +1,152 @@
+package br.com.compass.pb.asynchers.compassflix.services;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.ScoredMovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.IndexBuildEvent;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshot;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadOperation;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMatch;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMovieIndex;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FuzzySearchService {
+
+    public static final int MAX_DISTANCE = 3;
+
+    private final MovieRepository repository;
+
+    private final CatalogSnapshotService snapshotService;
+
+    private final LastKnownCatalog lastKnown;
+
+    private final ReadPreferenceRouter readRouter;
+
+    private volatile FuzzyMovieIndex index = new FuzzyMovieIndex();
+
+    private volatile boolean warmed;
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private final Object writeLock = new Object();
+
+    // changes seen while a rebuild reads the catalog, replayed onto the rebuilt index before it is published
+    private List<MovieChangedEvent> replayLog;
+
+    // skipped when CatalogWarmStartService already restored the index from disk, it rebuilds in the background
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!warmed) {
+            rebuild();
+        }
+    }
+
+    public void warm(FuzzyMovieIndex restored) {
+        index = restored;
+        warmed = true;
+    }
+
+    public FuzzyMovieIndex index() {
+        return index;
+    }
+
+    public void rebuild() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (writeLock) {
+                replayLog = new ArrayList<>();
+            }
+            IndexBuildEvent recorded = new IndexBuildEvent();
+            recorded.begin();
+            FuzzyMovieIndex rebuilt = new FuzzyMovieIndex();
+            try {
+                repository.findAll().forEach(movie -> rebuilt.put(movie.getId(), movie.getName()));
+            } catch (RuntimeException e) {
+                synchronized (writeLock) {
+                    replayLog = null;
+                }
+                throw e;
+            }
+            synchronized (writeLock) {
+                replayLog.forEach(change -> apply(rebuilt, change));
+                replayLog = null;
+                index = rebuilt;
+            }
+            recorded.index = "fuzzy-names";
+            recorded.movies = rebuilt.size();
+            recorded.commit();
+            log.info("### Fuzzy name index built with {} movies ###", rebuilt.size());
+        } finally {
+            building.set(false);
+        }
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        synchronized (writeLock) {
+            if (replayLog != null) {
+                replayLog.add(event);
+            }
+            apply(index, event);
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        event.changes().forEach(this::onMovieChanged);
+    }
+
+    private static void apply(FuzzyMovieIndex target, MovieChangedEvent event) {
+        switch (event.type()) {
+            case CREATED, UPDATED -> target.put(event.current().getId(), event.current().getName());
+            case DELETED -> target.remove(event.movieId());
+        }
+    }
+
+    public List<ScoredMovieResponseDto> search(String name, int maxDistance, int limit) {
+        if (limit < 1 || limit > MovieService.MAX_QUERY_LIMIT) {
+            throw new InvalidQueryException("Limit must be between 1 and " + MovieService.MAX_QUERY_LIMIT);
+        }
+        List<FuzzyMatch> matches = index.search(name, Math.min(Math.max(maxDistance, 0), MAX_DISTANCE), limit);
+        if (matches.isEmpty()) {
+            throw new MovieNotFoundException("No movies found with the specified name: " + name);
+        }
+
+        List<String> ids = matches.stream().map(FuzzyMatch::id).toList();
+        Map<String, Movie> movies = snapshotService.current()
+                .map(CatalogSnapshot::byId)
+                .orElseGet(() -> lastKnown.query(() -> readRouter.forRead(ReadOperation.SEARCH).findAllById(ids).stream()
+                        .collect(Collectors.toMap(Movie::getId, Function.identity())), CatalogSnapshot::byId));
+
+        return matches.stream()
+                .filter(match -> movies.containsKey(match.id()))
+                .map(match -> new ScoredMovieResponseDto(new MovieResponseDto(movies.get(match.id())),
+                        match.distance(), match.score()))
+                .toList();
+    }
+
+}
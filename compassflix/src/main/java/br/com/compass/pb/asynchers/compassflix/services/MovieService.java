@@ -1,30 +1,80 @@
 package br.com.compass.pb.asynchers.compassflix.services;
 
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieBulkUpdateDto;
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
 import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.BulkUpdateResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogFacetsDto;
 import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.RecentMoviesDto;
 import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.BulkUpdateIncompleteException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.ListIsEmptyException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
 import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshot;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadOperation;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
 import lombok.RequiredArgsConstructor;
+import org.bson.types.ObjectId;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class MovieService {
 
+    public static final int MAX_QUERY_LIMIT = 1000;
+
+    static final int BULK_UPDATE_PAGE_SIZE = 1000;
+
+    private static final Set<String> SORTABLE_FIELDS = Set.of("name", "releaseDate", "duration", "registrationDate");
+
     @Autowired
     private final MovieRepository repository;
 
+    private final ApplicationEventPublisher publisher;
+
+    private final CatalogSnapshotService snapshotService;
+
+    private final RepositoryCircuitBreaker circuitBreaker;
+
+    private final LastKnownCatalog lastKnown;
+
+    private final ReadPreferenceRouter readRouter;
+
+    private final OperationLog operationLog;
+
+    private final MovieExistenceFilter existenceFilter;
+
     public List<Movie> findAllMovies() {
-        var response = repository.findAll();
+        return operationLog.read("findAll", null, this::allMovies);
+    }
+
+    private List<Movie> allMovies() {
+        var response = snapshotService.current()
+                .map(CatalogSnapshot::movies)
+                .orElseGet(() -> lastKnown.findAll(() -> readRouter.forRead(ReadOperation.FIND_ALL).findAll()));
         if (response.isEmpty()) {
             throw new ListIsEmptyException("No movies found!");
         }
@@ -33,59 +83,214 @@ public class MovieService {
     }
 
     public Movie findMovieById(String id) {
-        Optional<Movie> response = repository.findById(id);
-        return response.orElseThrow(() -> new MovieNotFoundException("That movie doesn't exists!"));
+        return operationLog.read("findById", id, () -> {
+            if (!existenceFilter.mightExistById(id)) {
+                throw new MovieNotFoundException("That movie doesn't exists!");
+            }
+            return lastKnown.findById(id, () -> readRouter.forRead(ReadOperation.FIND_BY_ID, id).findById(id))
+                    .orElseThrow(() -> new MovieNotFoundException("That movie doesn't exists!"));
+        });
+    }
+
+    public boolean exists(String id) {
+        return operationLog.read("exists", id, () -> existenceFilter.mightExistById(id)
+                && circuitBreaker.call(() -> readRouter.forRead(ReadOperation.FIND_BY_ID, id).existsById(id)));
     }
 
     public List<Movie> findByName(String name) {
-        List<Movie> movies = repository.findByNameIgnoreCaseContaining(name);
+        return operationLog.read("findByName", name, () -> moviesNamed(name));
+    }
+
+    private List<Movie> moviesNamed(String name) {
+        if (!existenceFilter.mightExistByNameContaining(name)) {
+            throw new MovieNotFoundException("No movies found with the specified name: " + name);
+        }
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        List<Movie> movies = lastKnown.query(
+                () -> readRouter.forRead(ReadOperation.SEARCH).findByNameIgnoreCaseContaining(name),
+                catalog -> catalog.movies().stream()
+                        .filter(movie -> movie.getName() != null
+                                && movie.getName().toLowerCase(Locale.ROOT).contains(lowerCase))
+                        .toList());
         if (movies.isEmpty()) {
             throw new MovieNotFoundException("No movies found with the specified name: " + name);
         }
         return movies;
     }
 
-    public MovieResponseDto postMovie(MovieRequestDto movieRequestDto) {
-        log.info("### Calling post movie with name {} ###", movieRequestDto.name());
-        if(repository.findAll().stream().anyMatch(movie -> movie.getName().equalsIgnoreCase(movieRequestDto.name()))) {
-            throw new MovieAlreadyExistException("That movie already exists!");
+    public List<Movie> findByFilter(MovieFilterDto filter, Sort sort, int limit) {
+        return operationLog.read("findByFilter", null, () -> moviesMatching(filter, sort, limit));
+    }
+
+    private List<Movie> moviesMatching(MovieFilterDto filter, Sort sort, int limit) {
+        sort.forEach(order -> {
+            if (!SORTABLE_FIELDS.contains(order.getProperty())) {
+                throw new InvalidQueryException("Cannot sort by " + order.getProperty() + ", allowed fields: "
+                        + SORTABLE_FIELDS);
+            }
+        });
+        if (limit < 1 || limit > MAX_QUERY_LIMIT) {
+            throw new InvalidQueryException("Limit must be between 1 and " + MAX_QUERY_LIMIT);
+        }
+        try {
+            filter.genreValue();
+            filter.pgRatingValue();
+        } catch (IllegalArgumentException e) {
+            throw new InvalidQueryException(e.getMessage());
         }
-        var response = repository.save(new Movie(movieRequestDto));
 
-        log.info("### Success at posting movie with name {} ###", movieRequestDto.name());
-        return new MovieResponseDto(response);
+        List<Movie> movies = snapshotService.current()
+                .map(snapshot -> snapshot.filter(filter, sort, limit))
+                .orElseGet(() -> lastKnown.query(
+                        () -> readRouter.forRead(ReadOperation.SEARCH).findByFilter(filter, sort, limit),
+                        catalog -> catalog.filter(filter, sort, limit)));
+        if (movies.isEmpty()) {
+            throw new ListIsEmptyException("No movies found for the specified filters!");
+        }
+        return movies;
+    }
 
+    public RecentMoviesDto findRecent(Instant since, String afterId, int limit) {
+        if (limit < 1 || limit > MAX_QUERY_LIMIT) {
+            throw new InvalidQueryException("Limit must be between 1 and " + MAX_QUERY_LIMIT);
+        }
+        if (afterId != null && !ObjectId.isValid(afterId)) {
+            throw new InvalidQueryException("afterId must be a movie id");
+        }
+
+        List<Movie> movies = circuitBreaker.call(
+                () -> readRouter.forRead(ReadOperation.SEARCH).findRecent(since, afterId, limit));
+        if (movies.isEmpty()) {
+            return new RecentMoviesDto(movies, since, afterId);
+        }
+        Movie last = movies.get(movies.size() - 1);
+        return new RecentMoviesDto(movies, last.getRegistrationDate(), last.getId());
+    }
+
+    public CatalogFacetsDto facets() {
+        CatalogSnapshot snapshot = snapshotService.current()
+                .orElseGet(() -> CatalogSnapshot.of(0,
+                        lastKnown.findAll(() -> readRouter.forRead(ReadOperation.FACETS).findAll())));
+        return new CatalogFacetsDto(snapshot.version(), snapshot.size(), snapshot.genreCounts(),
+                snapshot.pgRatingCounts());
+    }
+
+    public MovieResponseDto postMovie(MovieRequestDto movieRequestDto) {
+        return operationLog.write("post", movieRequestDto.name(), () -> {
+            checkNameIsAvailable(movieRequestDto.name());
+            var response = circuitBreaker.call(() -> repository.save(new Movie(movieRequestDto)));
+            publisher.publishEvent(MovieChangedEvent.created(response));
+            return new MovieResponseDto(response);
+        });
+    }
+
+    public void checkNameIsAvailable(String name) {
+        if (!existenceFilter.mightExistByName(name)) {
+            return;
+        }
+        // never against stale data, a write has to see the database
+        if (circuitBreaker.call(() -> repository.findByNamesIgnoreCase(List.of(name))).stream()
+                .anyMatch(movie -> movie.getName().equalsIgnoreCase(name))) {
+            throw new MovieAlreadyExistException("That movie already exists!");
+        }
     }
 
     public MovieResponseDto updateMovie(String id, MovieRequestDto obj) {
-        log.info("### Searching movie by String Id {} ###", id);
-        Optional<Movie> existingMovie = repository.findById(id);
+        return operationLog.write("update", id, () -> update(id, obj));
+    }
+
+    private MovieResponseDto update(String id, MovieRequestDto obj) {
+        Optional<Movie> existingMovie = circuitBreaker.call(() -> repository.findById(id));
 
         if (existingMovie.isPresent()) {
-            log.info("### Updating movie ###");
             Movie movieToUpdate = existingMovie.get();
-            movieToUpdate.setName(obj.name());
-            movieToUpdate.setDescription(obj.description());
-            movieToUpdate.setGenre(obj.genre());
-            movieToUpdate.setDuration(obj.duration());
-            movieToUpdate.setReleaseDate(obj.releaseDate());
-            movieToUpdate.setPgRating(obj.pgRating());
-
-            log.info("### Saving movie ###");
-            Movie updatedMovie = repository.save(movieToUpdate);
+            Movie previous = new Movie(movieToUpdate);
+            try {
+                obj.applyTo(movieToUpdate);
+            } catch (IllegalArgumentException e) {
+                throw new InvalidQueryException(e.getMessage());
+            }
+
+            Movie updatedMovie = circuitBreaker.call(() -> repository.save(movieToUpdate));
+            publisher.publishEvent(MovieChangedEvent.updated(updatedMovie, previous));
             return new MovieResponseDto(updatedMovie);
         } else {
             throw new MovieNotFoundException("Movie not found!");
         }
     }
 
-    public void delete(String id) {
-        log.info("### Searching movie by String Id {} ###", id);
-        var response = repository.findById(id);
-        if (response.isEmpty()) {
-            throw new MovieNotFoundException("That movie doesn't exists!");
+    /*
+     * One updateMany per page of matches instead of a findById and a save per movie. Each page is read before it is
+     * updated only to publish what changed: the snapshot, the caches and the change feed all follow the events, and
+     * they get one bulk event per page. Paging by id keeps memory bounded however many movies match, and a movie
+     * the update makes stop matching is never read twice. A movie a concurrent write makes match behind the current
+     * page is not updated, the same as if it had been written after the bulk update.
+     */
+    public BulkUpdateResponseDto bulkUpdate(MovieBulkUpdateDto bulkUpdate, boolean dryRun) {
+        return operationLog.write(dryRun ? "bulkUpdateDryRun" : "bulkUpdate", null,
+                () -> updateMatching(bulkUpdate, dryRun));
+    }
+
+    private BulkUpdateResponseDto updateMatching(MovieBulkUpdateDto bulkUpdate, boolean dryRun) {
+        if (bulkUpdate.filter().isEmpty()) {
+            throw new InvalidQueryException("A bulk update needs a filter, it would update every movie otherwise");
         }
-        log.info("### Deleted movie ###");
-        repository.deleteById(id);
+        if (bulkUpdate.genre() == null && bulkUpdate.pgRating() == null) {
+            throw new InvalidQueryException("A bulk update needs a genre or a pgRating to set");
+        }
+        if (dryRun) {
+            long matched = circuitBreaker.call(() -> repository.countByFilter(bulkUpdate.filter()));
+            return new BulkUpdateResponseDto(matched, 0, true);
+        }
+
+        // not atomic: pages written before a failure stay written, the error reports how far it got
+        long matched = 0;
+        long modified = 0;
+        String afterId = null;
+        List<Movie> page;
+        do {
+            String after = afterId;
+            long modifiedInPage;
+            try {
+                page = circuitBreaker.call(() -> repository.findByFilterAfter(bulkUpdate.filter(), after,
+                        BULK_UPDATE_PAGE_SIZE));
+                if (page.isEmpty()) {
+                    break;
+                }
+                List<String> ids = page.stream().map(Movie::getId).toList();
+                modifiedInPage = circuitBreaker.call(() -> repository.updateByFilter(bulkUpdate.filter(), ids,
+                        bulkUpdate.genreValue(), bulkUpdate.pgRatingValue()));
+            } catch (RuntimeException e) {
+                if (matched == 0) {
+                    throw e;
+                }
+                throw new BulkUpdateIncompleteException(matched, modified, e);
+            }
+            modified += modifiedInPage;
+            List<MovieChangedEvent> changes = new ArrayList<>();
+            for (Movie movie : page) {
+                Movie previous = new Movie(movie);
+                if (bulkUpdate.applyTo(movie)) {
+                    changes.add(MovieChangedEvent.updated(movie, previous));
+                }
+            }
+            if (!changes.isEmpty()) {
+                publisher.publishEvent(new MoviesBulkChangedEvent(changes));
+            }
+            matched += page.size();
+            afterId = page.get(page.size() - 1).getId();
+        } while (page.size() == BULK_UPDATE_PAGE_SIZE);
+        return new BulkUpdateResponseDto(matched, modified, false);
+    }
+
+    public void delete(String id) {
+        operationLog.write("delete", id, () -> {
+            var response = circuitBreaker.call(() -> repository.findById(id));
+            if (response.isEmpty()) {
+                throw new MovieNotFoundException("That movie doesn't exists!");
+            }
+            circuitBreaker.run(() -> repository.deleteById(id));
+            publisher.publishEvent(MovieChangedEvent.deleted(response.get()));
+        });
     }
 }
\ No newline at end of file
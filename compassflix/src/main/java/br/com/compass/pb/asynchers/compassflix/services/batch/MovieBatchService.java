@@ -0,0 +1,451 @@
+package br.com.compass.pb.asynchers.compassflix.services.batch;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieBatchOperationDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieBatchResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieBatchResponseDto.Result;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.DatabaseUnavailableException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Runs an ordered list of movie operations with the results they would have one request after the other, in
+ * fewer round trips. The list is cut into segments of consecutive reads and of consecutive writes, an operation
+ * referring to one of its own segment ($n) starts the next one. The reads of a segment do not depend on each
+ * other and run in parallel, each through {@link MovieService} as its own request would. The writes of a segment
+ * are grouped as long as they touch distinct movies and names, such writes commute: a group is checked with one
+ * findAllById and at most one findAll for the created names, and stored as one unordered bulk write. A write on
+ * a movie or name the group already touches closes it, so it sees the write before. Reads after writes see them
+ * as separate requests do, by id always and searches when the client sends X-Session-Id. Every operation gets
+ * its own result, one failing does not stop the ones after it.
+ */
+@Service
+@Slf4j
+public class MovieBatchService {
+
+    private enum Type {
+        GET, SEARCH, CREATE, UPDATE, DELETE;
+
+        boolean isRead() {
+            return this == GET || this == SEARCH;
+        }
+    }
+
+    private record Step(int index, MovieBatchOperationDto operation, Type type) {
+    }
+
+    // current is null for a delete, previous for a create
+    private record Write(Step step, Movie current, Movie previous) {
+    }
+
+    private final MovieService movieService;
+
+    private final MovieRepository repository;
+
+    private final RepositoryCircuitBreaker circuitBreaker;
+
+    private final ApplicationEventPublisher publisher;
+
+    private final MovieExistenceFilter existenceFilter;
+
+    private final OperationLog operationLog;
+
+    private final int maxOperations;
+
+    private final ExecutorService readers;
+
+    public MovieBatchService(MovieService movieService, MovieRepository repository,
+                             RepositoryCircuitBreaker circuitBreaker, ApplicationEventPublisher publisher,
+                             MovieExistenceFilter existenceFilter, OperationLog operationLog,
+                             @Value("${compassflix.batch.max-operations:100}") int maxOperations,
+                             @Value("${compassflix.batch.read-threads:8}") int readThreads) {
+        this.movieService = movieService;
+        this.repository = repository;
+        this.circuitBreaker = circuitBreaker;
+        this.publisher = publisher;
+        this.existenceFilter = existenceFilter;
+        this.operationLog = operationLog;
+        this.maxOperations = maxOperations;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.readers = Executors.newFixedThreadPool(Math.max(1, readThreads), runnable -> {
+            Thread thread = new Thread(runnable, "movie-batch-reader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        readers.shutdownNow();
+    }
+
+    public MovieBatchResponseDto execute(List<MovieBatchOperationDto> operations) {
+        if (operations.size() > maxOperations) {
+            throw new InvalidQueryException("A batch takes at most " + maxOperations + " operations");
+        }
+        Result[] results = new Result[operations.size()];
+        // the movie each operation read or wrote, what $n refers to
+        String[] ids = new String[operations.size()];
+        List<Step> segment = new ArrayList<>();
+        for (int index = 0; index < operations.size(); index++) {
+            MovieBatchOperationDto operation = operations.get(index);
+            Type type = parse(operation.op());
+            if (type == null) {
+                results[index] = failure(index, operation.op(), new InvalidQueryException("Unknown operation "
+                        + operation.op() + ", allowed: get, search, create, update, delete"));
+                continue;
+            }
+            if (!segment.isEmpty() && (segment.get(0).type().isRead() != type.isRead()
+                    || reference(operation.id()) >= segment.get(0).index())) {
+                run(segment, results, ids);
+                segment = new ArrayList<>();
+            }
+            segment.add(new Step(index, operation, type));
+        }
+        run(segment, results, ids);
+        return new MovieBatchResponseDto(Arrays.asList(results));
+    }
+
+    private void run(List<Step> segment, Result[] results, String[] ids) {
+        if (segment.isEmpty()) {
+            return;
+        }
+        if (segment.get(0).type().isRead()) {
+            read(segment, results, ids);
+        } else {
+            write(segment, results, ids);
+        }
+    }
+
+    private void read(List<Step> segment, Result[] results, String[] ids) {
+        if (segment.size() == 1) {
+            read(segment.get(0), results, ids);
+            return;
+        }
+        // the read preference follows the client session of the request, the readers need it as well
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        List<Future<?>> reads = new ArrayList<>(segment.size());
+        for (Step step : segment) {
+            reads.add(readers.submit(() -> {
+                RequestContextHolder.setRequestAttributes(attributes);
+                try {
+                    read(step, results, ids);
+                } finally {
+                    RequestContextHolder.resetRequestAttributes();
+                }
+            }));
+        }
+        try {
+            for (Future<?> read : reads) {
+                read.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reads.forEach(read -> read.cancel(true));
+            throw new IllegalStateException("Interrupted while reading a batch", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void read(Step step, Result[] results, String[] ids) {
+        try {
+            if (step.type() == Type.GET) {
+                Movie movie = movieService.findMovieById(resolve(step, ids));
+                ids[step.index()] = movie.getId();
+                results[step.index()] = success(step, HttpStatus.OK, movie);
+            } else {
+                if (step.operation().name() == null) {
+                    throw new InvalidQueryException("search needs a name");
+                }
+                results[step.index()] = success(step, HttpStatus.OK, movieService.findByName(step.operation().name()));
+            }
+        } catch (RuntimeException e) {
+            results[step.index()] = failure(step.index(), step.operation().op(), e);
+        }
+    }
+
+    private void write(List<Step> segment, Result[] results, String[] ids) {
+        List<Step> group = new ArrayList<>();
+        Set<String> touched = new HashSet<>();
+        for (Step step : segment) {
+            List<String> keys = keys(step, ids);
+            if (keys.stream().anyMatch(touched::contains)) {
+                writeGroup(group, results, ids);
+                group = new ArrayList<>();
+                touched.clear();
+            }
+            group.add(step);
+            touched.addAll(keys);
+        }
+        writeGroup(group, results, ids);
+    }
+
+    private void writeGroup(List<Step> group, Result[] results, String[] ids) {
+        operationLog.write("batchWrite", null, () -> checkAndStore(group, results, ids));
+    }
+
+    private void checkAndStore(List<Step> group, Result[] results, String[] ids) {
+        List<Write> writes;
+        try {
+            writes = check(group, results, ids);
+        } catch (RuntimeException e) {
+            group.stream().filter(step -> results[step.index()] == null)
+                    .forEach(step -> results[step.index()] = failure(step.index(), step.operation().op(), e));
+            return;
+        }
+        if (writes.isEmpty()) {
+            return;
+        }
+        List<Write> stored = store(writes, results);
+        if (!stored.isEmpty()) {
+            publisher.publishEvent(new MoviesBulkChangedEvent(stored.stream().map(MovieBatchService::change).toList()));
+        }
+        for (Write write : stored) {
+            Step step = write.step();
+            ids[step.index()] = write.current() != null ? write.current().getId() : write.previous().getId();
+            results[step.index()] = switch (step.type()) {
+                case CREATE -> success(step, HttpStatus.CREATED, new MovieResponseDto(write.current()));
+                case UPDATE -> success(step, HttpStatus.OK, new MovieResponseDto(write.current()));
+                default -> success(step, HttpStatus.NO_CONTENT, null);
+            };
+        }
+    }
+
+    // the movie and the name a write touches; writes with none in common can be stored in any order
+    private static List<String> keys(Step step, String[] ids) {
+        List<String> keys = new ArrayList<>(2);
+        if (step.type() != Type.CREATE) {
+            try {
+                keys.add("id:" + resolve(step, ids));
+            } catch (InvalidQueryException e) {
+                // fails on its own when the group is checked
+            }
+        }
+        if (step.type() != Type.DELETE && step.operation().movie() != null && step.operation().movie().name() != null) {
+            keys.add("name:" + MovieExistenceFilter.fold(step.operation().movie().name()));
+        }
+        return keys;
+    }
+
+    /*
+     * The writes of the group that can go ahead, in order. Updates and deletes find their movie in one findAllById,
+     * creates check their name against one findAll, the way postMovie does, but as the names stand at their place
+     * in the group: a movie renamed or deleted before the create no longer holds the name.
+     */
+    private List<Write> check(List<Step> group, Result[] results, String[] ids) {
+        Map<Integer, String> targets = new HashMap<>();
+        Set<String> createdNames = new HashSet<>();
+        List<String> lookedUpNames = new ArrayList<>();
+        List<Step> valid = new ArrayList<>();
+        for (Step step : group) {
+            try {
+                if (step.type() != Type.DELETE && step.operation().movie() == null) {
+                    throw new InvalidQueryException(step.operation().op() + " needs a movie");
+                }
+                if (step.type() == Type.CREATE) {
+                    if (existenceFilter.mightExistByName(step.operation().movie().name())) {
+                        createdNames.add(MovieExistenceFilter.fold(step.operation().movie().name()));
+                        lookedUpNames.add(step.operation().movie().name());
+                    }
+                } else {
+                    targets.put(step.index(), resolve(step, ids));
+                }
+                valid.add(step);
+            } catch (RuntimeException e) {
+                results[step.index()] = failure(step.index(), step.operation().op(), e);
+            }
+        }
+
+        List<String> lookups = targets.values().stream().filter(existenceFilter::mightExistById).distinct().toList();
+        Map<String, Movie> existing = lookups.isEmpty() ? Map.of()
+                : circuitBreaker.call(() -> repository.findAllById(lookups)).stream()
+                .collect(Collectors.toMap(Movie::getId, Function.identity()));
+        Map<String, List<String>> holders = new HashMap<>();
+        if (!createdNames.isEmpty()) {
+            // never against stale data, a write has to see the database
+            for (Movie movie : circuitBreaker.call(() -> repository.findByNamesIgnoreCase(lookedUpNames))) {
+                String name = MovieExistenceFilter.fold(movie.getName());
+                if (createdNames.contains(name)) {
+                    holders.computeIfAbsent(name, key -> new ArrayList<>()).add(movie.getId());
+                }
+            }
+        }
+
+        Set<String> changedBefore = new HashSet<>();
+        List<Write> writes = new ArrayList<>();
+        for (Step step : valid) {
+            if (step.type() == Type.CREATE) {
+                String name = MovieExistenceFilter.fold(step.operation().movie().name());
+                if (holders.getOrDefault(name, List.of()).stream().anyMatch(id -> !changedBefore.contains(id))) {
+                    results[step.index()] = failure(step.index(), step.operation().op(),
+                            new MovieAlreadyExistException("That movie already exists!"));
+                    continue;
+                }
+                Movie movie = new Movie(step.operation().movie());
+                movie.setId(new ObjectId().toHexString());
+                writes.add(new Write(step, movie, null));
+                continue;
+            }
+            Movie previous = existing.get(targets.get(step.index()));
+            if (previous == null) {
+                results[step.index()] = failure(step.index(), step.operation().op(), new MovieNotFoundException(
+                        step.type() == Type.UPDATE ? "Movie not found!" : "That movie doesn't exists!"));
+                continue;
+            }
+            changedBefore.add(previous.getId());
+            if (step.type() == Type.UPDATE) {
+                Movie updated = new Movie(previous);
+                step.operation().movie().applyTo(updated);
+                writes.add(new Write(step, updated, previous));
+            } else {
+                writes.add(new Write(step, null, previous));
+            }
+        }
+        return writes;
+    }
+
+    // the writes that were stored: all of them, or after a failed bulk write the ones that went through one by one
+    private List<Write> store(List<Write> writes, Result[] results) {
+        List<Movie> inserted = new ArrayList<>();
+        List<Movie> replaced = new ArrayList<>();
+        List<String> deleted = new ArrayList<>();
+        for (Write write : writes) {
+            switch (write.step().type()) {
+                case CREATE -> inserted.add(write.current());
+                case UPDATE -> replaced.add(write.current());
+                default -> deleted.add(write.previous().getId());
+            }
+        }
+        try {
+            circuitBreaker.run(() -> repository.writeAll(inserted, replaced, deleted));
+            return writes;
+        } catch (DatabaseUnavailableException e) {
+            writes.forEach(write -> results[write.step().index()] = failure(write.step().index(),
+                    write.step().operation().op(), e));
+            return List.of();
+        } catch (RuntimeException e) {
+            log.warn("### Bulk write of {} batch operations failed, retrying one by one: {} ###", writes.size(),
+                    e.getMessage());
+        }
+        List<Write> stored = new ArrayList<>();
+        for (Write write : writes) {
+            try {
+                circuitBreaker.run(() -> writeOne(write));
+                stored.add(write);
+            } catch (RuntimeException e) {
+                results[write.step().index()] = failure(write.step().index(), write.step().operation().op(), e);
+            }
+        }
+        return stored;
+    }
+
+    private void writeOne(Write write) {
+        switch (write.step().type()) {
+            case CREATE -> {
+                try {
+                    repository.insert(write.current());
+                } catch (DuplicateKeyException e) {
+                    // the failed bulk write already stored it, the id was new
+                }
+            }
+            case UPDATE -> repository.save(write.current());
+            default -> repository.deleteById(write.previous().getId());
+        }
+    }
+
+    private static MovieChangedEvent change(Write write) {
+        return switch (write.step().type()) {
+            case CREATE -> MovieChangedEvent.created(write.current());
+            case UPDATE -> MovieChangedEvent.updated(write.current(), write.previous());
+            default -> MovieChangedEvent.deleted(write.previous());
+        };
+    }
+
+    private static String resolve(Step step, String[] ids) {
+        String id = step.operation().id();
+        if (id == null) {
+            throw new InvalidQueryException(step.operation().op() + " needs an id");
+        }
+        if (!id.startsWith("$")) {
+            return id;
+        }
+        int referenced = reference(id);
+        if (referenced < 0 || referenced >= step.index()) {
+            throw new InvalidQueryException(id + " does not refer to an earlier operation of the batch");
+        }
+        if (ids[referenced] == null) {
+            throw new InvalidQueryException(id + " refers to an operation that has no movie");
+        }
+        return ids[referenced];
+    }
+
+    // n for $n, -1 for anything else
+    private static int reference(String id) {
+        if (id == null || id.length() < 2 || id.length() > 10 || id.charAt(0) != '$'
+                || !id.chars().skip(1).allMatch(Character::isDigit)) {
+            return -1;
+        }
+        return Integer.parseInt(id.substring(1));
+    }
+
+    private static Type parse(String op) {
+        try {
+            return op == null ? null : Type.valueOf(op.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Result success(Step step, HttpStatus status, Object body) {
+        return new Result(step.index(), step.operation().op(), status.value(), body, null);
+    }
+
+    // the status the exception handler would answer for a single request
+    private static Result failure(int index, String op, RuntimeException e) {
+        ResponseStatus status = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        if (status == null) {
+            log.error("### Batch operation {} failed ###", index, e);
+            return new Result(index, op, HttpStatus.INTERNAL_SERVER_ERROR.value(), null, e.getMessage());
+        }
+        return new Result(index, op, status.code().value(), null, e.getMessage());
+    }
+
+}
@@ -0,0 +1,367 @@
+package br.com.compass.pb.asynchers.compassflix.services.catalog;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import org.springframework.data.domain.Sort;
+
+import java.time.LocalDate;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Immutable view of the whole catalog. Writers build a new snapshot (copy on write) and publish it atomically,
+ * readers never lock. The movies inside are shared between readers and must not be modified.
+ * <p>
+ * Movies are kept in catalog order in chunks of up to {@value #CHUNK_SIZE}, and indexed by id in hash buckets of
+ * about {@value #BUCKET_SIZE}. A new snapshot shares every chunk and bucket a change does not touch, and facet
+ * counts are adjusted by the change, so a write costs a chunk, a bucket and the two arrays of references instead
+ * of a copy of the catalog.
+ */
+public final class CatalogSnapshot {
+
+    private static final int CHUNK_SIZE = 512;
+
+    private static final int BUCKET_SIZE = 64;
+
+    private static final Map<String, Function<Movie, Comparable>> SORTABLE = Map.of(
+            "name", Movie::getName,
+            "releaseDate", Movie::getReleaseDate,
+            "duration", Movie::getDuration,
+            "registrationDate", Movie::getRegistrationDate);
+
+    private record Slot(Movie movie, int chunk) {
+    }
+
+    private final long version;
+
+    // a chunk emptied by deletes stays in place, so the chunk of a slot never moves
+    private final Movie[][] chunks;
+
+    // movies in chunks 0 to i
+    private final int[] ends;
+
+    // never modified once published, a change copies the bucket it touches
+    private final Map<String, Slot>[] buckets;
+
+    private final Map<String, Long> genreCounts;
+
+    private final Map<String, Long> pgRatingCounts;
+
+    private final List<Movie> movies = new Movies();
+
+    private final Map<String, Movie> byId = new ById();
+
+    private CatalogSnapshot(long version, Movie[][] chunks, Map<String, Slot>[] buckets, Map<String, Long> genreCounts,
+                            Map<String, Long> pgRatingCounts) {
+        this.version = version;
+        this.chunks = chunks;
+        this.ends = new int[chunks.length];
+        int end = 0;
+        for (int i = 0; i < chunks.length; i++) {
+            end += chunks[i].length;
+            ends[i] = end;
+        }
+        this.buckets = buckets;
+        this.genreCounts = genreCounts;
+        this.pgRatingCounts = pgRatingCounts;
+    }
+
+    public static CatalogSnapshot empty() {
+        return of(0, List.of());
+    }
+
+    @SuppressWarnings("unchecked")
+    public static CatalogSnapshot of(long version, Collection<Movie> movies) {
+        Map<String, Movie> unique = new LinkedHashMap<>(Math.max(16, movies.size() * 4 / 3 + 1));
+        movies.forEach(movie -> unique.put(movie.getId(), movie));
+
+        int bucketCount = 16;
+        while ((long) bucketCount * BUCKET_SIZE < unique.size()) {
+            bucketCount <<= 1;
+        }
+        Map<String, Slot>[] buckets = new Map[bucketCount];
+        Arrays.setAll(buckets, i -> new HashMap<>());
+        List<Movie[]> chunks = new ArrayList<>(unique.size() / CHUNK_SIZE + 1);
+        Map<String, Long> genres = new HashMap<>();
+        Map<String, Long> pgRatings = new HashMap<>();
+        Iterator<Movie> iterator = unique.values().iterator();
+        while (iterator.hasNext()) {
+            Movie[] chunk = new Movie[Math.min(CHUNK_SIZE, unique.size() - chunks.size() * CHUNK_SIZE)];
+            for (int i = 0; i < chunk.length; i++) {
+                Movie movie = iterator.next();
+                chunk[i] = movie;
+                buckets[bucket(movie.getId(), bucketCount)].put(movie.getId(), new Slot(movie, chunks.size()));
+                count(genres, pgRatings, movie, 1);
+            }
+            chunks.add(chunk);
+        }
+        return new CatalogSnapshot(version, chunks.toArray(Movie[][]::new), buckets, Map.copyOf(genres),
+                Map.copyOf(pgRatings));
+    }
+
+    public CatalogSnapshot apply(MovieChangedEvent event) {
+        return applyAll(List.of(event));
+    }
+
+    // each bucket is copied once for all of the events
+    public CatalogSnapshot applyAll(List<MovieChangedEvent> events) {
+        List<Movie[]> newChunks = new ArrayList<>(Arrays.asList(chunks));
+        Map<String, Slot>[] newBuckets = buckets.clone();
+        BitSet copied = new BitSet(newBuckets.length);
+        Map<String, Long> genres = new HashMap<>(genreCounts);
+        Map<String, Long> pgRatings = new HashMap<>(pgRatingCounts);
+        for (MovieChangedEvent event : events) {
+            String id = event.type() == MovieChangedEvent.ChangeType.DELETED
+                    ? event.movieId()
+                    : event.current().getId();
+            int bucket = bucket(id, newBuckets.length);
+            if (!copied.get(bucket)) {
+                newBuckets[bucket] = new HashMap<>(newBuckets[bucket]);
+                copied.set(bucket);
+            }
+            Slot old = newBuckets[bucket].get(id);
+            if (old != null) {
+                count(genres, pgRatings, old.movie(), -1);
+            }
+            switch (event.type()) {
+                case CREATED, UPDATED -> {
+                    Movie movie = new Movie(event.current());
+                    int chunk = old != null ? replace(newChunks, old.chunk(), id, movie) : append(newChunks, movie);
+                    newBuckets[bucket].put(id, new Slot(movie, chunk));
+                    count(genres, pgRatings, movie, 1);
+                }
+                case DELETED -> {
+                    if (old != null) {
+                        replace(newChunks, old.chunk(), id, null);
+                        newBuckets[bucket].remove(id);
+                    }
+                }
+            }
+        }
+        return new CatalogSnapshot(version + 1, newChunks.toArray(Movie[][]::new), newBuckets, Map.copyOf(genres),
+                Map.copyOf(pgRatings));
+    }
+
+    public CatalogSnapshot withVersion(long newVersion) {
+        return new CatalogSnapshot(newVersion, chunks, buckets, genreCounts, pgRatingCounts);
+    }
+
+    public long version() {
+        return version;
+    }
+
+    public List<Movie> movies() {
+        return movies;
+    }
+
+    public Map<String, Movie> byId() {
+        return byId;
+    }
+
+    public Map<String, Long> genreCounts() {
+        return genreCounts;
+    }
+
+    public Map<String, Long> pgRatingCounts() {
+        return pgRatingCounts;
+    }
+
+    public int size() {
+        return ends.length == 0 ? 0 : ends[ends.length - 1];
+    }
+
+    // movies missing a filtered field never match it, like in the Mongo query
+    @SuppressWarnings("unchecked")
+    public List<Movie> filter(MovieFilterDto filter, Sort sort, int limit) {
+        Genre genre = filter.genreValue();
+        PgRating pgRating = filter.pgRatingValue();
+        Predicate<Movie> predicate = movie -> (genre == null || genre == movie.getGenre())
+                && (pgRating == null || pgRating == movie.getPgRating())
+                && (filter.releasedFrom() == null || releasedOnOrAfter(movie.getReleaseDate(), filter.releasedFrom()))
+                && (filter.releasedTo() == null || releasedOnOrBefore(movie.getReleaseDate(), filter.releasedTo()))
+                && (filter.minDuration() == null
+                        || movie.getDuration() != null && movie.getDuration() >= filter.minDuration())
+                && (filter.maxDuration() == null
+                        || movie.getDuration() != null && movie.getDuration() <= filter.maxDuration());
+
+        Comparator<Movie> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Movie> next = Comparator.comparing(SORTABLE.get(order.getProperty()),
+                    Comparator.nullsFirst(Comparator.naturalOrder()));
+            comparator = comparator.thenComparing(order.isAscending() ? next : next.reversed());
+        }
+        return movies.stream().filter(predicate).sorted(comparator).limit(limit).toList();
+    }
+
+    private static boolean releasedOnOrAfter(LocalDate releaseDate, LocalDate from) {
+        return releaseDate != null && !releaseDate.isBefore(from);
+    }
+
+    private static boolean releasedOnOrBefore(LocalDate releaseDate, LocalDate to) {
+        return releaseDate != null && !releaseDate.isAfter(to);
+    }
+
+    private static int bucket(String id, int buckets) {
+        int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & (buckets - 1);
+    }
+
+    private static void count(Map<String, Long> genres, Map<String, Long> pgRatings, Movie movie, long delta) {
+        adjust(genres, Objects.toString(movie.getGenre()), delta);
+        adjust(pgRatings, Objects.toString(movie.getPgRating()), delta);
+    }
+
+    private static void adjust(Map<String, Long> counts, String key, long delta) {
+        counts.compute(key, (ignored, count) -> {
+            long adjusted = (count == null ? 0 : count) + delta;
+            return adjusted == 0 ? null : adjusted;
+        });
+    }
+
+    // a copy of the chunk with the movie replaced, or left out when the replacement is null
+    private static int replace(List<Movie[]> chunks, int chunk, String id, Movie replacement) {
+        Movie[] movies = chunks.get(chunk);
+        for (int i = 0; i < movies.length; i++) {
+            if (movies[i].getId().equals(id)) {
+                Movie[] copy;
+                if (replacement != null) {
+                    copy = movies.clone();
+                    copy[i] = replacement;
+                } else {
+                    copy = new Movie[movies.length - 1];
+                    System.arraycopy(movies, 0, copy, 0, i);
+                    System.arraycopy(movies, i + 1, copy, i, movies.length - i - 1);
+                }
+                chunks.set(chunk, copy);
+                return chunk;
+            }
+        }
+        throw new IllegalStateException("Movie " + id + " is indexed in chunk " + chunk + " but not found there");
+    }
+
+    private static int append(List<Movie[]> chunks, Movie movie) {
+        int last = chunks.size() - 1;
+        if (last < 0 || chunks.get(last).length >= CHUNK_SIZE) {
+            chunks.add(new Movie[]{movie});
+            return last + 1;
+        }
+        Movie[] copy = Arrays.copyOf(chunks.get(last), chunks.get(last).length + 1);
+        copy[copy.length - 1] = movie;
+        chunks.set(last, copy);
+        return last;
+    }
+
+    private class Movies extends AbstractList<Movie> {
+
+        @Override
+        public Movie get(int index) {
+            Objects.checkIndex(index, size());
+            // the first chunk ending after the index
+            int low = 0;
+            int high = ends.length - 1;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (ends[middle] > index) {
+                    high = middle;
+                } else {
+                    low = middle + 1;
+                }
+            }
+            return chunks[low][index - (low == 0 ? 0 : ends[low - 1])];
+        }
+
+        @Override
+        public int size() {
+            return CatalogSnapshot.this.size();
+        }
+
+        @Override
+        public Iterator<Movie> iterator() {
+            return new Iterator<>() {
+
+                private int chunk;
+
+                private int position;
+
+                @Override
+                public boolean hasNext() {
+                    while (chunk < chunks.length && position == chunks[chunk].length) {
+                        chunk++;
+                        position = 0;
+                    }
+                    return chunk < chunks.length;
+                }
+
+                @Override
+                public Movie next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return chunks[chunk][position++];
+                }
+            };
+        }
+    }
+
+    private class ById extends AbstractMap<String, Movie> {
+
+        @Override
+        public Movie get(Object key) {
+            if (!(key instanceof String id)) {
+                return null;
+            }
+            Slot slot = buckets[bucket(id, buckets.length)].get(id);
+            return slot == null ? null : slot.movie();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public int size() {
+            return CatalogSnapshot.this.size();
+        }
+
+        @Override
+        public Set<Entry<String, Movie>> entrySet() {
+            return new AbstractSet<>() {
+
+                @Override
+                public Iterator<Entry<String, Movie>> iterator() {
+                    return Arrays.stream(buckets)
+                            .flatMap(bucket -> bucket.entrySet().stream())
+                            .map(entry -> (Entry<String, Movie>) new SimpleImmutableEntry<>(entry.getKey(),
+                                    entry.getValue().movie()))
+                            .iterator();
+                }
+
+                @Override
+                public int size() {
+                    return CatalogSnapshot.this.size();
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+package br.com.compass.pb.asynchers.compassflix.services.catalog;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMovieIndex;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary image of the catalog and the fuzzy name index, used for warm restarts. Big endian layout:
+ * <pre>
+ * magic "CFXS" | format version (short) | catalog version (long) | written at (epoch millis) | movie count (int)
+ * movies | name index terms (BK-tree, preorder) | CRC32 of everything before it (long)
+ * </pre>
+ * Files are written to a temporary sibling, forced to disk and atomically moved into place, and read back
+ * through a read-only memory mapping. A file that fails the checksum is rejected as a whole.
+ */
+public final class CatalogSnapshotFile {
+
+    private static final int MAGIC = 0x43465853;
+
+    private static final short FORMAT_VERSION = 1;
+
+    private static final int HEADER_BYTES = 4 + 2 + 8 + 8 + 4;
+
+    private static final long NULL_LONG = Long.MIN_VALUE;
+
+    private CatalogSnapshotFile() {
+    }
+
+    public record Contents(long version, Instant writtenAt, List<Movie> movies, FuzzyMovieIndex nameIndex) {
+    }
+
+    /**
+     * Returns the size of the written file. The movies are written before the index terms, so every token of
+     * a written name is already in the tree when the terms are taken.
+     */
+    public static long write(Path file, long version, Collection<Movie> movies, FuzzyMovieIndex nameIndex)
+            throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeShort(FORMAT_VERSION);
+            out.writeLong(version);
+            out.writeLong(System.currentTimeMillis());
+            out.writeInt(movies.size());
+            for (Movie movie : movies) {
+                writeMovie(out, movie);
+            }
+            nameIndex.writeTerms(out);
+            out.flush();
+
+            channel.write(ByteBuffer.allocate(Long.BYTES).putLong(crc.getValue()).flip());
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return Files.size(file);
+    }
+
+    public static Optional<Contents> read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        int checksumAt = buffer.limit() - Long.BYTES;
+        if (checksumAt < HEADER_BYTES) {
+            throw new IOException("Catalog snapshot " + file + " is truncated");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(0, checksumAt));
+        if (crc.getValue() != buffer.getLong(checksumAt)) {
+            throw new IOException("Catalog snapshot " + file + " failed its checksum");
+        }
+
+        ByteBuffer in = buffer.slice(0, checksumAt);
+        if (in.getInt() != MAGIC || in.getShort() != FORMAT_VERSION) {
+            throw new IOException("Catalog snapshot " + file + " has an unknown format");
+        }
+        long version = in.getLong();
+        Instant writtenAt = Instant.ofEpochMilli(in.getLong());
+        int count = in.getInt();
+        List<Movie> movies = new ArrayList<>(count);
+        Map<String, String> names = new LinkedHashMap<>(Math.max(16, count * 4 / 3 + 1));
+        for (int i = 0; i < count; i++) {
+            Movie movie = readMovie(in);
+            movies.add(movie);
+            names.put(movie.getId(), movie.getName());
+        }
+        FuzzyMovieIndex nameIndex = FuzzyMovieIndex.restore(in, names);
+        return Optional.of(new Contents(version, writtenAt, movies, nameIndex));
+    }
+
+    private static void writeMovie(DataOutputStream out, Movie movie) throws IOException {
+        writeString(out, movie.getId());
+        writeString(out, movie.getName());
+        writeString(out, movie.getDescription());
+        out.writeByte(movie.getGenre() == null ? -1 : movie.getGenre().code());
+        out.writeLong(movie.getDuration() == null ? NULL_LONG : movie.getDuration());
+        out.writeLong(movie.getReleaseDate() == null ? NULL_LONG : movie.getReleaseDate().toEpochDay());
+        out.writeByte(movie.getPgRating() == null ? -1 : movie.getPgRating().age());
+        Instant registrationDate = movie.getRegistrationDate();
+        out.writeLong(registrationDate == null ? NULL_LONG : registrationDate.getEpochSecond());
+        out.writeInt(registrationDate == null ? 0 : registrationDate.getNano());
+    }
+
+    private static Movie readMovie(ByteBuffer in) {
+        String id = readString(in);
+        String name = readString(in);
+        String description = readString(in);
+        byte genre = in.get();
+        long duration = in.getLong();
+        long releaseDate = in.getLong();
+        byte pgRating = in.get();
+        long registrationSeconds = in.getLong();
+        int registrationNanos = in.getInt();
+        return new Movie(id, name, description,
+                genre < 0 ? null : Genre.fromCode(genre),
+                duration == NULL_LONG ? null : duration,
+                releaseDate == NULL_LONG ? null : LocalDate.ofEpochDay(releaseDate),
+                pgRating < 0 ? null : PgRating.of(pgRating),
+                registrationSeconds == NULL_LONG ? null : Instant.ofEpochSecond(registrationSeconds, registrationNanos));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
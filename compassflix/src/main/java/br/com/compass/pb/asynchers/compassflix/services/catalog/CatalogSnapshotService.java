@@ -0,0 +1,140 @@
+package br.com.compass.pb.asynchers.compassflix.services.catalog;
+
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.CatalogCacheEvent;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the optional in-memory catalog snapshot. Writes in MovieService are applied as deltas through
+ * {@link MovieChangedEvent}, a periodic reconcile reloads everything from Mongo to pick up changes made by
+ * other nodes. Events that arrive while a reconcile is loading are replayed on top of the fresh snapshot.
+ */
+@Service
+@Slf4j
+public class CatalogSnapshotService {
+
+    private final MovieRepository repository;
+
+    private final boolean enabled;
+
+    private final Object writeLock = new Object();
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private volatile CatalogSnapshot snapshot;
+
+    private List<MovieChangedEvent> replayLog;
+
+    public CatalogSnapshotService(MovieRepository repository,
+                                  @Value("${compassflix.catalog.snapshot.enabled:false}") boolean enabled) {
+        this.repository = repository;
+        this.enabled = enabled;
+    }
+
+    public Optional<CatalogSnapshot> current() {
+        return Optional.ofNullable(snapshot);
+    }
+
+    // a snapshot restored by CatalogWarmStartService is reconciled in the background instead
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (enabled && snapshot == null) {
+            reconcile();
+        }
+    }
+
+    public void warm(CatalogSnapshot restored) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (snapshot == null) {
+                snapshot = restored;
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.catalog.snapshot.reconcile-interval:PT5M}",
+            fixedDelayString = "${compassflix.catalog.snapshot.reconcile-interval:PT5M}")
+    public void scheduledReconcile() {
+        if (enabled && snapshot != null) {
+            reconcile();
+        }
+    }
+
+    // one reconcile at a time, a second one would reset the replay log of the first
+    public void reconcile() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (writeLock) {
+                replayLog = new ArrayList<>();
+            }
+            long start = System.nanoTime();
+            CatalogSnapshot loaded;
+            try {
+                loaded = CatalogSnapshot.of(0, repository.findAll());
+            } catch (RuntimeException e) {
+                synchronized (writeLock) {
+                    replayLog = null;
+                }
+                log.error("### Could not reconcile catalog snapshot ###", e);
+                return;
+            }
+            CatalogSnapshot fresh;
+            synchronized (writeLock) {
+                long version = snapshot == null ? 1 : snapshot.version() + 1;
+                fresh = loaded.withVersion(version);
+                if (!replayLog.isEmpty()) {
+                    fresh = fresh.applyAll(replayLog);
+                }
+                replayLog = null;
+                snapshot = fresh;
+            }
+            CatalogCacheEvent.record("snapshot", CatalogCacheEvent.RELOAD, fresh.size());
+            log.info("### Catalog snapshot version {} loaded with {} movies in {} ms ###", fresh.version(),
+                    fresh.size(), (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            building.set(false);
+        }
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        onMoviesChanged(new MoviesBulkChangedEvent(List.of(event)));
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (replayLog != null) {
+                replayLog.addAll(event.changes());
+            }
+            if (snapshot != null) {
+                snapshot = snapshot.applyAll(event.changes());
+            }
+        }
+        CatalogCacheEvent.record("snapshot", CatalogCacheEvent.APPLY, event.changes().size());
+    }
+
+}
@@ -0,0 +1,171 @@
+package br.com.compass.pb.asynchers.compassflix.services.catalog;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.FuzzySearchService;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMovieIndex;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Warm restarts from a {@link CatalogSnapshotFile} on local disk. On startup, before the caches would load
+ * from Mongo, the file is mapped, movies registered after it are caught up through findRecent and the catalog
+ * snapshot and fuzzy name index are served from it right away. Updates and deletes made while the node was
+ * down are not visible to that catch-up, so a full rebuild from Mongo follows in the background.
+ * The file is rewritten periodically and on shutdown.
+ */
+@Service
+@Slf4j
+public class CatalogWarmStartService {
+
+    private final MovieRepository repository;
+
+    private final CatalogSnapshotService snapshotService;
+
+    private final FuzzySearchService fuzzySearchService;
+
+    private final boolean enabled;
+
+    private final Path file;
+
+    private final int catchUpPageSize;
+
+    public CatalogWarmStartService(MovieRepository repository, CatalogSnapshotService snapshotService,
+                                   FuzzySearchService fuzzySearchService,
+                                   @Value("${compassflix.catalog.warm-start.enabled:false}") boolean enabled,
+                                   @Value("${compassflix.catalog.warm-start.file:data/catalog-snapshot.bin}") Path file,
+                                   @Value("${compassflix.catalog.warm-start.catch-up-page-size:1000}") int catchUpPageSize) {
+        this.repository = repository;
+        this.snapshotService = snapshotService;
+        this.fuzzySearchService = fuzzySearchService;
+        this.enabled = enabled;
+        this.file = file;
+        this.catchUpPageSize = catchUpPageSize;
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled && warmUp()) {
+            Thread thread = new Thread(this::rebuildFromMongo, "catalog-warm-rebuild");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Returns false when there is no usable file and the caches have to load from Mongo as usual.
+     */
+    public boolean warmUp() {
+        long start = System.nanoTime();
+        Optional<CatalogSnapshotFile.Contents> contents;
+        try {
+            contents = CatalogSnapshotFile.read(file);
+        } catch (IOException | RuntimeException e) {
+            log.warn("### Ignoring catalog snapshot file {}, starting cold: {} ###", file, e.getMessage());
+            return false;
+        }
+        if (contents.isEmpty()) {
+            log.info("### No catalog snapshot file at {}, starting cold ###", file);
+            return false;
+        }
+        long loadedAt = System.nanoTime();
+
+        List<Movie> movies = new ArrayList<>(contents.get().movies());
+        FuzzyMovieIndex nameIndex = contents.get().nameIndex();
+        int caughtUp = catchUp(movies, nameIndex);
+
+        fuzzySearchService.warm(nameIndex);
+        snapshotService.warm(CatalogSnapshot.of(contents.get().version(), movies));
+        log.info("### Catalog warm start from {} written at {}: {} movies mapped in {} ms, {} caught up from Mongo, "
+                        + "ready in {} ms ###", file, contents.get().writtenAt(), contents.get().movies().size(),
+                (loadedAt - start) / 1_000_000, caughtUp, (System.nanoTime() - start) / 1_000_000);
+        return true;
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.catalog.warm-start.write-interval:PT10M}",
+            fixedDelayString = "${compassflix.catalog.warm-start.write-interval:PT10M}")
+    public void scheduledWrite() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    @PreDestroy
+    public void writeOnShutdown() {
+        if (enabled) {
+            write();
+        }
+    }
+
+    public synchronized void write() {
+        long start = System.nanoTime();
+        try {
+            Optional<CatalogSnapshot> snapshot = snapshotService.current();
+            Collection<Movie> movies = snapshot.map(CatalogSnapshot::movies).orElseGet(repository::findAll);
+            long version = snapshot.map(CatalogSnapshot::version).orElse(0L);
+            long bytes = CatalogSnapshotFile.write(file, version, movies, fuzzySearchService.index());
+            log.info("### Catalog snapshot file {} written with {} movies, {} bytes in {} ms ###", file,
+                    movies.size(), bytes, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.error("### Could not write catalog snapshot file {} ###", file, e);
+        }
+    }
+
+    // creates only, ordered by (registrationDate, id) like the recent feed
+    private int catchUp(List<Movie> movies, FuzzyMovieIndex nameIndex) {
+        Movie newest = movies.stream()
+                .filter(movie -> movie.getRegistrationDate() != null)
+                .max(Comparator.comparing(Movie::getRegistrationDate).thenComparing(Movie::getId))
+                .orElse(null);
+        Instant since = newest == null ? Instant.EPOCH : newest.getRegistrationDate();
+        String afterId = newest == null ? null : newest.getId();
+
+        int caughtUp = 0;
+        try {
+            List<Movie> page;
+            do {
+                page = repository.findRecent(since, afterId, catchUpPageSize);
+                for (Movie movie : page) {
+                    movies.add(movie);
+                    nameIndex.put(movie.getId(), movie.getName());
+                    since = movie.getRegistrationDate();
+                    afterId = movie.getId();
+                }
+                caughtUp += page.size();
+            } while (page.size() == catchUpPageSize);
+        } catch (RuntimeException e) {
+            log.warn("### Catalog catch up stopped after {} movies, serving the snapshot until the rebuild: {} ###",
+                    caughtUp, e.getMessage());
+        }
+        return caughtUp;
+    }
+
+    private void rebuildFromMongo() {
+        try {
+            if (snapshotService.isEnabled()) {
+                snapshotService.reconcile();
+            }
+            fuzzySearchService.rebuild();
+        } catch (RuntimeException e) {
+            log.error("### Background rebuild after warm start failed ###", e);
+        }
+    }
+
+}
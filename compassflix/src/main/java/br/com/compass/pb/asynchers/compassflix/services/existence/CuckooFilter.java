@@ -0,0 +1,201 @@
+package br.com.compass.pb.asynchers.compassflix.services.existence;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Approximate set membership with deletes: a cuckoo filter with four 16 bit fingerprints per bucket, a bucket
+ * packed into one long. A key that was added and not removed is always found; a key that was not is reported
+ * present with a probability of about 8 / 65536 times the load factor. Removing a key that was never added can
+ * remove another key's fingerprint, so callers only remove what they added.
+ * <p>
+ * Reads take an optimistic stamp and are retried under the read lock only when a write ran meanwhile, since an
+ * insert may be moving fingerprints between buckets. Once an insert finds no room after {@link #MAX_KICKS}
+ * relocations a fingerprint has been dropped, the filter is then saturated and answers every lookup with true.
+ */
+public final class CuckooFilter {
+
+    public static final int SLOTS = 4;
+
+    static final int MAX_KICKS = 500;
+
+    private static final double MAX_LOAD = 0.95;
+
+    private final StampedLock lock = new StampedLock();
+
+    private final long[] buckets;
+
+    private final int mask;
+
+    private long size;
+
+    private volatile boolean saturated;
+
+    public CuckooFilter(long expectedEntries) {
+        long needed = Math.max(1, (long) Math.ceil(expectedEntries / (SLOTS * MAX_LOAD)));
+        if (needed > 1 << 30) {
+            throw new IllegalArgumentException("Too many entries for one filter: " + expectedEntries);
+        }
+        int count = Integer.highestOneBit((int) needed);
+        if (count < needed) {
+            count <<= 1;
+        }
+        this.buckets = new long[count];
+        this.mask = count - 1;
+    }
+
+    /**
+     * 64 bit FNV-1a over the chars, finished with the murmur3 mix so every bit of the result depends on every char.
+     */
+    public static long hash(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Returns false when the filter saturated, it then answers every lookup with true.
+     */
+    public boolean add(long hash) {
+        long stamp = lock.writeLock();
+        try {
+            if (saturated) {
+                return false;
+            }
+            int fingerprint = fingerprint(hash);
+            int first = (int) hash & mask;
+            int second = alternate(first, fingerprint);
+            if (insert(first, fingerprint) || insert(second, fingerprint)) {
+                size++;
+                return true;
+            }
+            int bucket = ThreadLocalRandom.current().nextBoolean() ? first : second;
+            for (int kick = 0; kick < MAX_KICKS; kick++) {
+                int slot = ThreadLocalRandom.current().nextInt(SLOTS);
+                int evicted = slot(buckets[bucket], slot);
+                buckets[bucket] = withSlot(buckets[bucket], slot, fingerprint);
+                fingerprint = evicted;
+                bucket = alternate(bucket, fingerprint);
+                if (insert(bucket, fingerprint)) {
+                    size++;
+                    return true;
+                }
+            }
+            saturated = true;
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean remove(long hash) {
+        long stamp = lock.writeLock();
+        try {
+            int fingerprint = fingerprint(hash);
+            int first = (int) hash & mask;
+            if (delete(first, fingerprint) || delete(alternate(first, fingerprint), fingerprint)) {
+                size--;
+                return true;
+            }
+            return false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public boolean mightContain(long hash) {
+        int fingerprint = fingerprint(hash);
+        int first = (int) hash & mask;
+        int second = alternate(first, fingerprint);
+        long stamp = lock.tryOptimisticRead();
+        boolean found = saturated || contains(buckets[first], fingerprint) || contains(buckets[second], fingerprint);
+        if (lock.validate(stamp)) {
+            return found;
+        }
+        stamp = lock.readLock();
+        try {
+            return saturated || contains(buckets[first], fingerprint) || contains(buckets[second], fingerprint);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long capacity() {
+        return (long) buckets.length * SLOTS;
+    }
+
+    public long memoryBytes() {
+        return (long) buckets.length * Long.BYTES;
+    }
+
+    public boolean isSaturated() {
+        return saturated;
+    }
+
+    // never 0, that marks an empty slot
+    private static int fingerprint(long hash) {
+        int fingerprint = (int) (hash >>> 48);
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    // its own inverse, so either bucket leads to the other
+    private int alternate(int bucket, int fingerprint) {
+        return (bucket ^ (fingerprint * 0x5bd1e995)) & mask;
+    }
+
+    private boolean insert(int bucket, int fingerprint) {
+        long slots = buckets[bucket];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (slot(slots, slot) == 0) {
+                buckets[bucket] = withSlot(slots, slot, fingerprint);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean delete(int bucket, int fingerprint) {
+        long slots = buckets[bucket];
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (slot(slots, slot) == fingerprint) {
+                buckets[bucket] = withSlot(slots, slot, 0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(long slots, int fingerprint) {
+        for (int slot = 0; slot < SLOTS; slot++) {
+            if (slot(slots, slot) == fingerprint) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int slot(long slots, int slot) {
+        return (int) (slots >>> (slot * 16)) & 0xFFFF;
+    }
+
+    private static long withSlot(long slots, int slot, int fingerprint) {
+        int shift = slot * 16;
+        return (slots & ~(0xFFFFL << shift)) | ((long) fingerprint << shift);
+    }
+
+}
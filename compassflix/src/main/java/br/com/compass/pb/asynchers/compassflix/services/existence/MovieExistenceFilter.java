@@ -0,0 +1,373 @@
+package br.com.compass.pb.asynchers.compassflix.services.existence;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.IndexBuildEvent;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.Stream;
+
+/**
+ * Answers "does this movie possibly exist" from memory, so lookups of movies that do not exist skip Mongo.
+ * Ids and case folded names go into {@link CuckooFilter}s; name searches by fragment use a table of counters
+ * indexed by a hash of every three chars of every name, a fragment one of whose trigrams counts zero matches
+ * no name. Every answer is either "no" for certain or "maybe", and it is "maybe" until the first build is done.
+ * <p>
+ * The filters are built from a cursor once the application is ready and rebuilt periodically. Writes on this node
+ * are applied as they happen; during a build only what they add is replayed, a stale entry costs a query while
+ * a wrong removal would hide a movie. Movies registered by other nodes are caught up through findRecent, looking
+ * back catch-up-lag so late inserts are not missed. Without single-writer an id whose ObjectId was generated
+ * within catch-up-lag of the last catch up is a "maybe" too, it may have been created elsewhere since. Updates
+ * and deletes made by other nodes are only picked up by the next rebuild: a deleted movie keeps costing a query
+ * until then, but a name changed on another node would be reported missing. So names are only tracked with single-writer set, when this node is the only one writing; otherwise
+ * every name lookup is a "maybe". A filter that saturates answers "maybe" and is rebuilt larger.
+ */
+@Service
+@Slf4j
+public class MovieExistenceFilter {
+
+    private static final int TRIGRAM = 3;
+
+    // names and trigrams are null when names are not tracked
+    private record Filters(CuckooFilter ids, CuckooFilter names, AtomicIntegerArray trigrams) {
+    }
+
+    private final MovieRepository repository;
+
+    private final boolean enabled;
+
+    private final boolean singleWriter;
+
+    private final double headroom;
+
+    private final int cursorBatchSize;
+
+    private final int catchUpPageSize;
+
+    private final Duration catchUpLag;
+
+    private final int trigramCounters;
+
+    private final Clock clock;
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private final Object writeLock = new Object();
+
+    // ids this node added since the last build, so catch-up does not add them a second time
+    private final Map<String, Instant> recentlyAdded = new ConcurrentHashMap<>();
+
+    private volatile Filters filters;
+
+    private volatile Instant watermark;
+
+    private List<Movie> replayLog;
+
+    @Autowired
+    public MovieExistenceFilter(MovieRepository repository,
+                                @Value("${compassflix.existence-filter.enabled:true}") boolean enabled,
+                                @Value("${compassflix.existence-filter.single-writer:false}") boolean singleWriter,
+                                @Value("${compassflix.existence-filter.headroom:0.5}") double headroom,
+                                @Value("${compassflix.existence-filter.cursor-batch-size:1000}") int cursorBatchSize,
+                                @Value("${compassflix.existence-filter.catch-up-page-size:1000}") int catchUpPageSize,
+                                @Value("${compassflix.existence-filter.catch-up-lag:PT1M}") Duration catchUpLag,
+                                @Value("${compassflix.existence-filter.trigram-counters:1048576}") int trigramCounters) {
+        this(repository, enabled, singleWriter, headroom, cursorBatchSize, catchUpPageSize, catchUpLag, trigramCounters,
+                Clock.systemUTC());
+    }
+
+    MovieExistenceFilter(MovieRepository repository, boolean enabled, boolean singleWriter, double headroom,
+                         int cursorBatchSize, int catchUpPageSize, Duration catchUpLag, int trigramCounters,
+                         Clock clock) {
+        this.repository = repository;
+        this.enabled = enabled;
+        this.singleWriter = singleWriter;
+        this.headroom = Math.max(0, headroom);
+        this.cursorBatchSize = Math.max(1, cursorBatchSize);
+        this.catchUpPageSize = Math.max(1, catchUpPageSize);
+        this.catchUpLag = catchUpLag;
+        this.trigramCounters = Integer.highestOneBit(Math.max(1, trigramCounters));
+        this.clock = clock;
+    }
+
+    // answers "maybe" to everything, for services built without one
+    public static MovieExistenceFilter disabled() {
+        return new MovieExistenceFilter(null, false, false, 0, 1, 1, Duration.ZERO, 1, Clock.systemUTC());
+    }
+
+    public boolean mightExistById(String id) {
+        Filters current = filters;
+        return current == null || current.ids().mightContain(CuckooFilter.hash(id))
+                || (!singleWriter && mightBeCreatedElsewhere(id));
+    }
+
+    // another node may have created the id since the last catch up, its ObjectId tells when it was generated
+    private boolean mightBeCreatedElsewhere(String id) {
+        if (!ObjectId.isValid(id)) {
+            return false;
+        }
+        Instant generated = new ObjectId(id).getDate().toInstant();
+        return !generated.isBefore(watermark.minus(catchUpLag));
+    }
+
+    // the name as compared by equalsIgnoreCase
+    public boolean mightExistByName(String name) {
+        Filters current = filters;
+        return current == null || current.names() == null || current.names().mightContain(CuckooFilter.hash(fold(name)));
+    }
+
+    // whether some name may contain the fragment, ignoring case; only ASCII fragments are ever ruled out
+    public boolean mightExistByNameContaining(String fragment) {
+        Filters current = filters;
+        if (current == null || current.trigrams() == null || fragment.length() < TRIGRAM || !fragment.chars().allMatch(c -> c < 0x80)) {
+            return true;
+        }
+        String folded = fold(fragment);
+        for (int i = 0; i + TRIGRAM <= folded.length(); i++) {
+            if (current.trigrams().get(trigramIndex(folded, i, current.trigrams().length())) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isReady() {
+        return filters != null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            rebuildInBackground();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.existence-filter.rebuild-interval:PT1H}",
+            fixedDelayString = "${compassflix.existence-filter.rebuild-interval:PT1H}")
+    public void scheduledRebuild() {
+        if (enabled && filters != null) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (writeLock) {
+                replayLog = new ArrayList<>();
+            }
+            Instant started = clock.instant();
+            long start = System.nanoTime();
+            IndexBuildEvent recorded = new IndexBuildEvent();
+            recorded.begin();
+            Filters rebuilt;
+            long movies;
+            try {
+                rebuilt = newFilters(repository.count());
+                try (Stream<Movie> all = repository.streamAll(cursorBatchSize)) {
+                    movies = all.mapToLong(movie -> {
+                        add(rebuilt, movie);
+                        return 1;
+                    }).sum();
+                }
+            } catch (RuntimeException e) {
+                synchronized (writeLock) {
+                    replayLog = null;
+                }
+                log.error("### Could not build existence filter ###", e);
+                return;
+            }
+            synchronized (writeLock) {
+                replayLog.forEach(movie -> add(rebuilt, movie));
+                replayLog = null;
+                recentlyAdded.clear();
+                watermark = started;
+                filters = rebuilt;
+            }
+            recorded.index = "existence-filter";
+            recorded.movies = movies;
+            recorded.commit();
+            log.info("### Existence filter built over {} movies, {} KB, in {} ms ###", movies,
+                    memoryBytes(rebuilt) / 1024, (System.nanoTime() - start) / 1_000_000);
+            if (saturated(rebuilt)) {
+                log.warn("### Existence filter saturated while it was built, every lookup goes to the database ###");
+            }
+        } finally {
+            building.set(false);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.existence-filter.catch-up-interval:PT5S}",
+            fixedDelayString = "${compassflix.existence-filter.catch-up-interval:PT5S}")
+    public void catchUp() {
+        Filters current = filters;
+        if (!enabled || current == null || building.get()) {
+            return;
+        }
+        Instant now = clock.instant();
+        Instant since = watermark.minus(catchUpLag);
+        String afterId = null;
+        boolean saturated = false;
+        try {
+            List<Movie> page;
+            do {
+                page = repository.findRecent(since, afterId, catchUpPageSize);
+                synchronized (writeLock) {
+                    if (filters != current) {
+                        return;
+                    }
+                    for (Movie movie : page) {
+                        if (recentlyAdded.putIfAbsent(movie.getId(), now) == null) {
+                            saturated |= !add(current, movie);
+                        }
+                    }
+                }
+                if (!page.isEmpty()) {
+                    Movie last = page.get(page.size() - 1);
+                    since = last.getRegistrationDate();
+                    afterId = last.getId();
+                }
+            } while (page.size() == catchUpPageSize);
+        } catch (RuntimeException e) {
+            log.warn("### Could not catch up existence filter: {} ###", e.getMessage());
+            return;
+        }
+        watermark = now;
+        Instant forgotten = now.minus(catchUpLag.multipliedBy(2));
+        recentlyAdded.values().removeIf(addedAt -> addedAt.isBefore(forgotten));
+        if (saturated) {
+            rebuildInBackground();
+        }
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        onMoviesChanged(new MoviesBulkChangedEvent(List.of(event)));
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        boolean saturated = false;
+        synchronized (writeLock) {
+            Filters current = filters;
+            Instant now = clock.instant();
+            for (MovieChangedEvent change : event.changes()) {
+                Movie previous = change.previous();
+                // a movie the filter never saw is not taken out, that could take out another one
+                boolean known = current != null && previous != null
+                        && current.ids().mightContain(CuckooFilter.hash(previous.getId()));
+                // added before the previous version is taken out, lookups never miss a movie being updated
+                if (change.current() != null) {
+                    if (replayLog != null) {
+                        replayLog.add(change.current());
+                    }
+                    if (current != null) {
+                        saturated |= !add(current, change.current());
+                    }
+                    recentlyAdded.put(change.current().getId(), now);
+                }
+                if (known) {
+                    remove(current, previous);
+                }
+            }
+        }
+        if (saturated) {
+            rebuildInBackground();
+        }
+    }
+
+    /**
+     * Per code point upper then lower case, the comparison equalsIgnoreCase makes: two names are equal ignoring
+     * case exactly when their folds are equal.
+     */
+    public static String fold(String value) {
+        StringBuilder folded = new StringBuilder(value.length());
+        value.codePoints().forEach(c -> folded.appendCodePoint(Character.toLowerCase(Character.toUpperCase(c))));
+        return folded.toString();
+    }
+
+    private static long memoryBytes(Filters filters) {
+        long bytes = filters.ids().memoryBytes();
+        if (filters.names() != null) {
+            bytes += filters.names().memoryBytes() + (long) filters.trigrams().length() * Integer.BYTES;
+        }
+        return bytes;
+    }
+
+    private Filters newFilters(long expectedMovies) {
+        long capacity = (long) (expectedMovies * (1 + headroom)) + 1024;
+        if (!singleWriter) {
+            return new Filters(new CuckooFilter(capacity), null, null);
+        }
+        return new Filters(new CuckooFilter(capacity), new CuckooFilter(capacity),
+                new AtomicIntegerArray(trigramCounters));
+    }
+
+    private static boolean add(Filters filters, Movie movie) {
+        boolean added = filters.ids().add(CuckooFilter.hash(movie.getId()));
+        if (filters.names() != null && movie.getName() != null) {
+            String folded = fold(movie.getName());
+            for (int i = 0; i + TRIGRAM <= folded.length(); i++) {
+                filters.trigrams().incrementAndGet(trigramIndex(folded, i, filters.trigrams().length()));
+            }
+            added &= filters.names().add(CuckooFilter.hash(folded));
+        }
+        return added;
+    }
+
+    private static void remove(Filters filters, Movie movie) {
+        filters.ids().remove(CuckooFilter.hash(movie.getId()));
+        if (filters.names() != null && movie.getName() != null) {
+            String folded = fold(movie.getName());
+            filters.names().remove(CuckooFilter.hash(folded));
+            for (int i = 0; i + TRIGRAM <= folded.length(); i++) {
+                filters.trigrams().getAndUpdate(trigramIndex(folded, i, filters.trigrams().length()),
+                        count -> Math.max(0, count - 1));
+            }
+        }
+    }
+
+    private static int trigramIndex(String folded, int start, int counters) {
+        long trigram = ((long) folded.charAt(start) << 32) | ((long) folded.charAt(start + 1) << 16)
+                | folded.charAt(start + 2);
+        trigram *= 0x9e3779b97f4a7c15L;
+        return (int) (trigram >>> 32) & (counters - 1);
+    }
+
+    private static boolean saturated(Filters filters) {
+        return filters.ids().isSaturated() || (filters.names() != null && filters.names().isSaturated());
+    }
+
+    private void rebuildInBackground() {
+        if (building.get()) {
+            return;
+        }
+        Thread builder = new Thread(this::rebuild, "existence-filter-builder");
+        builder.setDaemon(true);
+        builder.start();
+    }
+
+}
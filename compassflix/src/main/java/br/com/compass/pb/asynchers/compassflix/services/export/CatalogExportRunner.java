@@ -0,0 +1,53 @@
+package br.com.compass.pb.asynchers.compassflix.services.export;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.ExportManifestDto;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Command line export: started with --export, or --export=&lt;directory&gt;, the application exports the catalog
+ * and exits instead of serving requests. See the README for the flags that keep it from starting the web server.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@RequiredArgsConstructor
+@Slf4j
+public class CatalogExportRunner implements ApplicationRunner {
+
+    public static final String OPTION = "export";
+
+    private final CatalogExportService exportService;
+
+    private final ConfigurableApplicationContext context;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption(OPTION)) {
+            return;
+        }
+        int exitCode = 0;
+        try {
+            List<String> values = args.getOptionValues(OPTION);
+            ExportManifestDto manifest = values.isEmpty() || values.get(0).isBlank()
+                    ? exportService.export()
+                    : exportService.export(Path.of(values.get(0)));
+            log.info("### Export manifest written to {} ###", Path.of(manifest.directory(), CatalogExportService.MANIFEST));
+        } catch (Exception e) {
+            log.error("### Catalog export failed ###", e);
+            exitCode = 1;
+        }
+        int status = exitCode;
+        System.exit(SpringApplication.exit(context, () -> status));
+    }
+
+}
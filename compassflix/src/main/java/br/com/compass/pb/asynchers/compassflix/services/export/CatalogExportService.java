@@ -0,0 +1,235 @@
+package br.com.compass.pb.asynchers.compassflix.services.export;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.ExportManifestDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.exceptions.ExportInProgressException;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Exports the catalog for analytics as {@link ColumnarMovieFile} partitions plus a manifest.json describing them.
+ * Movies are read once through a cursor and handed out to the partitions one row group at a time, round robin.
+ * Every partition has its own writer thread, so encoding and compression run in parallel while at most two row
+ * groups per partition are held in memory, whatever the size of the catalog. One export runs at a time, another
+ * one started meanwhile is rejected.
+ */
+@Service
+@Slf4j
+public class CatalogExportService {
+
+    public static final String MANIFEST = "manifest.json";
+
+    private static final DateTimeFormatter DIRECTORY_NAME =
+            DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private final MovieRepository repository;
+
+    private final ObjectMapper objectMapper;
+
+    private final Path directory;
+
+    private final int partitions;
+
+    private final int rowGroupSize;
+
+    private final int cursorBatchSize;
+
+    private final int compressionLevel;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public CatalogExportService(MovieRepository repository, ObjectMapper objectMapper,
+                                @Value("${compassflix.export.directory:data/exports}") Path directory,
+                                @Value("${compassflix.export.partitions:4}") int partitions,
+                                @Value("${compassflix.export.row-group-size:65536}") int rowGroupSize,
+                                @Value("${compassflix.export.cursor-batch-size:1000}") int cursorBatchSize,
+                                @Value("${compassflix.export.compression-level:6}") int compressionLevel) {
+        this.repository = repository;
+        this.objectMapper = objectMapper;
+        this.directory = directory;
+        this.partitions = Math.max(1, partitions);
+        this.rowGroupSize = Math.max(1, rowGroupSize);
+        this.cursorBatchSize = Math.max(1, cursorBatchSize);
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Exports into a new directory, named after the current time, under the configured export directory.
+     */
+    public ExportManifestDto export() throws IOException {
+        return exclusively(() -> {
+            Instant now = Instant.now();
+            return write(newDirectory(now), now);
+        });
+    }
+
+    public ExportManifestDto export(Path target) throws IOException {
+        return exclusively(() -> write(target, Instant.now()));
+    }
+
+    private interface Export {
+        ExportManifestDto run() throws IOException;
+    }
+
+    private ExportManifestDto exclusively(Export export) throws IOException {
+        if (!running.compareAndSet(false, true)) {
+            throw new ExportInProgressException("A catalog export is already running, retry once it is done");
+        }
+        try {
+            return export.run();
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // a suffix tells apart exports started within the same millisecond
+    private Path newDirectory(Instant now) throws IOException {
+        Files.createDirectories(directory);
+        String name = DIRECTORY_NAME.format(now);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return Files.createDirectory(directory.resolve(attempt == 0 ? name : name + "-" + attempt));
+            } catch (FileAlreadyExistsException e) {
+                // taken, try the next suffix
+            }
+        }
+    }
+
+    private ExportManifestDto write(Path target, Instant createdAt) throws IOException {
+        log.info("### Exporting catalog to {} ###", target);
+        long start = System.nanoTime();
+        Files.createDirectories(target);
+        ColumnarMovieFile.Writer[] writers = new ColumnarMovieFile.Writer[partitions];
+        ExecutorService[] executors = new ExecutorService[partitions];
+        for (int i = 0; i < partitions; i++) {
+            int partition = i;
+            executors[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "catalog-export-" + partition);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        Semaphore inFlight = new Semaphore(2 * partitions);
+        List<Future<?>> pending = new ArrayList<>();
+        try {
+            try (Stream<Movie> movies = repository.streamAll(cursorBatchSize)) {
+                Iterator<Movie> cursor = movies.iterator();
+                int next = 0;
+                while (cursor.hasNext()) {
+                    List<Movie> rowGroup = new ArrayList<>(Math.min(rowGroupSize, 8192));
+                    while (rowGroup.size() < rowGroupSize && cursor.hasNext()) {
+                        rowGroup.add(cursor.next());
+                    }
+                    int partition = next;
+                    next = (next + 1) % partitions;
+                    inFlight.acquire();
+                    pending.add(executors[partition].submit(() -> {
+                        try {
+                            if (writers[partition] == null) {
+                                writers[partition] = new ColumnarMovieFile.Writer(
+                                        target.resolve(fileName(partition)), compressionLevel);
+                            }
+                            writers[partition].writeRowGroup(rowGroup);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }));
+                    for (Iterator<Future<?>> written = pending.iterator(); written.hasNext(); ) {
+                        Future<?> future = written.next();
+                        if (future.isDone()) {
+                            future.get();
+                            written.remove();
+                        }
+                    }
+                }
+            }
+            List<Future<ExportManifestDto.Partition>> finished = new ArrayList<>();
+            for (int i = 0; i < partitions; i++) {
+                int partition = i;
+                finished.add(executors[i].submit(() -> {
+                    ColumnarMovieFile.Writer writer = writers[partition];
+                    if (writer == null) {
+                        return null;
+                    }
+                    long bytes = writer.finish();
+                    return new ExportManifestDto.Partition(fileName(partition), writer.rows(), writer.rowGroups(), bytes);
+                }));
+            }
+            for (Future<?> future : pending) {
+                future.get();
+            }
+            List<ExportManifestDto.Partition> written = new ArrayList<>();
+            for (Future<ExportManifestDto.Partition> future : finished) {
+                ExportManifestDto.Partition partition = future.get();
+                if (partition != null) {
+                    written.add(partition);
+                }
+            }
+            ExportManifestDto manifest = new ExportManifestDto("compassflix-columnar", ColumnarMovieFile.FORMAT_VERSION,
+                    createdAt, target.toString(), written.stream().mapToLong(ExportManifestDto.Partition::rows).sum(),
+                    Arrays.stream(ColumnarMovieFile.Column.values()).map(Enum::name).toList(), written);
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(target.resolve(MANIFEST).toFile(), manifest);
+            log.info("### Exported {} movies in {} partitions in {} ms ###", manifest.rows(), written.size(),
+                    (System.nanoTime() - start) / 1_000_000);
+            return manifest;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Catalog export was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException io) {
+                throw io.getCause();
+            }
+            throw new IOException("Catalog export failed", e.getCause());
+        } finally {
+            for (int i = 0; i < partitions; i++) {
+                int partition = i;
+                executors[i].submit(() -> {
+                    if (writers[partition] != null) {
+                        writers[partition].close();
+                    }
+                    return null;
+                });
+                executors[i].shutdown();
+            }
+            // leaves no temporary files behind once the export has returned or failed
+            for (ExecutorService executor : executors) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private static String fileName(int partition) {
+        return "part-%05d%s".formatted(partition, ColumnarMovieFile.EXTENSION);
+    }
+
+}
@@ -0,0 +1,426 @@
+package br.com.compass.pb.asynchers.compassflix.services.export;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Columnar file for analytics exports of the catalog. Rows are written in row groups and inside a group every
+ * column is its own deflate compressed chunk, so scanning one column never inflates the others. Big endian:
+ * <pre>
+ * magic "CFXC" | format version (short)
+ * row groups, each one chunk per column in {@link Column} order
+ * footer: rows (long) | genre labels | pg rating labels | row group count (int)
+ *         per row group: rows (int), per column: offset (long), compressed length (int), raw length (int)
+ * footer length (int) | magic
+ * </pre>
+ * Inside a chunk, genre and pg rating take one byte per row, an index into the dictionaries of the footer or -1
+ * for none. The other columns start with a presence bitmap, one bit per row, followed by the values of the rows
+ * that have one: strings as length and UTF-8 bytes, duration and registration date (epoch millis) as int64 and
+ * release date as int32 epoch days.
+ */
+public final class ColumnarMovieFile {
+
+    public static final String EXTENSION = ".cfxc";
+
+    public static final short FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x43465843;
+
+    private static final int TRAILER_BYTES = 4 + 4;
+
+    public enum Column {
+        ID, NAME, DESCRIPTION, GENRE, DURATION, RELEASE_DATE, PG_RATING, REGISTRATION_DATE
+    }
+
+    private static final Column[] COLUMNS = Column.values();
+
+    private record Chunk(long offset, int compressedLength, int rawLength) {
+    }
+
+    private record RowGroup(int rows, Chunk[] chunks) {
+    }
+
+    private ColumnarMovieFile() {
+    }
+
+    /**
+     * Not thread safe. The file is written to a temporary sibling and only moved into place by {@link #finish()};
+     * closing an unfinished writer deletes it.
+     */
+    public static final class Writer implements Closeable {
+
+        private final Path file;
+
+        private final Path tmp;
+
+        private final FileChannel channel;
+
+        private final Deflater deflater;
+
+        private final Map<Genre, Integer> genres = new LinkedHashMap<>();
+
+        private final Map<PgRating, Integer> pgRatings = new LinkedHashMap<>();
+
+        private final List<RowGroup> rowGroups = new ArrayList<>();
+
+        private long position;
+
+        private long rows;
+
+        private boolean finished;
+
+        public Writer(Path file, int compressionLevel) throws IOException {
+            this.file = file;
+            this.tmp = file.resolveSibling(file.getFileName() + ".tmp");
+            this.channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.deflater = new Deflater(compressionLevel);
+            position = write(ByteBuffer.allocate(6).putInt(MAGIC).putShort(FORMAT_VERSION).flip());
+        }
+
+        public void writeRowGroup(List<Movie> movies) throws IOException {
+            if (movies.isEmpty()) {
+                return;
+            }
+            Chunk[] chunks = new Chunk[COLUMNS.length];
+            for (Column column : COLUMNS) {
+                byte[] raw = encode(column, movies);
+                ByteBuffer compressed = deflate(raw);
+                int length = compressed.remaining();
+                chunks[column.ordinal()] = new Chunk(position, length, raw.length);
+                position += write(compressed);
+            }
+            rowGroups.add(new RowGroup(movies.size(), chunks));
+            rows += movies.size();
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        public int rowGroups() {
+            return rowGroups.size();
+        }
+
+        /**
+         * Writes the footer, moves the file into place and returns its size.
+         */
+        public long finish() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream footer = new DataOutputStream(bytes);
+            footer.writeLong(rows);
+            writeLabels(footer, genres.keySet().stream().map(Genre::label).toList());
+            writeLabels(footer, pgRatings.keySet().stream().map(PgRating::toString).toList());
+            footer.writeInt(rowGroups.size());
+            for (RowGroup rowGroup : rowGroups) {
+                footer.writeInt(rowGroup.rows());
+                for (Chunk chunk : rowGroup.chunks()) {
+                    footer.writeLong(chunk.offset());
+                    footer.writeInt(chunk.compressedLength());
+                    footer.writeInt(chunk.rawLength());
+                }
+            }
+            footer.writeInt(bytes.size());
+            footer.writeInt(MAGIC);
+            write(ByteBuffer.wrap(bytes.toByteArray()));
+            channel.force(true);
+            channel.close();
+            deflater.end();
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            finished = true;
+            return Files.size(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                channel.close();
+                deflater.end();
+                Files.deleteIfExists(tmp);
+            }
+        }
+
+        private byte[] encode(Column column, List<Movie> movies) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(movies.size() * 8);
+            DataOutputStream out = new DataOutputStream(bytes);
+            switch (column) {
+                case GENRE -> {
+                    for (Movie movie : movies) {
+                        out.writeByte(movie.getGenre() == null ? -1 : index(genres, movie.getGenre()));
+                    }
+                }
+                case PG_RATING -> {
+                    for (Movie movie : movies) {
+                        out.writeByte(movie.getPgRating() == null ? -1 : index(pgRatings, movie.getPgRating()));
+                    }
+                }
+                default -> {
+                    List<Object> values = new ArrayList<>(movies.size());
+                    byte[] present = new byte[(movies.size() + 7) / 8];
+                    for (int i = 0; i < movies.size(); i++) {
+                        Object value = value(column, movies.get(i));
+                        if (value != null) {
+                            present[i >>> 3] |= (byte) (1 << (i & 7));
+                            values.add(value);
+                        }
+                    }
+                    out.write(present);
+                    for (Object value : values) {
+                        switch (column) {
+                            case DURATION -> out.writeLong((Long) value);
+                            case RELEASE_DATE -> out.writeInt((int) ((LocalDate) value).toEpochDay());
+                            case REGISTRATION_DATE -> out.writeLong(((Instant) value).toEpochMilli());
+                            default -> {
+                                byte[] utf8 = ((String) value).getBytes(StandardCharsets.UTF_8);
+                                out.writeInt(utf8.length);
+                                out.write(utf8);
+                            }
+                        }
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private ByteBuffer deflate(byte[] raw) {
+            deflater.reset();
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buffer = new byte[Math.max(64, raw.length / 2)];
+            int length = 0;
+            while (!deflater.finished()) {
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+                length += deflater.deflate(buffer, length, buffer.length - length);
+            }
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+
+        private int write(ByteBuffer buffer) throws IOException {
+            int length = buffer.remaining();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            return length;
+        }
+
+        private static <T> int index(Map<T, Integer> dictionary, T value) {
+            return dictionary.computeIfAbsent(value, key -> dictionary.size());
+        }
+
+        private static void writeLabels(DataOutputStream out, List<String> labels) throws IOException {
+            out.writeShort(labels.size());
+            for (String label : labels) {
+                out.writeUTF(label);
+            }
+        }
+
+    }
+
+    /**
+     * A finished file, memory mapped. Columns are decoded on demand and only the chunks of the requested column
+     * are inflated.
+     */
+    public static final class Reader {
+
+        private final ByteBuffer buffer;
+
+        private final long rows;
+
+        private final List<Genre> genres;
+
+        private final List<PgRating> pgRatings;
+
+        private final List<RowGroup> rowGroups;
+
+        private Reader(ByteBuffer buffer, long rows, List<Genre> genres, List<PgRating> pgRatings,
+                       List<RowGroup> rowGroups) {
+            this.buffer = buffer;
+            this.rows = rows;
+            this.genres = genres;
+            this.pgRatings = pgRatings;
+            this.rowGroups = rowGroups;
+        }
+
+        public static Reader open(Path file) throws IOException {
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            if (buffer.limit() < 6 + TRAILER_BYTES || buffer.getInt(0) != MAGIC
+                    || buffer.getInt(buffer.limit() - 4) != MAGIC) {
+                throw new IOException(file + " is not a columnar movie file");
+            }
+            if (buffer.getShort(4) != FORMAT_VERSION) {
+                throw new IOException(file + " has an unknown format version " + buffer.getShort(4));
+            }
+            int footerLength = buffer.getInt(buffer.limit() - TRAILER_BYTES);
+            ByteBuffer footer = buffer.slice(buffer.limit() - TRAILER_BYTES - footerLength, footerLength);
+            long rows = footer.getLong();
+            List<Genre> genres = readLabels(footer).stream().map(Genre::fromLabel).toList();
+            List<PgRating> pgRatings = readLabels(footer).stream().map(PgRating::parse).toList();
+            int count = footer.getInt();
+            List<RowGroup> rowGroups = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int groupRows = footer.getInt();
+                Chunk[] chunks = new Chunk[COLUMNS.length];
+                for (int c = 0; c < chunks.length; c++) {
+                    chunks[c] = new Chunk(footer.getLong(), footer.getInt(), footer.getInt());
+                }
+                rowGroups.add(new RowGroup(groupRows, chunks));
+            }
+            return new Reader(buffer, rows, genres, pgRatings, rowGroups);
+        }
+
+        public long rows() {
+            return rows;
+        }
+
+        public int rowGroups() {
+            return rowGroups.size();
+        }
+
+        /**
+         * Values of one column over the whole file, null where a movie has none: Strings, Genre, Long duration,
+         * LocalDate release date, PgRating or Instant registration date.
+         */
+        public List<Object> column(Column column) throws IOException {
+            List<Object> values = new ArrayList<>((int) rows);
+            Inflater inflater = new Inflater();
+            try {
+                for (RowGroup rowGroup : rowGroups) {
+                    decode(column, rowGroup.rows(), inflate(inflater, rowGroup.chunks()[column.ordinal()]), values);
+                }
+            } finally {
+                inflater.end();
+            }
+            return values;
+        }
+
+        public List<Movie> movies() throws IOException {
+            List<List<Object>> columns = new ArrayList<>(COLUMNS.length);
+            for (Column column : COLUMNS) {
+                columns.add(column(column));
+            }
+            List<Movie> movies = new ArrayList<>((int) rows);
+            for (int i = 0; i < rows; i++) {
+                movies.add(new Movie(
+                        (String) columns.get(Column.ID.ordinal()).get(i),
+                        (String) columns.get(Column.NAME.ordinal()).get(i),
+                        (String) columns.get(Column.DESCRIPTION.ordinal()).get(i),
+                        (Genre) columns.get(Column.GENRE.ordinal()).get(i),
+                        (Long) columns.get(Column.DURATION.ordinal()).get(i),
+                        (LocalDate) columns.get(Column.RELEASE_DATE.ordinal()).get(i),
+                        (PgRating) columns.get(Column.PG_RATING.ordinal()).get(i),
+                        (Instant) columns.get(Column.REGISTRATION_DATE.ordinal()).get(i)));
+            }
+            return movies;
+        }
+
+        private ByteBuffer inflate(Inflater inflater, Chunk chunk) throws IOException {
+            inflater.reset();
+            inflater.setInput(buffer.slice((int) chunk.offset(), chunk.compressedLength()));
+            byte[] raw = new byte[chunk.rawLength()];
+            try {
+                int length = 0;
+                while (length < raw.length && !inflater.finished()) {
+                    length += inflater.inflate(raw, length, raw.length - length);
+                }
+                if (length != raw.length) {
+                    throw new IOException("Column chunk at " + chunk.offset() + " is truncated");
+                }
+            } catch (DataFormatException e) {
+                throw new IOException("Column chunk at " + chunk.offset() + " is corrupt", e);
+            }
+            return ByteBuffer.wrap(raw);
+        }
+
+        private void decode(Column column, int groupRows, ByteBuffer in, List<Object> values) {
+            switch (column) {
+                case GENRE -> {
+                    for (int i = 0; i < groupRows; i++) {
+                        byte index = in.get();
+                        values.add(index < 0 ? null : genres.get(index));
+                    }
+                }
+                case PG_RATING -> {
+                    for (int i = 0; i < groupRows; i++) {
+                        byte index = in.get();
+                        values.add(index < 0 ? null : pgRatings.get(index));
+                    }
+                }
+                default -> {
+                    byte[] present = new byte[(groupRows + 7) / 8];
+                    in.get(present);
+                    for (int i = 0; i < groupRows; i++) {
+                        if ((present[i >>> 3] & (1 << (i & 7))) == 0) {
+                            values.add(null);
+                            continue;
+                        }
+                        values.add(switch (column) {
+                            case DURATION -> in.getLong();
+                            case RELEASE_DATE -> LocalDate.ofEpochDay(in.getInt());
+                            case REGISTRATION_DATE -> Instant.ofEpochMilli(in.getLong());
+                            default -> {
+                                byte[] utf8 = new byte[in.getInt()];
+                                in.get(utf8);
+                                yield new String(utf8, StandardCharsets.UTF_8);
+                            }
+                        });
+                    }
+                }
+            }
+        }
+
+        private static List<String> readLabels(ByteBuffer in) {
+            int count = in.getShort();
+            List<String> labels = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] utf8 = new byte[in.getShort() & 0xFFFF];
+                in.get(utf8);
+                labels.add(new String(utf8, StandardCharsets.UTF_8));
+            }
+            return labels;
+        }
+
+    }
+
+    private static Object value(Column column, Movie movie) {
+        return switch (column) {
+            case ID -> movie.getId();
+            case NAME -> movie.getName();
+            case DESCRIPTION -> movie.getDescription();
+            case GENRE -> movie.getGenre();
+            case DURATION -> movie.getDuration();
+            case RELEASE_DATE -> movie.getReleaseDate();
+            case PG_RATING -> movie.getPgRating();
+            case REGISTRATION_DATE -> movie.getRegistrationDate();
+        };
+    }
+
+}
@@ -0,0 +1,237 @@
+package br.com.compass.pb.asynchers.compassflix.services.feed;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogChangeDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.FeedStatsDto;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes every {@link MovieChangedEvent} to the feed subscribers. Publishing never blocks the writer: each
+ * subscriber has a bounded buffer drained by a small dispatcher pool, and a subscriber whose buffer is full is
+ * disconnected instead of slowing everybody down. The last changes are kept so a reconnecting client can resume
+ * from its Last-Event-ID, clients that fell further behind get a reset event and resync through /movies/recent.
+ */
+@Service
+@Slf4j
+public class CatalogChangeBroadcaster {
+
+    private static final Object HEARTBEAT = new Object();
+
+    private final int bufferSize;
+
+    private final int maxSubscribers;
+
+    private final int replaySize;
+
+    private final Duration emitterTimeout;
+
+    private final ExecutorService dispatcher;
+
+    private final Object lock = new Object();
+
+    private final ArrayDeque<CatalogChangeDto> history = new ArrayDeque<>();
+
+    private final Map<Long, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    private final AtomicLong subscriberIds = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private long sequence;
+
+    public CatalogChangeBroadcaster(@Value("${compassflix.feed.subscriber-buffer:256}") int bufferSize,
+                                    @Value("${compassflix.feed.max-subscribers:1000}") int maxSubscribers,
+                                    @Value("${compassflix.feed.replay-size:1024}") int replaySize,
+                                    @Value("${compassflix.feed.dispatch-threads:8}") int dispatchThreads,
+                                    @Value("${compassflix.feed.emitter-timeout:PT30M}") Duration emitterTimeout) {
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        this.replaySize = replaySize;
+        this.emitterTimeout = emitterTimeout;
+        AtomicInteger threads = new AtomicInteger();
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads, runnable -> {
+            Thread thread = new Thread(runnable, "feed-dispatcher-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Duration emitterTimeout() {
+        return emitterTimeout;
+    }
+
+    /**
+     * Returns the subscriber id, or empty when the subscriber limit is reached.
+     */
+    public OptionalLong subscribe(ChangeSink sink, Long lastEventId) {
+        Subscriber subscriber;
+        synchronized (lock) {
+            if (subscribers.size() >= maxSubscribers) {
+                return OptionalLong.empty();
+            }
+            subscriber = new Subscriber(subscriberIds.incrementAndGet(), sink, bufferSize);
+            // an id ahead of the sequence was issued before a restart, the client cannot tell what it missed
+            if (lastEventId != null && lastEventId > sequence) {
+                subscriber.buffer.offer(new Reset(sequence));
+            } else if (lastEventId != null && lastEventId < sequence) {
+                long oldest = history.isEmpty() ? sequence + 1 : history.peekFirst().sequence();
+                if (lastEventId + 1 < oldest || sequence - lastEventId > bufferSize) {
+                    subscriber.buffer.offer(new Reset(sequence));
+                } else {
+                    history.stream()
+                            .filter(change -> change.sequence() > lastEventId)
+                            .forEach(subscriber.buffer::offer);
+                }
+            }
+            subscribers.put(subscriber.id, subscriber);
+        }
+        schedule(subscriber);
+        return OptionalLong.of(subscriber.id);
+    }
+
+    public void unsubscribe(long id) {
+        Subscriber subscriber = subscribers.remove(id);
+        if (subscriber != null) {
+            subscriber.closed = true;
+            schedule(subscriber);
+        }
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        synchronized (lock) {
+            CatalogChangeDto change = new CatalogChangeDto(++sequence, event.type(), event.movieId(),
+                    event.current(), Instant.now());
+            history.addLast(change);
+            if (history.size() > replaySize) {
+                history.removeFirst();
+            }
+            subscribers.values().forEach(subscriber -> enqueue(subscriber, change));
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        event.changes().forEach(this::onMovieChanged);
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.feed.heartbeat-interval:PT15S}",
+            fixedDelayString = "${compassflix.feed.heartbeat-interval:PT15S}")
+    public void heartbeat() {
+        subscribers.values().forEach(subscriber -> enqueue(subscriber, HEARTBEAT));
+    }
+
+    public FeedStatsDto stats() {
+        synchronized (lock) {
+            return new FeedStatsDto(subscribers.size(), maxSubscribers, sequence, dropped.get());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        subscribers.keySet().forEach(this::unsubscribe);
+        dispatcher.shutdown();
+    }
+
+    private void enqueue(Subscriber subscriber, Object message) {
+        if (subscriber.buffer.offer(message)) {
+            schedule(subscriber);
+        } else if (subscribers.remove(subscriber.id) != null) {
+            dropped.incrementAndGet();
+            log.warn("### Dropping feed subscriber {}, {} changes are waiting to be sent ###", subscriber.id,
+                    subscriber.buffer.size());
+            subscriber.closed = true;
+            schedule(subscriber);
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+
+    // at most one drain per subscriber runs at a time, guarded by the scheduled flag
+    private void drain(Subscriber subscriber) {
+        while (true) {
+            Object message;
+            while (!subscriber.closed && (message = subscriber.buffer.poll()) != null) {
+                try {
+                    deliver(subscriber.sink, message);
+                } catch (IOException | RuntimeException e) {
+                    log.info("### Feed subscriber {} disconnected: {} ###", subscriber.id, e.getMessage());
+                    subscribers.remove(subscriber.id);
+                    subscriber.closed = true;
+                }
+            }
+            if (subscriber.closed) {
+                subscriber.buffer.clear();
+                try {
+                    subscriber.sink.close();
+                } catch (RuntimeException e) {
+                    log.debug("### Could not close feed subscriber {}: {} ###", subscriber.id, e.getMessage());
+                }
+                return;
+            }
+            subscriber.scheduled.set(false);
+            if (subscriber.buffer.isEmpty() || !subscriber.scheduled.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private static void deliver(ChangeSink sink, Object message) throws IOException {
+        if (message instanceof CatalogChangeDto change) {
+            sink.send(change);
+        } else if (message instanceof Reset reset) {
+            sink.reset(reset.sequence());
+        } else {
+            sink.heartbeat();
+        }
+    }
+
+    private record Reset(long sequence) {
+    }
+
+    private static final class Subscriber {
+
+        private final long id;
+
+        private final ChangeSink sink;
+
+        private final BlockingQueue<Object> buffer;
+
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        private volatile boolean closed;
+
+        private Subscriber(long id, ChangeSink sink, int bufferSize) {
+            this.id = id;
+            this.sink = sink;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+    }
+
+}
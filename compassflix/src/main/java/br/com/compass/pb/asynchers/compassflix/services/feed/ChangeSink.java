@@ -0,0 +1,22 @@
+package br.com.compass.pb.asynchers.compassflix.services.feed;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogChangeDto;
+
+import java.io.IOException;
+
+/**
+ * Connection of one feed subscriber. Calls come from a single dispatcher thread at a time and may block on the
+ * network, a failing call disconnects the subscriber.
+ */
+public interface ChangeSink {
+
+    void send(CatalogChangeDto change) throws IOException;
+
+    // the subscriber is behind the retained history and has to resync through /movies/recent
+    void reset(long sequence) throws IOException;
+
+    void heartbeat() throws IOException;
+
+    void close();
+
+}
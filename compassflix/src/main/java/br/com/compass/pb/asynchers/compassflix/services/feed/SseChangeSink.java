@@ -0,0 +1,43 @@
+package br.com.compass.pb.asynchers.compassflix.services.feed;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogChangeDto;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+
+public class SseChangeSink implements ChangeSink {
+
+    private final SseEmitter emitter;
+
+    public SseChangeSink(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void send(CatalogChangeDto change) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(change.sequence()))
+                .name(change.type().name().toLowerCase())
+                .data(change, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void reset(long sequence) throws IOException {
+        emitter.send(SseEmitter.event()
+                .id(Long.toString(sequence))
+                .name("reset")
+                .data("{\"sequence\":" + sequence + "}", MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void heartbeat() throws IOException {
+        emitter.send(SseEmitter.event().comment("heartbeat"));
+    }
+
+    @Override
+    public void close() {
+        emitter.complete();
+    }
+
+}
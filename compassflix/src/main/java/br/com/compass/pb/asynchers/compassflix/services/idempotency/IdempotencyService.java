@@ -0,0 +1,164 @@
+package br.com.compass.pb.asynchers.compassflix.services.idempotency;
+
+import br.com.compass.pb.asynchers.compassflix.entities.IdempotencyRecord;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IdempotencyKeyInProgressException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IdempotencyKeyReuseException;
+import br.com.compass.pb.asynchers.compassflix.repositories.IdempotencyRecordRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs a write at most once per Idempotency-Key. The first request stores its response, replays are answered
+ * from the store and concurrent requests with the same key wait for the first one instead of running the write
+ * again. Failed writes are not stored, so the client can retry them with the same key.
+ */
+@Service
+@Slf4j
+public class IdempotencyService {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String REPLAYED = "Idempotent-Replayed";
+
+    private final IdempotencyRecordRepository recordRepository;
+    private final ObjectMapper objectMapper;
+    private final IdempotencyStore store;
+    private final Duration waitTimeout;
+    private final boolean persistent;
+    private final Clock clock;
+
+    public IdempotencyService(IdempotencyRecordRepository recordRepository, ObjectMapper objectMapper,
+                              @Value("${compassflix.idempotency.max-entries:100000}") int maxEntries,
+                              @Value("${compassflix.idempotency.ttl:PT24H}") Duration ttl,
+                              @Value("${compassflix.idempotency.wait-timeout:PT30S}") Duration waitTimeout,
+                              @Value("${compassflix.idempotency.persistence-enabled:false}") boolean persistent) {
+        this.recordRepository = recordRepository;
+        this.objectMapper = objectMapper;
+        this.clock = Clock.systemUTC();
+        this.store = new IdempotencyStore(maxEntries, ttl, clock);
+        this.waitTimeout = waitTimeout;
+        this.persistent = persistent;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> ResponseEntity<T> execute(String idempotencyKey, String scope, Object request, Class<T> responseType,
+                                         Supplier<ResponseEntity<T>> action) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String key = scope + " " + idempotencyKey;
+        String fingerprint = fingerprint(request);
+
+        IdempotencyStore.Entry entry = store.newEntry(fingerprint);
+        IdempotencyStore.Entry existing = store.putIfAbsent(key, entry);
+        if (existing != null) {
+            checkFingerprint(existing.fingerprint(), fingerprint, idempotencyKey);
+            return (ResponseEntity<T>) replay(await(existing, idempotencyKey));
+        }
+
+        try {
+            Optional<ResponseEntity<T>> persisted = findPersisted(key, fingerprint, idempotencyKey, responseType);
+            ResponseEntity<T> response = persisted.orElseGet(action);
+            entry.response().complete(response);
+            if (persisted.isPresent()) {
+                return replay(response);
+            }
+            persist(key, fingerprint, response);
+            return response;
+        } catch (RuntimeException e) {
+            store.remove(key, entry);
+            entry.response().completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private ResponseEntity<?> await(IdempotencyStore.Entry entry, String idempotencyKey) {
+        try {
+            return entry.response().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IdempotencyKeyInProgressException("A request with Idempotency-Key " + idempotencyKey
+                    + " is still in progress");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IdempotencyKeyInProgressException("Interrupted while waiting for Idempotency-Key " + idempotencyKey);
+        }
+    }
+
+    private static <T> ResponseEntity<T> replay(ResponseEntity<T> response) {
+        return ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED, "true")
+                .body(response.getBody());
+    }
+
+    private static void checkFingerprint(String expected, String actual, String idempotencyKey) {
+        if (!expected.equals(actual)) {
+            throw new IdempotencyKeyReuseException("Idempotency-Key " + idempotencyKey
+                    + " was already used with a different request");
+        }
+    }
+
+    private <T> Optional<ResponseEntity<T>> findPersisted(String key, String fingerprint, String idempotencyKey,
+                                                          Class<T> responseType) {
+        if (!persistent) {
+            return Optional.empty();
+        }
+        return recordRepository.findById(key).map(record -> {
+            checkFingerprint(record.getFingerprint(), fingerprint, idempotencyKey);
+            HttpHeaders headers = new HttpHeaders();
+            record.getHeaders().forEach(headers::addAll);
+            try {
+                T body = record.getBody() == null ? null : objectMapper.readValue(record.getBody(), responseType);
+                return ResponseEntity.status(record.getStatus()).headers(headers).body(body);
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException("Stored response for " + key + " cannot be read", e);
+            }
+        });
+    }
+
+    private void persist(String key, String fingerprint, ResponseEntity<?> response) {
+        if (!persistent) {
+            return;
+        }
+        try {
+            String body = response.getBody() == null ? null : objectMapper.writeValueAsString(response.getBody());
+            recordRepository.save(new IdempotencyRecord(key, fingerprint, response.getStatusCode().value(),
+                    new LinkedHashMap<>(response.getHeaders()), body, clock.instant()));
+        } catch (RuntimeException | JsonProcessingException e) {
+            // the in-memory entry still protects this node, losing the durable copy must not fail the write
+            log.warn("### Could not persist idempotent response for {}: {} ###", key, e.getMessage());
+        }
+    }
+
+    private String fingerprint(Object request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(objectMapper.writeValueAsBytes(request));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Cannot fingerprint request", e);
+        }
+    }
+
+}
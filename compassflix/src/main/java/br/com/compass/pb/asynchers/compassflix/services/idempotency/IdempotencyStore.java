@@ -0,0 +1,80 @@
+package br.com.compass.pb.asynchers.compassflix.services.idempotency;
+
+import org.springframework.http.ResponseEntity;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+
+// Insertion ordered, so the eldest entry is also the first one to expire. Entries still in progress are never
+// evicted, a retry would run the write a second time
+class IdempotencyStore {
+
+    private final int maxEntries;
+    private final Duration ttl;
+    private final Clock clock;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    IdempotencyStore(int maxEntries, Duration ttl, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    Entry newEntry(String fingerprint) {
+        return new Entry(fingerprint, new CompletableFuture<>(), clock.instant());
+    }
+
+    synchronized Entry putIfAbsent(String key, Entry entry) {
+        evictExpired();
+        Entry existing = entries.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        entries.put(key, entry);
+        if (entries.size() > maxEntries) {
+            evictEldestCompleted();
+        }
+        return null;
+    }
+
+    synchronized void remove(String key, Entry entry) {
+        entries.remove(key, entry);
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    private void evictExpired() {
+        Instant oldest = clock.instant().minus(ttl);
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (!entry.createdAt().isBefore(oldest)) {
+                return;
+            }
+            if (entry.response().isDone()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // over the limit only while every entry is in progress
+    private void evictEldestCompleted() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().response().isDone()) {
+                iterator.remove();
+                return;
+            }
+        }
+    }
+
+    record Entry(String fingerprint, CompletableFuture<ResponseEntity<?>> response, Instant createdAt) {
+    }
+
+}
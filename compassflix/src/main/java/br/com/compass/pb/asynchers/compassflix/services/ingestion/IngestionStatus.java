@@ -0,0 +1,5 @@
+package br.com.compass.pb.asynchers.compassflix.services.ingestion;
+
+public enum IngestionStatus {
+    PENDING, WRITTEN
+}
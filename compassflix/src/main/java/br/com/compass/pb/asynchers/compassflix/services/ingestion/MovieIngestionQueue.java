@@ -0,0 +1,345 @@
+package br.com.compass.pb.asynchers.compassflix.services.ingestion;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.IngestionStatsDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.IngestionStatusDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IngestionQueueFullException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind queue for movie registrations. Accepted movies get their id up front, wait in a bounded FIFO
+ * queue and are inserted in batches by a single writer thread, in submission order. Writes are keyed by the
+ * pre-assigned id: a duplicate key on retry means the document is already stored, which keeps every movie
+ * written exactly once. A movie whose write fails is never dropped. It waits for a later pass, with a delay that
+ * doubles while writes keep failing, and goes out ahead of the queue when that pass comes; meanwhile the writer
+ * keeps taking queued movies, so one bad movie does not hold up the rest, but those may be written before it.
+ * No new movie is taken while a whole batch waits for a retry. Whatever is waiting or queued at shutdown is
+ * spilled to disk and written ahead of new work once the application is ready again.
+ */
+@Service
+@Slf4j
+public class MovieIngestionQueue {
+
+    private static final long POLL_MILLIS = 100;
+    private static final long MIN_RETRY_DELAY_MILLIS = 100;
+    private static final long MAX_RETRY_DELAY_MILLIS = 10_000;
+
+    private final MovieRepository repository;
+    private final MovieService movieService;
+    private final ApplicationEventPublisher publisher;
+    private final ObjectMapper objectMapper;
+
+    private final boolean enabled;
+    private final int capacity;
+    private final int batchSize;
+    private final Duration offerTimeout;
+    private final Path spillFile;
+
+    private final BlockingQueue<Movie> queue;
+    private final Map<String, IngestionStatus> statuses = new ConcurrentHashMap<>();
+    private final Set<String> pendingNames = ConcurrentHashMap.newKeySet();
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong requeued = new AtomicLong();
+
+    // only touched by the writer thread, and by start and stop while it is not running
+    private final Deque<Movie> retries = new ArrayDeque<>();
+    private long retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+    private long nextRetryAt;
+    private boolean retrying;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MovieIngestionQueue(MovieRepository repository, MovieService movieService,
+                               ApplicationEventPublisher publisher, ObjectMapper objectMapper,
+                               @Value("${compassflix.ingestion.async.enabled:false}") boolean enabled,
+                               @Value("${compassflix.ingestion.queue-capacity:10000}") int capacity,
+                               @Value("${compassflix.ingestion.batch-size:500}") int batchSize,
+                               @Value("${compassflix.ingestion.offer-timeout:PT0.05S}") Duration offerTimeout,
+                               @Value("${compassflix.ingestion.spill-file:data/ingestion-spill.jsonl}") Path spillFile) {
+        this.repository = repository;
+        this.movieService = movieService;
+        this.publisher = publisher;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.offerTimeout = offerTimeout;
+        this.spillFile = spillFile;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // after the command line runners, so the populator has reset the collection before spilled movies go in
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        reloadSpill();
+        running = true;
+        writer = new Thread(this::writeLoop, "movie-ingestion-writer");
+        writer.setDaemon(true);
+        writer.start();
+        log.info("### Async movie ingestion started with {} spilled movies ###", retries.size());
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        spill();
+    }
+
+    public IngestionStatusDto submit(MovieRequestDto movieRequestDto) {
+        movieService.checkNameIsAvailable(movieRequestDto.name());
+        Movie movie = new Movie(movieRequestDto);
+        movie.setId(new ObjectId().toHexString());
+        if (!pendingNames.add(movie.getName())) {
+            throw new MovieAlreadyExistException("That movie already exists!");
+        }
+
+        statuses.put(movie.getId(), IngestionStatus.PENDING);
+        if (!offer(movie)) {
+            statuses.remove(movie.getId());
+            pendingNames.remove(movie.getName());
+            throw new IngestionQueueFullException("Ingestion queue is full, retry later");
+        }
+        accepted.incrementAndGet();
+        return new IngestionStatusDto(movie.getId(), IngestionStatus.PENDING);
+    }
+
+    // written movies leave the status map, the repository is the source of truth for them
+    public Optional<IngestionStatusDto> status(String id) {
+        IngestionStatus status = statuses.get(id);
+        if (status == null && repository.existsById(id)) {
+            status = IngestionStatus.WRITTEN;
+        }
+        return Optional.ofNullable(status).map(value -> new IngestionStatusDto(id, value));
+    }
+
+    public IngestionStatsDto stats() {
+        return new IngestionStatsDto(enabled, queue.size(), capacity, accepted.get(), written.get(), requeued.get());
+    }
+
+    private boolean offer(Movie movie) {
+        try {
+            return running && queue.offer(movie, offerTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void writeLoop() {
+        List<Movie> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                nextBatch(batch);
+                if (!batch.isEmpty()) {
+                    writeBatch(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                log.error("### Unexpected error in movie ingestion writer ###", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // movies waiting for a retry first once their delay is over, then queued ones while fewer than a batch wait
+    private void nextBatch(List<Movie> batch) throws InterruptedException {
+        retrying = !retries.isEmpty() && System.nanoTime() - nextRetryAt >= 0;
+        while (retrying && batch.size() < batchSize && !retries.isEmpty()) {
+            batch.add(retries.pollFirst());
+        }
+        int room = batchSize - batch.size() - retries.size();
+        if (room <= 0) {
+            if (batch.isEmpty()) {
+                Thread.sleep(POLL_MILLIS);
+            }
+            return;
+        }
+        if (batch.isEmpty()) {
+            Movie first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+            room--;
+        }
+        queue.drainTo(batch, room);
+    }
+
+    void writeBatch(List<Movie> batch) {
+        try {
+            repository.insert(batch);
+            batch.forEach(this::markWritten);
+            retryLater(List.of());
+        } catch (RuntimeException e) {
+            log.warn("### Batch insert of {} movies failed, retrying one by one: {} ###", batch.size(), e.getMessage());
+            List<Movie> failed = new ArrayList<>();
+            for (Movie movie : batch) {
+                if (!writeOne(movie)) {
+                    failed.add(movie);
+                }
+            }
+            retryLater(failed);
+        }
+    }
+
+    private boolean writeOne(Movie movie) {
+        try {
+            if (!repository.existsById(movie.getId())) {
+                repository.insert(movie);
+            }
+            markWritten(movie);
+            return true;
+        } catch (DuplicateKeyException e) {
+            // an earlier partial batch already stored it
+            markWritten(movie);
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("### Could not write movie {}, retrying in a later pass: {} ###", movie.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    // it was accepted with a 202, so it stays pending until it is written, here or after the next start
+    private void retryLater(List<Movie> failed) {
+        if (failed.isEmpty()) {
+            if (retries.isEmpty()) {
+                retryDelayMillis = MIN_RETRY_DELAY_MILLIS;
+            }
+            return;
+        }
+        requeued.addAndGet(failed.size());
+        if (retrying) {
+            // older than whatever still waits behind them
+            for (int i = failed.size() - 1; i >= 0; i--) {
+                retries.addFirst(failed.get(i));
+            }
+        } else if (!retries.isEmpty()) {
+            // newer than the movies already waiting, which keep their own delay
+            retries.addAll(failed);
+            return;
+        } else {
+            retries.addAll(failed);
+        }
+        nextRetryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(retryDelayMillis);
+        retryDelayMillis = Math.min(retryDelayMillis * 2, MAX_RETRY_DELAY_MILLIS);
+    }
+
+    private void markWritten(Movie movie) {
+        statuses.remove(movie.getId());
+        pendingNames.remove(movie.getName());
+        written.incrementAndGet();
+        publisher.publishEvent(MovieChangedEvent.created(movie));
+    }
+
+    private void spill() {
+        List<Movie> remaining = new ArrayList<>(retries);
+        retries.clear();
+        queue.drainTo(remaining);
+        if (remaining.isEmpty()) {
+            return;
+        }
+        appendToSpill(remaining);
+        log.info("### Spilled {} queued movies to {} ###", remaining.size(), spillFile);
+    }
+
+    // rewrites the whole file so a crash leaves either the old or the new spill, never half of one
+    private synchronized void appendToSpill(List<Movie> movies) {
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            Path tmp = spillFile.resolveSibling(spillFile.getFileName() + ".tmp");
+            try (BufferedWriter out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                if (Files.exists(spillFile)) {
+                    for (String line : Files.readAllLines(spillFile, StandardCharsets.UTF_8)) {
+                        out.write(line);
+                        out.newLine();
+                    }
+                }
+                for (Movie movie : movies) {
+                    out.write(objectMapper.writeValueAsString(movie));
+                    out.newLine();
+                }
+            }
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(tmp, spillFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not spill " + movies.size() + " queued movies", e);
+        }
+    }
+
+    private void reloadSpill() {
+        if (!Files.exists(spillFile)) {
+            return;
+        }
+        try {
+            for (String line : Files.readAllLines(spillFile, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                Movie movie = objectMapper.readValue(line, Movie.class);
+                statuses.put(movie.getId(), IngestionStatus.PENDING);
+                pendingNames.add(movie.getName());
+                retries.add(movie);
+            }
+            nextRetryAt = System.nanoTime();
+            Files.delete(spillFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not reload spilled movies from " + spillFile, e);
+        }
+    }
+
+}
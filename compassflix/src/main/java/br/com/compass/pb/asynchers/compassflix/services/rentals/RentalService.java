@@ -0,0 +1,230 @@
+package br.com.compass.pb.asynchers.compassflix.services.rentals;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.InventoryResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.RentalResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.MovieInventory;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.RentalConflictException;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieInventoryRepository;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Rents out copies of movies. Stock lives in Mongo and only changes through conditional updates, so it never goes
+ * negative no matter how many nodes reserve at once. A hot title would still turn every reservation into its own
+ * update on the same document, so reservations for one movie queue up in a lane and the first waiting thread
+ * confirms the whole queue with a single update, the others wait for its answer. When fewer copies are left than
+ * queued reservations, the earliest ones get the remaining copies. A title found sold out is answered from
+ * memory for a short while instead of asking Mongo again.
+ */
+@Service
+@Slf4j
+public class RentalService {
+
+    public static final String RESERVED = "RESERVED";
+    public static final String RETURNED = "RETURNED";
+
+    // how often a batch is retried when another node took the copies between the read and the update
+    private static final int MAX_ATTEMPTS = 5;
+
+    private final MovieInventoryRepository repository;
+
+    private final MovieService movieService;
+
+    private final RepositoryCircuitBreaker circuitBreaker;
+
+    private final int maxBatch;
+
+    private final Duration soldOutTtl;
+
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    @Autowired
+    public RentalService(MovieInventoryRepository repository, MovieService movieService,
+                         RepositoryCircuitBreaker circuitBreaker,
+                         @Value("${compassflix.rentals.max-batch:256}") int maxBatch,
+                         @Value("${compassflix.rentals.sold-out-ttl:PT1S}") Duration soldOutTtl) {
+        this(repository, movieService, circuitBreaker, maxBatch, soldOutTtl, Clock.systemUTC());
+    }
+
+    RentalService(MovieInventoryRepository repository, MovieService movieService,
+                  RepositoryCircuitBreaker circuitBreaker, int maxBatch, Duration soldOutTtl, Clock clock) {
+        this.repository = repository;
+        this.movieService = movieService;
+        this.circuitBreaker = circuitBreaker;
+        this.maxBatch = maxBatch;
+        this.soldOutTtl = soldOutTtl;
+        this.clock = clock;
+    }
+
+    public InventoryResponseDto inventory(String movieId) {
+        movieService.findMovieById(movieId);
+        return circuitBreaker.call(() -> repository.findById(movieId))
+                .map(inventory -> new InventoryResponseDto(movieId, inventory.getAvailableCopies(),
+                        inventory.getRentedCopies()))
+                .orElseGet(() -> new InventoryResponseDto(movieId, 0, 0));
+    }
+
+    public InventoryResponseDto addCopies(String movieId, long copies) {
+        movieService.findMovieById(movieId);
+        log.info("### Adding {} copies of movie {} ###", copies, movieId);
+        circuitBreaker.run(() -> repository.addCopies(movieId, copies));
+        lane(movieId).soldOutUntil = null;
+        return inventory(movieId);
+    }
+
+    public RentalResponseDto reserve(String movieId) {
+        Lane lane = lane(movieId);
+        Instant soldOutUntil = lane.soldOutUntil;
+        if (soldOutUntil != null && clock.instant().isBefore(soldOutUntil)) {
+            throw soldOut(movieId);
+        }
+        CompletableFuture<Boolean> reservation = new CompletableFuture<>();
+        lane.queue.add(reservation);
+        confirmQueued(movieId, lane);
+        boolean reserved;
+        try {
+            reserved = reservation.join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        if (!reserved) {
+            throw soldOut(movieId);
+        }
+        return new RentalResponseDto(movieId, RESERVED, clock.instant());
+    }
+
+    public RentalResponseDto giveBack(String movieId) {
+        if (!circuitBreaker.call(() -> repository.release(movieId, 1))) {
+            throw new RentalConflictException("There is no rented copy of movie " + movieId + " to return");
+        }
+        lane(movieId).soldOutUntil = null;
+        return new RentalResponseDto(movieId, RETURNED, clock.instant());
+    }
+
+    // the copies of a deleted movie go with it. The movie is already gone when this runs, so a failed cleanup is
+    // only logged: the left over stock is unreachable and must not fail the delete that published the event
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        if (event.type() == MovieChangedEvent.ChangeType.DELETED) {
+            lanes.remove(event.movieId());
+            try {
+                circuitBreaker.run(() -> repository.deleteById(event.movieId()));
+            } catch (RuntimeException e) {
+                log.warn("### Could not remove the copies of deleted movie {}: {} ###", event.movieId(),
+                        e.getMessage());
+            }
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        event.changes().forEach(this::onMovieChanged);
+    }
+
+    // a thread still holding a dropped lane confirms its own queue, so dropping never loses a reservation
+    @Scheduled(fixedDelayString = "${compassflix.rentals.lane-cleanup-interval:PT1M}")
+    public void dropIdleLanes() {
+        Instant now = clock.instant();
+        lanes.values().removeIf(lane -> lane.queue.isEmpty() && !lane.draining.get()
+                && (lane.soldOutUntil == null || !now.isBefore(lane.soldOutUntil)));
+    }
+
+    int laneCount() {
+        return lanes.size();
+    }
+
+    /*
+     * Whoever wins the draining flag confirms batches until the queue is empty. A thread that loses only waits:
+     * it queued before trying the flag, and the drainer looks at the queue again after clearing the flag, so a
+     * queued reservation is never left without a drainer.
+     */
+    private void confirmQueued(String movieId, Lane lane) {
+        while (!lane.queue.isEmpty() && lane.draining.compareAndSet(false, true)) {
+            try {
+                List<CompletableFuture<Boolean>> batch = new ArrayList<>();
+                CompletableFuture<Boolean> next;
+                while (batch.size() < maxBatch && (next = lane.queue.poll()) != null) {
+                    batch.add(next);
+                }
+                confirm(movieId, lane, batch);
+            } finally {
+                lane.draining.set(false);
+            }
+        }
+    }
+
+    private void confirm(String movieId, Lane lane, List<CompletableFuture<Boolean>> batch) {
+        try {
+            int granted = reserveUpTo(movieId, batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).complete(i < granted);
+            }
+            if (granted < batch.size()) {
+                lane.soldOutUntil = clock.instant().plus(soldOutTtl);
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(reservation -> reservation.completeExceptionally(e));
+        }
+    }
+
+    // all of them in one update when the stock allows, otherwise as many as are left
+    private int reserveUpTo(String movieId, int wanted) {
+        if (circuitBreaker.call(() -> repository.reserve(movieId, wanted))) {
+            return wanted;
+        }
+        for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+            long available = circuitBreaker.call(() -> repository.findById(movieId))
+                    .map(MovieInventory::getAvailableCopies)
+                    .orElse(0L);
+            int granted = (int) Math.min(wanted, available);
+            if (granted == 0) {
+                return 0;
+            }
+            if (circuitBreaker.call(() -> repository.reserve(movieId, granted))) {
+                return granted;
+            }
+        }
+        return 0;
+    }
+
+    private Lane lane(String movieId) {
+        return lanes.computeIfAbsent(movieId, id -> new Lane());
+    }
+
+    private static RentalConflictException soldOut(String movieId) {
+        return new RentalConflictException("No copies of movie " + movieId + " are available");
+    }
+
+    private static final class Lane {
+
+        private final Queue<CompletableFuture<Boolean>> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private volatile Instant soldOutUntil;
+
+    }
+
+}
@@ -0,0 +1,146 @@
+package br.com.compass.pb.asynchers.compassflix.services.resilience;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.DatabaseUnavailableException;
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.CatalogCacheEvent;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshot;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Stale-while-revalidate reads. Repository reads go through the {@link RepositoryCircuitBreaker}; when the
+ * database is unavailable they are answered from the last known data and the response is marked stale. The
+ * last known data is the catalog snapshot when it is enabled, otherwise the result of the last full read plus
+ * the most recent single movie reads. The full read is kept as it was read, only single movie reads follow the
+ * writes made on this node.
+ */
+@Service
+@Slf4j
+public class LastKnownCatalog {
+
+    private final CatalogSnapshotService snapshotService;
+
+    private final RepositoryCircuitBreaker breaker;
+
+    private final Map<String, Remembered<Movie>> recentById;
+
+    private volatile Remembered<List<Movie>> lastFullRead;
+
+    private Remembered<List<Movie>> catalogSource;
+
+    private CatalogSnapshot catalog;
+
+    public LastKnownCatalog(CatalogSnapshotService snapshotService, RepositoryCircuitBreaker breaker,
+                            @Value("${compassflix.resilience.recent-reads:10000}") int recentReads) {
+        this.snapshotService = snapshotService;
+        this.breaker = breaker;
+        this.recentById = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Remembered<Movie>> eldest) {
+                return size() > recentReads;
+            }
+        });
+    }
+
+    public List<Movie> findAll(Supplier<List<Movie>> read) {
+        try {
+            List<Movie> movies = breaker.call(read);
+            lastFullRead = new Remembered<>(movies, now());
+            return movies;
+        } catch (DatabaseUnavailableException e) {
+            return stale(e, CatalogSnapshot::movies);
+        }
+    }
+
+    public Optional<Movie> findById(String id, Supplier<Optional<Movie>> read) {
+        try {
+            Optional<Movie> movie = breaker.call(read);
+            movie.ifPresent(found -> recentById.put(id, new Remembered<>(new Movie(found), now())));
+            return movie;
+        } catch (DatabaseUnavailableException e) {
+            Remembered<Movie> recent = recentById.get(id);
+            if (recent != null && snapshotService.current().isEmpty()) {
+                StaleResponses.mark(recent.at());
+                CatalogCacheEvent.record("recent-reads", CatalogCacheEvent.STALE, recentById.size());
+                return Optional.of(recent.value());
+            }
+            return stale(e, catalog -> Optional.ofNullable(catalog.byId().get(id)));
+        }
+    }
+
+    // for reads the catalog can answer on its own, like name searches
+    public <T> T query(Supplier<T> read, Function<CatalogSnapshot, T> fromCatalog) {
+        try {
+            return breaker.call(read);
+        } catch (DatabaseUnavailableException e) {
+            return stale(e, fromCatalog);
+        }
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        switch (event.type()) {
+            case CREATED, UPDATED -> recentById.computeIfPresent(event.current().getId(),
+                    (id, recent) -> new Remembered<>(new Movie(event.current()), now()));
+            case DELETED -> recentById.remove(event.movieId());
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        event.changes().forEach(this::onMovieChanged);
+    }
+
+    private <T> T stale(DatabaseUnavailableException e, Function<CatalogSnapshot, T> fromCatalog) {
+        Optional<CatalogSnapshot> snapshot = snapshotService.current();
+        if (snapshot.isPresent()) {
+            // kept current by the write events, it only misses what other nodes wrote since the last contact
+            StaleResponses.mark(breaker.lastSuccess().orElse(null));
+            CatalogCacheEvent.record("snapshot", CatalogCacheEvent.STALE, snapshot.get().size());
+            return fromCatalog.apply(snapshot.get());
+        }
+        Remembered<CatalogSnapshot> catalog = lastFullReadCatalog();
+        if (catalog == null) {
+            throw e;
+        }
+        log.debug("### Database unavailable, answering from the catalog read at {} ###", catalog.at());
+        StaleResponses.mark(catalog.at());
+        CatalogCacheEvent.record("last-full-read", CatalogCacheEvent.STALE, catalog.value().size());
+        return fromCatalog.apply(catalog.value());
+    }
+
+    // built on the first stale read and reused until the next full read
+    private synchronized Remembered<CatalogSnapshot> lastFullReadCatalog() {
+        Remembered<List<Movie>> read = lastFullRead;
+        if (read == null) {
+            return null;
+        }
+        if (catalogSource != read) {
+            catalog = CatalogSnapshot.of(0, read.value());
+            catalogSource = read;
+        }
+        return new Remembered<>(catalog, read.at());
+    }
+
+    private Instant now() {
+        return breaker.clock().instant();
+    }
+
+    private record Remembered<T>(T value, Instant at) {
+    }
+
+}
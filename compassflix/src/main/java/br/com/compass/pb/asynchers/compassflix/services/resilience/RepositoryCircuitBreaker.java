@@ -0,0 +1,187 @@
+package br.com.compass.pb.asynchers.compassflix.services.resilience;
+
+import br.com.compass.pb.asynchers.compassflix.exceptions.DatabaseUnavailableException;
+import com.mongodb.MongoSocketException;
+import com.mongodb.MongoTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker around the Mongo repositories. After {@code failureThreshold} consecutive outages (connection
+ * failures, timeouts, or calls slower than {@code slowCallThreshold}) it opens and rejects calls right away for
+ * {@code openDuration} instead of letting every request wait for the driver timeouts. Then a single trial call
+ * is let through: success closes the breaker, another outage opens it again. Errors that Mongo answered with,
+ * like a duplicate key, are not outages.
+ */
+@Service
+@Slf4j
+public class RepositoryCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final boolean enabled;
+
+    private final int failureThreshold;
+
+    private final Duration openDuration;
+
+    private final Duration slowCallThreshold;
+
+    private final Clock clock;
+
+    private final Object lock = new Object();
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private Instant openedAt;
+
+    private boolean trialInFlight;
+
+    private volatile Instant lastSuccess;
+
+    @Autowired
+    public RepositoryCircuitBreaker(@Value("${compassflix.resilience.circuit-breaker.enabled:true}") boolean enabled,
+                                    @Value("${compassflix.resilience.circuit-breaker.failure-threshold:5}") int failureThreshold,
+                                    @Value("${compassflix.resilience.circuit-breaker.open-duration:PT10S}") Duration openDuration,
+                                    @Value("${compassflix.resilience.circuit-breaker.slow-call-threshold:PT2S}") Duration slowCallThreshold) {
+        this(enabled, failureThreshold, openDuration, slowCallThreshold, Clock.systemUTC());
+    }
+
+    RepositoryCircuitBreaker(boolean enabled, int failureThreshold, Duration openDuration, Duration slowCallThreshold,
+                             Clock clock) {
+        this.enabled = enabled;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+        this.slowCallThreshold = slowCallThreshold;
+        this.clock = clock;
+    }
+
+    public <T> T call(Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        acquirePermission();
+        Instant start = clock.instant();
+        T result;
+        try {
+            result = call.get();
+        } catch (RuntimeException e) {
+            if (!isOutage(e)) {
+                onSuccess();
+                throw e;
+            }
+            onFailure();
+            throw new DatabaseUnavailableException("Database is unavailable, try again later", retryAfter(), e);
+        }
+        Duration elapsed = Duration.between(start, clock.instant());
+        if (elapsed.compareTo(slowCallThreshold) > 0) {
+            log.warn("### Repository call took {} ms, counted as a failure ###", elapsed.toMillis());
+            onFailure();
+        } else {
+            onSuccess();
+        }
+        return result;
+    }
+
+    public void run(Runnable call) {
+        call(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    public State state() {
+        synchronized (lock) {
+            if (state == State.OPEN && openElapsed()) {
+                return State.HALF_OPEN;
+            }
+            return state;
+        }
+    }
+
+    public Optional<Instant> lastSuccess() {
+        return Optional.ofNullable(lastSuccess);
+    }
+
+    Clock clock() {
+        return clock;
+    }
+
+    private void acquirePermission() {
+        synchronized (lock) {
+            if (state == State.OPEN && openElapsed()) {
+                state = State.HALF_OPEN;
+                log.info("### Circuit breaker half open, letting a trial call through ###");
+            }
+            if (state == State.OPEN || (state == State.HALF_OPEN && trialInFlight)) {
+                throw new DatabaseUnavailableException("Database is unavailable, try again later", retryAfter(), null);
+            }
+            if (state == State.HALF_OPEN) {
+                trialInFlight = true;
+            }
+        }
+    }
+
+    private void onSuccess() {
+        lastSuccess = clock.instant();
+        synchronized (lock) {
+            if (state != State.CLOSED) {
+                log.info("### Circuit breaker closed, database is back ###");
+            }
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            trialInFlight = false;
+        }
+    }
+
+    private void onFailure() {
+        synchronized (lock) {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                if (state != State.OPEN) {
+                    log.warn("### Circuit breaker opened after {} consecutive failures ###", consecutiveFailures);
+                }
+                state = State.OPEN;
+                openedAt = clock.instant();
+                trialInFlight = false;
+            }
+        }
+    }
+
+    private boolean openElapsed() {
+        return !clock.instant().isBefore(openedAt.plus(openDuration));
+    }
+
+    private Duration retryAfter() {
+        synchronized (lock) {
+            if (state != State.OPEN) {
+                return openDuration;
+            }
+            Duration remaining = Duration.between(clock.instant(), openedAt.plus(openDuration));
+            return remaining.isNegative() ? Duration.ZERO : remaining;
+        }
+    }
+
+    static boolean isOutage(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataAccessResourceFailureException || cause instanceof TransientDataAccessException
+                    || cause instanceof MongoSocketException || cause instanceof MongoTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,34 @@
+package br.com.compass.pb.asynchers.compassflix.services.resilience;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import java.time.Instant;
+
+@ControllerAdvice
+public class StaleResponseBodyAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (StaleResponses.isMarked()) {
+            response.getHeaders().set(HttpHeaders.WARNING, StaleResponses.WARNING);
+            StaleResponses.age(Instant.now()).ifPresent(age ->
+                    response.getHeaders().set(HttpHeaders.AGE, Long.toString(Math.max(0, age.toSeconds()))));
+        }
+        return body;
+    }
+
+}
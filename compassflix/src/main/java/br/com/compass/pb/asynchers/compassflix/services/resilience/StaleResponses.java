@@ -0,0 +1,50 @@
+package br.com.compass.pb.asynchers.compassflix.services.resilience;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Marks the current request as answered from data that may be out of date. {@link StaleResponseBodyAdvice}
+ * turns the mark into the Warning and Age headers.
+ */
+public final class StaleResponses {
+
+    public static final String WARNING = "110 - \"Response is Stale\"";
+
+    private static final String ATTRIBUTE = StaleResponses.class.getName();
+
+    private StaleResponses() {
+    }
+
+    // asOf is null when it is unknown how old the data is
+    static void mark(Instant asOf) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null) {
+            attributes.setAttribute(ATTRIBUTE, new Mark(asOf), RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    public static boolean isMarked() {
+        return mark().isPresent();
+    }
+
+    public static Optional<Duration> age(Instant now) {
+        return mark().map(Mark::asOf).map(asOf -> Duration.between(asOf, now));
+    }
+
+    private static Optional<Mark> mark() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable((Mark) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST));
+    }
+
+    private record Mark(Instant asOf) {
+    }
+
+}
@@ -0,0 +1,14 @@
+package br.com.compass.pb.asynchers.compassflix.services.routing;
+
+public enum ReadOperation {
+
+    FIND_BY_ID,
+
+    FIND_ALL,
+
+    // name, filter, recent and fuzzy search lookups
+    SEARCH,
+
+    FACETS
+
+}
@@ -0,0 +1,12 @@
+package br.com.compass.pb.asynchers.compassflix.services.routing;
+
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import com.mongodb.ReadPreference;
+
+// The movie repository whose reads use the given read preference
+@FunctionalInterface
+public interface ReadPreferenceRepositories {
+
+    MovieRepository with(ReadPreference readPreference);
+
+}
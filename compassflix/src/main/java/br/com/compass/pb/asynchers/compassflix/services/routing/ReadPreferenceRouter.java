@@ -0,0 +1,157 @@
+package br.com.compass.pb.asynchers.compassflix.services.routing;
+
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import com.mongodb.ReadPreference;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the read preference of each MovieService read. Every operation has its own configured preference, and
+ * secondary reads carry max staleness, so a secondary lagging further behind than that is never read. Inside
+ * that window a secondary may still miss a recent write, so reads go to the primary instead when the movie read
+ * by id was written on this node less than max staleness ago, or when the client session (the X-Session-Id
+ * header) wrote anything in that time. Each session reads its own writes without pinning everybody to the primary.
+ */
+@Service
+@Slf4j
+public class ReadPreferenceRouter {
+
+    public static final String SESSION_HEADER = "X-Session-Id";
+
+    private final ReadPreferenceRepositories repositories;
+
+    private final Map<ReadOperation, ReadPreference> preferences;
+
+    private final Duration maxStaleness;
+
+    private final Clock clock;
+
+    private final Map<String, Instant> writtenMovies;
+
+    private final Map<String, Instant> writingSessions;
+
+    @Autowired
+    public ReadPreferenceRouter(ReadPreferenceRepositories repositories,
+                                @Value("${compassflix.read-preference.find-by-id:secondaryPreferred}") String findById,
+                                @Value("${compassflix.read-preference.find-all:secondaryPreferred}") String findAll,
+                                @Value("${compassflix.read-preference.search:nearest}") String search,
+                                @Value("${compassflix.read-preference.facets:secondaryPreferred}") String facets,
+                                @Value("${compassflix.read-preference.max-staleness:PT90S}") Duration maxStaleness,
+                                @Value("${compassflix.read-preference.recent-writes:10000}") int recentWrites) {
+        this(repositories, Map.of(ReadOperation.FIND_BY_ID, findById, ReadOperation.FIND_ALL, findAll,
+                ReadOperation.SEARCH, search, ReadOperation.FACETS, facets), maxStaleness, recentWrites,
+                Clock.systemUTC());
+    }
+
+    ReadPreferenceRouter(ReadPreferenceRepositories repositories, Map<ReadOperation, String> preferences,
+                         Duration maxStaleness, int recentWrites, Clock clock) {
+        this.repositories = repositories;
+        this.maxStaleness = maxStaleness;
+        this.clock = clock;
+        this.preferences = new EnumMap<>(ReadOperation.class);
+        preferences.forEach((operation, name) -> this.preferences.put(operation, parse(name, maxStaleness)));
+        this.writtenMovies = lru(recentWrites);
+        this.writingSessions = lru(recentWrites);
+        log.info("### Read preferences {} ###", this.preferences);
+    }
+
+    // every read on the primary of the given repository
+    public static ReadPreferenceRouter primaryOnly(MovieRepository repository) {
+        Map<ReadOperation, String> primary = new EnumMap<>(ReadOperation.class);
+        for (ReadOperation operation : ReadOperation.values()) {
+            primary.put(operation, "primary");
+        }
+        return new ReadPreferenceRouter(preference -> repository, primary, Duration.ZERO, 1, Clock.systemUTC());
+    }
+
+    public MovieRepository forRead(ReadOperation operation) {
+        return repositories.with(preferenceFor(operation, null));
+    }
+
+    public MovieRepository forRead(ReadOperation operation, String movieId) {
+        return repositories.with(preferenceFor(operation, movieId));
+    }
+
+    public ReadPreference preferenceFor(ReadOperation operation, String movieId) {
+        ReadPreference configured = preferences.get(operation);
+        if (configured.equals(ReadPreference.primary())) {
+            return configured;
+        }
+        String session = currentSession();
+        if ((session != null && writtenRecently(writingSessions, session))
+                || (movieId != null && writtenRecently(writtenMovies, movieId))) {
+            return ReadPreference.primary();
+        }
+        return configured;
+    }
+
+    // published on the writing request thread, so the session header is still at hand
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        Instant now = clock.instant();
+        writtenMovies.put(event.movieId(), now);
+        String session = currentSession();
+        if (session != null) {
+            writingSessions.put(session, now);
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        event.changes().forEach(this::onMovieChanged);
+    }
+
+    private boolean writtenRecently(Map<String, Instant> writes, String key) {
+        Instant writtenAt = writes.get(key);
+        if (writtenAt == null) {
+            return false;
+        }
+        if (writtenAt.plus(maxStaleness).isAfter(clock.instant())) {
+            return true;
+        }
+        writes.remove(key, writtenAt);
+        return false;
+    }
+
+    private static String currentSession() {
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            return attributes.getRequest().getHeader(SESSION_HEADER);
+        }
+        return null;
+    }
+
+    static ReadPreference parse(String name, Duration maxStaleness) {
+        ReadPreference preference = ReadPreference.valueOf(name);
+        if (preference.equals(ReadPreference.primary())) {
+            return preference;
+        }
+        return ReadPreference.valueOf(preference.getName(), List.of(), maxStaleness.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static Map<String, Instant> lru(int maxEntries) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Instant> eldest) {
+                return size() > maxEntries;
+            }
+        });
+    }
+
+}
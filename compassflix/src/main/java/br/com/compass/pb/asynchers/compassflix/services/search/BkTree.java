@@ -0,0 +1,120 @@
+package br.com.compass.pb.asynchers.compassflix.services.search;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Burkhard-Keller tree over distinct terms using Levenshtein distance.
+ * A query for distance k only descends into children whose edge d satisfies |d - dist(query, node)| <= k,
+ * so most of the tree is pruned instead of comparing against every term. Not thread safe.
+ */
+class BkTree {
+
+    private Node root;
+    private int size;
+
+    boolean add(String term) {
+        if (root == null) {
+            root = new Node(term);
+            size++;
+            return true;
+        }
+        Node node = root;
+        while (true) {
+            int distance = Levenshtein.distance(term, node.term);
+            if (distance == 0) {
+                return false;
+            }
+            Node child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new Node(term));
+                size++;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    void search(String query, int maxDistance, BiConsumer<String, Integer> consumer) {
+        if (root == null) {
+            return;
+        }
+        List<Node> pending = new ArrayList<>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            Node node = pending.remove(pending.size() - 1);
+            int distance = Levenshtein.distance(query, node.term);
+            if (distance <= maxDistance) {
+                consumer.accept(node.term, distance);
+            }
+            for (Map.Entry<Integer, Node> entry : node.children.entrySet()) {
+                if (Math.abs(entry.getKey() - distance) <= maxDistance) {
+                    pending.add(entry.getValue());
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // preorder: term, child count, then (edge distance, subtree) per child
+    void write(DataOutput out) throws IOException {
+        out.writeInt(size);
+        if (root != null) {
+            writeNode(root, out);
+        }
+    }
+
+    static BkTree read(ByteBuffer in) {
+        BkTree tree = new BkTree();
+        int size = in.getInt();
+        if (size > 0) {
+            tree.root = readNode(in);
+        }
+        tree.size = size;
+        return tree;
+    }
+
+    private static void writeNode(Node node, DataOutput out) throws IOException {
+        byte[] term = node.term.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(term.length);
+        out.write(term);
+        out.writeShort(node.children.size());
+        for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+            out.writeShort(child.getKey());
+            writeNode(child.getValue(), out);
+        }
+    }
+
+    private static Node readNode(ByteBuffer in) {
+        byte[] term = new byte[in.getShort()];
+        in.get(term);
+        Node node = new Node(new String(term, StandardCharsets.UTF_8));
+        int children = in.getShort();
+        for (int i = 0; i < children; i++) {
+            int distance = in.getShort();
+            node.children.put(distance, readNode(in));
+        }
+        return node;
+    }
+
+    private static final class Node {
+
+        private final String term;
+        private final Map<Integer, Node> children = new HashMap<>(4);
+
+        private Node(String term) {
+            this.term = term;
+        }
+    }
+
+}
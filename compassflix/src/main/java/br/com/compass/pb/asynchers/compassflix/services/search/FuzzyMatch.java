@@ -0,0 +1,13 @@
+package br.com.compass.pb.asynchers.compassflix.services.search;
+
+public record FuzzyMatch(
+        String id,
+        String name,
+        int distance
+) {
+
+    public double score() {
+        return 1.0 / (1 + distance);
+    }
+
+}
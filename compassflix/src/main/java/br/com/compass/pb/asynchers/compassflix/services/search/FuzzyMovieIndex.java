@@ -0,0 +1,256 @@
+package br.com.compass.pb.asynchers.compassflix.services.search;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Typo tolerant name index. Names are split into tokens, the distinct tokens live in a {@link BkTree}
+ * and every token keeps the ids of the names that contain it. A query matches a name when each query
+ * token is within the allowed edit distance of some token of that name; the summed distance is the score.
+ */
+public class FuzzyMovieIndex {
+
+    private final BkTree terms;
+    // a term used by a single movie keeps that id itself, only shared terms pay for a set
+    private final Map<String, Object> postings = new HashMap<>();
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public FuzzyMovieIndex() {
+        this(new BkTree());
+    }
+
+    private FuzzyMovieIndex(BkTree terms) {
+        this.terms = terms;
+    }
+
+    public void put(String id, String name) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+            String[] tokens = tokenize(name);
+            entries.put(id, new Entry(name, tokens));
+            for (String token : tokens) {
+                terms.add(token);
+                addPosting(token, id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds an index from terms written by {@link #writeTerms(DataOutput)}. The names must be the ones the
+     * terms were written for, their tokens are not inserted into the tree again.
+     */
+    public static FuzzyMovieIndex restore(ByteBuffer terms, Map<String, String> namesById) {
+        FuzzyMovieIndex index = new FuzzyMovieIndex(BkTree.read(terms));
+        namesById.forEach((id, name) -> {
+            String[] tokens = tokenize(name);
+            index.entries.put(id, new Entry(name, tokens));
+            for (String token : tokens) {
+                index.addPosting(token, id);
+            }
+        });
+        return index;
+    }
+
+    public void writeTerms(DataOutput out) throws IOException {
+        lock.readLock().lock();
+        try {
+            terms.write(out);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            removeUnlocked(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<FuzzyMatch> search(String query, int maxDistance, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be at least 1");
+        }
+        String[] queryTokens = tokenize(query);
+        if (queryTokens.length == 0) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            List<Map<String, Integer>> matchingTerms = new ArrayList<>(queryTokens.length);
+            for (String token : queryTokens) {
+                Map<String, Integer> matches = new HashMap<>();
+                terms.search(token, allowedDistance(token, maxDistance), (term, distance) -> {
+                    if (postings.containsKey(term)) {
+                        matches.put(term, distance);
+                    }
+                });
+                if (matches.isEmpty()) {
+                    return List.of();
+                }
+                matchingTerms.add(matches);
+            }
+
+            // start from the most selective query token and only verify the remaining ones on its candidates
+            matchingTerms.sort(Comparator.comparingLong(this::postingCount));
+            Map<String, Integer> candidates = new HashMap<>();
+            matchingTerms.get(0).forEach((term, distance) ->
+                    postingsOf(term).forEach(id -> candidates.merge(id, distance, Math::min)));
+
+            List<FuzzyMatch> results = new ArrayList<>();
+            for (Map.Entry<String, Integer> candidate : candidates.entrySet()) {
+                Entry entry = entries.get(candidate.getKey());
+                int total = candidate.getValue();
+                for (int i = 1; i < matchingTerms.size() && total >= 0; i++) {
+                    int best = bestDistance(entry.tokens, matchingTerms.get(i));
+                    total = best < 0 ? -1 : total + best;
+                }
+                if (total >= 0) {
+                    results.add(new FuzzyMatch(candidate.getKey(), entry.name, total));
+                }
+            }
+
+            int tokenCount = queryTokens.length;
+            results.sort(Comparator.comparingInt(FuzzyMatch::distance)
+                    .thenComparingInt(match -> Math.abs(entries.get(match.id()).tokens.length - tokenCount))
+                    .thenComparing(FuzzyMatch::name));
+            return results.size() > limit ? new ArrayList<>(results.subList(0, limit)) : results;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void removeUnlocked(String id) {
+        Entry previous = entries.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String token : previous.tokens) {
+            // the term stays in the tree, searches skip it while it has no postings
+            postings.computeIfPresent(token, (term, ids) -> {
+                if (ids instanceof String single) {
+                    return single.equals(id) ? null : single;
+                }
+                Set<String> set = asSet(ids);
+                set.remove(id);
+                return set.size() > 1 ? set : set.stream().findFirst().orElse(null);
+            });
+        }
+    }
+
+    private void addPosting(String token, String id) {
+        postings.merge(token, id, (ids, added) -> {
+            if (ids instanceof String single) {
+                if (single.equals(added)) {
+                    return single;
+                }
+                Set<String> set = new HashSet<>(4);
+                set.add(single);
+                set.add((String) added);
+                return set;
+            }
+            asSet(ids).add((String) added);
+            return ids;
+        });
+    }
+
+    private Collection<String> postingsOf(String term) {
+        Object ids = postings.get(term);
+        if (ids == null) {
+            return List.of();
+        }
+        return ids instanceof String single ? List.of(single) : asSet(ids);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String> asSet(Object ids) {
+        return (Set<String>) ids;
+    }
+
+    private long postingCount(Map<String, Integer> matches) {
+        return matches.keySet().stream().mapToLong(term -> postingsOf(term).size()).sum();
+    }
+
+    private static int bestDistance(String[] tokens, Map<String, Integer> matches) {
+        int best = -1;
+        for (String token : tokens) {
+            Integer distance = matches.get(token);
+            if (distance != null && (best < 0 || distance < best)) {
+                best = distance;
+            }
+        }
+        return best;
+    }
+
+    // short tokens get less slack, otherwise "of" would match every two letter word
+    static int allowedDistance(String token, int maxDistance) {
+        return Math.min(maxDistance, (token.length() - 1) / 2);
+    }
+
+    // same tokens as splitting the lower cased value on [^\p{L}\p{N}]+, without the regex
+    static String[] tokenize(String value) {
+        if (value == null) {
+            return new String[0];
+        }
+        String lowerCase = value.toLowerCase(Locale.ROOT);
+        List<String> tokens = new ArrayList<>(4);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); ) {
+            int codePoint = i < lowerCase.length() ? lowerCase.codePointAt(i) : ' ';
+            if (isTokenChar(codePoint)) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                String token = lowerCase.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return tokens.toArray(String[]::new);
+    }
+
+    private static boolean isTokenChar(int codePoint) {
+        if (Character.isLetter(codePoint)) {
+            return true;
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.DECIMAL_DIGIT_NUMBER || type == Character.LETTER_NUMBER
+                || type == Character.OTHER_NUMBER;
+    }
+
+    private record Entry(String name, String[] tokens) {
+    }
+
+}
@@ -0,0 +1,41 @@
+package br.com.compass.pb.asynchers.compassflix.services.search;
+
+final class Levenshtein {
+
+    private Levenshtein() {
+    }
+
+    static int distance(String a, String b) {
+        if (a.equals(b)) {
+            return 0;
+        }
+        if (a.length() < b.length()) {
+            String tmp = a;
+            a = b;
+            b = tmp;
+        }
+        if (b.isEmpty()) {
+            return a.length();
+        }
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] tmp = previous;
+            previous = current;
+            current = tmp;
+        }
+        return previous[b.length()];
+    }
+
+}
@@ -0,0 +1,284 @@
+package br.com.compass.pb.asynchers.compassflix.services.similarity;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.SimilarMovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.SimilarityIndexNotReadyException;
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.IndexBuildEvent;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshot;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadOperation;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the precomputed similar movies of {@link SimilarityIndex}. The index is built on a background thread
+ * once the application is ready and rebuilt periodically, which refreshes the term weights and picks up changes
+ * made by other nodes. Writes on this node are applied incrementally on a single updater thread, in the order
+ * they were published, so requests never wait on the neighbor list updates. The ones that arrive while a build is
+ * loading are replayed on top of the fresh index. A rebuild asked for while one runs is not dropped, it runs
+ * again once the current one is done.
+ */
+@Service
+@Slf4j
+public class SimilarMoviesService {
+
+    private static final int BULK_REBUILD_THRESHOLD = 1000;
+
+    private final CatalogSnapshotService snapshotService;
+
+    private final LastKnownCatalog lastKnown;
+
+    private final ReadPreferenceRouter readRouter;
+
+    private final boolean enabled;
+
+    private final int parallelism;
+
+    private final SimilarityIndex.Settings settings;
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private final AtomicBoolean rebuildRequested = new AtomicBoolean();
+
+    private final ExecutorService updater;
+
+    private final Object writeLock = new Object();
+
+    private volatile SimilarityIndex index;
+
+    private List<MovieChangedEvent> replayLog;
+
+    public SimilarMoviesService(CatalogSnapshotService snapshotService, LastKnownCatalog lastKnown,
+                                ReadPreferenceRouter readRouter,
+                                @Value("${compassflix.similarity.enabled:true}") boolean enabled,
+                                @Value("${compassflix.similarity.k:20}") int k,
+                                @Value("${compassflix.similarity.parallelism:0}") int parallelism,
+                                @Value("${compassflix.similarity.text-weight:0.6}") double textWeight,
+                                @Value("${compassflix.similarity.genre-weight:0.25}") double genreWeight,
+                                @Value("${compassflix.similarity.era-weight:0.15}") double eraWeight,
+                                @Value("${compassflix.similarity.era-years:10}") int eraYears,
+                                @Value("${compassflix.similarity.max-document-frequency:0.05}") double maxDocumentFrequency,
+                                @Value("${compassflix.similarity.era-candidates:1000}") int eraCandidates,
+                                @Value("${compassflix.similarity.rescore-candidates:200}") int rescoreCandidates) {
+        this.snapshotService = snapshotService;
+        this.lastKnown = lastKnown;
+        this.readRouter = readRouter;
+        this.enabled = enabled;
+        this.parallelism = parallelism;
+        this.settings = new SimilarityIndex.Settings(k, textWeight, genreWeight, eraWeight, eraYears,
+                maxDocumentFrequency, eraCandidates, rescoreCandidates);
+        this.updater = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "similarity-index-updater");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        updater.shutdown();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            Thread builder = new Thread(this::rebuild, "similarity-index-builder");
+            builder.setDaemon(true);
+            builder.start();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.similarity.rebuild-interval:PT1H}",
+            fixedDelayString = "${compassflix.similarity.rebuild-interval:PT1H}")
+    public void scheduledRebuild() {
+        if (enabled && index != null) {
+            rebuild();
+        }
+    }
+
+    // flagging first, so a build finishing right now either sees the flag or leaves building for this call
+    public void rebuild() {
+        rebuildRequested.set(true);
+        while (rebuildRequested.get() && building.compareAndSet(false, true)) {
+            try {
+                rebuildRequested.set(false);
+                buildAndPublish();
+            } finally {
+                building.set(false);
+            }
+        }
+    }
+
+    private void buildAndPublish() {
+        synchronized (writeLock) {
+            replayLog = new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        IndexBuildEvent recorded = new IndexBuildEvent();
+        recorded.begin();
+        SimilarityIndex rebuilt;
+        try {
+            rebuilt = build(loadCatalog());
+        } catch (RuntimeException e) {
+            synchronized (writeLock) {
+                replayLog = null;
+            }
+            log.error("### Could not build similarity index ###", e);
+            return;
+        }
+        synchronized (writeLock) {
+            replayLog.forEach(event -> apply(rebuilt, event));
+            replayLog = null;
+            index = rebuilt;
+        }
+        recorded.index = "similarity";
+        recorded.movies = rebuilt.size();
+        recorded.commit();
+        log.info("### Similarity index built with {} movies in {} ms ###", rebuilt.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (replayLog != null) {
+                replayLog.add(event);
+            }
+            if (index != null) {
+                SimilarityIndex target = index;
+                updater.execute(() -> applyLogged(target, event));
+            }
+        }
+    }
+
+    // only description, genre and release date move neighbors, past a point a rebuild beats single updates
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        List<MovieChangedEvent> relevant = event.changes().stream()
+                .filter(SimilarMoviesService::movesNeighbors)
+                .toList();
+        if (relevant.size() <= BULK_REBUILD_THRESHOLD) {
+            relevant.forEach(this::onMovieChanged);
+        } else if (enabled && (index != null || building.get())) {
+            // a running build may have read the catalog before these changes, it builds once more when done
+            rebuildRequested.set(true);
+            if (!building.get()) {
+                Thread builder = new Thread(this::rebuild, "similarity-index-builder");
+                builder.setDaemon(true);
+                builder.start();
+            }
+        }
+    }
+
+    // waits for the incremental updates published so far
+    void awaitUpdates() {
+        try {
+            updater.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static boolean movesNeighbors(MovieChangedEvent change) {
+        Movie previous = change.previous();
+        Movie current = change.current();
+        return previous == null || current == null
+                || !Objects.equals(previous.getDescription(), current.getDescription())
+                || previous.getGenre() != current.getGenre()
+                || !Objects.equals(previous.getReleaseDate(), current.getReleaseDate());
+    }
+
+    public List<SimilarMovieResponseDto> similar(String id, int limit) {
+        if (limit < 1) {
+            throw new InvalidQueryException("limit must be at least 1");
+        }
+        SimilarityIndex current = index;
+        if (current == null) {
+            throw new SimilarityIndexNotReadyException("Similar movies are not available yet, the index is still being built");
+        }
+        if (!current.contains(id)) {
+            throw new MovieNotFoundException("Movie not found with id: " + id);
+        }
+        List<SimilarityIndex.Neighbor> neighbors = current.neighbors(id, Math.min(limit, settings.k()));
+        if (neighbors.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> ids = neighbors.stream().map(SimilarityIndex.Neighbor::id).toList();
+        Map<String, Movie> movies = snapshotService.current()
+                .map(CatalogSnapshot::byId)
+                .orElseGet(() -> lastKnown.query(() -> readRouter.forRead(ReadOperation.SEARCH).findAllById(ids).stream()
+                        .collect(Collectors.toMap(Movie::getId, Function.identity())), CatalogSnapshot::byId));
+
+        return neighbors.stream()
+                .filter(neighbor -> movies.containsKey(neighbor.id()))
+                .map(neighbor -> new SimilarMovieResponseDto(new MovieResponseDto(movies.get(neighbor.id())),
+                        neighbor.score()))
+                .toList();
+    }
+
+    SimilarityIndex build(Collection<Movie> movies) {
+        if (parallelism <= 0) {
+            return SimilarityIndex.build(movies, settings, ForkJoinPool.commonPool());
+        }
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return SimilarityIndex.build(movies, settings, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private Collection<Movie> loadCatalog() {
+        return snapshotService.current()
+                .<Collection<Movie>>map(CatalogSnapshot::movies)
+                .orElseGet(() -> readRouter.forRead(ReadOperation.FIND_ALL).findAll());
+    }
+
+    private static void applyLogged(SimilarityIndex index, MovieChangedEvent event) {
+        try {
+            apply(index, event);
+        } catch (RuntimeException e) {
+            log.error("### Could not update similar movies of {}, they refresh with the next rebuild ###",
+                    event.movieId(), e);
+        }
+    }
+
+    private static void apply(SimilarityIndex index, MovieChangedEvent event) {
+        switch (event.type()) {
+            case CREATED, UPDATED -> index.put(event.current());
+            case DELETED -> index.remove(event.movieId());
+        }
+    }
+
+}
@@ -0,0 +1,649 @@
+package br.com.compass.pb.asynchers.compassflix.services.similarity;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Top-k similar movies for every movie in the catalog. Similarity blends the cosine of the TF-IDF vectors of the
+ * descriptions with a same genre bonus, which grows with the closeness of the release years (a drama from the same
+ * decade). Comparing every pair does not scale, so candidates come from an inverted index over the description
+ * terms (terms in more than maxDocumentFrequency of the catalog are too common to pick candidates, they still count
+ * in the cosine) plus up to eraCandidates movies of the same genre, nearest release years first. Walking the
+ * postings accumulates the dot product over those rare terms, which ranks the candidates cheaply, and only the
+ * best rescoreCandidates of them are scored exactly.
+ * <p>
+ * Movies live in dense slots. Neighbors are kept in two flat arrays, k entries per slot, -1 marking an empty
+ * entry. {@link #build} computes all slots in parallel on a fork-join pool, {@link #put} and {@link #remove}
+ * keep the index current between builds. Term weights use the IDF of the last build, new terms get the highest
+ * IDF until the next one.
+ */
+public class SimilarityIndex {
+
+    public record Settings(int k, double textWeight, double genreWeight, double eraWeight, int eraYears,
+                           double maxDocumentFrequency, int eraCandidates, int rescoreCandidates) {
+    }
+
+    public record Neighbor(String id, double score) {
+    }
+
+    private static final int LEAF_SIZE = 256;
+
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private static final int MAX_YEAR_DISTANCE = 150;
+
+    private static final Set<String> STOP_WORDS = Set.of("the", "and", "for", "with", "that", "this", "from",
+            "his", "her", "their", "they", "who", "are", "was", "has", "have", "into", "when", "but", "its", "not",
+            "one", "after", "while", "about", "all", "out", "him", "she", "them", "will", "can", "where", "what");
+
+    private final Settings settings;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> slotsById = new HashMap<>();
+
+    private final Map<String, Integer> termIds = new HashMap<>();
+
+    private final Map<Long, int[]> eraBuckets = new HashMap<>();
+
+    private String[] ids;
+    private int[][] terms;
+    private float[][] weights;
+    private int[] genres;
+    private int[] years;
+    private boolean[] live;
+    private int size;
+
+    private int[] documentFrequency = new int[1024];
+    private float[] idf = new float[1024];
+    private int[][] postings = new int[1024][];
+    private float[][] postingWeights = new float[1024][];
+    private int[] postingSizes = new int[1024];
+
+    private int[] neighbors;
+    private float[] scores;
+
+    // reused by put under the write lock, collectCandidates grows it with the index
+    private Scratch putScratch;
+
+    private SimilarityIndex(Settings settings, int capacity) {
+        this.settings = settings;
+        capacity = Math.max(16, capacity);
+        ids = new String[capacity];
+        terms = new int[capacity][];
+        weights = new float[capacity][];
+        genres = new int[capacity];
+        years = new int[capacity];
+        live = new boolean[capacity];
+        neighbors = new int[capacity * settings.k()];
+        scores = new float[capacity * settings.k()];
+        Arrays.fill(neighbors, -1);
+    }
+
+    public static SimilarityIndex build(Collection<Movie> movies, Settings settings, ForkJoinPool pool) {
+        SimilarityIndex index = new SimilarityIndex(settings, movies.size() * 5 / 4);
+        List<Map<Integer, Integer>> frequencies = new ArrayList<>(movies.size());
+        for (Movie movie : movies) {
+            int slot = index.size++;
+            index.ids[slot] = movie.getId();
+            index.slotsById.put(movie.getId(), slot);
+            index.genres[slot] = movie.getGenre() == null ? -1 : movie.getGenre().code();
+            index.years[slot] = movie.getReleaseDate() == null ? NO_YEAR : movie.getReleaseDate().getYear();
+            index.live[slot] = true;
+            Map<Integer, Integer> frequency = index.termFrequencies(movie.getDescription());
+            frequency.keySet().forEach(term -> index.documentFrequency[term]++);
+            frequencies.add(frequency);
+        }
+        for (int term = 0; term < index.termIds.size(); term++) {
+            index.idf[term] = index.idfOf(index.documentFrequency[term]);
+        }
+        for (int slot = 0; slot < index.size; slot++) {
+            index.setVector(slot, frequencies.get(slot));
+            frequencies.set(slot, null);
+            index.addToEra(slot);
+        }
+        pool.invoke(index.new ComputeNeighbors(0, index.size));
+        return index;
+    }
+
+    public void put(Movie movie) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = slotsById.get(movie.getId());
+            int slot;
+            if (existing != null) {
+                slot = existing;
+                removeFromEra(slot);
+                dropFromNeighborLists(slot);
+            } else {
+                slot = size++;
+                ensureCapacity(size);
+                ids[slot] = movie.getId();
+                slotsById.put(movie.getId(), slot);
+                live[slot] = true;
+            }
+            genres[slot] = movie.getGenre() == null ? -1 : movie.getGenre().code();
+            years[slot] = movie.getReleaseDate() == null ? NO_YEAR : movie.getReleaseDate().getYear();
+            Map<Integer, Integer> frequency = termFrequencies(movie.getDescription());
+            if (existing != null) {
+                for (int term : terms[slot]) {
+                    documentFrequency[term]--;
+                    removePosting(term, slot);
+                }
+            }
+            for (int term : frequency.keySet()) {
+                documentFrequency[term]++;
+                if (idf[term] == 0) {
+                    idf[term] = idfOf(documentFrequency[term]);
+                }
+            }
+            setVector(slot, frequency);
+            addToEra(slot);
+
+            if (putScratch == null) {
+                putScratch = new Scratch(size, settings);
+            }
+            Scratch scratch = putScratch;
+            computeSlot(slot, scratch);
+            // offer the movie to the lists of the movies it is close to, scoring every candidate exactly is
+            // affordable for a single movie
+            for (int i = 0; i < scratch.candidateCount; i++) {
+                int other = scratch.candidates[i];
+                offer(other, slot, score(other, slot));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slotsById.remove(id);
+            if (slot != null) {
+                live[slot] = false;
+                for (int term : terms[slot]) {
+                    documentFrequency[term]--;
+                    removePosting(term, slot);
+                }
+                removeFromEra(slot);
+                dropFromNeighborLists(slot);
+                Arrays.fill(neighbors, slot * settings.k(), (slot + 1) * settings.k(), -1);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public boolean contains(String id) {
+        lock.readLock().lock();
+        try {
+            return slotsById.containsKey(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Settings settings() {
+        return settings;
+    }
+
+    public List<Neighbor> neighbors(String id, int limit) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotsById.get(id);
+            if (slot == null) {
+                return List.of();
+            }
+            List<Neighbor> result = new ArrayList<>(Math.min(limit, settings.k()));
+            int base = slot * settings.k();
+            for (int i = 0; i < settings.k() && result.size() < limit && neighbors[base + i] >= 0; i++) {
+                result.add(new Neighbor(ids[neighbors[base + i]], scores[base + i]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private class ComputeNeighbors extends RecursiveAction {
+
+        private final int from;
+        private final int to;
+
+        private ComputeNeighbors(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                Scratch scratch = new Scratch(size, settings);
+                for (int slot = from; slot < to; slot++) {
+                    computeSlot(slot, scratch);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ComputeNeighbors(from, middle), new ComputeNeighbors(middle, to));
+        }
+
+    }
+
+    // per task buffers: a stamp per slot to deduplicate candidates, the partial dot products, the candidate list
+    // and the two heaps
+    private static final class Scratch {
+
+        private int[] stamps;
+        private float[] partial;
+        private int stamp;
+        private int[] candidates = new int[256];
+        private int candidateCount;
+        private final int[] rescoreSlots;
+        private final float[] rescoreScores;
+        private final int[] topSlots;
+        private final float[] topScores;
+
+        private Scratch(int slots, Settings settings) {
+            stamps = new int[slots];
+            partial = new float[slots];
+            rescoreSlots = new int[settings.rescoreCandidates()];
+            rescoreScores = new float[settings.rescoreCandidates()];
+            topSlots = new int[settings.k()];
+            topScores = new float[settings.k()];
+        }
+
+    }
+
+    private void computeSlot(int slot, Scratch scratch) {
+        collectCandidates(slot, scratch);
+        int rescoreCount = 0;
+        for (int i = 0; i < scratch.candidateCount; i++) {
+            int other = scratch.candidates[i];
+            rescoreCount = push(scratch.rescoreSlots, scratch.rescoreScores, rescoreCount, other,
+                    combine(slot, other, scratch.partial[other]));
+        }
+        int k = settings.k();
+        int topCount = 0;
+        for (int i = 0; i < rescoreCount; i++) {
+            int other = scratch.rescoreSlots[i];
+            topCount = push(scratch.topSlots, scratch.topScores, topCount, other, score(slot, other));
+        }
+        int base = slot * k;
+        Arrays.fill(neighbors, base, base + k, -1);
+        // pop the min-heap from the back so the row ends up best first
+        for (int i = topCount - 1; i >= 0; i--) {
+            neighbors[base + i] = scratch.topSlots[0];
+            scores[base + i] = scratch.topScores[0];
+            scratch.topSlots[0] = scratch.topSlots[i];
+            scratch.topScores[0] = scratch.topScores[i];
+            siftDown(scratch.topSlots, scratch.topScores, i);
+        }
+    }
+
+    // bounded min-heap of the best entries, returns the new heap size
+    private static int push(int[] heapSlots, float[] heapScores, int heapSize, int slot, float score) {
+        if (score <= 0) {
+            return heapSize;
+        }
+        if (heapSize < heapSlots.length) {
+            heapSlots[heapSize] = slot;
+            heapScores[heapSize] = score;
+            siftUp(heapSlots, heapScores, heapSize);
+            return heapSize + 1;
+        }
+        if (heapSize > 0 && better(score, slot, heapScores[0], heapSlots[0])) {
+            heapSlots[0] = slot;
+            heapScores[0] = score;
+            siftDown(heapSlots, heapScores, heapSize);
+        }
+        return heapSize;
+    }
+
+    private void collectCandidates(int slot, Scratch scratch) {
+        if (scratch.stamps.length < size) {
+            scratch.stamps = Arrays.copyOf(scratch.stamps, size);
+            scratch.partial = Arrays.copyOf(scratch.partial, size);
+        }
+        scratch.stamp++;
+        scratch.candidateCount = 0;
+        scratch.stamps[slot] = scratch.stamp;
+        int maxPostings = (int) Math.max(1, settings.maxDocumentFrequency() * slotsById.size());
+        for (int t = 0; t < terms[slot].length; t++) {
+            int term = terms[slot][t];
+            if (postingSizes[term] > maxPostings) {
+                continue;
+            }
+            float weight = weights[slot][t];
+            int[] posting = postings[term];
+            float[] postingWeight = postingWeights[term];
+            for (int i = 0; i < postingSizes[term]; i++) {
+                int other = posting[i];
+                if (other != slot && (scratch.stamps[other] == scratch.stamp || addCandidate(other, scratch))) {
+                    scratch.partial[other] += weight * postingWeight[i];
+                }
+            }
+        }
+        if (genres[slot] < 0 || years[slot] == NO_YEAR) {
+            return;
+        }
+        int added = 0;
+        for (int distance = 0; distance <= MAX_YEAR_DISTANCE && added < settings.eraCandidates(); distance++) {
+            added += addEra(eraBuckets.get(eraKey(genres[slot], years[slot] - distance)), scratch,
+                    settings.eraCandidates() - added);
+            if (distance > 0) {
+                added += addEra(eraBuckets.get(eraKey(genres[slot], years[slot] + distance)), scratch,
+                        settings.eraCandidates() - added);
+            }
+        }
+    }
+
+    private int addEra(int[] bucket, Scratch scratch, int max) {
+        if (bucket == null) {
+            return 0;
+        }
+        int added = 0;
+        for (int i = 1; i <= bucket[0] && added < max; i++) {
+            if (addCandidate(bucket[i], scratch)) {
+                added++;
+            }
+        }
+        return added;
+    }
+
+    private boolean addCandidate(int other, Scratch scratch) {
+        if (!live[other] || scratch.stamps[other] == scratch.stamp) {
+            return false;
+        }
+        scratch.stamps[other] = scratch.stamp;
+        scratch.partial[other] = 0;
+        if (scratch.candidateCount == scratch.candidates.length) {
+            scratch.candidates = Arrays.copyOf(scratch.candidates, scratch.candidateCount * 2);
+        }
+        scratch.candidates[scratch.candidateCount++] = other;
+        return true;
+    }
+
+    float score(int a, int b) {
+        return combine(a, b, cosine(terms[a], weights[a], terms[b], weights[b]));
+    }
+
+    private float combine(int a, int b, double text) {
+        if (genres[a] < 0 || genres[a] != genres[b]) {
+            return (float) (settings.textWeight() * text);
+        }
+        double era = 0;
+        if (years[a] != NO_YEAR && years[b] != NO_YEAR && settings.eraYears() > 0) {
+            era = Math.max(0, 1 - Math.abs(years[a] - years[b]) / (double) settings.eraYears());
+        }
+        return (float) (settings.textWeight() * text + settings.genreWeight() + settings.eraWeight() * era);
+    }
+
+    // both vectors are sorted by term id and normalized
+    private static double cosine(int[] termsA, float[] weightsA, int[] termsB, float[] weightsB) {
+        double dot = 0;
+        int i = 0;
+        int j = 0;
+        while (i < termsA.length && j < termsB.length) {
+            if (termsA[i] == termsB[j]) {
+                dot += weightsA[i++] * weightsB[j++];
+            } else if (termsA[i] < termsB[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    // higher score first, lower slot on ties so builds are deterministic
+    private static boolean better(float score, int slot, float otherScore, int otherSlot) {
+        return score > otherScore || (score == otherScore && slot < otherSlot);
+    }
+
+    private static void siftUp(int[] slots, float[] scores, int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!better(scores[parent], slots[parent], scores[index], slots[index])) {
+                return;
+            }
+            swap(slots, scores, parent, index);
+            index = parent;
+        }
+    }
+
+    private static void siftDown(int[] slots, float[] scores, int size) {
+        int index = 0;
+        while (true) {
+            int worst = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && better(scores[worst], slots[worst], scores[left], slots[left])) {
+                worst = left;
+            }
+            if (right < size && better(scores[worst], slots[worst], scores[right], slots[right])) {
+                worst = right;
+            }
+            if (worst == index) {
+                return;
+            }
+            swap(slots, scores, index, worst);
+            index = worst;
+        }
+    }
+
+    private static void swap(int[] slots, float[] scores, int a, int b) {
+        int slot = slots[a];
+        slots[a] = slots[b];
+        slots[b] = slot;
+        float score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+
+    // inserts the candidate into a full or partial row kept best first
+    private void offer(int slot, int candidate, float score) {
+        if (score <= 0) {
+            return;
+        }
+        int k = settings.k();
+        int base = slot * k;
+        int position = k;
+        while (position > 0 && (neighbors[base + position - 1] < 0
+                || better(score, candidate, scores[base + position - 1], neighbors[base + position - 1]))) {
+            position--;
+        }
+        if (position == k) {
+            return;
+        }
+        System.arraycopy(neighbors, base + position, neighbors, base + position + 1, k - position - 1);
+        System.arraycopy(scores, base + position, scores, base + position + 1, k - position - 1);
+        neighbors[base + position] = candidate;
+        scores[base + position] = score;
+    }
+
+    // a full scan, fine for single writes; rows lose an entry until the next build refills them
+    private void dropFromNeighborLists(int slot) {
+        int k = settings.k();
+        for (int row = 0; row < size; row++) {
+            int base = row * k;
+            for (int i = 0; i < k && neighbors[base + i] >= 0; i++) {
+                if (neighbors[base + i] == slot) {
+                    System.arraycopy(neighbors, base + i + 1, neighbors, base + i, k - i - 1);
+                    System.arraycopy(scores, base + i + 1, scores, base + i, k - i - 1);
+                    neighbors[base + k - 1] = -1;
+                    break;
+                }
+            }
+        }
+    }
+
+    private Map<Integer, Integer> termFrequencies(String description) {
+        Map<Integer, Integer> frequency = new HashMap<>();
+        for (String token : tokenize(description)) {
+            Integer term = termIds.get(token);
+            if (term == null) {
+                term = termIds.size();
+                termIds.put(token, term);
+                ensureTermCapacity(term + 1);
+            }
+            frequency.merge(term, 1, Integer::sum);
+        }
+        return frequency;
+    }
+
+    private void setVector(int slot, Map<Integer, Integer> frequency) {
+        int[] vectorTerms = frequency.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        float[] vectorWeights = new float[vectorTerms.length];
+        double norm = 0;
+        for (int i = 0; i < vectorTerms.length; i++) {
+            double weight = (1 + Math.log(frequency.get(vectorTerms[i]))) * idf[vectorTerms[i]];
+            vectorWeights[i] = (float) weight;
+            norm += weight * weight;
+        }
+        norm = Math.sqrt(norm);
+        for (int i = 0; i < vectorWeights.length && norm > 0; i++) {
+            vectorWeights[i] /= (float) norm;
+        }
+        terms[slot] = vectorTerms;
+        weights[slot] = vectorWeights;
+        for (int i = 0; i < vectorTerms.length; i++) {
+            addPosting(vectorTerms[i], slot, vectorWeights[i]);
+        }
+    }
+
+    private float idfOf(int frequency) {
+        return (float) (Math.log((size + 1.0) / (frequency + 1.0)) + 1);
+    }
+
+    private void addPosting(int term, int slot, float weight) {
+        if (postings[term] == null) {
+            postings[term] = new int[2];
+            postingWeights[term] = new float[2];
+        } else if (postingSizes[term] == postings[term].length) {
+            postings[term] = Arrays.copyOf(postings[term], postingSizes[term] * 2);
+            postingWeights[term] = Arrays.copyOf(postingWeights[term], postingSizes[term] * 2);
+        }
+        postings[term][postingSizes[term]] = slot;
+        postingWeights[term][postingSizes[term]++] = weight;
+    }
+
+    private void removePosting(int term, int slot) {
+        int[] posting = postings[term];
+        for (int i = 0; i < postingSizes[term]; i++) {
+            if (posting[i] == slot) {
+                int last = --postingSizes[term];
+                posting[i] = posting[last];
+                postingWeights[term][i] = postingWeights[term][last];
+                return;
+            }
+        }
+    }
+
+    // bucket layout: element 0 is the count, the slots follow
+    private void addToEra(int slot) {
+        if (genres[slot] < 0 || years[slot] == NO_YEAR) {
+            return;
+        }
+        eraBuckets.compute(eraKey(genres[slot], years[slot]), (key, bucket) -> {
+            if (bucket == null) {
+                bucket = new int[5];
+            } else if (bucket[0] + 1 == bucket.length) {
+                bucket = Arrays.copyOf(bucket, bucket.length * 2);
+            }
+            bucket[++bucket[0]] = slot;
+            return bucket;
+        });
+    }
+
+    private void removeFromEra(int slot) {
+        int[] bucket = eraBuckets.get(eraKey(genres[slot], years[slot]));
+        if (bucket == null) {
+            return;
+        }
+        for (int i = 1; i <= bucket[0]; i++) {
+            if (bucket[i] == slot) {
+                bucket[i] = bucket[bucket[0]--];
+                return;
+            }
+        }
+    }
+
+    private static long eraKey(int genre, int year) {
+        return ((long) genre << 32) | (year & 0xffffffffL);
+    }
+
+    private void ensureCapacity(int slots) {
+        if (slots <= ids.length) {
+            return;
+        }
+        int capacity = Math.max(slots, ids.length * 3 / 2);
+        ids = Arrays.copyOf(ids, capacity);
+        terms = Arrays.copyOf(terms, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        genres = Arrays.copyOf(genres, capacity);
+        years = Arrays.copyOf(years, capacity);
+        live = Arrays.copyOf(live, capacity);
+        int oldLength = neighbors.length;
+        neighbors = Arrays.copyOf(neighbors, capacity * settings.k());
+        scores = Arrays.copyOf(scores, capacity * settings.k());
+        Arrays.fill(neighbors, oldLength, neighbors.length, -1);
+    }
+
+    private void ensureTermCapacity(int count) {
+        if (count <= documentFrequency.length) {
+            return;
+        }
+        int capacity = Math.max(count, documentFrequency.length * 2);
+        documentFrequency = Arrays.copyOf(documentFrequency, capacity);
+        idf = Arrays.copyOf(idf, capacity);
+        postings = Arrays.copyOf(postings, capacity);
+        postingWeights = Arrays.copyOf(postingWeights, capacity);
+        postingSizes = Arrays.copyOf(postingSizes, capacity);
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) {
+            return tokens;
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean tokenChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                String token = lowerCase.substring(start, i);
+                if (token.length() > 2 && !STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+}
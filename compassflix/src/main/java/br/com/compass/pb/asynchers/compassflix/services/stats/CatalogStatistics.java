@@ -0,0 +1,111 @@
+package br.com.compass.pb.asynchers.compassflix.services.stats;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogStatsDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Catalog statistics kept as mergeable counters: a {@link DurationHistogram} for the whole catalog and one per
+ * genre, movies per release year and registrations per UTC day. Movies can be added and removed one at a time,
+ * and statistics built over disjoint parts of the catalog merge into those of the whole. Not thread safe.
+ */
+public final class CatalogStatistics {
+
+    private final DurationHistogram durations = new DurationHistogram();
+
+    private final Map<Genre, DurationHistogram> durationsByGenre = new EnumMap<>(Genre.class);
+
+    private final TreeMap<Integer, Long> releaseYears = new TreeMap<>();
+
+    private final TreeMap<LocalDate, Long> registrationDays = new TreeMap<>();
+
+    private long total;
+
+    public void add(Movie movie) {
+        total++;
+        if (movie.getDuration() != null) {
+            durations.add(movie.getDuration());
+            if (movie.getGenre() != null) {
+                durationsByGenre.computeIfAbsent(movie.getGenre(), genre -> new DurationHistogram())
+                        .add(movie.getDuration());
+            }
+        }
+        if (movie.getReleaseDate() != null) {
+            releaseYears.merge(movie.getReleaseDate().getYear(), 1L, Long::sum);
+        }
+        if (movie.getRegistrationDate() != null) {
+            registrationDays.merge(day(movie), 1L, Long::sum);
+        }
+    }
+
+    public void remove(Movie movie) {
+        total--;
+        if (movie.getDuration() != null) {
+            durations.remove(movie.getDuration());
+            DurationHistogram genre = movie.getGenre() == null ? null : durationsByGenre.get(movie.getGenre());
+            if (genre != null) {
+                genre.remove(movie.getDuration());
+            }
+        }
+        if (movie.getReleaseDate() != null) {
+            decrement(releaseYears, movie.getReleaseDate().getYear());
+        }
+        if (movie.getRegistrationDate() != null) {
+            decrement(registrationDays, day(movie));
+        }
+    }
+
+    public CatalogStatistics merge(CatalogStatistics other) {
+        total += other.total;
+        durations.merge(other.durations);
+        other.durationsByGenre.forEach((genre, histogram) ->
+                durationsByGenre.computeIfAbsent(genre, key -> new DurationHistogram()).merge(histogram));
+        other.releaseYears.forEach((year, count) -> releaseYears.merge(year, count, Long::sum));
+        other.registrationDays.forEach((day, count) -> registrationDays.merge(day, count, Long::sum));
+        return this;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Work proportional to the number of genres, histogram buckets, release years and days asked for,
+     * whatever the size of the catalog.
+     */
+    public CatalogStatsDto summary(long version, LocalDate today, int lastDays) {
+        Map<String, CatalogStatsDto.Durations> byGenre = new LinkedHashMap<>();
+        durationsByGenre.forEach((genre, histogram) -> {
+            if (histogram.count() > 0) {
+                byGenre.put(genre.label(), summary(histogram));
+            }
+        });
+        Map<LocalDate, Long> days = new LinkedHashMap<>(
+                registrationDays.subMap(today.minusDays(lastDays - 1L), true, today, true));
+        return new CatalogStatsDto(version, total, summary(durations), Collections.unmodifiableMap(byGenre),
+                Collections.unmodifiableMap(new LinkedHashMap<>(releaseYears)), Collections.unmodifiableMap(days));
+    }
+
+    private static CatalogStatsDto.Durations summary(DurationHistogram histogram) {
+        return new CatalogStatsDto.Durations(histogram.count(), histogram.mean(), histogram.min(),
+                histogram.valueAtPercentile(50), histogram.valueAtPercentile(90), histogram.valueAtPercentile(99),
+                histogram.max());
+    }
+
+    private static <K> void decrement(Map<K, Long> counts, K key) {
+        counts.computeIfPresent(key, (ignored, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private static LocalDate day(Movie movie) {
+        return LocalDate.ofInstant(movie.getRegistrationDate(), ZoneOffset.UTC);
+    }
+
+}
@@ -0,0 +1,209 @@
+package br.com.compass.pb.asynchers.compassflix.services.stats;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogStatsDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.StatisticsNotReadyException;
+import br.com.compass.pb.asynchers.compassflix.observability.jfr.IndexBuildEvent;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadOperation;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Serves {@link CatalogStatistics} without reading the catalog. The statistics are built once the application is
+ * ready from a cursor over every movie, the batches it returns counted in parallel and merged, and rebuilt
+ * periodically to pick up changes made by other nodes. Writes on this node are applied as they happen, the ones
+ * that arrive while a build is running are replayed on top of it; a write the cursor already saw is then counted
+ * twice until the next build, counters have no way to tell. The summary is computed on the first read after a
+ * change, so its cost does not grow with the catalog.
+ */
+@Service
+@Slf4j
+public class CatalogStatsService {
+
+    private record Summary(LocalDate day, CatalogStatsDto stats) {
+    }
+
+    private final ReadPreferenceRouter readRouter;
+
+    private final boolean enabled;
+
+    private final int parallelism;
+
+    private final int cursorBatchSize;
+
+    private final int registrationDays;
+
+    private final Clock clock;
+
+    private final AtomicBoolean building = new AtomicBoolean();
+
+    private final Object writeLock = new Object();
+
+    private CatalogStatistics statistics;
+
+    private long version;
+
+    private List<MovieChangedEvent> replayLog;
+
+    private volatile Summary summary;
+
+    @Autowired
+    public CatalogStatsService(ReadPreferenceRouter readRouter,
+                               @Value("${compassflix.stats.enabled:true}") boolean enabled,
+                               @Value("${compassflix.stats.parallelism:0}") int parallelism,
+                               @Value("${compassflix.stats.cursor-batch-size:1000}") int cursorBatchSize,
+                               @Value("${compassflix.stats.registration-days:90}") int registrationDays) {
+        this(readRouter, enabled, parallelism, cursorBatchSize, registrationDays, Clock.systemUTC());
+    }
+
+    CatalogStatsService(ReadPreferenceRouter readRouter, boolean enabled, int parallelism, int cursorBatchSize,
+                        int registrationDays, Clock clock) {
+        this.readRouter = readRouter;
+        this.enabled = enabled;
+        this.parallelism = parallelism;
+        this.cursorBatchSize = Math.max(1, cursorBatchSize);
+        this.registrationDays = Math.max(1, registrationDays);
+        this.clock = clock;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            Thread builder = new Thread(this::rebuild, "catalog-stats-builder");
+            builder.setDaemon(true);
+            builder.start();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.stats.rebuild-interval:PT1H}",
+            fixedDelayString = "${compassflix.stats.rebuild-interval:PT1H}")
+    public void scheduledRebuild() {
+        if (enabled && statistics != null) {
+            rebuild();
+        }
+    }
+
+    public void rebuild() {
+        if (!building.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            synchronized (writeLock) {
+                replayLog = new ArrayList<>();
+            }
+            long start = System.nanoTime();
+            IndexBuildEvent recorded = new IndexBuildEvent();
+            recorded.begin();
+            CatalogStatistics rebuilt;
+            try {
+                rebuilt = build();
+            } catch (RuntimeException e) {
+                synchronized (writeLock) {
+                    replayLog = null;
+                }
+                log.error("### Could not build catalog statistics ###", e);
+                return;
+            }
+            synchronized (writeLock) {
+                replayLog.forEach(event -> apply(rebuilt, event));
+                replayLog = null;
+                statistics = rebuilt;
+                version++;
+                summary = null;
+            }
+            recorded.index = "catalog-stats";
+            recorded.movies = rebuilt.total();
+            recorded.commit();
+            log.info("### Catalog statistics built over {} movies in {} ms ###", rebuilt.total(),
+                    (System.nanoTime() - start) / 1_000_000);
+        } finally {
+            building.set(false);
+        }
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        onMoviesChanged(new MoviesBulkChangedEvent(List.of(event)));
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        if (!enabled) {
+            return;
+        }
+        synchronized (writeLock) {
+            if (replayLog != null) {
+                replayLog.addAll(event.changes());
+            }
+            if (statistics != null) {
+                event.changes().forEach(change -> apply(statistics, change));
+                version++;
+                summary = null;
+            }
+        }
+    }
+
+    public CatalogStatsDto stats() {
+        LocalDate today = LocalDate.now(clock);
+        Summary current = summary;
+        if (current != null && current.day().equals(today)) {
+            return current.stats();
+        }
+        synchronized (writeLock) {
+            if (statistics == null) {
+                throw new StatisticsNotReadyException("Catalog statistics are not available yet, they are still being built");
+            }
+            current = new Summary(today, statistics.summary(version, today, registrationDays));
+            summary = current;
+            return current.stats();
+        }
+    }
+
+    // batches split off the cursor are counted on the pool and the partial statistics merged
+    CatalogStatistics build() {
+        ForkJoinPool pool = parallelism <= 0 ? ForkJoinPool.commonPool() : new ForkJoinPool(parallelism);
+        try (Stream<Movie> movies = readRouter.forRead(ReadOperation.FACETS).streamAll(cursorBatchSize)) {
+            return pool.submit(() -> movies.parallel()
+                    .collect(CatalogStatistics::new, CatalogStatistics::add, CatalogStatistics::merge)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while building catalog statistics", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtime) {
+                throw runtime;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            if (pool != ForkJoinPool.commonPool()) {
+                pool.shutdown();
+            }
+        }
+    }
+
+    private static void apply(CatalogStatistics statistics, MovieChangedEvent event) {
+        if (event.previous() != null) {
+            statistics.remove(event.previous());
+        }
+        if (event.current() != null) {
+            statistics.add(event.current());
+        }
+    }
+
+}
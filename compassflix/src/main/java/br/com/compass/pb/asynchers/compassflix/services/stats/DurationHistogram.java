@@ -0,0 +1,117 @@
+package br.com.compass.pb.asynchers.compassflix.services.stats;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable histogram of non-negative values with log-linear buckets, in the spirit of an HDR histogram. Values
+ * below 128 are counted exactly, above that every power of two is split into 64 buckets, so a percentile is off
+ * by less than 1/64 of its value. Unlike quantile digests, counts can be taken back out, which is what lets
+ * updates and deletes be applied without a rebuild. Not thread safe.
+ */
+public final class DurationHistogram {
+
+    private static final int EXACT = 128;
+
+    private static final int SUB_BUCKETS = 64;
+
+    private static final int SUB_BUCKET_BITS = 6;
+
+    private long[] counts = new long[EXACT];
+
+    private long count;
+
+    private long sum;
+
+    public void add(long value) {
+        int index = index(value);
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + SUB_BUCKETS));
+        }
+        counts[index]++;
+        count++;
+        sum += Math.max(0, value);
+    }
+
+    public void remove(long value) {
+        int index = index(value);
+        if (index < counts.length && counts[index] > 0) {
+            counts[index]--;
+            count--;
+            sum -= Math.max(0, value);
+        }
+    }
+
+    public void merge(DurationHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public double mean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * The value below which the given percentage of values fall, 0 without values.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return representative(i);
+            }
+        }
+        return max();
+    }
+
+    public long min() {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) {
+                return representative(i);
+            }
+        }
+        return 0;
+    }
+
+    public long max() {
+        for (int i = counts.length - 1; i >= 0; i--) {
+            if (counts[i] > 0) {
+                return representative(i);
+            }
+        }
+        return 0;
+    }
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) Math.max(0, value);
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    // the middle of the bucket, exact below 128
+    static long representative(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long lowest = (long) (SUB_BUCKETS + (index - EXACT) % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) / 2;
+    }
+
+}
@@ -0,0 +1,160 @@
+package br.com.compass.pb.asynchers.compassflix.services.views;
+
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieViewsRepository;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts movie views without touching Mongo on the read path. A view is one {@link LongAdder} increment, the
+ * adder spreads contended updates over cells so request threads do not fight over a counter. Every tick drains
+ * the adders into the trending top-k and into the counts waiting to be flushed, and every flush writes those as
+ * a single bulk of $inc upserts. A failed flush keeps its counts for the next one, so a bulk that half applied
+ * before failing counts those views twice; view counts are approximate anyway.
+ */
+@Service
+@Slf4j
+public class MovieViewCounter {
+
+    private final MovieViewsRepository repository;
+
+    private final RepositoryCircuitBreaker circuitBreaker;
+
+    private final boolean enabled;
+
+    private final Duration halfLife;
+
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+
+    private final TrendingTopK trending;
+
+    private Map<String, Long> unflushed = new HashMap<>();
+
+    private Instant lastTick;
+
+    @Autowired
+    public MovieViewCounter(MovieViewsRepository repository, RepositoryCircuitBreaker circuitBreaker,
+                            @Value("${compassflix.views.enabled:true}") boolean enabled,
+                            @Value("${compassflix.views.trending.capacity:100}") int capacity,
+                            @Value("${compassflix.views.trending.sketch-width:4096}") int sketchWidth,
+                            @Value("${compassflix.views.trending.sketch-depth:4}") int sketchDepth,
+                            @Value("${compassflix.views.trending.half-life:PT1H}") Duration halfLife) {
+        this(repository, circuitBreaker, enabled, new TrendingTopK(sketchWidth, sketchDepth, capacity), halfLife,
+                Clock.systemUTC());
+    }
+
+    MovieViewCounter(MovieViewsRepository repository, RepositoryCircuitBreaker circuitBreaker, boolean enabled,
+                     TrendingTopK trending, Duration halfLife, Clock clock) {
+        this.repository = repository;
+        this.circuitBreaker = circuitBreaker;
+        this.enabled = enabled;
+        this.trending = trending;
+        this.halfLife = halfLife;
+        this.clock = clock;
+        this.lastTick = clock.instant();
+    }
+
+    // only views of existing movies are recorded and adders live until the movie is deleted, so the map is bounded
+    // by the catalog and an increment never lands on an adder that was already dropped
+    public void record(String movieId) {
+        if (!enabled) {
+            return;
+        }
+        LongAdder adder = pending.get(movieId);
+        if (adder == null) {
+            adder = pending.computeIfAbsent(movieId, id -> new LongAdder());
+        }
+        adder.increment();
+    }
+
+    @Scheduled(fixedDelayString = "${compassflix.views.tick-interval:PT1S}")
+    public synchronized void tick() {
+        Instant now = clock.instant();
+        double elapsed = Duration.between(lastTick, now).toMillis() / (double) halfLife.toMillis();
+        lastTick = now;
+        if (elapsed > 0) {
+            trending.decay(Math.pow(0.5, elapsed));
+        }
+        pending.forEach((movieId, adder) -> {
+            // sum and subtract instead of reset, an increment racing with the drain is kept for the next tick
+            long views = adder.sum();
+            if (views == 0) {
+                return;
+            }
+            adder.add(-views);
+            unflushed.merge(movieId, views, Long::sum);
+            trending.add(movieId, views);
+        });
+    }
+
+    @Scheduled(initialDelayString = "${compassflix.views.flush-interval:PT30S}",
+            fixedDelayString = "${compassflix.views.flush-interval:PT30S}")
+    public void flush() {
+        Map<String, Long> batch;
+        synchronized (this) {
+            tick();
+            if (unflushed.isEmpty()) {
+                return;
+            }
+            batch = unflushed;
+            unflushed = new HashMap<>();
+        }
+        try {
+            circuitBreaker.run(() -> repository.incrementViews(batch));
+            log.info("### Flushed views of {} movies ###", batch.size());
+        } catch (RuntimeException e) {
+            log.warn("### Could not flush views of {} movies, keeping them for the next flush ###", batch.size(), e);
+            synchronized (this) {
+                batch.forEach((movieId, views) -> unflushed.merge(movieId, views, Long::sum));
+            }
+        }
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public synchronized List<TrendingTopK.Entry> trending(int limit) {
+        return trending.top(limit);
+    }
+
+    public int maxTrending() {
+        return trending.capacity();
+    }
+
+    @EventListener
+    public void onMovieChanged(MovieChangedEvent event) {
+        if (event.type() == MovieChangedEvent.ChangeType.DELETED) {
+            synchronized (this) {
+                pending.remove(event.movieId());
+                unflushed.remove(event.movieId());
+                trending.remove(event.movieId());
+            }
+        }
+    }
+
+    @EventListener
+    public void onMoviesChanged(MoviesBulkChangedEvent event) {
+        event.changes().forEach(this::onMovieChanged);
+    }
+
+}
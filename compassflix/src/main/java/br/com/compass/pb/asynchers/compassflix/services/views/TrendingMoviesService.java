@@ -0,0 +1,54 @@
+package br.com.compass.pb.asynchers.compassflix.services.views;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.TrendingMovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshot;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadOperation;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+@RequiredArgsConstructor
+public class TrendingMoviesService {
+
+    private final MovieViewCounter viewCounter;
+
+    private final CatalogSnapshotService snapshotService;
+
+    private final LastKnownCatalog lastKnown;
+
+    private final ReadPreferenceRouter readRouter;
+
+    // trending is per node, it only sees the views this node served
+    public List<TrendingMovieResponseDto> trending(int limit) {
+        if (limit < 1 || limit > viewCounter.maxTrending()) {
+            throw new InvalidQueryException("limit must be between 1 and " + viewCounter.maxTrending());
+        }
+        List<TrendingTopK.Entry> top = viewCounter.trending(limit);
+        if (top.isEmpty()) {
+            return List.of();
+        }
+
+        List<String> ids = top.stream().map(TrendingTopK.Entry::id).toList();
+        Map<String, Movie> movies = snapshotService.current()
+                .map(CatalogSnapshot::byId)
+                .orElseGet(() -> lastKnown.query(() -> readRouter.forRead(ReadOperation.SEARCH).findAllById(ids).stream()
+                        .collect(Collectors.toMap(Movie::getId, Function.identity())), CatalogSnapshot::byId));
+
+        return top.stream()
+                .filter(entry -> movies.containsKey(entry.id()))
+                .map(entry -> new TrendingMovieResponseDto(new MovieResponseDto(movies.get(entry.id())), entry.score()))
+                .toList();
+    }
+
+}
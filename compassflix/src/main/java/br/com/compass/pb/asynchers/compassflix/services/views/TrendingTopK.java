@@ -0,0 +1,129 @@
+package br.com.compass.pb.asynchers.compassflix.services.views;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Approximate top-k of exponentially decaying counts. A count-min sketch estimates the decayed count of every
+ * movie in fixed memory, and the movies with the highest estimates are tracked in a small candidate set. Decay
+ * multiplies every cell and candidate by the same factor, so it never changes the order, old views just weigh
+ * less than recent ones. Estimates can only overshoot, by collisions in all rows at once. Not thread safe.
+ */
+public class TrendingTopK {
+
+    public record Entry(String id, double score) {
+    }
+
+    private static final double RESCALE_BELOW = 1e-200;
+
+    private final double[][] cells;
+
+    private final int mask;
+
+    private final int capacity;
+
+    private final Map<String, Double> candidates = new HashMap<>();
+
+    private String minId;
+
+    private double minScore;
+
+    TrendingTopK(int width, int depth, int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.cells = new double[depth][size];
+        this.mask = size - 1;
+        this.capacity = capacity;
+    }
+
+    void add(String id, long count) {
+        int hash = id.hashCode();
+        double estimate = Double.MAX_VALUE;
+        for (int row = 0; row < cells.length; row++) {
+            int cell = index(hash, row);
+            cells[row][cell] += count;
+            estimate = Math.min(estimate, cells[row][cell]);
+        }
+        if (candidates.containsKey(id)) {
+            candidates.put(id, estimate);
+            if (id.equals(minId)) {
+                findMin();
+            }
+        } else if (candidates.size() < capacity) {
+            candidates.put(id, estimate);
+            if (minId == null || estimate < minScore) {
+                minId = id;
+                minScore = estimate;
+            }
+        } else if (estimate > minScore) {
+            candidates.remove(minId);
+            candidates.put(id, estimate);
+            findMin();
+        }
+    }
+
+    void decay(double factor) {
+        for (double[] row : cells) {
+            for (int i = 0; i < row.length; i++) {
+                row[i] *= factor;
+            }
+        }
+        candidates.replaceAll((id, score) -> score * factor);
+        minScore *= factor;
+        // after a long idle time everything is negligible, start over rather than underflow
+        if (minScore < RESCALE_BELOW && candidates.values().stream().allMatch(score -> score < RESCALE_BELOW)) {
+            clear();
+        }
+    }
+
+    List<Entry> top(int limit) {
+        List<Entry> top = new ArrayList<>(candidates.size());
+        candidates.forEach((id, score) -> top.add(new Entry(id, score)));
+        top.sort(Comparator.comparingDouble(Entry::score).reversed().thenComparing(Entry::id));
+        return top.size() > limit ? top.subList(0, limit) : top;
+    }
+
+    void remove(String id) {
+        if (candidates.remove(id) != null && id.equals(minId)) {
+            findMin();
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    private void clear() {
+        for (double[] row : cells) {
+            Arrays.fill(row, 0);
+        }
+        candidates.clear();
+        minId = null;
+        minScore = 0;
+    }
+
+    private void findMin() {
+        minId = null;
+        minScore = Double.MAX_VALUE;
+        candidates.forEach((id, score) -> {
+            if (score < minScore) {
+                minId = id;
+                minScore = score;
+            }
+        });
+        if (minId == null) {
+            minScore = 0;
+        }
+    }
+
+    // a different odd multiplier per row, the high bits of the product pick the cell
+    private int index(int hash, int row) {
+        long mixed = (hash + 0x9E3779B97F4A7C15L * (row + 1)) * 0xBF58476D1CE4E5B9L;
+        mixed ^= mixed >>> 31;
+        return (int) (mixed >>> 32) & mask;
+    }
+
+}
@@ -3,7 +3,9 @@ package br.com.compass.pb.asynchers.compassflix;
 import br.com.compass.pb.asynchers.compassflix.controllers.MovieController;
 import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
 import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
 import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
 import br.com.compass.pb.asynchers.compassflix.exceptions.ListIsEmptyException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
@@ -71,10 +73,10 @@ class IntegrationTest {
         movie.setId("64b1e14a36a86833234f6a42");
         movie.setName("Avengers");
         movie.setDescription("Heroes fighting");
-        movie.setGenre("Action");
+        movie.setGenre(Genre.ACTION);
         movie.setDuration(120L);
         movie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie.setPgRating("pg-17");
+        movie.setPgRating(PgRating.of(17));
         movie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         when(service.findAllMovies()).thenReturn(List.of(movie));
@@ -119,10 +121,10 @@ class IntegrationTest {
         movie.setId("64b1e14a36a86833234f6a42");
         movie.setName("Avengers");
         movie.setDescription("Heroes fighting");
-        movie.setGenre("Action");
+        movie.setGenre(Genre.ACTION);
         movie.setDuration(120L);
         movie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie.setPgRating("pg-17");
+        movie.setPgRating(PgRating.of(17));
         movie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         when(service.findMovieById("64b1e14a36a86833234f6a42")).thenReturn((movie));
@@ -166,10 +168,10 @@ class IntegrationTest {
         movie.setId("64b1e14a36a86833234f6a42");
         movie.setName("Avengers");
         movie.setDescription("Heroes fighting");
-        movie.setGenre("Action");
+        movie.setGenre(Genre.ACTION);
         movie.setDuration(120L);
         movie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie.setPgRating("pg-17");
+        movie.setPgRating(PgRating.of(17));
         movie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         List<Movie> movieList = List.of(movie);
@@ -196,10 +198,10 @@ class IntegrationTest {
         movie.setId("64b1e14a36a86833234f6a42");
         movie.setName("Avengers");
         movie.setDescription("Heroes fighting");
-        movie.setGenre("Action");
+        movie.setGenre(Genre.ACTION);
         movie.setDuration(120L);
         movie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie.setPgRating("pg-17");
+        movie.setPgRating(PgRating.of(17));
         movie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         MovieResponseDto movieResponseDto = new MovieResponseDto(movie);
@@ -249,10 +251,10 @@ class IntegrationTest {
         movie.setId("64b1e14a36a86833234f6a42");
         movie.setName("Avengers");
         movie.setDescription("Heroes fighting");
-        movie.setGenre("Action");
+        movie.setGenre(Genre.ACTION);
         movie.setDuration(120L);
         movie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie.setPgRating("pg-17");
+        movie.setPgRating(PgRating.of(17));
         movie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
 
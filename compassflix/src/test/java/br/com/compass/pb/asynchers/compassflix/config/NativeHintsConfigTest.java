@@ -0,0 +1,37 @@
+package br.com.compass.pb.asynchers.compassflix.config;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidGenre;
+import br.com.compass.pb.asynchers.compassflix.dto.validation.ValidPgRating;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.exceptions.ExceptionResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeHintsConfigTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void shouldRegisterWhatJacksonAndTheValidatorsReachReflectively() {
+        new NativeHintsConfig.CompassflixRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Movie.class, "getReleaseDate").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Movie.class, "setGenre").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(PgRating.class, "parse").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(MovieRequestDto.class, "name").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(MovieResponseDto.class, "registrationDate").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ExceptionResponse.class, "getMessage").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(ValidGenre.Validator.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(ValidPgRating.Validator.class)
+                .withMemberCategory(MemberCategory.INVOKE_DECLARED_CONSTRUCTORS).test(hints));
+    }
+
+}
@@ -2,8 +2,11 @@ package br.com.compass.pb.asynchers.compassflix.controllers;
 
 import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
 import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
 import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
 import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.views.MovieViewCounter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
@@ -27,6 +30,9 @@ class MovieControllerTest {
     @Mock
     private MovieService movieService;
 
+    @Mock
+    private MovieViewCounter viewCounter;
+
     @InjectMocks
     private MovieController movieController;
 
@@ -41,30 +47,30 @@ class MovieControllerTest {
         movie1.setId("64b1e14a36a86833234f6a42");
         movie1.setName("Avengers");
         movie1.setDescription("Heroes fighting");
-        movie1.setGenre("Action");
+        movie1.setGenre(Genre.ACTION);
         movie1.setDuration(120L);
         movie1.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie1.setPgRating("pg-17");
+        movie1.setPgRating(PgRating.of(17));
         movie1.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         Movie movie2 = new Movie();
         movie2.setId("64b1e14a36a86833234f6a56");
         movie2.setName("Lion King");
         movie2.setDescription("Cool lions");
-        movie2.setGenre("Animation");
+        movie2.setGenre(Genre.ANIMATION);
         movie2.setDuration(120L);
         movie2.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie2.setPgRating("pg-12");
+        movie2.setPgRating(PgRating.of(12));
         movie2.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         Movie movie3 = new Movie();
         movie3.setId("64b1e14a36a86833234f6a98");
         movie3.setName("Batman");
         movie3.setDescription("Dark hero");
-        movie3.setGenre("Action");
+        movie3.setGenre(Genre.ACTION);
         movie3.setDuration(120L);
         movie3.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie3.setPgRating("pg-14");
+        movie3.setPgRating(PgRating.of(14));
         movie3.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         List<Movie> movies = Arrays.asList(
@@ -90,10 +96,10 @@ class MovieControllerTest {
         expectedMovie.setId(movieId);
         expectedMovie.setName("Avengers");
         expectedMovie.setDescription("Heroes fighting");
-        expectedMovie.setGenre("Action");
+        expectedMovie.setGenre(Genre.ACTION);
         expectedMovie.setDuration(120L);
         expectedMovie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        expectedMovie.setPgRating("pg-17");
+        expectedMovie.setPgRating(PgRating.of(17));
         expectedMovie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         String expectedToString = "Movie(" +
@@ -113,6 +119,7 @@ class MovieControllerTest {
 
         verify(movieService, times(1)).findMovieById(movieId);
         verifyNoMoreInteractions(movieService);
+        verify(viewCounter).record(movieId);
         assertNotNull(response);
         assertSame(expectedMovie, response.getBody());
         assertEquals(200, response.getStatusCodeValue());
@@ -126,30 +133,30 @@ class MovieControllerTest {
         movie1.setId("64b1e14a36a86833234f6a42");
         movie1.setName("Avengers");
         movie1.setDescription("Heroes fighting");
-        movie1.setGenre("Action");
+        movie1.setGenre(Genre.ACTION);
         movie1.setDuration(120L);
         movie1.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie1.setPgRating("pg-17");
+        movie1.setPgRating(PgRating.of(17));
         movie1.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         Movie movie2 = new Movie();
         movie2.setId("64b1e14a36a86833234f6a56");
         movie2.setName("Lion King");
         movie2.setDescription("Cool lions");
-        movie2.setGenre("Animation");
+        movie2.setGenre(Genre.ANIMATION);
         movie2.setDuration(120L);
         movie2.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie2.setPgRating("pg-12");
+        movie2.setPgRating(PgRating.of(12));
         movie2.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         Movie movie3 = new Movie();
         movie3.setId("64b1e14a36a86833234f6a98");
         movie3.setName("Batman");
         movie3.setDescription("Dark hero");
-        movie3.setGenre("Action");
+        movie3.setGenre(Genre.ACTION);
         movie3.setDuration(120L);
         movie3.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie3.setPgRating("pg-14");
+        movie3.setPgRating(PgRating.of(14));
         movie3.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
         List<Movie> movies = Arrays.asList(
@@ -219,10 +226,10 @@ class MovieControllerTest {
         movie.setId("64b1e14a36a86833234f6a42");
         movie.setName("Avengers");
         movie.setDescription("Heroes fighting");
-        movie.setGenre("Action");
+        movie.setGenre(Genre.ACTION);
         movie.setDuration(120L);
         movie.setReleaseDate(LocalDate.parse("2022-10-10"));
-        movie.setPgRating("pg-17");
+        movie.setPgRating(PgRating.of(17));
         movie.setRegistrationDate(Instant.parse("2023-07-14T19:13:25.465Z"));
 
 
@@ -0,0 +1,198 @@
+package br.com.compass.pb.asynchers.compassflix.data;
+
+import br.com.compass.pb.asynchers.compassflix.config.MongoConfig;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.repositories.partition.MoviePartitionTemplates;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.mongodb.MongoClientSettings;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class MovieDictionaryMigrationTest {
+
+    private MappingMongoConverter converter;
+
+    @BeforeEach
+    void setUp() {
+        MongoCustomConversions conversions = MongoConfig.conversions();
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        mappingContext.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, mappingContext);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+    }
+
+    @Test
+    void shouldNormalizeInconsistentLegacyValues() {
+        assertSame(PgRating.parse("PG-13"), PgRating.parse("pg-13"));
+        assertSame(PgRating.parse("pg13"), PgRating.of(13));
+        assertEquals("pg-13", PgRating.parse(" PG 13 ").toString());
+        assertEquals(Genre.SCIENCE_FICTION, Genre.fromLabel("Sci-Fi"));
+        assertEquals(Genre.SCIENCE_FICTION, Genre.fromLabel("science fiction"));
+        assertFalse(PgRating.isValid("pg-21"));
+        assertFalse(Genre.isValid("Telenovela"));
+        assertThrows(IllegalArgumentException.class, () -> PgRating.parse("adults only"));
+    }
+
+    @Test
+    void shouldEncodeLegacyStringsAsCodes() {
+        Document update = MovieDictionaryMigration.toUpdate(new Document("_id", new ObjectId())
+                .append("genre", "fantasy").append("pgRating", "PG-13"));
+
+        assertEquals(new Document("$set", new Document("genre", Genre.FANTASY.code()).append("pgRating", 13)), update);
+    }
+
+    @Test
+    void shouldFallBackForValuesOutsideTheDictionary() {
+        Document update = MovieDictionaryMigration.toUpdate(new Document("_id", new ObjectId())
+                .append("genre", "Telenovela").append("pgRating", "adults only"));
+
+        assertEquals(new Document("$set", new Document("genre", Genre.OTHER.code()))
+                .append("$unset", new Document("pgRating", "")), update);
+    }
+
+    @Test
+    void shouldLeaveEncodedDocumentsAlone() {
+        Document update = MovieDictionaryMigration.toUpdate(new Document("_id", new ObjectId())
+                .append("genre", Genre.DRAMA.code()).append("pgRating", 12));
+
+        assertTrue(update.isEmpty());
+    }
+
+    @Test
+    void shouldWriteAndReadCodesAndStillReadLegacyDocuments() {
+        Movie movie = movie(Genre.FANTASY, PgRating.of(13));
+        Document written = new Document();
+        converter.write(movie, written);
+
+        assertEquals(9, written.get("genre"));
+        assertEquals(13, written.get("pgRating"));
+        assertSame(Genre.FANTASY, converter.read(Movie.class, written).getGenre());
+
+        written.put("genre", "Fantasy");
+        written.put("pgRating", "PG-13");
+        Movie legacy = converter.read(Movie.class, written);
+        assertSame(Genre.FANTASY, legacy.getGenre());
+        assertSame(PgRating.of(13), legacy.getPgRating());
+    }
+
+    @Test
+    void shouldMigrateEveryPartitionDatabase() {
+        MongoTemplate main = mock(MongoTemplate.class);
+        List<MongoTemplate> partitions = List.of(mock(MongoTemplate.class), mock(MongoTemplate.class));
+        StaticListableBeanFactory beans = new StaticListableBeanFactory(
+                Map.of("moviePartitionTemplates", new MoviePartitionTemplates(partitions)));
+
+        MovieDictionaryMigration partitioned = new MovieDictionaryMigration(main,
+                beans.getBeanProvider(MoviePartitionTemplates.class), true, 1000);
+        MovieDictionaryMigration single = new MovieDictionaryMigration(main,
+                new StaticListableBeanFactory().getBeanProvider(MoviePartitionTemplates.class), true, 1000);
+
+        assertEquals(List.of(main, partitions.get(0), partitions.get(1)), partitioned.templates());
+        assertEquals(List.of(main), single.templates());
+    }
+
+    @Test
+    void shouldReadLegacyLabelsFromSpilledMovies() throws Exception {
+        // the ingestion spill file stores movies as JSON and is left out of the migration
+        String spilled = "{\"id\":\"" + new ObjectId().toHexString() + "\",\"name\":\"the two towers\","
+                + "\"genre\":\"Sci-Fi\",\"pgRating\":\"PG 13\"}";
+
+        Movie movie = new ObjectMapper().registerModule(new JavaTimeModule()).readValue(spilled, Movie.class);
+
+        assertSame(Genre.SCIENCE_FICTION, movie.getGenre());
+        assertSame(PgRating.of(13), movie.getPgRating());
+    }
+
+    @Test
+    void shouldShrinkStoredDocuments() {
+        List<Movie> movies = List.of(movie(Genre.ACTION, PgRating.of(18)), movie(Genre.FANTASY, PgRating.of(16)),
+                movie(Genre.ADVENTURE, PgRating.of(3)), movie(Genre.SCIENCE_FICTION, PgRating.of(13)));
+
+        long legacyBytes = 0;
+        long encodedBytes = 0;
+        for (Movie movie : movies) {
+            Document encoded = new Document();
+            converter.write(movie, encoded);
+            Document legacy = new Document(encoded);
+            legacy.put("genre", movie.getGenre().label());
+            legacy.put("pgRating", movie.getPgRating().toString());
+            legacyBytes += bsonSize(legacy);
+            encodedBytes += bsonSize(encoded);
+        }
+
+        System.out.printf("movie documents: legacy=%dB encoded=%dB (%d bytes saved per document)%n",
+                legacyBytes, encodedBytes, (legacyBytes - encodedBytes) / movies.size());
+        assertTrue(encodedBytes < legacyBytes);
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkCacheHeap() {
+        int size = 1_000_000;
+        Genre[] genres = Genre.values();
+
+        long before = usedHeap();
+        // what the driver hands over per decoded document: fresh strings, nothing shared between movies
+        Object[][] legacy = new Object[size][];
+        for (int i = 0; i < size; i++) {
+            legacy[i] = new Object[]{new String(genres[i % genres.length].label().toCharArray()),
+                    new String(("pg-" + i % 19).toCharArray())};
+        }
+        long legacyHeap = usedHeap() - before;
+        legacy = null;
+
+        before = usedHeap();
+        Object[][] encoded = new Object[size][];
+        for (int i = 0; i < size; i++) {
+            encoded[i] = new Object[]{genres[i % genres.length], PgRating.of(i % 19)};
+        }
+        long encodedHeap = usedHeap() - before;
+
+        System.out.printf("genre+pgRating for %d cached movies: legacy=%dMB encoded=%dMB%n", size,
+                legacyHeap / (1024 * 1024), encodedHeap / (1024 * 1024));
+        assertNull(legacy);
+        assertEquals(size, encoded.length);
+    }
+
+    private static long bsonSize(Document document) {
+        return new RawBsonDocument(document, MongoClientSettings.getDefaultCodecRegistry().get(Document.class))
+                .getByteBuffer().remaining();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Movie movie(Genre genre, PgRating pgRating) {
+        return new Movie(new ObjectId().toHexString(), "the lord of the rings: the two towers", "Frodo keeps going",
+                genre, 180L, LocalDate.of(2003, 1, 1), pgRating, Instant.parse("2023-07-14T19:13:25.465Z"));
+    }
+
+}
@@ -0,0 +1,104 @@
+package br.com.compass.pb.asynchers.compassflix.loadtest;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Replays a weighted mix of MovieController operations against the application booted on an in-memory
+ * repository and writes the per route HdrHistogram report to target/loadtest. Run with {@code mvn -Ploadtest test}.
+ * Background indexes and counters that rebuild or flush on a timer are turned off, so they do not land in the
+ * measured latencies.
+ */
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "compassflix.populate-database=false",
+        "compassflix.indexes.provision=false",
+        "compassflix.migrations.dictionary-encoding.enabled=false",
+        "compassflix.read-preference.find-by-id=primary",
+        "compassflix.read-preference.find-all=primary",
+        "compassflix.read-preference.search=primary",
+        "compassflix.read-preference.facets=primary",
+        "compassflix.existence-filter.enabled=false",
+        "compassflix.stats.enabled=false",
+        "compassflix.similarity.enabled=false",
+        "compassflix.views.enabled=false"
+})
+class LoadTest {
+
+    private static final String[] WORDS = {"night", "lord", "star", "ocean", "ghost", "winter", "river", "castle"};
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private MovieRepository repository;
+
+    @Test
+    void replayOperationMix() throws Exception {
+        LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+        List<String> seededIds = repository.findAll().stream().map(Movie::getId).toList();
+
+        Map<String, Object> result = new OpenModelLoadGenerator(settings, "http://localhost:" + port, seededIds).run();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("label", settings.label());
+        report.put("finishedAt", Instant.now().toString());
+        report.put("settings", Map.of(
+                "rate", settings.rate(),
+                "warmup", settings.warmup().toString(),
+                "duration", settings.duration().toString(),
+                "catalogSize", settings.catalogSize(),
+                "mix", settings.mix()));
+        report.putAll(result);
+
+        Files.createDirectories(settings.reportDirectory());
+        Path file = settings.reportDirectory().resolve("loadtest-" + settings.label() + "-"
+                + System.currentTimeMillis() + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(file.toFile(), report);
+        System.out.println("Load test report written to " + file.toAbsolutePath());
+
+        assertTrue((Long) result.get("requests") > 0);
+    }
+
+    @TestConfiguration
+    static class InMemoryStoreConfig {
+
+        @Bean
+        @Primary
+        MovieRepository inMemoryMovieRepository() {
+            LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+            InMemoryMovieRepository repository = new InMemoryMovieRepository();
+            repository.insert(IntStream.range(0, settings.catalogSize())
+                    .mapToObj(i -> new Movie(null, "movie " + i + " " + WORDS[i % WORDS.length],
+                            "seeded for load tests", Genre.ACTION, 90L + i % 60, LocalDate.of(1990 + i % 30, 1, 1),
+                            PgRating.of(12), Instant.now()))
+                    .toList());
+            return repository;
+        }
+    }
+
+}
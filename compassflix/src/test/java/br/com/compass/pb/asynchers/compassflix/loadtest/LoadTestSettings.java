@@ -0,0 +1,69 @@
+package br.com.compass.pb.asynchers.compassflix.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Every value can be overridden with -Dloadtest.<name>=..., e.g. -Dloadtest.rate=2000 -Dloadtest.mix=findById=80,post=20
+record LoadTestSettings(
+        String label,
+        double rate,
+        Duration warmup,
+        Duration duration,
+        int catalogSize,
+        int maxInFlight,
+        Map<Operation, Integer> mix,
+        Path reportDirectory
+) {
+
+    enum Operation {
+        FIND_ALL("findAll"),
+        FIND_BY_ID("findById"),
+        SEARCH("search"),
+        POST("post"),
+        PUT("put"),
+        DELETE("delete");
+
+        private final String route;
+
+        Operation(String route) {
+            this.route = route;
+        }
+
+        String route() {
+            return route;
+        }
+
+        static Operation fromRoute(String route) {
+            for (Operation operation : values()) {
+                if (operation.route.equalsIgnoreCase(route.trim())) {
+                    return operation;
+                }
+            }
+            throw new IllegalArgumentException("Unknown operation " + route);
+        }
+    }
+
+    static LoadTestSettings fromSystemProperties() {
+        return new LoadTestSettings(
+                System.getProperty("loadtest.label", "local"),
+                Double.parseDouble(System.getProperty("loadtest.rate", "500")),
+                Duration.parse(System.getProperty("loadtest.warmup", "PT5S")),
+                Duration.parse(System.getProperty("loadtest.duration", "PT30S")),
+                Integer.parseInt(System.getProperty("loadtest.catalogSize", "1000")),
+                Integer.parseInt(System.getProperty("loadtest.maxInFlight", "2000")),
+                parseMix(System.getProperty("loadtest.mix", "findAll=5,findById=45,search=20,post=10,put=10,delete=10")),
+                Path.of(System.getProperty("loadtest.reportDirectory", "target/loadtest")));
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new LinkedHashMap<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            weights.put(Operation.fromRoute(parts[0]), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+}
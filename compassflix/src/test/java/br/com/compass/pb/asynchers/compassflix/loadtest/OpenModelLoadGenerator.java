@@ -0,0 +1,217 @@
+package br.com.compass.pb.asynchers.compassflix.loadtest;
+
+import br.com.compass.pb.asynchers.compassflix.loadtest.LoadTestSettings.Operation;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open workload model: arrivals follow a Poisson process at the configured rate no matter how fast the
+ * server answers, and latency is measured from the intended send time, so a stalled server shows up in the
+ * percentiles instead of silently lowering the offered load (coordinated omission).
+ */
+class OpenModelLoadGenerator {
+
+    private static final String[] SEARCH_TERMS = {"night", "lord", "star", "ocean", "ghost", "winter"};
+
+    private final LoadTestSettings settings;
+    private final String baseUrl;
+    private final List<String> seededIds;
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Queue<String> createdIds = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Operation[] weightedOperations;
+
+    private final Map<Operation, RouteStats> stats = new EnumMap<>(Operation.class);
+
+    OpenModelLoadGenerator(LoadTestSettings settings, String baseUrl, List<String> seededIds) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+        this.seededIds = seededIds;
+        this.weightedOperations = settings.mix().entrySet().stream()
+                .flatMap(entry -> java.util.stream.Stream.generate(entry::getKey).limit(entry.getValue()))
+                .toArray(Operation[]::new);
+        settings.mix().keySet().forEach(operation -> stats.put(operation, new RouteStats()));
+    }
+
+    Map<String, Object> run() throws InterruptedException {
+        drive(settings.warmup());
+        awaitInFlight();
+        stats.values().forEach(RouteStats::reset);
+
+        long start = System.nanoTime();
+        drive(settings.duration());
+        awaitInFlight();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        Map<String, Object> routes = new LinkedHashMap<>();
+        Histogram total = new Histogram(3);
+        long totalRequests = 0;
+        long totalErrors = 0;
+        long totalDropped = 0;
+        for (Map.Entry<Operation, RouteStats> entry : stats.entrySet()) {
+            RouteStats route = entry.getValue();
+            routes.put(entry.getKey().route(), route.report(elapsedSeconds));
+            total.add(route.latencies);
+            totalRequests += route.latencies.getTotalCount();
+            totalErrors += route.errors.get();
+            totalDropped += route.dropped.get();
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requests", totalRequests);
+        report.put("errors", totalErrors);
+        report.put("dropped", totalDropped);
+        report.put("throughputPerSecond", totalRequests / elapsedSeconds);
+        report.put("latencyMillis", percentiles(total));
+        report.put("routes", routes);
+        return report;
+    }
+
+    private void drive(Duration duration) {
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / settings.rate());
+        long end = System.nanoTime() + duration.toNanos();
+        long intended = System.nanoTime();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (intended < end) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            send(weightedOperations[random.nextInt(weightedOperations.length)], intended);
+            // exponential inter-arrival times give a Poisson arrival process
+            intended += (long) (-Math.log(1 - random.nextDouble()) * interval);
+        }
+    }
+
+    private void send(Operation operation, long intendedStart) {
+        RouteStats route = stats.get(operation);
+        if (inFlight.get() >= settings.maxInFlight()) {
+            route.dropped.incrementAndGet();
+            return;
+        }
+        inFlight.incrementAndGet();
+        client.sendAsync(request(operation), HttpResponse.BodyHandlers.ofString())
+                .whenComplete((response, error) -> {
+                    route.latencies.recordValue(Math.max(1, (System.nanoTime() - intendedStart) / 1000));
+                    if (error != null || response.statusCode() >= 400) {
+                        route.errors.incrementAndGet();
+                    } else if (operation == Operation.POST) {
+                        rememberCreatedId(response.body());
+                    }
+                    inFlight.decrementAndGet();
+                });
+    }
+
+    private HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String movies = baseUrl + "/compassflix/movies";
+        return switch (operation) {
+            case FIND_ALL -> HttpRequest.newBuilder(URI.create(movies)).GET().build();
+            case FIND_BY_ID -> HttpRequest.newBuilder(URI.create(movies + "/" + randomSeededId())).GET().build();
+            case SEARCH -> HttpRequest.newBuilder(URI.create(movies + "/search?name="
+                    + SEARCH_TERMS[random.nextInt(SEARCH_TERMS.length)])).GET().build();
+            case POST -> jsonRequest(URI.create(movies), "POST", "loadtest " + sequence.incrementAndGet()
+                    + " " + System.nanoTime());
+            case PUT -> {
+                String id = randomSeededId();
+                yield jsonRequest(URI.create(movies + "/" + id), "PUT", "movie " + id);
+            }
+            case DELETE -> {
+                String id = createdIds.poll();
+                yield id == null
+                        ? HttpRequest.newBuilder(URI.create(movies + "/" + randomSeededId())).GET().build()
+                        : HttpRequest.newBuilder(URI.create(movies + "/" + id)).DELETE().build();
+            }
+        };
+    }
+
+    private HttpRequest jsonRequest(URI uri, String method, String name) {
+        String body = "{\"name\":\"" + name + "\",\"description\":\"load test\",\"genre\":\"Action\","
+                + "\"duration\":120,\"releaseDate\":\"2020-01-01\",\"pgRating\":\"pg-12\"}";
+        return HttpRequest.newBuilder(uri)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private String randomSeededId() {
+        return seededIds.get(ThreadLocalRandom.current().nextInt(seededIds.size()));
+    }
+
+    private void rememberCreatedId(String body) {
+        try {
+            JsonNode id = mapper.readTree(body).get("id");
+            if (id != null) {
+                createdIds.add(id.asText());
+            }
+        } catch (Exception ignored) {
+            // a malformed body is already visible as a failed follow-up request
+        }
+    }
+
+    private void awaitInFlight() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static Map<String, Object> percentiles(Histogram histogram) {
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("mean", histogram.getMean() / 1000.0);
+        percentiles.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+        percentiles.put("p90", histogram.getValueAtPercentile(90) / 1000.0);
+        percentiles.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+        percentiles.put("p99.9", histogram.getValueAtPercentile(99.9) / 1000.0);
+        percentiles.put("max", histogram.getMaxValue() / 1000.0);
+        return percentiles;
+    }
+
+    private static final class RouteStats {
+
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+
+        private void reset() {
+            latencies.reset();
+            errors.set(0);
+            dropped.set(0);
+        }
+
+        private Map<String, Object> report(double elapsedSeconds) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("requests", latencies.getTotalCount());
+            report.put("errors", errors.get());
+            report.put("dropped", dropped.get());
+            report.put("throughputPerSecond", latencies.getTotalCount() / elapsedSeconds);
+            report.put("latencyMillis", percentiles(latencies));
+            return report;
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.encoder.PatternLayoutEncoder;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.FileAppender;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.LoggerFactory;
+import org.slf4j.event.KeyValuePair;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationLogTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(OperationLog.LOGGER);
+
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        events.start();
+        logger.addAppender(events);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(events);
+    }
+
+    @Test
+    void shouldLogOneStructuredEventPerOperation() {
+        OperationLog operationLog = OperationLog.everything();
+
+        assertEquals("Barbie", operationLog.write("post", "Barbie", () -> "Barbie"));
+        assertThrows(MovieNotFoundException.class, () -> operationLog.read("findById", "42", () -> {
+            throw new MovieNotFoundException("That movie doesn't exists!");
+        }));
+
+        assertEquals(2, events.list.size());
+        Map<String, Object> post = pairs(events.list.get(0));
+        assertEquals("post", post.get("operation"));
+        assertEquals("Barbie", post.get("id"));
+        assertEquals("ok", post.get("outcome"));
+        assertTrue((Long) post.get("duration_us") >= 0);
+        assertFalse(post.containsKey("sample_rate"));
+        assertEquals("MovieNotFoundException", pairs(events.list.get(1)).get("outcome"));
+    }
+
+    @Test
+    void shouldSampleReadsButLogEveryWrite() {
+        OperationLog operationLog = new OperationLog(0.1);
+
+        for (int i = 0; i < 10_000; i++) {
+            operationLog.read("findById", "42", () -> null);
+        }
+        int reads = events.list.size();
+        assertTrue(reads > 800 && reads < 1200, "sampled " + reads);
+        assertEquals(0.1, pairs(events.list.get(0)).get("sample_rate"));
+
+        operationLog.write("delete", "42", () -> {
+        });
+        assertEquals(reads + 1, events.list.size());
+        assertEquals(0, new OperationLog(0).read("findAll", null, () -> 0));
+        assertEquals(reads + 1, events.list.size());
+    }
+
+    /*
+     * Before: the three synchronous "### ... ###" lines a write used to log, formatted and written on the calling
+     * thread. After: one operation event handed to the asynchronous appender, and a read at the default sample rate.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkLoggingOverheadPerRequest() throws IOException {
+        LoggerContext context = logger.getLoggerContext();
+        File file = Files.createTempFile("operations", ".log").toFile();
+        file.deleteOnExit();
+        int requests = 200_000;
+
+        Logger before = context.getLogger("compassflix.benchmark.before");
+        before.setAdditive(false);
+        FileAppender<ILoggingEvent> synchronous = fileAppender(context, file,
+                "%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} %5p [%15.15t] %-40.40logger{39} : %m%n");
+        before.addAppender(synchronous);
+        long beforeNanos = measure(requests, i -> {
+            before.info("### Searching movie by String Id {} ###", i);
+            before.info("### Updating movie ###");
+            before.info("### Saving movie ###");
+        });
+        before.detachAndStopAllAppenders();
+
+        logger.detachAppender(events);
+        logger.setAdditive(false);
+        AsyncAppender asynchronous = new AsyncAppender();
+        asynchronous.setContext(context);
+        asynchronous.setQueueSize(8192);
+        asynchronous.setDiscardingThreshold(1638);
+        asynchronous.setNeverBlock(true);
+        asynchronous.addAppender(fileAppender(context, file, "time=%d{yyyy-MM-dd'T'HH:mm:ss.SSSXXX} level=%level %kvp%n"));
+        asynchronous.start();
+        logger.addAppender(asynchronous);
+        OperationLog operationLog = new OperationLog(0.01);
+        try {
+            long writeNanos = measure(requests, i -> operationLog.write("update", Integer.toString(i), () -> i));
+            long readNanos = measure(requests, i -> operationLog.read("findById", Integer.toString(i), () -> i));
+
+            System.out.printf("logging per request: before %.0f ns, after write %.0f ns, after sampled read %.0f ns%n",
+                    (double) beforeNanos / requests, (double) writeNanos / requests, (double) readNanos / requests);
+        } finally {
+            logger.detachAppender(asynchronous);
+            asynchronous.stop();
+            logger.setAdditive(true);
+        }
+        // what the bounded queue dropped while the worker fell behind
+        try (var lines = Files.lines(file.toPath())) {
+            long operationEvents = lines.filter(line -> line.startsWith("time=")).count();
+            System.out.printf("operation events written %d of %d%n", operationEvents,
+                    requests * 11L / 10 + (long) (requests * 11L / 10 * 0.01));
+        }
+    }
+
+    private static long measure(int requests, IntConsumer request) {
+        for (int i = 0; i < requests / 10; i++) {
+            request.accept(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            request.accept(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static FileAppender<ILoggingEvent> fileAppender(LoggerContext context, File file, String pattern) {
+        PatternLayoutEncoder encoder = new PatternLayoutEncoder();
+        encoder.setContext(context);
+        encoder.setPattern(pattern);
+        encoder.start();
+        FileAppender<ILoggingEvent> appender = new FileAppender<>();
+        appender.setContext(context);
+        appender.setFile(file.getAbsolutePath());
+        appender.setEncoder(encoder);
+        appender.start();
+        return appender;
+    }
+
+    private static Map<String, Object> pairs(ILoggingEvent event) {
+        Map<String, Object> pairs = new LinkedHashMap<>();
+        for (KeyValuePair pair : event.getKeyValuePairs()) {
+            pairs.put(pair.key, pair.value);
+        }
+        return pairs;
+    }
+
+}
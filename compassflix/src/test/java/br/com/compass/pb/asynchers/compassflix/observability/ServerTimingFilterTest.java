@@ -0,0 +1,61 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerTimingFilterTest {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger(ServerTimingFilter.class);
+
+    private final ListAppender<ILoggingEvent> events = new ListAppender<>();
+
+    @BeforeEach
+    void setUp() {
+        events.start();
+        logger.addAppender(events);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.detachAppender(events);
+    }
+
+    @Test
+    void shouldLogReadsAtTheSampleRateAndEveryWrite() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(new OperationLog(0));
+
+        for (String method : new String[]{"GET", "HEAD", "POST", "PUT", "DELETE"}) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+            filter.doFilter(new MockHttpServletRequest(method, "/compassflix/movies"), response, new MockFilterChain());
+            assertNotNull(response.getHeader(ServerTimingFilter.SERVER_TIMING), method);
+        }
+
+        assertEquals(3, events.list.size());
+        assertTrue(events.list.get(0).getFormattedMessage().startsWith("request method=POST"));
+        assertTrue(events.list.get(0).getFormattedMessage().endsWith("sample_rate=1.0"));
+    }
+
+    @Test
+    void shouldCarryTheSampleRateOnSampledReads() throws Exception {
+        ServerTimingFilter filter = new ServerTimingFilter(new OperationLog(0.5));
+
+        for (int i = 0; i < 1000; i++) {
+            filter.doFilter(new MockHttpServletRequest("GET", "/compassflix/movies"), new MockHttpServletResponse(),
+                    new MockFilterChain());
+        }
+
+        assertTrue(events.list.size() > 400 && events.list.size() < 600, "sampled " + events.list.size());
+        assertTrue(events.list.get(0).getFormattedMessage().endsWith("sample_rate=0.5"));
+    }
+
+}
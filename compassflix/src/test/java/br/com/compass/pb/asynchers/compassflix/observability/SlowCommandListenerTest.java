@@ -0,0 +1,73 @@
+package br.com.compass.pb.asynchers.compassflix.observability;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SlowCommandListenerTest {
+
+    private static final ConnectionDescription CONNECTION =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    @AfterEach
+    void tearDown() {
+        RequestTimings.clear();
+    }
+
+    @Test
+    void shouldDescribeCommandShapeWithoutValues() {
+        BsonDocument command = BsonDocument.parse("{find: 'movies', filter: {genre: 'Fantasy', "
+                + "releaseDate: {$gte: {$date: '2000-01-01T00:00:00Z'}, $lte: {$date: '2010-01-01T00:00:00Z'}}, "
+                + "$or: [{name: 'a'}, {name: 'b'}]}, sort: {releaseDate: -1}, limit: 100, $db: 'compassFlix', "
+                + "lsid: {id: 'x'}}");
+
+        String shape = SlowCommandListener.shape("find", command);
+
+        assertEquals("find movies filter={genre: ?, releaseDate: {$gte: ?, $lte: ?}, $or: [{name: ?}, ...]} "
+                + "sort={releaseDate: -1} limit=?", shape);
+        assertFalse(shape.contains("Fantasy"));
+        assertFalse(shape.contains("compassFlix"));
+        // what commandStarted keeps is enough to build the same shape later
+        assertEquals(shape, SlowCommandListener.shape("find", SlowCommandListener.shapedFields("find", command)));
+    }
+
+    @Test
+    void shouldAddCommandDurationsToTheCurrentRequest() {
+        SlowCommandListener listener = new SlowCommandListener(Duration.ofMillis(100));
+        RequestTimings timings = RequestTimings.start();
+
+        execute(listener, 1, TimeUnit.MILLISECONDS.toNanos(3));
+        execute(listener, 2, TimeUnit.MILLISECONDS.toNanos(250));
+
+        assertEquals(2, timings.dbCommands());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(253), timings.dbNanos());
+        assertTrue(timings.serverTimingHeader().contains("db;dur=253.00;desc=\"2 mongo commands\""));
+    }
+
+    @Test
+    void shouldIgnoreCommandsOutsideARequest() {
+        SlowCommandListener listener = new SlowCommandListener(Duration.ofMillis(100));
+
+        assertDoesNotThrow(() -> execute(listener, 1, 1_000));
+        assertNull(RequestTimings.current());
+    }
+
+    private static void execute(SlowCommandListener listener, int requestId, long elapsedNanos) {
+        BsonDocument command = BsonDocument.parse("{find: 'movies', filter: {_id: 'x'}}");
+        listener.commandStarted(new CommandStartedEvent(null, requestId, CONNECTION, "compassFlix", "find", command));
+        listener.commandSucceeded(new CommandSucceededEvent(null, requestId, CONNECTION, "find",
+                BsonDocument.parse("{cursor: {firstBatch: [{}], id: 0}, ok: 1}"), elapsedNanos));
+    }
+
+}
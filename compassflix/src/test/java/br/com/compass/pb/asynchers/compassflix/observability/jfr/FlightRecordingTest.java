@@ -0,0 +1,104 @@
+package br.com.compass.pb.asynchers.compassflix.observability.jfr;
+
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlightRecordingTest {
+
+    private final OperationLog operationLog = new OperationLog(0);
+
+    @Test
+    void shouldAddTheCompassFlixEventsToTheDefaultSettings() throws Exception {
+        Map<String, String> settings = FlightRecording.settings();
+
+        assertEquals("true", settings.get("compassflix.MovieOperation#enabled"));
+        assertEquals("true", settings.get("compassflix.MovieRequest#enabled"));
+        assertEquals("0 ms", settings.get("compassflix.CatalogCache#threshold"));
+        assertEquals("true", settings.get("jdk.GarbageCollection#enabled"));
+    }
+
+    @Test
+    void shouldRecordOperationsAndCacheEventsOnlyWhenTheSettingsEnableThem() throws Exception {
+        List<RecordedEvent> recorded = record(FlightRecording.settings(), () -> {
+            operationLog.read("findAll", null, () -> List.of("Barbie", "Oppenheimer"));
+            assertThrows(MovieNotFoundException.class, () -> operationLog.write("delete", "42", () -> {
+                throw new MovieNotFoundException("That movie doesn't exists!");
+            }));
+            CatalogCacheEvent.record("snapshot", CatalogCacheEvent.APPLY, 3);
+        });
+
+        List<RecordedEvent> operations = named(recorded, "compassflix.MovieOperation");
+        assertEquals(2, operations.size());
+        assertEquals("findAll", operations.get(0).getString("operation"));
+        assertEquals(2, operations.get(0).getInt("resultSize"));
+        assertEquals("ok", operations.get(0).getString("outcome"));
+        assertEquals(0, operations.get(0).getLong("repositoryTime"));
+        assertEquals("42", operations.get(1).getString("movieId"));
+        assertEquals("MovieNotFoundException", operations.get(1).getString("outcome"));
+        RecordedEvent cache = named(recorded, "compassflix.CatalogCache").get(0);
+        assertEquals("apply", cache.getString("action"));
+        assertEquals(3, cache.getLong("entries"));
+
+        List<RecordedEvent> withoutOurSettings = record(Configuration.getConfiguration("default").getSettings(),
+                () -> operationLog.read("findAll", null, () -> List.of("Barbie")));
+        assertTrue(withoutOurSettings.stream()
+                .noneMatch(event -> event.getEventType().getName().startsWith("compassflix.")));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkOperationOverhead() throws Exception {
+        int operations = 5_000_000;
+        Runnable run = () -> {
+            for (int i = 0; i < operations; i++) {
+                operationLog.read("findById", "42", () -> "Barbie");
+            }
+        };
+        run.run();
+        long start = System.nanoTime();
+        run.run();
+        double disabled = (double) (System.nanoTime() - start) / operations;
+        long[] enabled = new long[1];
+        record(FlightRecording.settings(), () -> {
+            long recordingStart = System.nanoTime();
+            run.run();
+            enabled[0] = System.nanoTime() - recordingStart;
+        });
+        System.out.printf("operation overhead: events disabled %.1f ns, recorded %.1f ns%n", disabled,
+                (double) enabled[0] / operations);
+    }
+
+    private static List<RecordedEvent> record(Map<String, String> settings, Runnable work) throws Exception {
+        Path file = Files.createTempFile("compassflix", ".jfr");
+        try (Recording recording = new Recording(settings)) {
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .sorted((a, b) -> a.getStartTime().compareTo(b.getStartTime()))
+                .toList();
+    }
+
+}
@@ -0,0 +1,48 @@
+package br.com.compass.pb.asynchers.compassflix.repositories;
+
+import br.com.compass.pb.asynchers.compassflix.data.IndexProvisioner;
+import br.com.compass.pb.asynchers.compassflix.data.QueryPlanVerifier;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "compassflix.query-plan.fail-on-collection-scan=true")
+class MovieRepositoryIndexTest {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private IndexProvisioner indexProvisioner;
+
+    @Autowired
+    private QueryPlanVerifier queryPlanVerifier;
+
+    @Test
+    void shouldUseAnIndexForEverySupportedQueryShape() {
+        indexProvisioner.provision();
+
+        List<String> collectionScans = queryPlanVerifier.findCollectionScans();
+
+        assertTrue(collectionScans.isEmpty(), () -> "Collection scans: " + collectionScans);
+        assertDoesNotThrow(() -> queryPlanVerifier.verify());
+    }
+
+    @Test
+    void shouldRecreateDroppedIndexes() {
+        indexProvisioner.provision();
+        mongoTemplate.indexOps(Movie.class).dropIndex("genre_duration");
+
+        List<String> created = indexProvisioner.provision();
+
+        assertEquals(List.of("genre_duration"), created);
+        assertTrue(indexProvisioner.provision().isEmpty());
+    }
+
+}
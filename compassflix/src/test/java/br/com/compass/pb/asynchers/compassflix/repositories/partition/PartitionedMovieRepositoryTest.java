@@ -0,0 +1,209 @@
+package br.com.compass.pb.asynchers.compassflix.repositories.partition;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.support.FaultyMovieRepository;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedMovieRepositoryTest {
+
+    private static final int PARTITIONS = 4;
+
+    private final List<FaultyMovieRepository> stores = IntStream.range(0, PARTITIONS)
+            .mapToObj(i -> new FaultyMovieRepository()).toList();
+
+    private final InMemoryMovieRepository single = new InMemoryMovieRepository();
+
+    private PartitionedMovieRepository repository;
+
+    @AfterEach
+    void tearDown() {
+        repository.shutdown();
+    }
+
+    @Test
+    void shouldRouteEveryMovieToTheIdHashPartitionOnly() {
+        repository = partitioned("id");
+        MoviePartitioner partitioner = MoviePartitioner.of("id", PARTITIONS);
+        List<Movie> movies = repository.insert(generate(400));
+
+        for (Movie movie : movies) {
+            int partition = partitioner.partitionOf(movie);
+            for (int i = 0; i < PARTITIONS; i++) {
+                assertEquals(i == partition, stores.get(i).existsById(movie.getId()));
+            }
+        }
+        stores.forEach(store -> assertTrue(store.count() > 50, "partitions should be balanced"));
+        assertEquals(400, repository.count());
+
+        int before = totalCalls();
+        assertEquals(movies.get(7).getName(), repository.findById(movies.get(7).getId()).orElseThrow().getName());
+        assertEquals(before + 1, totalCalls());
+    }
+
+    @Test
+    void shouldReadOnlyTheGenrePartitionAndMoveMoviesWhoseGenreChanges() {
+        repository = partitioned("genre");
+        Movie movie = repository.insert(movie("Heat", Genre.CRIME, Instant.now()));
+        repository.insert(generate(100));
+
+        int[] calls = stores.stream().mapToInt(FaultyMovieRepository::calls).toArray();
+        List<Movie> crimes = repository.findByFilter(new MovieFilterDto("crime", null, null, null, null, null),
+                Sort.by("name"), 1000);
+        assertTrue(crimes.stream().allMatch(found -> found.getGenre() == Genre.CRIME));
+        int queried = 0;
+        for (int i = 0; i < PARTITIONS; i++) {
+            queried += stores.get(i).calls() - calls[i];
+        }
+        assertEquals(1, queried);
+
+        movie.setGenre(Genre.ACTION);
+        repository.save(movie);
+
+        assertEquals(1, stores.stream().filter(store -> store.existsById(movie.getId())).count());
+        assertEquals(Genre.ACTION, repository.findById(movie.getId()).orElseThrow().getGenre());
+    }
+
+    @Test
+    void shouldBulkUpdateLikeASingleStoreAndMoveMoviesToTheirNewGenrePartition() {
+        for (String key : List.of("id", "genre")) {
+            if (repository != null) {
+                repository.shutdown();
+            }
+            repository = partitioned(key);
+            stores.forEach(FaultyMovieRepository::deleteAll);
+            single.deleteAll();
+            List<Movie> movies = generate(300);
+            repository.insert(movies);
+            single.insert(movies.stream().map(Movie::new).toList());
+
+            MovieFilterDto filter = new MovieFilterDto(null, "pg-12", LocalDate.of(2000, 1, 1), null, null, null);
+            assertEquals(single.countByFilter(filter), repository.countByFilter(filter));
+            List<String> matching = ids(single.findByFilter(filter, Sort.unsorted(), 1000));
+            assertEquals(single.updateByFilter(filter, matching, Genre.WESTERN, PgRating.of(16)),
+                    repository.updateByFilter(filter, matching, Genre.WESTERN, PgRating.of(16)));
+
+            Sort sort = Sort.by("id");
+            assertEquals(ids(single.findAll(sort)), ids(repository.findAll(sort)));
+            MovieFilterDto westerns = new MovieFilterDto("western", "pg-16", null, null, null, null);
+            assertEquals(ids(single.findByFilter(westerns, sort, 1000)), ids(repository.findByFilter(westerns, sort, 1000)));
+            assertEquals(300, stores.stream().mapToLong(FaultyMovieRepository::count).sum(), key);
+        }
+    }
+
+    @Test
+    void shouldMergeSortedQueriesLikeASingleStore() {
+        repository = partitioned("id");
+        List<Movie> movies = generate(500);
+        repository.insert(movies);
+        single.insert(movies.stream().map(Movie::new).toList());
+
+        MovieFilterDto filter = new MovieFilterDto(null, "pg-12", null, null, 90L, null);
+        Sort sort = Sort.by(Sort.Order.desc("duration"), Sort.Order.asc("id"));
+        assertEquals(ids(single.findByFilter(filter, sort, 37)), ids(repository.findByFilter(filter, sort, 37)));
+        assertEquals(ids(single.findAll(Sort.by("name", "id"))), ids(repository.findAll(Sort.by("name", "id"))));
+
+        PageRequest page = PageRequest.of(3, 25, Sort.by("releaseDate", "id"));
+        assertEquals(ids(single.findAll(page).getContent()), ids(repository.findAll(page).getContent()));
+        assertEquals(500, repository.findAll(page).getTotalElements());
+    }
+
+    @Test
+    void shouldPageRecentMoviesAcrossPartitionsLikeASingleStore() {
+        repository = partitioned("id");
+        List<Movie> movies = generate(300);
+        repository.insert(movies);
+        single.insert(movies.stream().map(Movie::new).toList());
+
+        Instant since = Instant.EPOCH;
+        String afterId = null;
+        List<String> paged = new ArrayList<>();
+        List<Movie> page;
+        while (!(page = repository.findRecent(since, afterId, 40)).isEmpty()) {
+            page.forEach(movie -> paged.add(movie.getId()));
+            since = page.get(page.size() - 1).getRegistrationDate();
+            afterId = page.get(page.size() - 1).getId();
+        }
+
+        assertEquals(ids(single.findRecent(Instant.EPOCH, null, 1000)), paged);
+    }
+
+    @Test
+    void shouldQueryAllPartitionsInParallel() {
+        repository = partitioned("id");
+        repository.insert(generate(40));
+        // every partition waits for all the others, a sequential scatter would never get past the first one
+        CyclicBarrier barrier = new CyclicBarrier(PARTITIONS);
+        stores.forEach(store -> store.beforeEachCall(() -> {
+            try {
+                barrier.await(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new IllegalStateException("partitions were not queried in parallel", e);
+            }
+        }));
+
+        assertEquals(40, repository.findAll().size());
+        assertEquals(40, repository.findByNameIgnoreCaseContaining("movie").size());
+    }
+
+    @Test
+    void shouldFailTheReadWhenAPartitionIsDown() {
+        repository = partitioned("id");
+        repository.insert(generate(40));
+        stores.get(2).goDown();
+
+        assertThrows(RuntimeException.class, () -> repository.findAll());
+    }
+
+    private PartitionedMovieRepository partitioned(String key) {
+        return new PartitionedMovieRepository(new ArrayList<MovieRepository>(stores), MoviePartitioner.of(key, PARTITIONS), 8);
+    }
+
+    private int totalCalls() {
+        return stores.stream().mapToInt(FaultyMovieRepository::calls).sum();
+    }
+
+    private static List<Movie> generate(int size) {
+        Random random = new Random(42);
+        Genre[] genres = Genre.values();
+        Instant start = Instant.parse("2023-07-14T19:00:00Z");
+        return IntStream.range(0, size)
+                .mapToObj(i -> {
+                    Movie movie = movie("movie " + random.nextInt(size), genres[random.nextInt(genres.length)],
+                            start.plusSeconds(random.nextInt(size / 4)));
+                    movie.setDuration(80L + random.nextInt(60));
+                    movie.setPgRating(PgRating.of(random.nextBoolean() ? 12 : 16));
+                    movie.setReleaseDate(LocalDate.of(1990 + random.nextInt(30), 1, 1));
+                    return movie;
+                })
+                .toList();
+    }
+
+    private static Movie movie(String name, Genre genre, Instant registrationDate) {
+        return new Movie(null, name, "description", genre, 100L, LocalDate.of(2020, 1, 1), PgRating.of(12),
+                registrationDate);
+    }
+
+    private static List<String> ids(List<Movie> movies) {
+        return movies.stream().map(Movie::getId).toList();
+    }
+
+}
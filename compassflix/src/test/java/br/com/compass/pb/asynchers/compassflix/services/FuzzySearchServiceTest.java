@@ -0,0 +1,55 @@
+package br.com.compass.pb.asynchers.compassflix.services;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMatch;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuzzySearchServiceTest {
+
+    @Test
+    void shouldReplayWritesThatHappenWhileRebuilding() {
+        Movie created = movie("4", "batman begins");
+        Movie deleted = movie("3", "peter pan");
+        FuzzySearchService[] holder = new FuzzySearchService[1];
+        InMemoryMovieRepository racing = new InMemoryMovieRepository() {
+            @Override
+            public List<Movie> findAll() {
+                List<Movie> loaded = super.findAll();
+                // writes that land after the scan passed their position
+                holder[0].onMovieChanged(MovieChangedEvent.created(created));
+                holder[0].onMovieChanged(MovieChangedEvent.deleted(deleted));
+                // a second rebuild, like the warm start one, must not reset the replay log
+                holder[0].rebuild();
+                return loaded;
+            }
+        };
+        racing.insert(List.of(movie("1", "inglorious bastards"), movie("2", "the two towers"), deleted));
+        holder[0] = new FuzzySearchService(racing, null, null, null);
+
+        holder[0].rebuild();
+
+        assertEquals(3, holder[0].index().size());
+        assertEquals(List.of("4"), ids(holder[0].index().search("batman begins", 0, 10)));
+        assertTrue(holder[0].index().search("peter pan", 0, 10).isEmpty());
+    }
+
+    private static List<String> ids(List<FuzzyMatch> matches) {
+        return matches.stream().map(FuzzyMatch::id).toList();
+    }
+
+    private static Movie movie(String id, String name) {
+        return new Movie(id, name, "description", Genre.ACTION, 120L, LocalDate.of(2005, 1, 1), PgRating.of(12),
+                Instant.parse("2023-07-14T19:13:25.465Z"));
+    }
+
+}
@@ -0,0 +1,180 @@
+package br.com.compass.pb.asynchers.compassflix.services;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieBulkUpdateDto;
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.BulkUpdateResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.BulkUpdateIncompleteException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieBulkUpdateTest {
+
+    private final AtomicInteger updates = new AtomicInteger();
+
+    private volatile int failingUpdate;
+
+    private final InMemoryMovieRepository repository = new InMemoryMovieRepository() {
+        @Override
+        public long updateByFilter(MovieFilterDto filter, Collection<String> ids, Genre genre, PgRating pgRating) {
+            if (updates.incrementAndGet() == failingUpdate) {
+                throw new DataAccessResourceFailureException("connection reset");
+            }
+            return super.updateByFilter(filter, ids, genre, pgRating);
+        }
+    };
+
+    private final CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, true);
+
+    private final List<Object> events = new ArrayList<>();
+
+    private MovieService service;
+
+    @BeforeEach
+    void setUp() {
+        RepositoryCircuitBreaker breaker = new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10),
+                Duration.ofSeconds(2));
+        service = new MovieService(repository, event -> {
+            events.add(event);
+            if (event instanceof MoviesBulkChangedEvent bulk) {
+                snapshotService.onMoviesChanged(bulk);
+            }
+        }, snapshotService, breaker, new LastKnownCatalog(snapshotService, breaker, 100),
+                ReadPreferenceRouter.primaryOnly(repository), OperationLog.everything(),
+                MovieExistenceFilter.disabled());
+        repository.insert(movie("Heat", Genre.CRIME, 1995, 16));
+        repository.insert(movie("Se7en", Genre.CRIME, 1995, 18));
+        repository.insert(movie("Fargo", Genre.CRIME, 1996, 16));
+        repository.insert(movie("Zodiac", Genre.CRIME, 2007, 16));
+        repository.insert(movie("Toy Story", Genre.ANIMATION, 1995, 0));
+        snapshotService.load();
+    }
+
+    @Test
+    void shouldCountMatchesWithoutChangingAnythingOnADryRun() {
+        BulkUpdateResponseDto response = service.bulkUpdate(nineties("thriller", null), true);
+
+        assertEquals(new BulkUpdateResponseDto(3, 0, true), response);
+        assertTrue(repository.findAll().stream().noneMatch(movie -> movie.getGenre() == Genre.THRILLER));
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    void shouldSetTheFieldsOnEveryMatchAndPublishTheChangesAtOnce() {
+        long version = snapshotService.current().orElseThrow().version();
+
+        BulkUpdateResponseDto response = service.bulkUpdate(nineties("thriller", "pg-16"), false);
+
+        // Se7en keeps its rating but changes genre, Heat and Fargo already were pg-16
+        assertEquals(new BulkUpdateResponseDto(3, 3, false), response);
+        assertEquals(List.of("fargo", "heat", "se7en"), repository.findAll().stream()
+                .filter(movie -> movie.getGenre() == Genre.THRILLER && movie.getPgRating() == PgRating.of(16))
+                .map(Movie::getName).sorted().toList());
+        assertEquals(Genre.CRIME, service.findByName("zodiac").get(0).getGenre());
+
+        assertEquals(1, events.size());
+        List<MovieChangedEvent> changes = ((MoviesBulkChangedEvent) events.get(0)).changes();
+        assertEquals(3, changes.size());
+        assertTrue(changes.stream().allMatch(change -> change.previous().getGenre() == Genre.CRIME
+                && change.current().getGenre() == Genre.THRILLER));
+        // the snapshot took all of them in one new version
+        assertEquals(version + 1, snapshotService.current().orElseThrow().version());
+        assertEquals(3, snapshotService.current().orElseThrow().genreCounts().get("Thriller"));
+
+        // setting what is already there matches but modifies nothing and publishes nothing
+        MovieFilterDto thrillers = new MovieFilterDto("thriller", null, null, null, null, null);
+        assertEquals(new BulkUpdateResponseDto(3, 0, false),
+                service.bulkUpdate(new MovieBulkUpdateDto(thrillers, "thriller", null), false));
+        assertEquals(1, events.size());
+    }
+
+    @Test
+    void shouldUpdateLargeMatchesPageByPage() {
+        int count = MovieService.BULK_UPDATE_PAGE_SIZE * 2 + 500;
+        repository.insert(IntStream.range(0, count).mapToObj(i -> movie("western " + i, Genre.WESTERN, 1965, 12))
+                .toList());
+        MovieFilterDto westerns = new MovieFilterDto("western", null, null, null, null, null);
+
+        BulkUpdateResponseDto response = service.bulkUpdate(new MovieBulkUpdateDto(westerns, "drama", null), false);
+
+        assertEquals(new BulkUpdateResponseDto(count, count, false), response);
+        assertEquals(List.of(MovieService.BULK_UPDATE_PAGE_SIZE, MovieService.BULK_UPDATE_PAGE_SIZE, 500),
+                events.stream().map(event -> ((MoviesBulkChangedEvent) event).changes().size()).toList());
+        assertEquals(count, events.stream().flatMap(event -> ((MoviesBulkChangedEvent) event).changes().stream())
+                .map(MovieChangedEvent::movieId).distinct().count());
+        assertEquals(0, repository.countByFilter(westerns));
+    }
+
+    @Test
+    void shouldReportHowFarAFailedBulkUpdateGot() {
+        int count = MovieService.BULK_UPDATE_PAGE_SIZE * 2 + 500;
+        repository.insert(IntStream.range(0, count).mapToObj(i -> movie("western " + i, Genre.WESTERN, 1965, 12))
+                .toList());
+        MovieFilterDto westerns = new MovieFilterDto("western", null, null, null, null, null);
+        failingUpdate = 2;
+
+        BulkUpdateIncompleteException e = assertThrows(BulkUpdateIncompleteException.class,
+                () -> service.bulkUpdate(new MovieBulkUpdateDto(westerns, "drama", null), false));
+
+        // the first page stays updated and published, repeating the request picks up the rest
+        assertEquals(MovieService.BULK_UPDATE_PAGE_SIZE, e.getMatchedCount());
+        assertEquals(MovieService.BULK_UPDATE_PAGE_SIZE, e.getModifiedCount());
+        assertEquals(count - MovieService.BULK_UPDATE_PAGE_SIZE, repository.countByFilter(westerns));
+        assertEquals(1, events.size());
+        assertEquals(new BulkUpdateResponseDto(count - MovieService.BULK_UPDATE_PAGE_SIZE,
+                count - MovieService.BULK_UPDATE_PAGE_SIZE, false),
+                service.bulkUpdate(new MovieBulkUpdateDto(westerns, "drama", null), false));
+    }
+
+    @Test
+    void shouldFailPlainlyWhenNothingWasUpdatedYet() {
+        failingUpdate = 1;
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> service.bulkUpdate(nineties("thriller", null), false));
+    }
+
+    @Test
+    void shouldRejectBulkUpdatesWithoutAFilterOrAnythingToSet() {
+        MovieFilterDto everything = new MovieFilterDto(null, null, null, null, null, null);
+
+        assertThrows(InvalidQueryException.class,
+                () -> service.bulkUpdate(new MovieBulkUpdateDto(everything, "drama", null), false));
+        assertThrows(InvalidQueryException.class, () -> service.bulkUpdate(nineties(null, null), true));
+    }
+
+    private static MovieBulkUpdateDto nineties(String genre, String pgRating) {
+        return new MovieBulkUpdateDto(new MovieFilterDto("crime", null, LocalDate.of(1990, 1, 1),
+                LocalDate.of(1999, 12, 31), null, null), genre, pgRating);
+    }
+
+    private static Movie movie(String name, Genre genre, int year, int age) {
+        return new Movie(null, name.toLowerCase(), "description", genre, 100L, LocalDate.of(year, 6, 1),
+                PgRating.of(age), Instant.parse("2023-07-14T19:00:00Z"));
+    }
+
+}
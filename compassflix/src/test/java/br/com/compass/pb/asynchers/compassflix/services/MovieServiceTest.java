@@ -2,17 +2,29 @@ package br.com.compass.pb.asynchers.compassflix.services;
 
 import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
 import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
 import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.ListIsEmptyException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
 import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
 import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.Collections;
@@ -31,10 +43,10 @@ class MovieServiceTest {
     private static final Integer INDEX = 0;
     private static final String NAME = "Avengers";
     private static final String DESCRIPTION = "Heroes fighting";
-    private static final String GENRE = "Action";
+    private static final Genre GENRE = Genre.ACTION;
     private static final Long DURATION = 120L;
     private static final LocalDate RELEASE_DATE = LocalDate.parse("2022-10-10");
-    private static final String PG_RATING = "pg-17";
+    private static final PgRating PG_RATING = PgRating.of(17);
     private static final Instant REGISTRATION_DATE = Instant.now();
 
     @InjectMocks
@@ -43,6 +55,32 @@ class MovieServiceTest {
     @Mock
     private MovieRepository repository;
 
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    @Mock
+    private CatalogSnapshotService snapshotService;
+
+    // disabled, repository errors reach the tests as they are
+    @Spy
+    private RepositoryCircuitBreaker circuitBreaker = new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10),
+            Duration.ofSeconds(2));
+
+    @Spy
+    private LastKnownCatalog lastKnown = new LastKnownCatalog(new CatalogSnapshotService(null, false),
+            circuitBreaker, 100);
+
+    @Spy
+    private ReadPreferenceRouter readRouter = new ReadPreferenceRouter(preference -> repository, "primary", "primary",
+            "primary", "primary", Duration.ofSeconds(90), 100);
+
+    @Spy
+    private OperationLog operationLog = OperationLog.everything();
+
+    // not built, every lookup reaches the repository
+    @Spy
+    private MovieExistenceFilter existenceFilter = MovieExistenceFilter.disabled();
+
     private Movie movie;
 
     private MovieRequestDto movieRequestDto;
@@ -57,9 +95,10 @@ class MovieServiceTest {
 
     private void startMovie() {
         movie = new Movie(ID, NAME, DESCRIPTION, GENRE, DURATION, RELEASE_DATE, PG_RATING, REGISTRATION_DATE);
-        movieResponseDto = new MovieResponseDto(ID, NAME, DESCRIPTION, GENRE, DURATION, RELEASE_DATE,
-                PG_RATING, REGISTRATION_DATE);
-        movieRequestDto = new MovieRequestDto(NAME, DESCRIPTION, GENRE, DURATION, RELEASE_DATE, PG_RATING);
+        movieResponseDto = new MovieResponseDto(ID, NAME, DESCRIPTION, GENRE.label(), DURATION, RELEASE_DATE,
+                PG_RATING.toString(), REGISTRATION_DATE);
+        movieRequestDto = new MovieRequestDto(NAME, DESCRIPTION, GENRE.label(), DURATION, RELEASE_DATE,
+                PG_RATING.toString());
         optionalMovie = Optional.of(new Movie(ID, NAME, DESCRIPTION, GENRE, DURATION, RELEASE_DATE,
                 PG_RATING, REGISTRATION_DATE));
     }
@@ -170,10 +209,10 @@ class MovieServiceTest {
         assertEquals(ID, response.id());
         assertEquals(NAME, response.name());
         assertEquals(DESCRIPTION, response.description());
-        assertEquals(GENRE, response.genre());
+        assertEquals(GENRE.label(), response.genre());
         assertEquals(DURATION, response.duration());
         assertEquals(RELEASE_DATE, response.releaseDate());
-        assertEquals(PG_RATING, response.pgRating());
+        assertEquals(PG_RATING.toString(), response.pgRating());
         assertEquals(REGISTRATION_DATE, response.registrationDate());
 
     }
@@ -200,19 +239,19 @@ class MovieServiceTest {
         existingMovie.setId(id);
         existingMovie.setName("Movie 1");
         existingMovie.setDescription("Original description");
-        existingMovie.setGenre("Action");
+        existingMovie.setGenre(Genre.ACTION);
         existingMovie.setDuration(120L);
         existingMovie.setReleaseDate(LocalDate.of(2015, 12, 12));
-        existingMovie.setPgRating("pg-2");
+        existingMovie.setPgRating(PgRating.of(2));
 
         Movie updatedMovie = new Movie();
         updatedMovie.setId(id);
         updatedMovie.setName(movieRequestDto1.name());
         updatedMovie.setDescription(movieRequestDto1.description());
-        updatedMovie.setGenre(movieRequestDto1.genre());
+        updatedMovie.setGenre(Genre.fromLabel(movieRequestDto1.genre()));
         updatedMovie.setDuration(movieRequestDto1.duration());
         updatedMovie.setReleaseDate(movieRequestDto1.releaseDate());
-        updatedMovie.setPgRating(movieRequestDto1.pgRating());
+        updatedMovie.setPgRating(PgRating.parse(movieRequestDto1.pgRating()));
 
         when(repository.findById(id)).thenReturn(Optional.of(existingMovie));
         when(repository.save(existingMovie)).thenReturn(updatedMovie);
@@ -225,10 +264,21 @@ class MovieServiceTest {
         assertEquals(updatedMovie.getId(), result.id());
         assertEquals(updatedMovie.getName(), result.name());
         assertEquals(updatedMovie.getDescription(), result.description());
-        assertEquals(updatedMovie.getGenre(), result.genre());
+        assertEquals(updatedMovie.getGenre().label(), result.genre());
         assertEquals(updatedMovie.getDuration(), result.duration());
         assertEquals(updatedMovie.getReleaseDate(), result.releaseDate());
-        assertEquals(updatedMovie.getPgRating(), result.pgRating());
+        assertEquals(updatedMovie.getPgRating().toString(), result.pgRating());
+    }
+
+    @Test
+    void whenUpdateMovieWithAnUnknownGenreThenReturnAnInvalidQueryException() {
+        MovieRequestDto unknownGenre = new MovieRequestDto("Updated Movie", "Updated description",
+                "Telenovela", 150L, LocalDate.of(2020, 1, 1), "pg-13");
+
+        when(repository.findById(anyString())).thenReturn(optionalMovie);
+
+        assertThrows(InvalidQueryException.class, () -> service.updateMovie("1", unknownGenre));
+        verify(repository, never()).save(any());
     }
 
     @Test
@@ -0,0 +1,352 @@
+package br.com.compass.pb.asynchers.compassflix.services.batch;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieBatchOperationDto;
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieBatchResponseDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieBatchResponseDto.Result;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent.ChangeType;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.InvalidQueryException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieBatchServiceTest {
+
+    private final RecordingRepository repository = new RecordingRepository();
+
+    private final List<Object> events = new ArrayList<>();
+
+    private MovieBatchService batchService;
+
+    private MovieService movieService;
+
+    @BeforeEach
+    void setUp() {
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, false);
+        RepositoryCircuitBreaker breaker = new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10),
+                Duration.ofSeconds(2));
+        movieService = new MovieService(repository, events::add, snapshotService, breaker,
+                new LastKnownCatalog(snapshotService, breaker, 100), ReadPreferenceRouter.primaryOnly(repository),
+                OperationLog.everything(), MovieExistenceFilter.disabled());
+        batchService = new MovieBatchService(movieService, repository, breaker, events::add,
+                MovieExistenceFilter.disabled(), OperationLog.everything(), 100, 4);
+        repository.insert(movie(1, "Heat"));
+        repository.insert(movie(2, "Se7en"));
+        repository.insert(movie(3, "Fargo"));
+        repository.resetCounts();
+    }
+
+    @AfterEach
+    void tearDown() {
+        batchService.shutdown();
+    }
+
+    @Test
+    void shouldAnswerEveryOperationAsIfSentOneAfterTheOther() {
+        MovieBatchResponseDto response = batchService.execute(List.of(
+                create("Zodiac"),
+                create("Memento"),
+                operation("get", "$0", null, null),
+                operation("search", null, "emen", null),
+                operation("update", "$1", null, request("Insomnia")),
+                operation("delete", "$0", null, null),
+                operation("get", "$0", null, null),
+                operation("get", id(1), null, null)));
+
+        assertEquals(List.of(201, 201, 200, 200, 200, 204, 404, 200), statuses(response));
+        String zodiac = ((MovieResponseDto) response.results().get(0).body()).id();
+        assertEquals(zodiac, ((Movie) response.results().get(2).body()).getId());
+        assertEquals(List.of("memento"), ((List<?>) response.results().get(3).body()).stream()
+                .map(movie -> ((Movie) movie).getName()).toList());
+        assertEquals("Insomnia", ((MovieResponseDto) response.results().get(4).body()).name());
+        assertEquals("That movie doesn't exists!", response.results().get(6).message());
+        assertTrue(repository.findById(zodiac).isEmpty());
+        assertEquals(List.of("fargo", "heat", "Insomnia", "se7en"), repository.findAll().stream()
+                .map(Movie::getName).sorted(String.CASE_INSENSITIVE_ORDER).toList());
+    }
+
+    @Test
+    void shouldStoreWritesOnDistinctMoviesAsOneBulkWrite() {
+        MovieBatchResponseDto response = batchService.execute(List.of(
+                create("Zodiac"),
+                create("Memento"),
+                operation("update", id(1), null, request("Heat")),
+                operation("update", id(2), null, request("Seven")),
+                operation("delete", id(3), null, null)));
+
+        assertEquals(List.of(201, 201, 200, 200, 204), statuses(response));
+        assertEquals(1, repository.bulkWrites.get());
+        assertEquals(1, repository.findAllByIdCalls.get());
+        assertEquals(1, repository.nameLookups.get());
+        assertEquals(0, repository.findAllCalls.get());
+        assertEquals(4, repository.count());
+        // one event for the whole group, the caches and the feed take it at once
+        assertEquals(1, events.size());
+        List<MovieChangedEvent> changes = ((MoviesBulkChangedEvent) events.get(0)).changes();
+        assertEquals(List.of(ChangeType.CREATED, ChangeType.CREATED, ChangeType.UPDATED, ChangeType.UPDATED,
+                ChangeType.DELETED), changes.stream().map(MovieChangedEvent::type).toList());
+    }
+
+    @Test
+    void shouldSplitWritesThatTouchTheSameMovieOrName() {
+        MovieBatchResponseDto response = batchService.execute(List.of(
+                operation("update", id(1), null, request("Heat 2")),
+                operation("delete", id(1), null, null),
+                create("Zodiac"),
+                create("ZODIAC"),
+                operation("delete", id(2), null, null),
+                create("se7en"),
+                create("Fargo")));
+
+        // a name freed by a delete earlier in the batch can be taken again, one still held can not
+        assertEquals(List.of(200, 204, 201, 409, 204, 201, 409), statuses(response));
+        assertEquals(3, repository.bulkWrites.get());
+        assertTrue(repository.findById(id(1)).isEmpty());
+        assertEquals(List.of("fargo", "se7en", "zodiac"), repository.findAll().stream()
+                .map(Movie::getName).sorted().toList());
+    }
+
+    @Test
+    void shouldRunTheReadsOfASegmentInParallel() {
+        repository.readLatch = new CountDownLatch(3);
+
+        MovieBatchResponseDto response = batchService.execute(List.of(
+                operation("get", id(1), null, null),
+                operation("get", id(2), null, null),
+                operation("get", id(3), null, null)));
+
+        assertEquals(List.of(200, 200, 200), statuses(response));
+        // every read waited for the other two, one after the other the first would have timed out
+        assertFalse(repository.readTimedOut.get());
+    }
+
+    @Test
+    void shouldFailOperationsOnTheirOwn() {
+        MovieBatchResponseDto response = batchService.execute(List.of(
+                operation("rename", id(1), null, null),
+                operation("get", "$5", null, null),
+                operation("search", null, "zzz", null),
+                operation("delete", "$2", null, null),
+                operation("update", id(9), null, request("Heat")),
+                operation("create", null, null, null),
+                operation("get", id(2), null, null)));
+
+        assertEquals(List.of(400, 400, 404, 400, 404, 400, 200), statuses(response));
+        assertEquals(3, repository.count());
+        assertTrue(events.isEmpty());
+        assertThrows(InvalidQueryException.class, () -> batchService.execute(IntStream.range(0, 101)
+                .mapToObj(i -> operation("get", id(1), null, null)).toList()));
+    }
+
+    @Test
+    void shouldRetryOneByOneWhenTheBulkWriteFails() {
+        repository.failNextBulkWrite = true;
+
+        MovieBatchResponseDto response = batchService.execute(List.of(
+                create("Zodiac"),
+                operation("update", id(1), null, request("Heat 2")),
+                operation("delete", id(2), null, null)));
+
+        assertEquals(List.of(201, 200, 204), statuses(response));
+        assertEquals(List.of("fargo", "Heat 2", "zodiac"), repository.findAll().stream()
+                .map(Movie::getName).sorted(String.CASE_INSENSITIVE_ORDER).toList());
+        assertEquals(3, ((MoviesBulkChangedEvent) events.get(0)).changes().size());
+    }
+
+    /*
+     * Before: one request per operation, each paying a round trip to the database.
+     * After: one batch, reads of a segment in parallel and writes stored as one bulk write.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkBatchAgainstSingleRequests() {
+        long latencyMillis = Long.getLong("benchmark.roundTripMillis", 5);
+        repository.roundTripMillis = latencyMillis;
+        List<MovieBatchOperationDto> operations = new ArrayList<>();
+        IntStream.range(0, 10).forEach(i -> operations.add(operation("get", id(1 + i % 3), null, null)));
+        IntStream.range(0, 10).forEach(i -> operations.add(create("single " + i)));
+        IntStream.range(0, 3).forEach(i -> operations.add(operation("update", id(1 + i), null, request("renamed " + i))));
+
+        long start = System.nanoTime();
+        operations.forEach(operation -> {
+            switch (operation.op()) {
+                case "get" -> movieService.findMovieById(operation.id());
+                case "create" -> movieService.postMovie(operation.movie());
+                default -> movieService.updateMovie(operation.id(), operation.movie());
+            }
+        });
+        long singleMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<MovieBatchOperationDto> batch = operations.stream()
+                .map(operation -> operation.op().equals("create")
+                        ? create(operation.movie().name().replace("single", "batch")) : operation)
+                .toList();
+        start = System.nanoTime();
+        MovieBatchResponseDto response = batchService.execute(batch);
+        long batchMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("%d operations at %d ms per database round trip: %d ms one by one, %d ms as a batch%n",
+                operations.size(), latencyMillis, singleMillis, batchMillis);
+        assertTrue(response.results().stream().allMatch(result -> result.status() < 300));
+    }
+
+    private static List<Integer> statuses(MovieBatchResponseDto response) {
+        return response.results().stream().map(Result::status).toList();
+    }
+
+    private static MovieBatchOperationDto create(String name) {
+        return operation("create", null, null, request(name));
+    }
+
+    private static MovieBatchOperationDto operation(String op, String id, String name, MovieRequestDto movie) {
+        return new MovieBatchOperationDto(op, id, name, movie);
+    }
+
+    private static MovieRequestDto request(String name) {
+        return new MovieRequestDto(name, "description", "drama", 120L, LocalDate.of(2000, 1, 1), "pg-12");
+    }
+
+    private static Movie movie(int i, String name) {
+        return new Movie(id(i), name.toLowerCase(), "description", Genre.CRIME, 100L, LocalDate.of(1995, 6, 1),
+                PgRating.of(16), Instant.parse("2023-07-14T19:00:00Z"));
+    }
+
+    private static String id(int i) {
+        return String.format("%024x", i);
+    }
+
+    private static class RecordingRepository extends InMemoryMovieRepository {
+
+        private final AtomicInteger bulkWrites = new AtomicInteger();
+
+        private final AtomicInteger findAllByIdCalls = new AtomicInteger();
+
+        private final AtomicInteger findAllCalls = new AtomicInteger();
+
+        private final AtomicInteger nameLookups = new AtomicInteger();
+
+        private final AtomicBoolean readTimedOut = new AtomicBoolean();
+
+        private volatile CountDownLatch readLatch;
+
+        private volatile boolean failNextBulkWrite;
+
+        private volatile long roundTripMillis;
+
+        // the writes of a bulk write are one round trip
+        private volatile boolean inBulkWrite;
+
+        void resetCounts() {
+            bulkWrites.set(0);
+            findAllByIdCalls.set(0);
+            findAllCalls.set(0);
+            nameLookups.set(0);
+        }
+
+        @Override
+        public void writeAll(List<Movie> inserted, List<Movie> replaced, List<String> deletedIds) {
+            roundTrip();
+            bulkWrites.incrementAndGet();
+            if (failNextBulkWrite) {
+                failNextBulkWrite = false;
+                // half applied, like an unordered bulk write failing on one of its writes
+                inserted.forEach(this::insert);
+                throw new DataIntegrityViolationException("Bulk write failed");
+            }
+            inBulkWrite = true;
+            try {
+                super.writeAll(inserted, replaced, deletedIds);
+            } finally {
+                inBulkWrite = false;
+            }
+        }
+
+        @Override
+        public Optional<Movie> findById(String id) {
+            roundTrip();
+            CountDownLatch latch = readLatch;
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    if (!latch.await(2, TimeUnit.SECONDS)) {
+                        readTimedOut.set(true);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.findById(id);
+        }
+
+        @Override
+        public List<Movie> findAllById(Iterable<String> ids) {
+            roundTrip();
+            findAllByIdCalls.incrementAndGet();
+            List<Movie> found = new ArrayList<>();
+            ids.forEach(id -> super.findById(id).ifPresent(found::add));
+            return found;
+        }
+
+        @Override
+        public List<Movie> findByNamesIgnoreCase(Collection<String> names) {
+            roundTrip();
+            nameLookups.incrementAndGet();
+            return super.findByNamesIgnoreCase(names);
+        }
+
+        @Override
+        public List<Movie> findAll() {
+            roundTrip();
+            findAllCalls.incrementAndGet();
+            return super.findAll();
+        }
+
+        @Override
+        public <S extends Movie> S save(S entity) {
+            roundTrip();
+            return super.save(entity);
+        }
+
+        private void roundTrip() {
+            if (roundTripMillis > 0 && !inBulkWrite) {
+                try {
+                    Thread.sleep(roundTripMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,166 @@
+package br.com.compass.pb.asynchers.compassflix.services.catalog;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.services.FuzzySearchService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMatch;
+import br.com.compass.pb.asynchers.compassflix.services.search.FuzzyMovieIndex;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotFileTest {
+
+    private static final String[] WORDS = {"night", "lord", "star", "ocean", "ghost", "winter", "river", "castle",
+            "king", "shadow", "storm", "garden", "empire", "dragon", "city", "secret"};
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldRoundTripMoviesAndNameIndex() throws IOException {
+        List<Movie> movies = List.of(
+                movie(1, "the lord of the rings: the two towers", Instant.parse("2023-07-14T19:13:25.465123Z")),
+                movie(2, "amélie", Instant.parse("2023-07-15T10:00:00Z")),
+                new Movie(String.format("%024x", 3), "no details", null, null, null, null, null, null));
+        FuzzyMovieIndex index = new FuzzyMovieIndex();
+        movies.forEach(movie -> index.put(movie.getId(), movie.getName()));
+        Path file = tempDir.resolve("catalog.bin");
+
+        CatalogSnapshotFile.write(file, 7, movies, index);
+        CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(file).orElseThrow();
+
+        assertEquals(7, contents.version());
+        assertEquals(movies.stream().map(Movie::toString).toList(),
+                contents.movies().stream().map(Movie::toString).toList());
+        assertEquals(names(index.search("lrod of rings", 2, 10)), names(contents.nameIndex().search("lrod of rings", 2, 10)));
+        assertEquals(List.of("amélie"), names(contents.nameIndex().search("amelie", 1, 10)));
+        assertFalse(Files.exists(tempDir.resolve("catalog.bin.tmp")));
+    }
+
+    @Test
+    void shouldRejectCorruptFile() throws IOException {
+        Path file = tempDir.resolve("catalog.bin");
+        CatalogSnapshotFile.write(file, 1, List.of(movie(1, "peter pan", Instant.now())), new FuzzyMovieIndex());
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[40] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> CatalogSnapshotFile.read(file));
+        assertTrue(CatalogSnapshotFile.read(tempDir.resolve("missing.bin")).isEmpty());
+    }
+
+    @Test
+    void shouldWarmStartAndCatchUpMoviesRegisteredAfterTheFile() {
+        Path file = tempDir.resolve("catalog.bin");
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        Instant base = Instant.parse("2023-07-14T19:00:00Z");
+        repository.insert(List.of(movie(1, "inglorious bastards", base), movie(2, "peter pan", base.plusSeconds(1))));
+        newWarmStart(repository, file).write();
+
+        repository.insert(List.of(movie(3, "the two towers", base.plusSeconds(2)),
+                movie(4, "the return of the king", base.plusSeconds(2))));
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, true);
+        FuzzySearchService fuzzySearchService = new FuzzySearchService(repository, snapshotService,
+                new LastKnownCatalog(snapshotService, breaker(), 100), ReadPreferenceRouter.primaryOnly(repository));
+        CatalogWarmStartService restarted = new CatalogWarmStartService(repository, snapshotService,
+                fuzzySearchService, true, file, 1);
+
+        assertTrue(restarted.warmUp());
+
+        assertEquals(4, snapshotService.current().orElseThrow().size());
+        assertEquals("the two towers", fuzzySearchService.search("two tower", 1, 10).get(0).movie().name());
+        assertEquals("peter pan", fuzzySearchService.search("petr", 1, 10).get(0).movie().name());
+    }
+
+    @Test
+    void shouldStartColdWithoutFile() {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+
+        assertFalse(newWarmStart(repository, tempDir.resolve("missing.bin")).warmUp());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkTimeToFirstFastResponse() throws IOException {
+        int size = Integer.getInteger("benchmark.catalogSize", 100_000);
+        Path file = tempDir.resolve("catalog.bin");
+
+        // cold: what a node does once the movies arrived from Mongo, the fetch itself is not included
+        List<Movie> movies = generate(size);
+        long start = System.nanoTime();
+        FuzzyMovieIndex cold = new FuzzyMovieIndex();
+        movies.forEach(movie -> cold.put(movie.getId(), movie.getName()));
+        CatalogSnapshot coldSnapshot = CatalogSnapshot.of(1, movies);
+        assertFalse(cold.search("shadw storm", 1, 10).isEmpty());
+        long coldMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        long bytes = CatalogSnapshotFile.write(file, coldSnapshot.version(), coldSnapshot.movies(), cold);
+        long writeMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // a restarted node starts with an empty heap
+        movies = null;
+        coldSnapshot = null;
+        System.gc();
+
+        start = System.nanoTime();
+        CatalogSnapshotFile.Contents contents = CatalogSnapshotFile.read(file).orElseThrow();
+        CatalogSnapshot warmSnapshot = CatalogSnapshot.of(contents.version(), contents.movies());
+        assertFalse(contents.nameIndex().search("shadw storm", 1, 10).isEmpty());
+        long warmMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("catalog warm start %d titles: file=%dMB write=%dms cold(index+snapshot+first search)=%dms "
+                + "warm(map+restore+first search)=%dms%n", size, bytes / (1024 * 1024), writeMillis, coldMillis, warmMillis);
+        assertEquals(size, warmSnapshot.size());
+        assertNull(movies);
+        assertNull(coldSnapshot);
+    }
+
+    private static List<Movie> generate(int size) {
+        Instant base = Instant.parse("2023-01-01T00:00:00Z");
+        return IntStream.range(0, size)
+                .mapToObj(i -> movie(i, WORDS[i % WORDS.length] + " " + WORDS[(i / 16) % WORDS.length] + " "
+                        + Integer.toString(i, 36), base.plusMillis(i)))
+                .toList();
+    }
+
+    private static CatalogWarmStartService newWarmStart(InMemoryMovieRepository repository, Path file) {
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, true);
+        snapshotService.load();
+        FuzzySearchService fuzzySearchService = new FuzzySearchService(repository, snapshotService,
+                new LastKnownCatalog(snapshotService, breaker(), 100), ReadPreferenceRouter.primaryOnly(repository));
+        fuzzySearchService.rebuild();
+        return new CatalogWarmStartService(repository, snapshotService, fuzzySearchService, true, file, 1000);
+    }
+
+    private static RepositoryCircuitBreaker breaker() {
+        return new RepositoryCircuitBreaker(true, 5, Duration.ofSeconds(10), Duration.ofSeconds(2));
+    }
+
+    private static List<String> names(List<FuzzyMatch> matches) {
+        return matches.stream().map(FuzzyMatch::name).toList();
+    }
+
+    private static Movie movie(int id, String name, Instant registrationDate) {
+        return new Movie(String.format("%024x", id), name, "description", Genre.DRAMA, 100L,
+                LocalDate.of(2020, 1, 1), PgRating.of(12), registrationDate);
+    }
+
+}
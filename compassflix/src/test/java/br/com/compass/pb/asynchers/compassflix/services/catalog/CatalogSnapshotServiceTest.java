@@ -0,0 +1,243 @@
+package br.com.compass.pb.asynchers.compassflix.services.catalog;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogSnapshotServiceTest {
+
+    private InMemoryMovieRepository repository;
+
+    private CatalogSnapshotService service;
+
+    @BeforeEach
+    void setUp() {
+        repository = new InMemoryMovieRepository();
+        repository.insert(List.of(
+                movie("1", "inglorious bastards", "Action", 120L, 2009, "pg-18"),
+                movie("2", "the two towers", "Fantasy", 180L, 2003, "pg-16"),
+                movie("3", "peter pan", "Adventure", 90L, 1980, "pg-3")));
+        service = new CatalogSnapshotService(repository, true);
+    }
+
+    @Test
+    void shouldStayEmptyWhenDisabled() {
+        CatalogSnapshotService disabled = new CatalogSnapshotService(repository, false);
+
+        disabled.load();
+        disabled.onMovieChanged(MovieChangedEvent.created(movie("4", "batman", "Action", 120L, 2022, "pg-14")));
+
+        assertTrue(disabled.current().isEmpty());
+    }
+
+    @Test
+    void shouldLoadCatalogAndCountFacets() {
+        service.load();
+
+        CatalogSnapshot snapshot = service.current().orElseThrow();
+        assertEquals(1, snapshot.version());
+        assertEquals(3, snapshot.size());
+        assertEquals(1L, snapshot.genreCounts().get("Fantasy"));
+        assertEquals(1L, snapshot.pgRatingCounts().get("pg-18"));
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.movies().clear());
+    }
+
+    @Test
+    void shouldSwapSnapshotOnEveryWriteWithoutTouchingOldOnes() {
+        service.load();
+        CatalogSnapshot before = service.current().orElseThrow();
+
+        service.onMovieChanged(MovieChangedEvent.created(movie("4", "batman", "Action", 120L, 2022, "pg-14")));
+        service.onMovieChanged(MovieChangedEvent.deleted(movie("3", "peter pan", "Adventure", 90L, 1980, "pg-3")));
+
+        CatalogSnapshot after = service.current().orElseThrow();
+        assertEquals(3, after.version());
+        assertEquals(List.of("1", "2", "4"), after.movies().stream().map(Movie::getId).toList());
+        assertEquals(2L, after.genreCounts().get("Action"));
+        assertNull(after.genreCounts().get("Adventure"));
+        assertEquals(3, before.size());
+        assertEquals(1, before.version());
+    }
+
+    @Test
+    void shouldReplayWritesThatHappenWhileReconciling() {
+        Movie created = movie("4", "batman", "Action", 120L, 2022, "pg-14");
+        CatalogSnapshotService[] holder = new CatalogSnapshotService[1];
+        InMemoryMovieRepository racing = new InMemoryMovieRepository() {
+            @Override
+            public List<Movie> findAll() {
+                List<Movie> loaded = super.findAll();
+                // a write that lands after the scan passed its position
+                holder[0].onMovieChanged(MovieChangedEvent.created(created));
+                return loaded;
+            }
+        };
+        racing.insert(repository.findAll());
+        holder[0] = new CatalogSnapshotService(racing, true);
+
+        holder[0].load();
+
+        CatalogSnapshot snapshot = holder[0].current().orElseThrow();
+        assertEquals(4, snapshot.size());
+        assertTrue(snapshot.byId().containsKey("4"));
+    }
+
+    @Test
+    void shouldNotReconcileTwiceAtOnce() {
+        Movie created = movie("4", "batman", "Action", 120L, 2022, "pg-14");
+        CatalogSnapshotService[] holder = new CatalogSnapshotService[1];
+        InMemoryMovieRepository racing = new InMemoryMovieRepository() {
+            @Override
+            public List<Movie> findAll() {
+                List<Movie> loaded = super.findAll();
+                holder[0].onMovieChanged(MovieChangedEvent.created(created));
+                // would reset the replay log holding the write above
+                holder[0].reconcile();
+                return loaded;
+            }
+        };
+        racing.insert(repository.findAll());
+        holder[0] = new CatalogSnapshotService(racing, true);
+
+        holder[0].load();
+
+        CatalogSnapshot snapshot = holder[0].current().orElseThrow();
+        assertEquals(4, snapshot.size());
+        assertTrue(snapshot.byId().containsKey("4"));
+    }
+
+    @Test
+    void shouldPatchLargeSnapshotsLikeARebuild() {
+        Map<String, Movie> expected = new LinkedHashMap<>();
+        IntStream.range(0, 3000).forEach(i -> expected.put("m" + i, movie("m" + i, "movie " + i,
+                i % 2 == 0 ? "Action" : "Drama", 90L, 1990 + i % 30, "pg-12")));
+        CatalogSnapshot original = CatalogSnapshot.of(1, expected.values());
+        CatalogSnapshot current = original;
+        Random random = new Random(42);
+
+        for (int i = 0; i < 2000; i++) {
+            String id = "m" + random.nextInt(3500);
+            int change = random.nextInt(3);
+            if (change == 0) {
+                Movie previous = expected.remove(id);
+                current = current.apply(MovieChangedEvent.deleted(
+                        previous != null ? previous : movie(id, "gone", "Action", 90L, 2000, "pg-12")));
+            } else {
+                Movie movie = movie(id, "movie " + i, change == 1 ? "Fantasy" : "Horror", 100L, 2001, "pg-16");
+                current = current.apply(expected.containsKey(id)
+                        ? MovieChangedEvent.updated(movie, expected.get(id))
+                        : MovieChangedEvent.created(movie));
+                expected.put(id, movie);
+            }
+        }
+
+        CatalogSnapshot snapshot = current;
+        CatalogSnapshot rebuilt = CatalogSnapshot.of(0, expected.values());
+        assertEquals(rebuilt.size(), snapshot.size());
+        assertEquals(ids(rebuilt.movies()), ids(snapshot.movies()));
+        assertEquals(snapshot.movies().stream().map(Movie::getId).toList(),
+                IntStream.range(0, snapshot.size()).mapToObj(i -> snapshot.movies().get(i).getId()).toList());
+        assertEquals(rebuilt.genreCounts(), snapshot.genreCounts());
+        assertEquals(rebuilt.pgRatingCounts(), snapshot.pgRatingCounts());
+        expected.forEach((id, movie) -> assertEquals(movie.toString(), snapshot.byId().get(id).toString()));
+        assertEquals(expected.keySet(), snapshot.byId().keySet());
+        assertEquals(3000, original.size());
+        assertEquals(Map.of("Action", 1500L, "Drama", 1500L), original.genreCounts());
+    }
+
+    @Test
+    void shouldLeaveOutMoviesMissingAFilteredField() {
+        repository.insert(new Movie("4", "untitled", null, null, null, null, null, null));
+        service.load();
+
+        List<Movie> response = service.current().orElseThrow().filter(
+                new MovieFilterDto(null, null, LocalDate.of(2000, 1, 1), LocalDate.of(2020, 1, 1), 100L, 200L),
+                Sort.by("name"), 10);
+        List<Movie> unfiltered = service.current().orElseThrow().filter(
+                new MovieFilterDto(null, null, null, null, null, null), Sort.by("releaseDate"), 10);
+
+        assertEquals(List.of("1", "2"), ids(response));
+        assertEquals("4", unfiltered.get(0).getId());
+    }
+
+    @Test
+    void shouldFilterAndSortInMemory() {
+        service.load();
+
+        List<Movie> response = service.current().orElseThrow().filter(
+                new MovieFilterDto(null, null, LocalDate.of(2000, 1, 1), null, 100L, null),
+                Sort.by(Sort.Direction.DESC, "releaseDate"), 10);
+
+        assertEquals(List.of("1", "2"), response.stream().map(Movie::getId).toList());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkMillionTitles() {
+        String[] genres = {"Action", "Fantasy", "Drama", "Comedy", "Horror", "Adventure"};
+        List<Movie> movies = IntStream.range(0, 1_000_000)
+                .mapToObj(i -> movie(String.format("%024x", i), "movie number " + i, genres[i % genres.length],
+                        80L + i % 100, 1950 + i % 70, "pg-" + (i % 18)))
+                .toList();
+
+        long heapBefore = usedHeap();
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot = CatalogSnapshot.of(1, movies);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        long heapAfter = usedHeap();
+
+        start = System.nanoTime();
+        int writes = 20;
+        for (int i = 0; i < writes; i++) {
+            snapshot = snapshot.apply(MovieChangedEvent.created(movie("new" + i, "new " + i, "Action", 90L, 2020, "pg-12")));
+        }
+        long applyMillis = (System.nanoTime() - start) / 1_000_000 / writes;
+
+        start = System.nanoTime();
+        int reads = 100;
+        for (int i = 0; i < reads; i++) {
+            snapshot.filter(new MovieFilterDto("Drama", null, null, null, 100L, null), Sort.by("name"), 100);
+        }
+        long filterMillis = (System.nanoTime() - start) / 1_000_000 / reads;
+
+        System.out.printf("catalog snapshot 1M titles: index+facets heap=%dMB build=%dms write=%dms filter=%dms%n",
+                (heapAfter - heapBefore) / (1024 * 1024), buildMillis, applyMillis, filterMillis);
+        assertEquals(1_000_000 + writes, snapshot.size());
+    }
+
+    private static List<String> ids(List<Movie> movies) {
+        return movies.stream().map(Movie::getId).toList();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Movie movie(String id, String name, String genre, Long duration, int year, String pgRating) {
+        return new Movie(id, name, "description", Genre.fromLabel(genre), duration, LocalDate.of(year, 1, 1),
+                PgRating.parse(pgRating),
+                Instant.parse("2023-07-14T19:13:25.465Z"));
+    }
+
+}
@@ -0,0 +1,311 @@
+package br.com.compass.pb.asynchers.compassflix.services.existence;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieNotFoundException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieExistenceFilterTest {
+
+    private static final Instant NOW = Instant.parse("2023-07-20T12:00:00Z");
+
+    private final CountingRepository repository = new CountingRepository();
+
+    private MovieExistenceFilter filter;
+
+    private MovieService service;
+
+    @BeforeEach
+    void setUp() {
+        filter = new MovieExistenceFilter(repository, true, true, 0.5, 100, 100, Duration.ofMinutes(1), 1 << 16,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, false);
+        RepositoryCircuitBreaker breaker = new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10),
+                Duration.ofSeconds(2));
+        service = new MovieService(repository, event -> {
+            if (event instanceof MovieChangedEvent change) {
+                filter.onMovieChanged(change);
+            } else if (event instanceof MoviesBulkChangedEvent bulk) {
+                filter.onMoviesChanged(bulk);
+            }
+        }, snapshotService, breaker, new LastKnownCatalog(snapshotService, breaker, 100),
+                ReadPreferenceRouter.primaryOnly(repository), OperationLog.everything(), filter);
+        repository.insert(movie(1, "Heat"));
+        repository.insert(movie(2, "Se7en"));
+        repository.insert(movie(3, "Fargo"));
+    }
+
+    @Test
+    void shouldFindEveryKeyAddedAndNotRemoved() {
+        CuckooFilter cuckoo = new CuckooFilter(100_000);
+        IntStream.range(0, 100_000).forEach(i -> assertTrue(cuckoo.add(CuckooFilter.hash(id(i)))));
+        IntStream.range(0, 100_000).filter(i -> i % 2 == 0)
+                .forEach(i -> assertTrue(cuckoo.remove(CuckooFilter.hash(id(i)))));
+
+        assertEquals(50_000, cuckoo.size());
+        assertTrue(IntStream.range(0, 100_000).filter(i -> i % 2 == 1)
+                .allMatch(i -> cuckoo.mightContain(CuckooFilter.hash(id(i)))));
+        long falsePositives = IntStream.range(100_000, 1_100_000)
+                .filter(i -> cuckoo.mightContain(CuckooFilter.hash(id(i)))).count();
+        // about 8 / 65536 at a full load, this one is not a quarter full
+        assertTrue(falsePositives < 1_000_000 * 8 / 65536, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void shouldAnswerMaybeToEverythingOnceSaturated() {
+        CuckooFilter cuckoo = new CuckooFilter(8);
+        int added = 0;
+        while (cuckoo.add(CuckooFilter.hash(id(added)))) {
+            added++;
+        }
+
+        assertTrue(cuckoo.isSaturated());
+        assertTrue(added >= 8, "saturated after " + added);
+        assertTrue(IntStream.range(1_000_000, 1_001_000).allMatch(i -> cuckoo.mightContain(CuckooFilter.hash(id(i)))));
+    }
+
+    @Test
+    void shouldFoldNamesLikeEqualsIgnoreCase() {
+        List<String> names = List.of("heat", "HEAT", "Heat", "İstanbul", "istanbul", "ıstanbul",
+                "Kelvin", "kelvin", "straße", "STRASSE", "𐐀", "𐐨", "ǅ", "ǆ");
+
+        for (String first : names) {
+            for (String second : names) {
+                assertEquals(first.equalsIgnoreCase(second),
+                        MovieExistenceFilter.fold(first).equals(MovieExistenceFilter.fold(second)),
+                        first + " / " + second);
+            }
+        }
+    }
+
+    @Test
+    void shouldAnswerMaybeUntilBuilt() {
+        assertFalse(filter.isReady());
+        assertTrue(filter.mightExistById(id(99)));
+        assertThrows(MovieNotFoundException.class, () -> service.findMovieById(id(99)));
+        assertEquals(1, repository.reads.get());
+    }
+
+    @Test
+    void shouldCheckAMaybeNameAgainstTheNameNotTheWholeCatalog() {
+        assertTrue(filter.mightExistByName("se7en"));
+
+        service.checkNameIsAvailable("Zodiac");
+        assertThrows(MovieAlreadyExistException.class, () -> service.checkNameIsAvailable("SE7EN"));
+
+        assertEquals(2, repository.reads.get());
+        assertEquals(0, repository.findAllCalls.get());
+    }
+
+    @Test
+    void shouldRuleOutMissingMoviesWithoutQuerying() {
+        filter.rebuild();
+        assertTrue(filter.isReady());
+        repository.reads.set(0);
+
+        assertThrows(MovieNotFoundException.class, () -> service.findMovieById(id(99)));
+        assertFalse(service.exists(id(99)));
+        assertThrows(MovieNotFoundException.class, () -> service.findByName("zodiac"));
+        service.checkNameIsAvailable("Zodiac");
+        assertEquals(0, repository.reads.get());
+
+        assertEquals("heat", service.findMovieById(id(1)).getName());
+        assertTrue(service.exists(id(2)));
+        assertEquals(List.of("fargo"), service.findByName("ARG").stream().map(Movie::getName).toList());
+        assertThrows(MovieAlreadyExistException.class, () -> service.checkNameIsAvailable("SE7EN"));
+        // too short or not ASCII, only the database can tell
+        assertThrows(MovieNotFoundException.class, () -> service.findByName("zz"));
+        assertEquals(5, repository.reads.get());
+    }
+
+    @Test
+    void shouldFollowWritesMadeThroughTheService() {
+        filter.rebuild();
+
+        String created = service.postMovie(request("Zodiac")).id();
+        assertTrue(filter.mightExistById(created));
+        assertTrue(filter.mightExistByName("zodiac"));
+        assertEquals(List.of("zodiac"), service.findByName("odia").stream().map(Movie::getName).toList());
+
+        service.updateMovie(created, request("Memento"));
+        assertFalse(filter.mightExistByName("zodiac"));
+        assertFalse(filter.mightExistByNameContaining("odia"));
+        assertTrue(filter.mightExistByName("MEMENTO"));
+
+        service.delete(created);
+        assertFalse(filter.mightExistById(created));
+        assertFalse(filter.mightExistByName("memento"));
+        assertTrue(filter.mightExistById(id(1)));
+    }
+
+    @Test
+    void shouldCatchUpWithMoviesRegisteredElsewhere() {
+        filter.rebuild();
+        Movie elsewhere = movie(4, "Zodiac");
+        elsewhere.setRegistrationDate(NOW.plusSeconds(1));
+        repository.insert(elsewhere);
+        assertFalse(filter.mightExistById(id(4)));
+
+        filter.catchUp();
+
+        assertTrue(filter.mightExistById(id(4)));
+        assertTrue(filter.mightExistByName("zodiac"));
+        assertEquals("zodiac", service.findMovieById(id(4)).getName());
+    }
+
+    @Test
+    void shouldNotRuleOutNamesWhenOtherNodesWrite() {
+        MovieExistenceFilter shared = new MovieExistenceFilter(repository, true, false, 0.5, 100, 100,
+                Duration.ofMinutes(1), 1 << 16, Clock.fixed(NOW, ZoneOffset.UTC));
+        shared.rebuild();
+        Movie renamed = movie(1, "Zodiac");
+        repository.save(renamed);
+
+        assertTrue(shared.mightExistByName("zodiac"));
+        assertTrue(shared.mightExistByNameContaining("odia"));
+        assertTrue(shared.mightExistById(id(1)));
+        assertFalse(shared.mightExistById(id(99)));
+    }
+
+    @Test
+    void shouldNotRuleOutIdsOtherNodesMayHaveCreatedSinceTheLastCatchUp() {
+        MovieExistenceFilter shared = new MovieExistenceFilter(repository, true, false, 0.5, 100, 100,
+                Duration.ofMinutes(1), 1 << 16, Clock.fixed(NOW, ZoneOffset.UTC));
+        shared.rebuild();
+        // inserted by another node behind the filter's back, before any catch up ran
+        String recent = new ObjectId(Date.from(NOW.plusSeconds(2))).toHexString();
+        String skewed = new ObjectId(Date.from(NOW.minusSeconds(30))).toHexString();
+        String old = new ObjectId(Date.from(NOW.minus(Duration.ofDays(1)))).toHexString();
+        repository.insert(new Movie(recent, "zodiac", "description", Genre.CRIME, 100L, LocalDate.of(2007, 3, 2),
+                PgRating.of(16), NOW.plusSeconds(2)));
+
+        assertTrue(shared.mightExistById(recent));
+        assertTrue(shared.mightExistById(skewed));
+        assertFalse(shared.mightExistById(old));
+        // a single writer created every movie itself, so it still rules recent ids out
+        filter.rebuild();
+        assertFalse(filter.mightExistById(skewed));
+    }
+
+    /*
+     * Before: every lookup of a movie that does not exist is a findById against the database.
+     * After: the filter rules most of them out in memory. Reports the measured false positive rate and memory of a
+     * filter over benchmark.catalogSize ids.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkMissingLookups() {
+        int size = Integer.getInteger("benchmark.catalogSize", 10_000_000);
+        CuckooFilter cuckoo = new CuckooFilter(size);
+        long start = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            cuckoo.add(CuckooFilter.hash(id(i)));
+        }
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int lookups = 1_000_000;
+        String[] missing = IntStream.range(size, size + lookups).mapToObj(MovieExistenceFilterTest::id)
+                .toArray(String[]::new);
+        start = System.nanoTime();
+        long falsePositives = 0;
+        for (String id : missing) {
+            falsePositives += cuckoo.mightContain(CuckooFilter.hash(id)) ? 1 : 0;
+        }
+        long filterNanos = (System.nanoTime() - start) / lookups;
+
+        InMemoryMovieRepository plain = new InMemoryMovieRepository();
+        plain.insert(IntStream.range(0, 100_000).mapToObj(i -> movie(i, "movie " + i)).toList());
+        start = System.nanoTime();
+        for (String id : missing) {
+            assertTrue(plain.findById(id).isEmpty());
+        }
+        long repositoryNanos = (System.nanoTime() - start) / lookups;
+
+        System.out.printf("existence filter over %d ids: %d MB, built in %d ms, false positive rate %.5f%%, "
+                        + "%d ns per missing lookup against %d ns in the in memory repository%n", size,
+                cuckoo.memoryBytes() / (1024 * 1024), buildMillis, 100.0 * falsePositives / lookups, filterNanos,
+                repositoryNanos);
+        assertFalse(cuckoo.isSaturated());
+    }
+
+    private static MovieRequestDto request(String name) {
+        return new MovieRequestDto(name, "description", "drama", 120L, LocalDate.of(2000, 1, 1), "pg-12");
+    }
+
+    private static Movie movie(int i, String name) {
+        return new Movie(id(i), name.toLowerCase(), "description", Genre.CRIME, 100L, LocalDate.of(1995, 6, 1),
+                PgRating.of(16), NOW.minusSeconds(3600));
+    }
+
+    private static String id(int i) {
+        return String.format("%024x", i);
+    }
+
+    private static class CountingRepository extends InMemoryMovieRepository {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private final AtomicInteger findAllCalls = new AtomicInteger();
+
+        @Override
+        public Optional<Movie> findById(String id) {
+            reads.incrementAndGet();
+            return super.findById(id);
+        }
+
+        @Override
+        public boolean existsById(String id) {
+            reads.incrementAndGet();
+            return super.existsById(id);
+        }
+
+        @Override
+        public List<Movie> findByNameIgnoreCaseContaining(String name) {
+            reads.incrementAndGet();
+            return super.findByNameIgnoreCaseContaining(name);
+        }
+
+        @Override
+        public List<Movie> findByNamesIgnoreCase(Collection<String> names) {
+            reads.incrementAndGet();
+            return super.findByNamesIgnoreCase(names);
+        }
+
+        @Override
+        public List<Movie> findAll() {
+            reads.incrementAndGet();
+            findAllCalls.incrementAndGet();
+            return super.findAll();
+        }
+    }
+
+}
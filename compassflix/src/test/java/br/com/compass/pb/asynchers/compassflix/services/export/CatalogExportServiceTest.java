@@ -0,0 +1,216 @@
+package br.com.compass.pb.asynchers.compassflix.services.export;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.ExportManifestDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.exceptions.ExportInProgressException;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogExportServiceTest {
+
+    private static final Genre[] GENRES = Genre.values();
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldRoundTripColumnsAcrossRowGroups() throws IOException {
+        List<Movie> movies = new ArrayList<>(generate(5));
+        movies.add(new Movie(String.format("%024x", 99), "amélie", null, null, null, null, null, null));
+        Path file = tempDir.resolve("movies" + ColumnarMovieFile.EXTENSION);
+
+        try (ColumnarMovieFile.Writer writer = new ColumnarMovieFile.Writer(file, 6)) {
+            writer.writeRowGroup(movies.subList(0, 4));
+            writer.writeRowGroup(movies.subList(4, movies.size()));
+            writer.finish();
+        }
+        ColumnarMovieFile.Reader reader = ColumnarMovieFile.Reader.open(file);
+
+        assertEquals(6, reader.rows());
+        assertEquals(2, reader.rowGroups());
+        assertEquals(movies.stream().map(Movie::toString).toList(),
+                reader.movies().stream().map(Movie::toString).toList());
+        assertEquals(movies.stream().map(Movie::getGenre).toList(), reader.column(ColumnarMovieFile.Column.GENRE));
+        assertEquals(movies.stream().map(Movie::getDuration).toList(), reader.column(ColumnarMovieFile.Column.DURATION));
+        assertFalse(Files.exists(tempDir.resolve(file.getFileName() + ".tmp")));
+    }
+
+    @Test
+    void shouldLeaveNothingBehindWhenNotFinished() throws IOException {
+        Path file = tempDir.resolve("movies" + ColumnarMovieFile.EXTENSION);
+
+        try (ColumnarMovieFile.Writer writer = new ColumnarMovieFile.Writer(file, 6)) {
+            writer.writeRowGroup(generate(3));
+        }
+
+        assertEquals(0, Files.list(tempDir).count());
+    }
+
+    @Test
+    void shouldExportPartitionsWithManifest() throws IOException {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        repository.insert(generate(1000));
+        Path target = tempDir.resolve("export");
+
+        ExportManifestDto manifest = service(repository, 3, 128).export(target);
+
+        assertEquals(1000, manifest.rows());
+        assertEquals(3, manifest.partitions().size());
+        assertEquals(1000, manifest.partitions().stream().mapToLong(ExportManifestDto.Partition::rows).sum());
+        assertEquals(8, manifest.partitions().stream().mapToInt(ExportManifestDto.Partition::rowGroups).sum());
+        assertEquals(manifest, objectMapper.readValue(target.resolve(CatalogExportService.MANIFEST).toFile(),
+                ExportManifestDto.class));
+        List<Movie> exported = new ArrayList<>();
+        for (ExportManifestDto.Partition partition : manifest.partitions()) {
+            ColumnarMovieFile.Reader reader = ColumnarMovieFile.Reader.open(target.resolve(partition.file()));
+            assertEquals(partition.rows(), reader.rows());
+            assertEquals(partition.bytes(), Files.size(target.resolve(partition.file())));
+            exported.addAll(reader.movies());
+        }
+        exported.sort(Comparator.comparing(Movie::getId));
+        assertEquals(repository.findAll().stream().map(Movie::toString).sorted().toList(),
+                exported.stream().map(Movie::toString).toList());
+    }
+
+    @Test
+    void shouldSkipEmptyPartitions() throws IOException {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        repository.insert(generate(10));
+
+        ExportManifestDto manifest = service(repository, 4, 100).export(tempDir);
+
+        assertEquals(1, manifest.partitions().size());
+        assertEquals("part-00000" + ColumnarMovieFile.EXTENSION, manifest.partitions().get(0).file());
+        assertEquals(10, manifest.rows());
+    }
+
+    @Test
+    void shouldGiveEveryExportItsOwnDirectory() throws IOException {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        repository.insert(generate(10));
+        CatalogExportService service = service(repository, 2, 100);
+
+        List<String> directories = IntStream.range(0, 5).mapToObj(i -> {
+            try {
+                return service.export().directory();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }).toList();
+
+        assertEquals(5, directories.stream().distinct().count());
+        assertEquals(5, Files.list(tempDir).count());
+    }
+
+    @Test
+    void shouldRejectAnExportWhileAnotherIsRunning() throws Exception {
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryMovieRepository repository = new InMemoryMovieRepository() {
+            @Override
+            public Stream<Movie> streamAll(int batchSize) {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.streamAll(batchSize);
+            }
+        };
+        repository.insert(generate(10));
+        CatalogExportService service = service(repository, 2, 100);
+
+        CompletableFuture<ExportManifestDto> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return service.export(tempDir.resolve("first"));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        });
+        assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+        assertThrows(ExportInProgressException.class, () -> service.export(tempDir.resolve("second")));
+        assertFalse(Files.exists(tempDir.resolve("second")));
+        release.countDown();
+        assertEquals(10, first.get(5, TimeUnit.SECONDS).rows());
+        assertEquals(10, service.export(tempDir.resolve("third")).rows());
+    }
+
+    /*
+     * Before: what analytics jobs do today, the whole catalog as one findAll JSON array.
+     * After: the columnar export, plus a scan of a single column.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkExportAgainstJson() throws IOException {
+        int size = Integer.getInteger("benchmark.catalogSize", 1_000_000);
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        repository.insert(generate(size));
+
+        long start = System.nanoTime();
+        Path json = tempDir.resolve("movies.json");
+        objectMapper.writeValue(json.toFile(), repository.findAll());
+        long jsonMillis = (System.nanoTime() - start) / 1_000_000;
+        start = System.nanoTime();
+        long jsonRows = objectMapper.readTree(json.toFile()).size();
+        long jsonScanMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        ExportManifestDto manifest = service(repository, 4, 65536).export(tempDir.resolve("export"));
+        long exportMillis = (System.nanoTime() - start) / 1_000_000;
+        start = System.nanoTime();
+        long durations = 0;
+        for (ExportManifestDto.Partition partition : manifest.partitions()) {
+            durations += ColumnarMovieFile.Reader.open(tempDir.resolve("export").resolve(partition.file()))
+                    .column(ColumnarMovieFile.Column.DURATION).size();
+        }
+        long scanMillis = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("catalog export %d movies: json %dMB in %d ms, full parse %d ms; columnar %dMB in %d ms, "
+                        + "duration column scan %d ms%n", size, Files.size(json) / (1024 * 1024), jsonMillis, jsonScanMillis,
+                manifest.partitions().stream().mapToLong(ExportManifestDto.Partition::bytes).sum() / (1024 * 1024),
+                exportMillis, scanMillis);
+        assertEquals(size, jsonRows);
+        assertEquals(size, durations);
+    }
+
+    private CatalogExportService service(InMemoryMovieRepository repository, int partitions, int rowGroupSize) {
+        return new CatalogExportService(repository, objectMapper, tempDir, partitions, rowGroupSize, 100, 6);
+    }
+
+    private static List<Movie> generate(int size) {
+        Instant base = Instant.parse("2023-01-01T00:00:00Z");
+        return IntStream.range(0, size)
+                .mapToObj(i -> new Movie(String.format("%024x", i), "movie " + Integer.toString(i, 36),
+                        i % 7 == 0 ? null : "description of movie " + i, GENRES[i % GENRES.length],
+                        i % 11 == 0 ? null : 80L + i % 120, LocalDate.of(1950 + i % 70, 1 + i % 12, 1 + i % 28),
+                        PgRating.of(i % 19), base.plusMillis(i)))
+                .toList();
+    }
+
+}
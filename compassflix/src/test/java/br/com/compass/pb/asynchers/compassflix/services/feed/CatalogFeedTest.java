@@ -0,0 +1,258 @@
+package br.com.compass.pb.asynchers.compassflix.services.feed;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogChangeDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.RecentMoviesDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogFeedTest {
+
+    private CatalogChangeBroadcaster broadcaster;
+
+    @AfterEach
+    void tearDown() {
+        if (broadcaster != null) {
+            broadcaster.shutdown();
+        }
+    }
+
+    @Test
+    void shouldDeliverEveryChangeInOrderToManyConcurrentSubscribers() throws Exception {
+        broadcaster = newBroadcaster(256, 5000, 1024);
+        int subscriberCount = 2000;
+        int changes = 200;
+        List<RecordingSink> sinks = IntStream.range(0, subscriberCount).mapToObj(i -> new RecordingSink()).toList();
+        sinks.forEach(sink -> assertTrue(broadcaster.subscribe(sink, null).isPresent()));
+
+        ExecutorService writers = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < changes; i++) {
+            Movie movie = movie(Instant.now());
+            writers.execute(() -> broadcaster.onMovieChanged(MovieChangedEvent.created(movie)));
+        }
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(10, TimeUnit.SECONDS));
+
+        List<Long> expected = LongStream.rangeClosed(1, changes).boxed().toList();
+        await(() -> sinks.stream().allMatch(sink -> sink.sequences().size() == changes));
+        sinks.forEach(sink -> assertEquals(expected, sink.sequences()));
+        assertEquals(0, broadcaster.stats().droppedSubscribers());
+        assertEquals(subscriberCount, broadcaster.stats().subscribers());
+    }
+
+    @Test
+    void shouldDropSlowSubscriberWithoutHoldingBackTheOthers() throws Exception {
+        broadcaster = newBroadcaster(4, 10, 1024);
+        CountDownLatch stuck = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink() {
+            @Override
+            public void send(CatalogChangeDto change) throws IOException {
+                try {
+                    stuck.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.send(change);
+            }
+        };
+        RecordingSink fast = new RecordingSink();
+        broadcaster.subscribe(slow, null);
+        broadcaster.subscribe(fast, null);
+
+        // paced on the fast subscriber, so only the stuck one can overflow its buffer
+        for (int i = 1; i <= 20; i++) {
+            broadcaster.onMovieChanged(MovieChangedEvent.created(movie(Instant.now())));
+            int delivered = i;
+            await(() -> fast.sequences().size() == delivered);
+        }
+
+        assertEquals(1, broadcaster.stats().droppedSubscribers());
+        assertEquals(1, broadcaster.stats().subscribers());
+        stuck.countDown();
+        await(() -> slow.closed);
+        assertTrue(slow.sequences().size() < 20);
+    }
+
+    @Test
+    void shouldDisconnectSubscriberWhoseConnectionFails() throws Exception {
+        broadcaster = newBroadcaster(16, 10, 1024);
+        RecordingSink broken = new RecordingSink() {
+            @Override
+            public void send(CatalogChangeDto change) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        broadcaster.subscribe(broken, null);
+
+        broadcaster.onMovieChanged(MovieChangedEvent.created(movie(Instant.now())));
+
+        await(() -> broken.closed);
+        assertEquals(0, broadcaster.stats().subscribers());
+    }
+
+    @Test
+    void shouldResumeFromLastEventId() throws Exception {
+        broadcaster = newBroadcaster(16, 10, 1024);
+        for (int i = 0; i < 5; i++) {
+            broadcaster.onMovieChanged(MovieChangedEvent.created(movie(Instant.now())));
+        }
+
+        RecordingSink resumed = new RecordingSink();
+        broadcaster.subscribe(resumed, 2L);
+        broadcaster.onMovieChanged(MovieChangedEvent.deleted(movie(Instant.now())));
+
+        await(() -> resumed.sequences().size() == 4);
+        assertEquals(List.of(3L, 4L, 5L, 6L), resumed.sequences());
+        assertNull(resumed.changes.get(3).movie());
+    }
+
+    @Test
+    void shouldAskForResyncWhenLastEventIdIsNoLongerRetained() throws Exception {
+        broadcaster = newBroadcaster(16, 10, 3);
+        for (int i = 0; i < 10; i++) {
+            broadcaster.onMovieChanged(MovieChangedEvent.created(movie(Instant.now())));
+        }
+
+        RecordingSink behind = new RecordingSink();
+        broadcaster.subscribe(behind, 1L);
+
+        await(() -> Long.valueOf(10).equals(behind.reset));
+        assertTrue(behind.sequences().isEmpty());
+    }
+
+    @Test
+    void shouldAskForResyncWhenLastEventIdIsAheadOfTheSequence() throws Exception {
+        broadcaster = newBroadcaster(16, 10, 1024);
+        broadcaster.onMovieChanged(MovieChangedEvent.created(movie(Instant.now())));
+
+        // issued by the broadcaster that ran before a restart
+        RecordingSink ahead = new RecordingSink();
+        broadcaster.subscribe(ahead, 500L);
+        broadcaster.onMovieChanged(MovieChangedEvent.created(movie(Instant.now())));
+
+        await(() -> Long.valueOf(1).equals(ahead.reset) && ahead.sequences().size() == 1);
+        assertEquals(List.of(2L), ahead.sequences());
+    }
+
+    @Test
+    void shouldRejectSubscribersAboveTheLimit() {
+        broadcaster = newBroadcaster(16, 2, 1024);
+
+        assertTrue(broadcaster.subscribe(new RecordingSink(), null).isPresent());
+        OptionalLong second = broadcaster.subscribe(new RecordingSink(), null);
+        assertTrue(second.isPresent());
+        assertTrue(broadcaster.subscribe(new RecordingSink(), null).isEmpty());
+
+        broadcaster.unsubscribe(second.getAsLong());
+        assertTrue(broadcaster.subscribe(new RecordingSink(), null).isPresent());
+    }
+
+    @Test
+    void shouldPageRecentMoviesWithoutSkippingTies() {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        Instant start = Instant.parse("2023-07-14T19:00:00Z");
+        Instant tie = start.plusSeconds(10);
+        repository.insert(List.of(movie(start), movie(tie), movie(tie), movie(tie), movie(start.plusSeconds(20))));
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, false);
+        RepositoryCircuitBreaker breaker = new RepositoryCircuitBreaker(true, 5, Duration.ofSeconds(10),
+                Duration.ofSeconds(2));
+        MovieService service = new MovieService(repository, event -> {
+        }, snapshotService, breaker, new LastKnownCatalog(snapshotService, breaker, 100),
+                ReadPreferenceRouter.primaryOnly(repository), OperationLog.everything(),
+                MovieExistenceFilter.disabled());
+
+        List<String> seen = new ArrayList<>();
+        RecentMoviesDto page = service.findRecent(start, null, 2);
+        while (!page.movies().isEmpty()) {
+            page.movies().forEach(movie -> seen.add(movie.getId()));
+            page = service.findRecent(page.since(), page.afterId(), 2);
+        }
+
+        assertEquals(4, seen.size());
+        assertEquals(4, seen.stream().distinct().count());
+        assertEquals(start.plusSeconds(20), page.since());
+    }
+
+    private static CatalogChangeBroadcaster newBroadcaster(int buffer, int maxSubscribers, int replaySize) {
+        return new CatalogChangeBroadcaster(buffer, maxSubscribers, replaySize, 8, Duration.ofMinutes(30));
+    }
+
+    private static Movie movie(Instant registrationDate) {
+        return new Movie(new ObjectId().toHexString(), "movie", "description", Genre.DRAMA, 100L,
+                LocalDate.of(2020, 1, 1), PgRating.of(12), registrationDate);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(5);
+        }
+    }
+
+    private static class RecordingSink implements ChangeSink {
+
+        final List<CatalogChangeDto> changes = Collections.synchronizedList(new ArrayList<>());
+
+        volatile Long reset;
+
+        volatile boolean closed;
+
+        @Override
+        public void send(CatalogChangeDto change) throws IOException {
+            changes.add(change);
+        }
+
+        @Override
+        public void reset(long sequence) {
+            reset = sequence;
+        }
+
+        @Override
+        public void heartbeat() {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        List<Long> sequences() {
+            synchronized (changes) {
+                return changes.stream().map(CatalogChangeDto::sequence).toList();
+            }
+        }
+
+    }
+
+}
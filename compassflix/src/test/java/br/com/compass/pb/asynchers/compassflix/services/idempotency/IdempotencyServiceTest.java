@@ -0,0 +1,198 @@
+package br.com.compass.pb.asynchers.compassflix.services.idempotency;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.IdempotencyRecord;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IdempotencyKeyReuseException;
+import br.com.compass.pb.asynchers.compassflix.exceptions.MovieAlreadyExistException;
+import br.com.compass.pb.asynchers.compassflix.repositories.IdempotencyRecordRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.net.URI;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceTest {
+
+    private static final String SCOPE = "POST /compassflix/movies";
+
+    @Mock
+    private IdempotencyRecordRepository recordRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private IdempotencyService service;
+
+    private MovieRequestDto movieRequestDto;
+
+    private MovieResponseDto movieResponseDto;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        service = newService(false);
+        movieRequestDto = new MovieRequestDto("Avengers", "Heroes fighting", "Action",
+                120L, LocalDate.parse("2022-10-10"), "pg-17");
+        movieResponseDto = new MovieResponseDto("64b1e14a36a86833234f6a42", "avengers", "Heroes fighting",
+                "Action", 120L, LocalDate.parse("2022-10-10"), "pg-17", Instant.parse("2023-07-14T19:13:25.465Z"));
+    }
+
+    @Test
+    void shouldRunEveryRequestWithoutKey() {
+        AtomicInteger calls = new AtomicInteger();
+
+        service.execute(null, SCOPE, movieRequestDto, MovieResponseDto.class, () -> created(calls));
+        service.execute(null, SCOPE, movieRequestDto, MovieResponseDto.class, () -> created(calls));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void shouldReplayStoredResponseWithoutRunningAgain() {
+        AtomicInteger calls = new AtomicInteger();
+
+        ResponseEntity<MovieResponseDto> first = service.execute("key-1", SCOPE, movieRequestDto,
+                MovieResponseDto.class, () -> created(calls));
+        ResponseEntity<MovieResponseDto> replay = service.execute("key-1", SCOPE, movieRequestDto,
+                MovieResponseDto.class, () -> created(calls));
+
+        assertEquals(1, calls.get());
+        assertEquals(HttpStatus.CREATED, replay.getStatusCode());
+        assertSame(first.getBody(), replay.getBody());
+        assertEquals(first.getHeaders().getLocation(), replay.getHeaders().getLocation());
+        assertEquals("true", replay.getHeaders().getFirst(IdempotencyService.REPLAYED));
+    }
+
+    @Test
+    void shouldRejectKeyReusedWithDifferentRequest() {
+        AtomicInteger calls = new AtomicInteger();
+        service.execute("key-1", SCOPE, movieRequestDto, MovieResponseDto.class, () -> created(calls));
+
+        MovieRequestDto other = new MovieRequestDto("Batman", "Dark hero", "Action",
+                120L, LocalDate.parse("2022-10-10"), "pg-14");
+
+        assertThrows(IdempotencyKeyReuseException.class, () ->
+                service.execute("key-1", SCOPE, other, MovieResponseDto.class, () -> created(calls)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void shouldNotStoreFailedRequests() {
+        AtomicInteger calls = new AtomicInteger();
+
+        assertThrows(MovieAlreadyExistException.class, () ->
+                service.execute("key-1", SCOPE, movieRequestDto, MovieResponseDto.class, () -> {
+                    calls.incrementAndGet();
+                    throw new MovieAlreadyExistException("That movie already exists!");
+                }));
+        service.execute("key-1", SCOPE, movieRequestDto, MovieResponseDto.class, () -> created(calls));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void shouldRunConcurrentRequestsWithSameKeyOnce() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        int clients = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(clients);
+        try {
+            List<Future<ResponseEntity<MovieResponseDto>>> responses = new ArrayList<>();
+            for (int i = 0; i < clients; i++) {
+                responses.add(executor.submit(() -> service.execute("key-1", SCOPE, movieRequestDto,
+                        MovieResponseDto.class, () -> {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return created(calls);
+                        })));
+            }
+            Thread.sleep(100);
+            release.countDown();
+
+            for (Future<ResponseEntity<MovieResponseDto>> response : responses) {
+                assertSame(movieResponseDto, response.get(5, TimeUnit.SECONDS).getBody());
+            }
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldNeverEvictRequestsStillInProgress() {
+        IdempotencyStore store = new IdempotencyStore(1, Duration.ofHours(1), Clock.systemUTC());
+        IdempotencyStore.Entry first = store.newEntry("first");
+        IdempotencyStore.Entry second = store.newEntry("second");
+
+        assertNull(store.putIfAbsent("key-1", first));
+        assertNull(store.putIfAbsent("key-2", second));
+
+        assertEquals(2, store.size());
+        assertSame(first, store.putIfAbsent("key-1", store.newEntry("first")));
+
+        first.response().complete(ResponseEntity.ok().build());
+        assertNull(store.putIfAbsent("key-3", store.newEntry("third")));
+
+        assertEquals(2, store.size());
+        assertSame(second, store.putIfAbsent("key-2", store.newEntry("second")));
+    }
+
+    @Test
+    void shouldPersistAndReplayFromMongoOnAnotherNode() {
+        AtomicInteger calls = new AtomicInteger();
+        IdempotencyService first = newService(true);
+        when(recordRepository.findById(anyString())).thenReturn(Optional.empty());
+
+        first.execute("key-1", SCOPE, movieRequestDto, MovieResponseDto.class, () -> created(calls));
+
+        ArgumentCaptor<IdempotencyRecord> saved = ArgumentCaptor.forClass(IdempotencyRecord.class);
+        verify(recordRepository).save(saved.capture());
+        when(recordRepository.findById(saved.getValue().getKey())).thenReturn(Optional.of(saved.getValue()));
+
+        ResponseEntity<MovieResponseDto> replay = newService(true).execute("key-1", SCOPE, movieRequestDto,
+                MovieResponseDto.class, () -> created(calls));
+
+        assertEquals(1, calls.get());
+        assertEquals(movieResponseDto, replay.getBody());
+        assertEquals(HttpStatus.CREATED, replay.getStatusCode());
+        verify(recordRepository, times(1)).save(any());
+    }
+
+    private IdempotencyService newService(boolean persistent) {
+        return new IdempotencyService(recordRepository, objectMapper, 1000, Duration.ofHours(1),
+                Duration.ofSeconds(5), persistent);
+    }
+
+    private ResponseEntity<MovieResponseDto> created(AtomicInteger calls) {
+        calls.incrementAndGet();
+        return ResponseEntity.created(URI.create("/compassflix/movies/" + movieResponseDto.id())).body(movieResponseDto);
+    }
+
+}
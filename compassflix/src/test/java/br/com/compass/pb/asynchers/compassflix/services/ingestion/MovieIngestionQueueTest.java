@@ -0,0 +1,292 @@
+package br.com.compass.pb.asynchers.compassflix.services.ingestion;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.IngestionStatusDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.exceptions.IngestionQueueFullException;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MovieIngestionQueueTest {
+
+    @Mock
+    private MovieService movieService;
+
+    @Mock
+    private ApplicationEventPublisher publisher;
+
+    @TempDir
+    private Path tempDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private final List<MovieIngestionQueue> queues = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        for (MovieIngestionQueue queue : queues) {
+            queue.stop();
+        }
+    }
+
+    @Test
+    void shouldWriteMoviesInSubmissionOrderExactlyOnce() {
+        RecordingRepository repository = new RecordingRepository();
+        MovieIngestionQueue queue = startQueue(repository, 10_000);
+
+        List<String> submitted = IntStream.range(0, 2_000)
+                .mapToObj(i -> queue.submit(request("movie " + i)).id())
+                .toList();
+
+        await(() -> queue.stats().written() == submitted.size());
+        assertEquals(submitted, repository.insertedIds);
+        assertEquals(submitted.size(), repository.count());
+        assertEquals(0, queue.stats().queued());
+        assertEquals(IngestionStatus.WRITTEN, queue.status(submitted.get(0)).map(IngestionStatusDto::status).orElseThrow());
+    }
+
+    @Test
+    void shouldNotWriteTwiceWhenABatchFailsHalfway() {
+        RecordingRepository repository = new RecordingRepository();
+        repository.failFirstBatchAfter = 3;
+        MovieIngestionQueue queue = newQueue(repository, 100);
+        List<String> submitted = new ArrayList<>();
+
+        // hold the writer on the first batch so the next ten movies are drained into a single batch
+        queue.start();
+        repository.blockInserts = new CountDownLatch(1);
+        submitted.add(queue.submit(request("first")).id());
+        await(() -> repository.waiting);
+        IntStream.range(0, 10).forEach(i -> submitted.add(queue.submit(request("movie " + i)).id()));
+        repository.blockInserts.countDown();
+
+        await(() -> queue.stats().written() == submitted.size());
+        assertEquals(submitted, repository.insertedIds);
+        assertEquals(submitted.size(), new HashSet<>(repository.insertedIds).size());
+        assertEquals(0, queue.stats().requeued());
+    }
+
+    @Test
+    void shouldRetryFailedMoviesInALaterPass() {
+        RecordingRepository repository = new RecordingRepository();
+        // the batch insert and the single write, on the first pass and on the first retry
+        repository.failingInserts.set(4);
+        MovieIngestionQueue queue = startQueue(repository, 100);
+
+        String id = queue.submit(request("first")).id();
+
+        await(() -> queue.stats().written() == 1);
+        assertEquals(2, queue.stats().requeued());
+        assertEquals(List.of(id), repository.insertedIds);
+        assertEquals(IngestionStatus.WRITTEN, queue.status(id).map(IngestionStatusDto::status).orElseThrow());
+    }
+
+    @Test
+    void shouldKeepWritingWhileAMovieWaitsForItsRetry() {
+        RecordingRepository repository = new RecordingRepository();
+        repository.failingName = "broken";
+        MovieIngestionQueue queue = startQueue(repository, 100);
+
+        String broken = queue.submit(request("broken")).id();
+        await(() -> queue.stats().requeued() > 0);
+        List<String> submitted = IntStream.range(0, 5)
+                .mapToObj(i -> queue.submit(request("movie " + i)).id())
+                .toList();
+
+        await(() -> queue.stats().written() == submitted.size());
+        assertEquals(submitted, repository.insertedIds);
+        assertEquals(IngestionStatus.PENDING, queue.status(broken).map(IngestionStatusDto::status).orElseThrow());
+        repository.failingName = null;
+
+        await(() -> queue.stats().written() == submitted.size() + 1);
+        assertEquals(broken, repository.insertedIds.get(submitted.size()));
+    }
+
+    @Test
+    void shouldSpillMoviesWaitingForARetryOnShutdown() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        repository.failingName = "broken";
+        MovieIngestionQueue queue = startQueue(repository, 1);
+
+        String broken = queue.submit(request("broken")).id();
+        await(() -> queue.stats().requeued() > 0);
+        String second = queue.submit(request("second")).id();
+
+        await(() -> queue.stats().written() == 1);
+        assertEquals(List.of(second), repository.insertedIds);
+        queue.stop();
+        assertTrue(Files.exists(tempDir.resolve("spill.jsonl")));
+        repository.failingName = null;
+
+        MovieIngestionQueue restarted = startQueue(repository, 1);
+
+        await(() -> restarted.stats().written() == 1);
+        assertEquals(List.of(second, broken), repository.insertedIds);
+        assertFalse(Files.exists(tempDir.resolve("spill.jsonl")));
+    }
+
+    @Test
+    void shouldSpillQueuedMoviesOnShutdownAndReloadThemInOrder() throws Exception {
+        RecordingRepository repository = new RecordingRepository();
+        repository.blockInserts = new CountDownLatch(1);
+        MovieIngestionQueue queue = newQueue(repository, 100);
+        queue.start();
+
+        List<String> submitted = new ArrayList<>();
+        submitted.add(queue.submit(request("first")).id());
+        await(() -> repository.waiting);
+        IntStream.range(0, 5).forEach(i -> submitted.add(queue.submit(request("movie " + i)).id()));
+
+        Thread stopping = new Thread(() -> {
+            try {
+                queue.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stopping.start();
+        // release the writer only once stop() cleared the running flag and is joining it
+        await(() -> stopping.getState() == Thread.State.TIMED_WAITING);
+        repository.blockInserts.countDown();
+        stopping.join();
+
+        assertEquals(List.of(submitted.get(0)), repository.insertedIds);
+        assertTrue(Files.exists(tempDir.resolve("spill.jsonl")));
+
+        MovieIngestionQueue restarted = startQueue(repository, 100);
+
+        await(() -> restarted.stats().written() == 5);
+        assertEquals(submitted, repository.insertedIds);
+        assertFalse(Files.exists(tempDir.resolve("spill.jsonl")));
+    }
+
+    @Test
+    void shouldRejectSubmissionsWhenQueueIsFull() {
+        RecordingRepository repository = new RecordingRepository();
+        repository.blockInserts = new CountDownLatch(1);
+        MovieIngestionQueue queue = startQueue(repository, 1);
+
+        queue.submit(request("first"));
+        await(() -> repository.waiting);
+        queue.submit(request("second"));
+
+        assertThrows(IngestionQueueFullException.class, () -> queue.submit(request("third")));
+        assertEquals(2, queue.stats().accepted());
+        repository.blockInserts.countDown();
+    }
+
+    private MovieIngestionQueue startQueue(RecordingRepository repository, int capacity) {
+        MovieIngestionQueue queue = newQueue(repository, capacity);
+        queue.start();
+        return queue;
+    }
+
+    private MovieIngestionQueue newQueue(RecordingRepository repository, int capacity) {
+        MovieIngestionQueue queue = new MovieIngestionQueue(repository, movieService, publisher, objectMapper,
+                true, capacity, 50, Duration.ofMillis(10), tempDir.resolve("spill.jsonl"));
+        queues.add(queue);
+        return queue;
+    }
+
+    private static MovieRequestDto request(String name) {
+        return new MovieRequestDto(name, "description", "Action", 120L, LocalDate.parse("2022-10-10"), "pg-12");
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not reached in time");
+            Thread.onSpinWait();
+        }
+    }
+
+    private static class RecordingRepository extends InMemoryMovieRepository {
+
+        private final List<String> insertedIds = Collections.synchronizedList(new ArrayList<>());
+        private volatile CountDownLatch blockInserts;
+        private volatile boolean waiting;
+        private int failFirstBatchAfter = -1;
+        private final AtomicInteger failingInserts = new AtomicInteger();
+        private volatile String failingName;
+
+        @Override
+        public <S extends Movie> List<S> insert(Iterable<S> entities) {
+            if (failingInserts.getAndDecrement() > 0 || contains(entities, failingName)) {
+                throw new DataAccessResourceFailureException("connection refused");
+            }
+            CountDownLatch latch = blockInserts;
+            if (latch != null) {
+                waiting = true;
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                blockInserts = null;
+                return super.insert(entities);
+            }
+            if (failFirstBatchAfter >= 0) {
+                int remaining = failFirstBatchAfter;
+                failFirstBatchAfter = -1;
+                for (S entity : entities) {
+                    if (remaining-- == 0) {
+                        throw new DataAccessResourceFailureException("connection reset");
+                    }
+                    insert(entity);
+                }
+            }
+            return super.insert(entities);
+        }
+
+        @Override
+        public <S extends Movie> S insert(S entity) {
+            if (failingInserts.getAndDecrement() > 0 || entity.getName().equals(failingName)) {
+                throw new DataAccessResourceFailureException("connection refused");
+            }
+            S inserted = super.insert(entity);
+            insertedIds.add(entity.getId());
+            return inserted;
+        }
+
+        private static boolean contains(Iterable<? extends Movie> entities, String name) {
+            for (Movie movie : entities) {
+                if (movie.getName().equals(name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+}
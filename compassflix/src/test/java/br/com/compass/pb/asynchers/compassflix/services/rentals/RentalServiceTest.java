@@ -0,0 +1,205 @@
+package br.com.compass.pb.asynchers.compassflix.services.rentals;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.MovieInventory;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.RentalConflictException;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieInventoryRepository;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.support.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class RentalServiceTest {
+
+    private static final String MOVIE_ID = "64b1a1f0e4b0a1a2b3c4d5e6";
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-07-14T19:00:00Z"));
+
+    @Test
+    void shouldNeverRentMoreCopiesThanInStockUnderThousandsOfConcurrentReservations() throws Exception {
+        InventoryStandIn inventory = new InventoryStandIn(Duration.ofMillis(1));
+        RentalService service = service(inventory, 256);
+        service.addCopies(MOVIE_ID, 1_000);
+
+        Result result = reserveConcurrently(service, 5_000, 200);
+
+        assertEquals(1_000, result.reserved());
+        assertEquals(4_000, result.soldOut());
+        assertEquals(0, inventory.available.get());
+        assertEquals(1_000, inventory.rented.get());
+        assertTrue(inventory.lowestAvailable.get() >= 0);
+        // reservations were confirmed in batches, not one update each
+        assertTrue(inventory.reserveCalls.get() < 1_000, "reserve calls: " + inventory.reserveCalls.get());
+    }
+
+    @Test
+    void shouldGiveCopiesBackAndRejectReturnsOfCopiesNobodyRented() {
+        InventoryStandIn inventory = new InventoryStandIn(Duration.ZERO);
+        RentalService service = service(inventory, 256);
+        service.addCopies(MOVIE_ID, 1);
+
+        assertEquals(RentalService.RESERVED, service.reserve(MOVIE_ID).status());
+        assertThrows(RentalConflictException.class, () -> service.reserve(MOVIE_ID));
+        assertEquals(RentalService.RETURNED, service.giveBack(MOVIE_ID).status());
+        assertThrows(RentalConflictException.class, () -> service.giveBack(MOVIE_ID));
+
+        assertEquals(1, service.inventory(MOVIE_ID).availableCopies());
+        assertEquals(0, service.inventory(MOVIE_ID).rentedCopies());
+        // the return cleared the sold out flag right away
+        assertEquals(RentalService.RESERVED, service.reserve(MOVIE_ID).status());
+    }
+
+    @Test
+    void shouldAnswerASoldOutTitleFromMemoryForAWhile() {
+        InventoryStandIn inventory = new InventoryStandIn(Duration.ZERO);
+        RentalService service = service(inventory, 256);
+
+        assertThrows(RentalConflictException.class, () -> service.reserve(MOVIE_ID));
+        int calls = inventory.reserveCalls.get();
+        for (int i = 0; i < 100; i++) {
+            assertThrows(RentalConflictException.class, () -> service.reserve(MOVIE_ID));
+        }
+        assertEquals(calls, inventory.reserveCalls.get());
+
+        inventory.available.set(1);
+        clock.advance(Duration.ofSeconds(1));
+        assertEquals(RentalService.RESERVED, service.reserve(MOVIE_ID).status());
+
+        clock.advance(Duration.ofSeconds(1));
+        service.dropIdleLanes();
+        assertEquals(0, service.laneCount());
+    }
+
+    @Test
+    void shouldNotFailTheDeleteWhenItsCopiesCannotBeRemoved() {
+        InventoryStandIn inventory = new InventoryStandIn(Duration.ZERO);
+        RentalService service = service(inventory, 256);
+        assertThrows(RentalConflictException.class, () -> service.reserve(MOVIE_ID));
+        doThrow(new DataAccessResourceFailureException("connection reset")).when(inventory.repository)
+                .deleteById(MOVIE_ID);
+        Movie deleted = new Movie();
+        deleted.setId(MOVIE_ID);
+
+        assertDoesNotThrow(() -> service.onMovieChanged(MovieChangedEvent.deleted(deleted)));
+
+        verify(inventory.repository).deleteById(MOVIE_ID);
+        assertEquals(0, service.laneCount());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkReservationThroughput() throws Exception {
+        for (int maxBatch : new int[]{1, 16, 256}) {
+            InventoryStandIn inventory = new InventoryStandIn(Duration.ofMillis(1));
+            RentalService service = service(inventory, maxBatch);
+            service.addCopies(MOVIE_ID, 20_000);
+
+            long start = System.nanoTime();
+            Result result = reserveConcurrently(service, 20_000, 1_000);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            assertEquals(20_000, result.reserved());
+            System.out.printf("rentals maxBatch=%d reservations/s=%,.0f mongo updates=%d%n", maxBatch,
+                    20_000 / seconds, inventory.reserveCalls.get());
+        }
+    }
+
+    private RentalService service(InventoryStandIn inventory, int maxBatch) {
+        return new RentalService(inventory.repository, mock(MovieService.class),
+                new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10), Duration.ofSeconds(2)), maxBatch,
+                Duration.ofSeconds(1), clock);
+    }
+
+    private static Result reserveConcurrently(RentalService service, int reservations, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger soldOut = new AtomicInteger();
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int i = 0; i < reservations; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                try {
+                    service.reserve(MOVIE_ID);
+                    return true;
+                } catch (RentalConflictException e) {
+                    soldOut.incrementAndGet();
+                    return false;
+                }
+            }));
+        }
+        start.countDown();
+        int reserved = 0;
+        for (Future<Boolean> future : futures) {
+            reserved += future.get(1, TimeUnit.MINUTES) ? 1 : 0;
+        }
+        executor.shutdown();
+        return new Result(reserved, soldOut.get());
+    }
+
+    private record Result(int reserved, int soldOut) {
+    }
+
+    // the conditional updates of MovieInventoryRepositoryCustomImpl, with a round trip delay
+    private static class InventoryStandIn {
+
+        private final AtomicLong available = new AtomicLong();
+        private final AtomicLong rented = new AtomicLong();
+        private final AtomicLong lowestAvailable = new AtomicLong();
+        private final AtomicInteger reserveCalls = new AtomicInteger();
+        private final MovieInventoryRepository repository = mock(MovieInventoryRepository.class);
+
+        InventoryStandIn(Duration latency) {
+            when(repository.reserve(anyString(), anyLong())).thenAnswer(invocation -> {
+                reserveCalls.incrementAndGet();
+                pause(latency);
+                return move(available, rented, invocation.getArgument(1));
+            });
+            when(repository.release(anyString(), anyLong())).thenAnswer(invocation ->
+                    move(rented, available, invocation.getArgument(1)));
+            doAnswer(invocation -> available.addAndGet(invocation.getArgument(1)))
+                    .when(repository).addCopies(anyString(), anyLong());
+            when(repository.findById(anyString())).thenAnswer(invocation ->
+                    Optional.of(new MovieInventory(invocation.getArgument(0), available.get(), rented.get())));
+        }
+
+        private synchronized boolean move(AtomicLong from, AtomicLong to, long copies) {
+            if (from.get() < copies) {
+                return false;
+            }
+            from.addAndGet(-copies);
+            to.addAndGet(copies);
+            lowestAvailable.accumulateAndGet(available.get(), Math::min);
+            return true;
+        }
+
+        private static void pause(Duration latency) {
+            if (!latency.isZero()) {
+                LockSupport.parkNanos(latency.toNanos());
+            }
+        }
+
+    }
+
+}
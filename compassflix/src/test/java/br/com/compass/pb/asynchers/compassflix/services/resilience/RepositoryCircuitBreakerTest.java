@@ -0,0 +1,206 @@
+package br.com.compass.pb.asynchers.compassflix.services.resilience;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.exceptions.DatabaseUnavailableException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.services.FuzzySearchService;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker.State;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.support.FaultyMovieRepository;
+import br.com.compass.pb.asynchers.compassflix.support.MutableClock;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RepositoryCircuitBreakerTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-07-14T19:00:00Z"));
+
+    private final FaultyMovieRepository repository = new FaultyMovieRepository();
+
+    private final RepositoryCircuitBreaker breaker =
+            new RepositoryCircuitBreaker(true, 3, Duration.ofSeconds(10), Duration.ofSeconds(2), clock);
+
+    @BeforeEach
+    void setUp() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldOpenAfterConsecutiveFailuresAndRejectWithoutCallingTheRepository() {
+        repository.goDown();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(State.CLOSED, breaker.state());
+            assertThrows(DatabaseUnavailableException.class, () -> breaker.call(repository::findAll));
+        }
+        assertEquals(State.OPEN, breaker.state());
+
+        DatabaseUnavailableException rejected = assertThrows(DatabaseUnavailableException.class,
+                () -> breaker.call(repository::findAll));
+        assertEquals(3, repository.calls());
+        assertEquals(Duration.ofSeconds(10), rejected.getRetryAfter());
+    }
+
+    @Test
+    void shouldResetTheFailureCountOnSuccess() {
+        repository.goDown();
+        assertThrows(DatabaseUnavailableException.class, () -> breaker.call(repository::findAll));
+        assertThrows(DatabaseUnavailableException.class, () -> breaker.call(repository::findAll));
+        repository.recover();
+        breaker.call(repository::findAll);
+        repository.goDown();
+        assertThrows(DatabaseUnavailableException.class, () -> breaker.call(repository::findAll));
+
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void shouldCloseAfterASuccessfulTrialCall() {
+        open();
+        repository.recover();
+        clock.advance(Duration.ofSeconds(10));
+        assertEquals(State.HALF_OPEN, breaker.state());
+
+        // only the trial call goes through while half open
+        repository.beforeEachCall(() -> assertThrows(DatabaseUnavailableException.class,
+                () -> breaker.call(repository::findAll)));
+        breaker.call(repository::findAll);
+
+        assertEquals(State.CLOSED, breaker.state());
+        assertEquals(clock.instant(), breaker.lastSuccess().orElseThrow());
+    }
+
+    @Test
+    void shouldOpenAgainWhenTheTrialCallFails() {
+        open();
+        clock.advance(Duration.ofSeconds(10));
+
+        assertThrows(DatabaseUnavailableException.class, () -> breaker.call(repository::findAll));
+
+        assertEquals(State.OPEN, breaker.state());
+        clock.advance(Duration.ofSeconds(4));
+        DatabaseUnavailableException rejected = assertThrows(DatabaseUnavailableException.class,
+                () -> breaker.call(repository::findAll));
+        assertEquals(Duration.ofSeconds(6), rejected.getRetryAfter());
+    }
+
+    @Test
+    void shouldNotCountErrorsTheDatabaseAnsweredWith() {
+        Movie movie = repository.insert(movie("Oppenheimer"));
+        for (int i = 0; i < 5; i++) {
+            assertThrows(DuplicateKeyException.class, () -> breaker.call(() -> repository.insert(new Movie(movie))));
+        }
+
+        assertEquals(State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void shouldCountSlowCallsAsFailures() {
+        repository.beforeEachCall(() -> clock.advance(Duration.ofSeconds(3)));
+        for (int i = 0; i < 3; i++) {
+            assertTrue(breaker.call(repository::findAll).isEmpty());
+        }
+
+        assertEquals(State.OPEN, breaker.state());
+    }
+
+    @Test
+    void shouldServeLastKnownDataMarkedStaleWhileTheDatabaseIsDown() {
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, false);
+        LastKnownCatalog lastKnown = new LastKnownCatalog(snapshotService, breaker, 100);
+        MovieService service = new MovieService(repository, event -> {
+        }, snapshotService, breaker, lastKnown, ReadPreferenceRouter.primaryOnly(repository),
+                OperationLog.everything(), MovieExistenceFilter.disabled());
+        Movie barbie = repository.insert(movie("Barbie"));
+        repository.insert(movie("Oppenheimer"));
+        assertEquals(2, service.findAllMovies().size());
+        assertFalse(StaleResponses.isMarked());
+
+        clock.advance(Duration.ofMinutes(1));
+        repository.goDown();
+
+        assertEquals(2, service.findAllMovies().size());
+        assertEquals("Barbie", service.findMovieById(barbie.getId()).getName());
+        assertEquals(List.of("Oppenheimer"), service.findByName("heim").stream().map(Movie::getName).toList());
+        assertTrue(StaleResponses.isMarked());
+        assertEquals(Duration.ofMinutes(1), StaleResponses.age(clock.instant()).orElseThrow());
+        assertEquals(State.OPEN, breaker.state());
+    }
+
+    @Test
+    void shouldServeFuzzySearchFromTheCatalogSnapshot() {
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, true);
+        LastKnownCatalog lastKnown = new LastKnownCatalog(snapshotService, breaker, 100);
+        FuzzySearchService fuzzySearchService = new FuzzySearchService(repository, snapshotService, lastKnown,
+                ReadPreferenceRouter.primaryOnly(repository));
+        Movie movie = repository.insert(movie("Oppenheimer"));
+        snapshotService.load();
+        fuzzySearchService.rebuild();
+        repository.goDown();
+
+        assertEquals(movie.getId(), fuzzySearchService.search("Openheimer", 2, 10).get(0).movie().id());
+        assertFalse(StaleResponses.isMarked());
+
+        MovieService service = new MovieService(repository, event -> {
+        }, snapshotService, breaker, lastKnown, ReadPreferenceRouter.primaryOnly(repository),
+                OperationLog.everything(), MovieExistenceFilter.disabled());
+        assertEquals("Oppenheimer", service.findMovieById(movie.getId()).getName());
+        assertTrue(StaleResponses.isMarked());
+    }
+
+    @Test
+    void shouldFailReadsWithoutLastKnownDataAndWritesRightAway() {
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(repository, false);
+        MovieService service = new MovieService(repository, event -> {
+        }, snapshotService, breaker, new LastKnownCatalog(snapshotService, breaker, 100),
+                ReadPreferenceRouter.primaryOnly(repository), OperationLog.everything(),
+                MovieExistenceFilter.disabled());
+        open();
+        int calls = repository.calls();
+
+        assertThrows(DatabaseUnavailableException.class, service::findAllMovies);
+        assertThrows(DatabaseUnavailableException.class, () -> service.findMovieById("64b1a1f0e4b0a1a2b3c4d5e6"));
+        assertThrows(DatabaseUnavailableException.class, () -> service.postMovie(new MovieRequestDto("Barbie",
+                "description", "comedy", 114L, LocalDate.of(2023, 7, 21), "pg-13")));
+        assertThrows(DatabaseUnavailableException.class, () -> service.delete("64b1a1f0e4b0a1a2b3c4d5e6"));
+
+        assertEquals(calls, repository.calls());
+        assertFalse(StaleResponses.isMarked());
+    }
+
+    private void open() {
+        repository.goDown();
+        for (int i = 0; i < 3; i++) {
+            assertThrows(DatabaseUnavailableException.class, () -> breaker.call(repository::findAll));
+        }
+        assertEquals(State.OPEN, breaker.state());
+    }
+
+    private Movie movie(String name) {
+        return new Movie(null, name, "description", Genre.DRAMA, 120L, LocalDate.of(2023, 7, 21), PgRating.of(12),
+                clock.instant());
+    }
+
+}
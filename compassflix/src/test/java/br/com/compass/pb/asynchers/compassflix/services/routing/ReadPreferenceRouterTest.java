@@ -0,0 +1,154 @@
+package br.com.compass.pb.asynchers.compassflix.services.routing;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieRequestDto;
+import br.com.compass.pb.asynchers.compassflix.dto.response.MovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.ListIsEmptyException;
+import br.com.compass.pb.asynchers.compassflix.observability.OperationLog;
+import br.com.compass.pb.asynchers.compassflix.services.MovieService;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.services.existence.MovieExistenceFilter;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.LastKnownCatalog;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.support.MutableClock;
+import br.com.compass.pb.asynchers.compassflix.support.ReplicaSetStandIn;
+import com.mongodb.ReadPreference;
+import com.mongodb.TaggableReadPreference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static br.com.compass.pb.asynchers.compassflix.support.ReplicaSetStandIn.PRIMARY;
+import static br.com.compass.pb.asynchers.compassflix.support.ReplicaSetStandIn.SECONDARY;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReadPreferenceRouterTest {
+
+    private static final Duration MAX_STALENESS = Duration.ofSeconds(90);
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-07-14T19:00:00Z"));
+
+    private final ReplicaSetStandIn replicaSet = new ReplicaSetStandIn(clock);
+
+    private final ReadPreferenceRouter router = new ReadPreferenceRouter(replicaSet, Map.of(
+            ReadOperation.FIND_BY_ID, "secondaryPreferred",
+            ReadOperation.FIND_ALL, "secondaryPreferred",
+            ReadOperation.SEARCH, "nearest",
+            ReadOperation.FACETS, "secondary"), MAX_STALENESS, 100, clock);
+
+    private MovieService service;
+
+    @BeforeEach
+    void setUp() {
+        CatalogSnapshotService snapshotService = new CatalogSnapshotService(replicaSet.primary(), false);
+        RepositoryCircuitBreaker breaker = new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10),
+                Duration.ofSeconds(2));
+        service = new MovieService(replicaSet.primary(), event -> router.onMovieChanged((MovieChangedEvent) event),
+                snapshotService, breaker, new LastKnownCatalog(snapshotService, breaker, 100), router,
+                OperationLog.everything(), MovieExistenceFilter.disabled());
+        inSession(null);
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void shouldSendEachReadToItsConfiguredPreferenceWithMaxStaleness() {
+        ReadPreference search = router.preferenceFor(ReadOperation.SEARCH, null);
+
+        assertEquals("nearest", search.getName());
+        assertEquals(90_000L, ((TaggableReadPreference) search).getMaxStaleness(TimeUnit.MILLISECONDS));
+        assertEquals(ReadPreference.primary(), ReadPreferenceRouter.parse("primary", MAX_STALENESS));
+        assertThrows(IllegalArgumentException.class, () -> ReadPreferenceRouter.parse("fastest", MAX_STALENESS));
+    }
+
+    @Test
+    void shouldServeListingsAndSearchesFromTheSecondary() {
+        MovieResponseDto movie = service.postMovie(request("Barbie"));
+        replicaSet.replicate();
+        clock.advance(MAX_STALENESS);
+
+        assertEquals(1, service.findAllMovies().size());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+        assertEquals(1, service.findByName("barb").size());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+        assertEquals(1, service.facets().total());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+        assertEquals(movie.name(), service.findMovieById(movie.id()).getName());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+    }
+
+    @Test
+    void shouldReadAMovieWrittenOnThisNodeFromThePrimary() {
+        MovieResponseDto movie = service.postMovie(request("Barbie"));
+
+        assertEquals(movie.name(), service.findMovieById(movie.id()).getName());
+        assertEquals(PRIMARY, replicaSet.lastServedBy());
+        // other reads may still be behind, the secondary has not seen the write
+        assertThrows(ListIsEmptyException.class, () -> service.findAllMovies());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+
+        clock.advance(MAX_STALENESS);
+        replicaSet.replicate();
+        service.findMovieById(movie.id());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+    }
+
+    @Test
+    void shouldLetASessionReadItsOwnWrites() {
+        inSession("alice");
+        service.postMovie(request("Barbie"));
+
+        assertEquals(1, service.findAllMovies().size());
+        assertEquals(PRIMARY, replicaSet.lastServedBy());
+        assertEquals(1, service.findByName("barb").size());
+        assertEquals(PRIMARY, replicaSet.lastServedBy());
+
+        inSession("bob");
+        assertThrows(ListIsEmptyException.class, () -> service.findAllMovies());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+
+        // once max staleness has passed no eligible secondary can miss the write
+        clock.advance(MAX_STALENESS.plusSeconds(1));
+        replicaSet.replicate();
+        inSession("alice");
+        assertEquals(1, service.findAllMovies().size());
+        assertEquals(SECONDARY, replicaSet.lastServedBy());
+    }
+
+    @Test
+    void shouldSkipASecondaryLaggingMoreThanMaxStaleness() {
+        Movie movie = replicaSet.primary().insert(new Movie(new MovieRequestDto("Barbie", "description", "comedy",
+                114L, LocalDate.of(2023, 7, 21), "pg-13")));
+        clock.advance(MAX_STALENESS.plusSeconds(1));
+
+        assertEquals(movie.getId(), service.findAllMovies().get(0).getId());
+        assertEquals(PRIMARY, replicaSet.lastServedBy());
+        assertThrows(IllegalStateException.class, () -> service.facets());
+    }
+
+    private static void inSession(String session) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        if (session != null) {
+            request.addHeader(ReadPreferenceRouter.SESSION_HEADER, session);
+        }
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    }
+
+    private static MovieRequestDto request(String name) {
+        return new MovieRequestDto(name, "description", "comedy", 114L, LocalDate.of(2023, 7, 21), "pg-13");
+    }
+
+}
@@ -0,0 +1,129 @@
+package br.com.compass.pb.asynchers.compassflix.services.search;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FuzzyMovieIndexTest {
+
+    private FuzzyMovieIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new FuzzyMovieIndex();
+        index.put("1", "the lord of the rings: the fellowship of the ring");
+        index.put("2", "the lord of the rings: the two towers");
+        index.put("3", "the lord of the rings: return of the king");
+        index.put("4", "the hobbit: there and back again");
+        index.put("5", "peter pan");
+    }
+
+    @Test
+    void shouldFindNamesWithTypos() {
+        List<FuzzyMatch> response = index.search("lord of the rigns", 2, 10);
+
+        assertEquals(3, response.size());
+        assertTrue(response.stream().allMatch(match -> match.distance() == 2));
+        assertEquals(List.of("3", "1", "2"), response.stream().map(FuzzyMatch::id).toList());
+    }
+
+    @Test
+    void shouldRankCloserMatchesFirst() {
+        List<FuzzyMatch> response = index.search("two towrs", 2, 10);
+
+        assertEquals(1, response.size());
+        assertEquals("2", response.get(0).id());
+        assertEquals(1, response.get(0).distance());
+        assertEquals(0.5, response.get(0).score());
+    }
+
+    @Test
+    void shouldReturnEmptyListWhenDistanceIsTooLarge() {
+        assertTrue(index.search("petre pna", 0, 10).isEmpty());
+        assertTrue(index.search("avengers", 2, 10).isEmpty());
+    }
+
+    @Test
+    void shouldStopMatchingRemovedAndRenamedMovies() {
+        index.remove("5");
+        index.put("4", "the hobbit: an unexpected journey");
+
+        assertTrue(index.search("peter pan", 2, 10).isEmpty());
+        assertTrue(index.search("back again", 2, 10).isEmpty());
+        assertEquals("4", index.search("unexpected jurney", 2, 10).get(0).id());
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    void shouldTokenizeOnNonLettersAndNumbers() {
+        assertArrayEquals(new String[]{"the", "lord", "of", "rings", "two", "towers"},
+                FuzzyMovieIndex.tokenize("The Lord of the Rings: The Two Towers"));
+        assertArrayEquals(new String[]{"amélie", "2001"}, FuzzyMovieIndex.tokenize("  Amélie -- 2001 "));
+        assertArrayEquals(new String[]{"wall", "e"}, FuzzyMovieIndex.tokenize("WALL·E"));
+        assertArrayEquals(new String[]{"ⅻ", "monkeys²"}, FuzzyMovieIndex.tokenize("Ⅻ monkeys²"));
+        assertArrayEquals(new String[]{"x"}, FuzzyMovieIndex.tokenize("x"));
+        assertArrayEquals(new String[]{}, FuzzyMovieIndex.tokenize(""));
+        assertArrayEquals(new String[]{}, FuzzyMovieIndex.tokenize("!!!"));
+        assertArrayEquals(new String[]{"spider", "man"}, FuzzyMovieIndex.tokenize("spider-man spider man"));
+    }
+
+    @Test
+    void shouldLimitResults() {
+        assertEquals(2, index.search("the lord", 2, 2).size());
+        assertThrows(IllegalArgumentException.class, () -> index.search("the lord", 2, 0));
+        assertThrows(IllegalArgumentException.class, () -> index.search("the lord", 2, -1));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkQueryLatency() {
+        for (int size : new int[]{100_000, 1_000_000}) {
+            FuzzyMovieIndex large = new FuzzyMovieIndex();
+            List<String> names = syntheticNames(size);
+            long start = System.nanoTime();
+            for (int i = 0; i < names.size(); i++) {
+                large.put(String.valueOf(i), names.get(i));
+            }
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+
+            Random random = new Random(7);
+            int queries = 2_000;
+            long[] latencies = new long[queries];
+            for (int i = 0; i < queries; i++) {
+                String query = misspell(names.get(random.nextInt(names.size())), random);
+                long queryStart = System.nanoTime();
+                large.search(query, 2, 20);
+                latencies[i] = System.nanoTime() - queryStart;
+            }
+            java.util.Arrays.sort(latencies);
+            System.out.printf("fuzzy index size=%d build=%dms p50=%.3fms p99=%.3fms%n", size, buildMillis,
+                    latencies[queries / 2] / 1e6, latencies[queries * 99 / 100] / 1e6);
+        }
+    }
+
+    private static List<String> syntheticNames(int size) {
+        String[] words = {"the", "lord", "rings", "return", "king", "night", "dark", "star", "wars", "empire",
+                "strikes", "back", "hope", "shadow", "castle", "dragon", "ocean", "river", "city", "ghost",
+                "secret", "garden", "winter", "summer", "last", "first", "hunter", "queen", "storm", "island"};
+        Random random = new Random(42);
+        return java.util.stream.IntStream.range(0, size)
+                .mapToObj(i -> words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                        + " " + words[random.nextInt(words.length)] + " " + Integer.toString(i, 36))
+                .toList();
+    }
+
+    private static String misspell(String name, Random random) {
+        char[] chars = name.toCharArray();
+        int position = random.nextInt(chars.length - 1);
+        char tmp = chars[position];
+        chars[position] = chars[position + 1];
+        chars[position + 1] = tmp;
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,102 @@
+package br.com.compass.pb.asynchers.compassflix.services.similarity;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.SimilarMovieResponseDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.services.catalog.CatalogSnapshotService;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarMoviesServiceTest {
+
+    private CatalogSnapshotService snapshotService;
+
+    private SimilarMoviesService service;
+
+    @BeforeEach
+    void setUp() {
+        InMemoryMovieRepository repository = new InMemoryMovieRepository();
+        repository.insert(List.of(
+                movie("1", "A hobbit carries a cursed ring across middle earth", Genre.FANTASY, 2001),
+                movie("2", "A shark terrorizes a beach town", Genre.THRILLER, 1975),
+                movie("3", "Detectives hunt a serial killer in a rainy city", Genre.THRILLER, 1995)));
+        snapshotService = new CatalogSnapshotService(repository, true);
+        snapshotService.load();
+        service = service(new AtomicInteger(), () -> { });
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void shouldApplySingleWritesOnTheUpdaterThread() {
+        service.rebuild();
+        Movie created = movie("4", "The hobbit and the fellowship fight for the ring in middle earth",
+                Genre.FANTASY, 2002);
+        snapshotService.onMovieChanged(MovieChangedEvent.created(created));
+
+        service.onMovieChanged(MovieChangedEvent.created(created));
+        service.awaitUpdates();
+
+        List<SimilarMovieResponseDto> similar = service.similar("4", 1);
+        assertEquals("1", similar.get(0).movie().id());
+        assertEquals("4", service.similar("1", 1).get(0).movie().id());
+    }
+
+    @Test
+    void shouldBuildAgainWhenABulkChangeLandsDuringABuild() {
+        List<MovieChangedEvent> bulk = IntStream.range(0, 1001)
+                .mapToObj(i -> MovieChangedEvent.created(movie("bulk-" + i, "A sequel number " + i, Genre.DRAMA, 2020)))
+                .toList();
+        AtomicInteger builds = new AtomicInteger();
+        SimilarMoviesService racing = service(builds, () -> {
+            // past the threshold, so it asks for a rebuild instead of applying the changes one by one
+            snapshotService.onMoviesChanged(new MoviesBulkChangedEvent(bulk));
+            service.onMoviesChanged(new MoviesBulkChangedEvent(bulk));
+        });
+        service.shutdown();
+        service = racing;
+
+        service.rebuild();
+
+        assertEquals(2, builds.get());
+        // unknown ids throw MovieNotFoundException
+        assertDoesNotThrow(() -> service.similar("bulk-0", 1));
+        assertDoesNotThrow(() -> service.similar("bulk-1000", 1));
+    }
+
+    private SimilarMoviesService service(AtomicInteger builds, Runnable duringFirstBuild) {
+        return new SimilarMoviesService(snapshotService, null, null, true, 3, 1, 0.6, 0.25, 0.15, 10, 1.0, 100,
+                100) {
+            @Override
+            SimilarityIndex build(Collection<Movie> movies) {
+                if (builds.incrementAndGet() == 1) {
+                    duringFirstBuild.run();
+                }
+                return super.build(movies);
+            }
+        };
+    }
+
+    private static Movie movie(String id, String description, Genre genre, int year) {
+        return new Movie(id, "movie " + id, description, genre, 120L, LocalDate.of(year, 1, 1), PgRating.of(12),
+                Instant.parse("2023-07-14T19:13:25.465Z"));
+    }
+
+}
@@ -0,0 +1,159 @@
+package br.com.compass.pb.asynchers.compassflix.services.similarity;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityIndexTest {
+
+    private static final SimilarityIndex.Settings SETTINGS =
+            new SimilarityIndex.Settings(3, 0.6, 0.25, 0.15, 10, 0.5, 100, 100);
+
+    private final List<Movie> catalog = List.of(
+            movie("1", "A hobbit carries a cursed ring across middle earth", Genre.FANTASY, 2001),
+            movie("2", "The hobbit and the fellowship fight for the ring in middle earth", Genre.FANTASY, 2002),
+            movie("3", "A young wizard goes to a school of magic", Genre.FANTASY, 2001),
+            movie("4", "A shark terrorizes a beach town", Genre.THRILLER, 1975),
+            movie("5", "Detectives hunt a serial killer in a rainy city", Genre.THRILLER, 1995),
+            movie("6", "A ring bearer and a wizard in middle earth", Genre.DRAMA, 1960));
+
+    @Test
+    void shouldRankSharedDescriptionAboveGenreAndEra() {
+        SimilarityIndex index = SimilarityIndex.build(catalog, SETTINGS, ForkJoinPool.commonPool());
+
+        List<SimilarityIndex.Neighbor> neighbors = index.neighbors("1", 10);
+
+        assertEquals(List.of("2", "3", "6"), neighbors.stream().map(SimilarityIndex.Neighbor::id).toList());
+        assertTrue(neighbors.get(0).score() > neighbors.get(1).score());
+        // same genre twenty years apart, nothing in common but the genre
+        assertEquals(List.of("5"), index.neighbors("4", 10).stream().map(SimilarityIndex.Neighbor::id).toList());
+        assertEquals(0.25, index.neighbors("4", 10).get(0).score(), 1e-6);
+        assertEquals(1, index.neighbors("1", 1).size());
+        assertTrue(index.neighbors("missing", 10).isEmpty());
+    }
+
+    @Test
+    void shouldMatchComparingEveryPairWhenNothingIsPruned() {
+        List<Movie> movies = syntheticCatalog(2_000, new Random(3));
+        SimilarityIndex.Settings exhaustive = new SimilarityIndex.Settings(10, 0.6, 0.25, 0.15, 10, 1.0,
+                Integer.MAX_VALUE, 2_000);
+        SimilarityIndex index = SimilarityIndex.build(movies, exhaustive, new ForkJoinPool(4));
+
+        for (int slot = 0; slot < movies.size(); slot += 37) {
+            int from = slot;
+            List<String> expected = IntStream.range(0, movies.size())
+                    .filter(other -> other != from && index.score(from, other) > 0)
+                    .boxed()
+                    .sorted(Comparator.<Integer>comparingDouble(other -> -index.score(from, other))
+                            .thenComparing(Comparator.naturalOrder()))
+                    .limit(10)
+                    .map(other -> movies.get(other).getId())
+                    .toList();
+            assertEquals(expected, index.neighbors(movies.get(slot).getId(), 10).stream()
+                    .map(SimilarityIndex.Neighbor::id).toList());
+        }
+    }
+
+    @Test
+    void shouldKeepNeighborsCurrentAsMoviesArePostedUpdatedAndDeleted() {
+        SimilarityIndex index = SimilarityIndex.build(catalog, SETTINGS, ForkJoinPool.commonPool());
+
+        index.put(movie("7", "Sharks attack the beach town again", Genre.THRILLER, 1978));
+        assertEquals("7", index.neighbors("4", 10).get(0).id());
+        assertEquals("4", index.neighbors("7", 10).get(0).id());
+
+        index.put(movie("7", "A serial killer leaves riddles in a rainy city", Genre.THRILLER, 1996));
+        assertEquals("5", index.neighbors("7", 10).get(0).id());
+        assertEquals("7", index.neighbors("5", 10).get(0).id());
+        // only the genre is left in common with the shark movie
+        assertEquals(0.25, index.neighbors("4", 10).get(0).score(), 1e-6);
+
+        index.remove("2");
+        assertFalse(index.contains("2"));
+        assertEquals(6, index.size());
+        assertTrue(index.neighbors("1", 10).stream().noneMatch(neighbor -> neighbor.id().equals("2")));
+        assertTrue(index.neighbors("2", 10).isEmpty());
+    }
+
+    @Test
+    void shouldTokenizeDescriptionsWithoutStopWordsOrShortTokens() {
+        assertEquals(List.of("hobbit", "carries", "ring", "middle", "earth"),
+                SimilarityIndex.tokenize("A hobbit carries THE ring to Middle-Earth!"));
+        assertTrue(SimilarityIndex.tokenize(null).isEmpty());
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkBuildAndLookupAt100kTitles() {
+        List<Movie> movies = syntheticCatalog(100_000, new Random(42));
+        SimilarityIndex.Settings settings = new SimilarityIndex.Settings(20, 0.6, 0.25, 0.15, 10, 0.05, 1000, 200);
+        for (int parallelism : new int[]{1, Runtime.getRuntime().availableProcessors()}) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            long start = System.nanoTime();
+            SimilarityIndex index = SimilarityIndex.build(movies, settings, pool);
+            long buildMillis = (System.nanoTime() - start) / 1_000_000;
+            pool.shutdown();
+
+            Random random = new Random(7);
+            int lookups = 100_000;
+            long[] latencies = new long[lookups];
+            for (int i = 0; i < lookups; i++) {
+                String id = movies.get(random.nextInt(movies.size())).getId();
+                long lookupStart = System.nanoTime();
+                index.neighbors(id, 10);
+                latencies[i] = System.nanoTime() - lookupStart;
+            }
+            Arrays.sort(latencies);
+
+            int updates = 200;
+            long updateStart = System.nanoTime();
+            for (int i = 0; i < updates; i++) {
+                Movie movie = movies.get(random.nextInt(movies.size()));
+                index.put(movie("new-" + i, movie.getDescription(), movie.getGenre(),
+                        movie.getReleaseDate().getYear()));
+            }
+            double updateMillis = (System.nanoTime() - updateStart) / 1e6 / updates;
+            System.out.printf("similarity index size=%d parallelism=%d build=%dms lookup p50=%.4fms p99=%.4fms "
+                            + "put=%.2fms%n", movies.size(), parallelism, buildMillis, latencies[lookups / 2] / 1e6,
+                    latencies[lookups * 99 / 100] / 1e6, updateMillis);
+        }
+    }
+
+    // zipf-like vocabulary, so a few terms are everywhere and most are rare, like real descriptions
+    private static List<Movie> syntheticCatalog(int size, Random random) {
+        int vocabulary = 20_000;
+        Genre[] genres = Genre.values();
+        List<Movie> movies = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            StringBuilder description = new StringBuilder();
+            int words = 12 + random.nextInt(20);
+            for (int w = 0; w < words; w++) {
+                int term = (int) Math.floor(Math.pow(vocabulary, random.nextDouble()));
+                description.append("term").append(Integer.toString(term, 36)).append(' ');
+            }
+            movies.add(movie("m" + i, description.toString(), genres[random.nextInt(genres.length)],
+                    1920 + random.nextInt(104)));
+        }
+        return movies;
+    }
+
+    private static Movie movie(String id, String description, Genre genre, int year) {
+        return new Movie(id, "movie " + id, description, genre, 100L, LocalDate.of(year, 1, 1), PgRating.of(12),
+                Instant.parse("2023-07-14T19:00:00Z"));
+    }
+
+}
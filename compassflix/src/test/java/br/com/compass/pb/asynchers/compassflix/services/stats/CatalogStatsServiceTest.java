@@ -0,0 +1,187 @@
+package br.com.compass.pb.asynchers.compassflix.services.stats;
+
+import br.com.compass.pb.asynchers.compassflix.dto.response.CatalogStatsDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.exceptions.StatisticsNotReadyException;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRouter;
+import br.com.compass.pb.asynchers.compassflix.support.InMemoryMovieRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CatalogStatsServiceTest {
+
+    private static final Genre[] GENRES = Genre.values();
+
+    private static final Instant NOW = Instant.parse("2023-07-20T12:00:00Z");
+
+    private final InMemoryMovieRepository repository = new InMemoryMovieRepository();
+
+    @Test
+    void shouldKeepPercentilesWithinOneBucketOfTheExactValue() {
+        SplittableRandom random = new SplittableRandom(7);
+        long[] values = random.longs(100_000, 1, 100_000).toArray();
+        DurationHistogram histogram = new DurationHistogram();
+        Arrays.stream(values).forEach(histogram::add);
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{1, 50, 90, 99, 99.9}) {
+            long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long estimate = histogram.valueAtPercentile(percentile);
+            assertTrue(Math.abs(estimate - exact) <= exact / 64 + 1, percentile + ": " + estimate + " vs " + exact);
+        }
+        assertEquals(values.length, histogram.count());
+        assertEquals(Arrays.stream(values).average().orElseThrow(), histogram.mean(), 1e-6);
+    }
+
+    @Test
+    void shouldCountDurationsBelow128Exactly() {
+        DurationHistogram histogram = new DurationHistogram();
+        IntStream.rangeClosed(1, 100).forEach(histogram::add);
+
+        assertEquals(50, histogram.valueAtPercentile(50));
+        assertEquals(90, histogram.valueAtPercentile(90));
+        assertEquals(1, histogram.min());
+        assertEquals(100, histogram.max());
+
+        histogram.remove(100);
+        assertEquals(99, histogram.max());
+        assertEquals(99, histogram.count());
+    }
+
+    @Test
+    void shouldMergeIntoTheStatisticsOfTheWholeCatalog() {
+        List<Movie> movies = generate(10_000);
+        CatalogStatistics whole = new CatalogStatistics();
+        movies.forEach(whole::add);
+        CatalogStatistics first = new CatalogStatistics();
+        CatalogStatistics second = new CatalogStatistics();
+        movies.subList(0, 3_000).forEach(first::add);
+        movies.subList(3_000, movies.size()).forEach(second::add);
+
+        LocalDate today = LocalDate.ofInstant(NOW, ZoneOffset.UTC);
+        assertEquals(whole.summary(1, today, 30), first.merge(second).summary(1, today, 30));
+    }
+
+    @Test
+    void shouldRebuildFromCursorAndApplyChangesIncrementally() {
+        repository.insert(generate(5_000));
+        CatalogStatsService service = service();
+
+        assertThrows(StatisticsNotReadyException.class, service::stats);
+        service.rebuild();
+        assertEquals(expected(), withoutVersion(service.stats()));
+
+        Movie created = repository.insert(movie(9_000, Genre.WESTERN, 400L, 1931));
+        service.onMovieChanged(MovieChangedEvent.created(created));
+        Movie previous = repository.findById(id(10)).orElseThrow();
+        Movie updated = repository.save(new Movie(previous.getId(), previous.getName(), previous.getDescription(),
+                Genre.HORROR, 95L, LocalDate.of(2001, 5, 5), previous.getPgRating(), previous.getRegistrationDate()));
+        Movie deleted = repository.findById(id(11)).orElseThrow();
+        repository.deleteById(deleted.getId());
+        service.onMoviesChanged(new MoviesBulkChangedEvent(List.of(MovieChangedEvent.updated(updated, previous),
+                MovieChangedEvent.deleted(deleted))));
+
+        CatalogStatsDto stats = service.stats();
+        assertEquals(expected(), withoutVersion(stats));
+        assertEquals(5_000, stats.total());
+        assertEquals(400, stats.durationsByGenre().get(Genre.WESTERN.label()).max(), 400 / 64.0);
+        assertSame(stats, service.stats());
+    }
+
+    @Test
+    void shouldBuildTheSameStatisticsInParallel() {
+        repository.insert(generate(20_000));
+
+        assertEquals(withoutVersion(new CatalogStatsService(ReadPreferenceRouter.primaryOnly(repository), true, 1, 100,
+                        30, Clock.fixed(NOW, ZoneOffset.UTC)).build().summary(0, LocalDate.of(2023, 7, 20), 30)),
+                withoutVersion(new CatalogStatsService(ReadPreferenceRouter.primaryOnly(repository), true, 4, 100,
+                        30, Clock.fixed(NOW, ZoneOffset.UTC)).build().summary(0, LocalDate.of(2023, 7, 20), 30)));
+    }
+
+    /*
+     * Before: the statistics computed from a findAll of the whole catalog on every request.
+     * After: a read of the maintained summary, and a parallel rebuild from the cursor.
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkStatsAgainstFullScan() {
+        int size = Integer.getInteger("benchmark.catalogSize", 1_000_000);
+        repository.insert(generate(size));
+        CatalogStatsService service = service();
+        LocalDate today = LocalDate.ofInstant(NOW, ZoneOffset.UTC);
+
+        long start = System.nanoTime();
+        CatalogStatistics scanned = new CatalogStatistics();
+        repository.findAll().forEach(scanned::add);
+        CatalogStatsDto expected = scanned.summary(1, today, 30);
+        long scanMicros = (System.nanoTime() - start) / 1000;
+
+        start = System.nanoTime();
+        service.rebuild();
+        long rebuildMillis = (System.nanoTime() - start) / 1_000_000;
+
+        int reads = 100_000;
+        start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            if (i % 100 == 0) {
+                Movie movie = movie(size + i, GENRES[i % GENRES.length], 90L + i % 60, 1990 + i % 30);
+                service.onMovieChanged(MovieChangedEvent.created(movie));
+            }
+            assertNotNull(service.stats());
+        }
+        long readNanos = (System.nanoTime() - start) / reads;
+
+        System.out.printf("catalog stats over %d movies: full scan %d us per request, rebuild from cursor %d ms, "
+                + "maintained %d ns per request with a write every 100%n", size, scanMicros, rebuildMillis, readNanos);
+        assertEquals(expected.total() + reads / 100, service.stats().total());
+    }
+
+    private CatalogStatsService service() {
+        return new CatalogStatsService(ReadPreferenceRouter.primaryOnly(repository), true, 2, 100, 30,
+                Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    private CatalogStatsDto expected() {
+        CatalogStatistics statistics = new CatalogStatistics();
+        repository.findAll().forEach(statistics::add);
+        return withoutVersion(statistics.summary(0, LocalDate.ofInstant(NOW, ZoneOffset.UTC), 30));
+    }
+
+    private static CatalogStatsDto withoutVersion(CatalogStatsDto stats) {
+        return new CatalogStatsDto(0, stats.total(), stats.durations(), stats.durationsByGenre(),
+                stats.moviesPerReleaseYear(), stats.registrationsPerDay());
+    }
+
+    private static List<Movie> generate(int size) {
+        SplittableRandom random = new SplittableRandom(42);
+        return IntStream.range(0, size)
+                .mapToObj(i -> movie(i, GENRES[random.nextInt(GENRES.length)],
+                        i % 13 == 0 ? null : 60L + random.nextInt(150), 1950 + random.nextInt(74)))
+                .toList();
+    }
+
+    private static Movie movie(int i, Genre genre, Long duration, int year) {
+        return new Movie(id(i), "movie " + i, "description", genre, duration, LocalDate.of(year, 1 + i % 12, 1),
+                PgRating.of(i % 19), NOW.minusSeconds(i * 600L));
+    }
+
+    private static String id(int i) {
+        return String.format("%024x", i);
+    }
+
+}
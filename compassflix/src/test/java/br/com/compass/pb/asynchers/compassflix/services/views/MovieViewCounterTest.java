@@ -0,0 +1,206 @@
+package br.com.compass.pb.asynchers.compassflix.services.views;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.events.MovieChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.events.MoviesBulkChangedEvent;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieViewsRepository;
+import br.com.compass.pb.asynchers.compassflix.services.resilience.RepositoryCircuitBreaker;
+import br.com.compass.pb.asynchers.compassflix.support.MutableClock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.*;
+
+class MovieViewCounterTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2023-07-14T19:00:00Z"));
+
+    private final List<Map<String, Long>> flushed = new ArrayList<>();
+
+    private final MovieViewsRepository repository = mock(MovieViewsRepository.class);
+
+    private final MovieViewCounter counter = new MovieViewCounter(repository,
+            new RepositoryCircuitBreaker(false, 5, Duration.ofSeconds(10), Duration.ofSeconds(2)), true,
+            new TrendingTopK(1024, 4, 10), Duration.ofHours(1), clock);
+
+    MovieViewCounterTest() {
+        doAnswer(invocation -> flushed.add(new HashMap<>(invocation.getArgument(0))))
+                .when(repository).incrementViews(anyMap());
+    }
+
+    @Test
+    void shouldFlushEveryViewRecordedConcurrentlyInOneBulkWrite() throws InterruptedException {
+        int threads = 8;
+        int views = 20_000;
+        AtomicBoolean recording = new AtomicBoolean(true);
+        Thread ticker = new Thread(() -> {
+            while (recording.get()) {
+                counter.tick();
+            }
+        });
+        ticker.start();
+        List<Thread> viewers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread viewer = new Thread(() -> {
+                for (int i = 0; i < views; i++) {
+                    counter.record("movie-" + (i % 3));
+                }
+            });
+            viewers.add(viewer);
+            viewer.start();
+        }
+        for (Thread viewer : viewers) {
+            viewer.join();
+        }
+        recording.set(false);
+        ticker.join();
+
+        counter.flush();
+
+        assertEquals(1, flushed.size());
+        assertEquals((long) threads * views, flushed.get(0).values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(3, flushed.get(0).size());
+        counter.flush();
+        assertEquals(1, flushed.size());
+    }
+
+    @Test
+    void shouldKeepViewsOfAFailedFlushForTheNextOne() {
+        counter.record("barbie");
+        doThrow(new DataAccessResourceFailureException("down")).when(repository).incrementViews(anyMap());
+        counter.flush();
+        counter.record("barbie");
+        counter.record("oppenheimer");
+        doAnswer(invocation -> flushed.add(new HashMap<>(invocation.getArgument(0))))
+                .when(repository).incrementViews(anyMap());
+
+        counter.flush();
+
+        assertEquals(List.of(Map.of("barbie", 2L, "oppenheimer", 1L)), flushed);
+    }
+
+    @Test
+    void shouldRankTrendingByDecayedViews() {
+        view("barbie", 100);
+        view("oppenheimer", 70);
+        counter.tick();
+        assertEquals(List.of("barbie", "oppenheimer"), ids(counter.trending(10)));
+
+        clock.advance(Duration.ofHours(2));
+        view("oppenheimer", 10);
+        view("elemental", 30);
+        counter.tick();
+
+        List<TrendingTopK.Entry> trending = counter.trending(10);
+        assertEquals(List.of("elemental", "oppenheimer", "barbie"), ids(trending));
+        assertEquals(25.0, trending.get(2).score(), 1e-9);
+        assertEquals(List.of("elemental"), ids(counter.trending(1)));
+        verifyNoInteractions(repository);
+    }
+
+    @Test
+    void shouldForgetMoviesDeletedInABatch() {
+        view("barbie", 10);
+        view("oppenheimer", 5);
+        counter.tick();
+
+        counter.onMoviesChanged(new MoviesBulkChangedEvent(List.of(MovieChangedEvent.deleted(movie("barbie")))));
+        counter.flush();
+
+        assertEquals(List.of("oppenheimer"), ids(counter.trending(10)));
+        assertEquals(List.of(Map.of("oppenheimer", 5L)), flushed);
+    }
+
+    @Test
+    void shouldFindHeavyHittersAmongManyOneOffViews() {
+        TrendingTopK topK = new TrendingTopK(4096, 4, 10);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int round = 0; round < 100; round++) {
+            for (int i = 0; i < 1_000; i++) {
+                topK.add("long-tail-" + random.nextInt(100_000), 1);
+            }
+            for (int hit = 0; hit < 5; hit++) {
+                topK.add("hit-" + hit, 20);
+            }
+        }
+
+        assertEquals(List.of("hit-0", "hit-1", "hit-2", "hit-3", "hit-4"), ids(topK.top(5)).stream().sorted().toList());
+        assertTrue(topK.top(5).stream().allMatch(entry -> entry.score() >= 2_000));
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    void benchmarkIncrementThroughput() throws InterruptedException {
+        String[] ids = new String[10_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = "movie-" + i;
+        }
+        for (int threads : new int[]{1, 4, 16, 64}) {
+            AtomicBoolean running = new AtomicBoolean(true);
+            LongAdder increments = new LongAdder();
+            CountDownLatch started = new CountDownLatch(threads);
+            List<Thread> viewers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread viewer = new Thread(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    started.countDown();
+                    long count = 0;
+                    while (running.get()) {
+                        // a hot head: half of the views go to ten titles
+                        String id = random.nextBoolean() ? ids[random.nextInt(10)] : ids[random.nextInt(ids.length)];
+                        counter.record(id);
+                        count++;
+                    }
+                    increments.add(count);
+                });
+                viewers.add(viewer);
+                viewer.start();
+            }
+            started.await();
+            long start = System.nanoTime();
+            long deadline = start + Duration.ofSeconds(3).toNanos();
+            while (System.nanoTime() < deadline) {
+                counter.tick();
+                Thread.sleep(100);
+            }
+            running.set(false);
+            for (Thread viewer : viewers) {
+                viewer.join();
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            counter.flush();
+            System.out.printf("view counter threads=%d increments/s=%,.0f%n", threads, increments.sum() / seconds);
+        }
+    }
+
+    private void view(String id, int times) {
+        for (int i = 0; i < times; i++) {
+            counter.record(id);
+        }
+    }
+
+    private static List<String> ids(List<TrendingTopK.Entry> entries) {
+        return entries.stream().map(TrendingTopK.Entry::id).toList();
+    }
+
+    private static Movie movie(String id) {
+        Movie movie = new Movie();
+        movie.setId(id);
+        return movie;
+    }
+
+}
@@ -0,0 +1,109 @@
+package br.com.compass.pb.asynchers.compassflix.support;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In memory repository that can be taken down or slowed, to exercise the degraded paths without a Mongo instance
+public class FaultyMovieRepository extends InMemoryMovieRepository {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private volatile boolean down;
+
+    private volatile Runnable beforeEachCall = () -> {
+    };
+
+    public void goDown() {
+        down = true;
+    }
+
+    public void recover() {
+        down = false;
+    }
+
+    // runs inside every call, before the outcome is decided, e.g. to advance a clock and simulate latency
+    public void beforeEachCall(Runnable action) {
+        beforeEachCall = action;
+    }
+
+    public int calls() {
+        return calls.get();
+    }
+
+    @Override
+    public List<Movie> findByNameIgnoreCaseContaining(String name) {
+        call();
+        return super.findByNameIgnoreCaseContaining(name);
+    }
+
+    @Override
+    public List<Movie> findByNamesIgnoreCase(Collection<String> names) {
+        call();
+        return super.findByNamesIgnoreCase(names);
+    }
+
+    @Override
+    public List<Movie> findByFilter(MovieFilterDto filter, Sort sort, int limit) {
+        call();
+        return super.findByFilter(filter, sort, limit);
+    }
+
+    @Override
+    public List<Movie> findRecent(Instant since, String afterId, int limit) {
+        call();
+        return super.findRecent(since, afterId, limit);
+    }
+
+    @Override
+    public <S extends Movie> S insert(S entity) {
+        call();
+        return super.insert(entity);
+    }
+
+    @Override
+    public <S extends Movie> S save(S entity) {
+        call();
+        return super.save(entity);
+    }
+
+    @Override
+    public Optional<Movie> findById(String id) {
+        call();
+        return super.findById(id);
+    }
+
+    @Override
+    public List<Movie> findAll() {
+        call();
+        return super.findAll();
+    }
+
+    @Override
+    public List<Movie> findAllById(Iterable<String> ids) {
+        call();
+        return super.findAllById(ids);
+    }
+
+    @Override
+    public void deleteById(String id) {
+        call();
+        super.deleteById(id);
+    }
+
+    private void call() {
+        calls.incrementAndGet();
+        beforeEachCall.run();
+        if (down) {
+            throw new DataAccessResourceFailureException("Timed out while waiting for a server");
+        }
+    }
+
+}
@@ -0,0 +1,229 @@
+package br.com.compass.pb.asynchers.compassflix.support;
+
+import br.com.compass.pb.asynchers.compassflix.dto.request.MovieFilterDto;
+import br.com.compass.pb.asynchers.compassflix.entities.Genre;
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.entities.PgRating;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Offline stand-in for the Mongo backed repository, stores copies so callers cannot mutate persisted state
+public class InMemoryMovieRepository implements MovieRepository {
+
+    private static final Map<String, Function<Movie, Comparable>> PROPERTIES = Map.of(
+            "id", Movie::getId,
+            "name", Movie::getName,
+            "genre", Movie::getGenre,
+            "duration", Movie::getDuration,
+            "releaseDate", Movie::getReleaseDate,
+            "pgRating", Movie::getPgRating,
+            "registrationDate", Movie::getRegistrationDate);
+
+    private final Map<String, Movie> movies = new ConcurrentSkipListMap<>();
+
+    @Override
+    public List<Movie> findByNameIgnoreCaseContaining(String name) {
+        String lowerCase = name.toLowerCase(Locale.ROOT);
+        return find(movie -> movie.getName() != null && movie.getName().toLowerCase(Locale.ROOT).contains(lowerCase));
+    }
+
+    @Override
+    public List<Movie> findByNamesIgnoreCase(Collection<String> names) {
+        return find(movie -> movie.getName() != null && names.stream().anyMatch(movie.getName()::equalsIgnoreCase));
+    }
+
+    @Override
+    public List<Movie> findByFilter(MovieFilterDto filter, Sort sort, int limit) {
+        return find(matching(filter)).stream().sorted(comparator(sort)).limit(limit).toList();
+    }
+
+    @Override
+    public long countByFilter(MovieFilterDto filter) {
+        return find(matching(filter)).size();
+    }
+
+    @Override
+    public List<Movie> findByFilterAfter(MovieFilterDto filter, String afterId, int limit) {
+        return find(matching(filter).and(movie -> afterId == null || movie.getId().compareTo(afterId) > 0)).stream()
+                .sorted(comparator(Sort.by("id"))).limit(limit).toList();
+    }
+
+    // through save, like a document update, so subclasses see every write
+    @Override
+    public long updateByFilter(MovieFilterDto filter, Collection<String> ids, Genre genre, PgRating pgRating) {
+        long modified = 0;
+        for (Movie movie : find(matching(filter).and(movie -> ids.contains(movie.getId())))) {
+            boolean changed = (genre != null && movie.getGenre() != genre)
+                    || (pgRating != null && movie.getPgRating() != pgRating);
+            if (changed) {
+                movie.setGenre(genre != null ? genre : movie.getGenre());
+                movie.setPgRating(pgRating != null ? pgRating : movie.getPgRating());
+                save(movie);
+                modified++;
+            }
+        }
+        return modified;
+    }
+
+    @Override
+    public List<Movie> findRecent(Instant since, String afterId, int limit) {
+        Predicate<Movie> predicate = movie -> movie.getRegistrationDate().isAfter(since)
+                || (afterId != null && movie.getRegistrationDate().equals(since)
+                && movie.getId().compareTo(afterId) > 0);
+        return find(predicate).stream().sorted(comparator(Sort.by("registrationDate", "id"))).limit(limit).toList();
+    }
+
+    @Override
+    public Stream<Movie> streamAll(int batchSize) {
+        return findAll().stream();
+    }
+
+    // one write at a time through insert, save and deleteById, so subclasses see every write
+    @Override
+    public void writeAll(List<Movie> inserted, List<Movie> replaced, List<String> deletedIds) {
+        inserted.forEach(this::insert);
+        replaced.forEach(this::save);
+        deletedIds.forEach(this::deleteById);
+    }
+
+    @Override
+    public <S extends Movie> S insert(S entity) {
+        if (entity.getId() != null && movies.containsKey(entity.getId())) {
+            throw new DuplicateKeyException("Duplicate id " + entity.getId());
+        }
+        return save(entity);
+    }
+
+    @Override
+    public <S extends Movie> List<S> insert(Iterable<S> entities) {
+        List<S> inserted = new ArrayList<>();
+        entities.forEach(entity -> inserted.add(insert(entity)));
+        return inserted;
+    }
+
+    @Override
+    public <S extends Movie> S save(S entity) {
+        if (entity.getId() == null) {
+            entity.setId(new ObjectId().toHexString());
+        }
+        movies.put(entity.getId(), new Movie(entity));
+        return entity;
+    }
+
+    @Override
+    public <S extends Movie> List<S> saveAll(Iterable<S> entities) {
+        List<S> saved = new ArrayList<>();
+        entities.forEach(entity -> saved.add(save(entity)));
+        return saved;
+    }
+
+    @Override
+    public Optional<Movie> findById(String id) {
+        return Optional.ofNullable(movies.get(id)).map(Movie::new);
+    }
+
+    @Override
+    public boolean existsById(String id) {
+        return movies.containsKey(id);
+    }
+
+    @Override
+    public List<Movie> findAll() {
+        return find(movie -> true);
+    }
+
+    @Override
+    public List<Movie> findAllById(Iterable<String> ids) {
+        List<Movie> found = new ArrayList<>();
+        ids.forEach(id -> findById(id).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public List<Movie> findAll(Sort sort) {
+        return findAll().stream().sorted(comparator(sort)).toList();
+    }
+
+    @Override
+    public Page<Movie> findAll(Pageable pageable) {
+        List<Movie> sorted = findAll(pageable.getSort());
+        int from = (int) Math.min(pageable.getOffset(), sorted.size());
+        int to = Math.min(from + pageable.getPageSize(), sorted.size());
+        return new PageImpl<>(sorted.subList(from, to), pageable, sorted.size());
+    }
+
+    @Override
+    public long count() {
+        return movies.size();
+    }
+
+    @Override
+    public void deleteById(String id) {
+        movies.remove(id);
+    }
+
+    @Override
+    public void delete(Movie entity) {
+        movies.remove(entity.getId());
+    }
+
+    @Override
+    public void deleteAllById(Iterable<? extends String> ids) {
+        ids.forEach(movies::remove);
+    }
+
+    @Override
+    public void deleteAll(Iterable<? extends Movie> entities) {
+        entities.forEach(this::delete);
+    }
+
+    @Override
+    public void deleteAll() {
+        movies.clear();
+    }
+
+    private static Predicate<Movie> matching(MovieFilterDto filter) {
+        Genre genre = filter.genreValue();
+        PgRating pgRating = filter.pgRatingValue();
+        return movie -> (genre == null || genre == movie.getGenre())
+                && (pgRating == null || pgRating == movie.getPgRating())
+                && (filter.releasedFrom() == null || !movie.getReleaseDate().isBefore(filter.releasedFrom()))
+                && (filter.releasedTo() == null || !movie.getReleaseDate().isAfter(filter.releasedTo()))
+                && (filter.minDuration() == null || movie.getDuration() >= filter.minDuration())
+                && (filter.maxDuration() == null || movie.getDuration() <= filter.maxDuration());
+    }
+
+    private List<Movie> find(Predicate<Movie> predicate) {
+        return movies.values().stream().filter(predicate).map(Movie::new).toList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Comparator<Movie> comparator(Sort sort) {
+        Comparator<Movie> comparator = (a, b) -> 0;
+        for (Sort.Order order : sort) {
+            Function<Movie, Comparable> property = PROPERTIES.get(order.getProperty());
+            Comparator<Movie> next = Comparator.comparing(property, Comparator.nullsFirst(Comparator.naturalOrder()));
+            comparator = comparator.thenComparing(order.isAscending() ? next : next.reversed());
+        }
+        return comparator;
+    }
+
+}
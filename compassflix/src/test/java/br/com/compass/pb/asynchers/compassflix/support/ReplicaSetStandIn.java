@@ -0,0 +1,102 @@
+package br.com.compass.pb.asynchers.compassflix.support;
+
+import br.com.compass.pb.asynchers.compassflix.entities.Movie;
+import br.com.compass.pb.asynchers.compassflix.repositories.MovieRepository;
+import br.com.compass.pb.asynchers.compassflix.services.routing.ReadPreferenceRepositories;
+import com.mongodb.ReadPreference;
+import com.mongodb.TaggableReadPreference;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A primary and one secondary, each an in memory store. The secondary only sees the primary's writes after
+ * {@link #replicate()}, and is left out of secondary reads once it misses a write older than the read's max
+ * staleness, like a driver would. Every read records which member served it.
+ */
+public class ReplicaSetStandIn implements ReadPreferenceRepositories {
+
+    public static final String PRIMARY = "primary";
+    public static final String SECONDARY = "secondary";
+
+    private final Clock clock;
+
+    private final Primary primary = new Primary();
+
+    private final InMemoryMovieRepository secondary = new InMemoryMovieRepository();
+
+    private final List<Instant> writes = Collections.synchronizedList(new ArrayList<>());
+
+    private final List<String> served = Collections.synchronizedList(new ArrayList<>());
+
+    private volatile int applied;
+
+    public ReplicaSetStandIn(Clock clock) {
+        this.clock = clock;
+    }
+
+    public MovieRepository primary() {
+        return primary;
+    }
+
+    public void replicate() {
+        synchronized (writes) {
+            secondary.deleteAll();
+            secondary.insert(primary.findAll());
+            applied = writes.size();
+        }
+    }
+
+    public Duration secondaryStaleness() {
+        synchronized (writes) {
+            return applied == writes.size() ? Duration.ZERO : Duration.between(writes.get(applied), clock.instant());
+        }
+    }
+
+    public String lastServedBy() {
+        return served.get(served.size() - 1);
+    }
+
+    @Override
+    public MovieRepository with(ReadPreference readPreference) {
+        String mode = readPreference.getName();
+        boolean secondaryEligible = !(readPreference instanceof TaggableReadPreference taggable)
+                || taggable.getMaxStaleness(TimeUnit.MILLISECONDS) == null
+                || secondaryStaleness().toMillis() <= taggable.getMaxStaleness(TimeUnit.MILLISECONDS);
+        boolean useSecondary = switch (mode) {
+            case "secondary" -> {
+                if (!secondaryEligible) {
+                    throw new IllegalStateException("No secondary within max staleness");
+                }
+                yield true;
+            }
+            // the secondary is the nearest member in this stand-in
+            case "secondaryPreferred", "nearest" -> secondaryEligible;
+            default -> false;
+        };
+        served.add(useSecondary ? SECONDARY : PRIMARY);
+        return useSecondary ? secondary : primary;
+    }
+
+    private class Primary extends InMemoryMovieRepository {
+
+        @Override
+        public <S extends Movie> S save(S entity) {
+            writes.add(clock.instant());
+            return super.save(entity);
+        }
+
+        @Override
+        public void deleteById(String id) {
+            writes.add(clock.instant());
+            super.deleteById(id);
+        }
+
+    }
+
+}